@@ -4,8 +4,6 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
-import org.geotools.data.collection.SpatialIndexFeatureCollection;
-import org.geotools.data.collection.SpatialIndexFeatureSource;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.data.simple.SimpleFeatureSource;
@@ -13,6 +11,8 @@ import org.geotools.factory.CommonFactoryFinder;
 import org.geotools.feature.DefaultFeatureCollection;
 import org.geotools.geometry.jts.JTSFactoryFinder;
 import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.LineString;
 import org.locationtech.jts.geom.Point;
@@ -24,6 +24,14 @@ import org.opengis.filter.FilterFactory2;
 import ca.bc.gov.catchment.utils.SpatialUtils;
 import ca.bc.gov.catchment.water.Water;
 
+/**
+ * A set of catchment sections which is being improved.  Keeps the original sections, and the updated 
+ * (latest) version of each section.
+ * 
+ * The updated sections are held in a CatchmentSectionStore, so sections can be looked up by FID in 
+ * constant time and by location with a spatial index, and copies are cheap (copy-on-write).  The version 
+ * number increases each time a section is updated.
+ */
 public class CatchmentLines {
 
 	private static int NEXT_ID = 1;
@@ -33,7 +41,9 @@ public class CatchmentLines {
 	private SimpleFeatureType featureType;
 	private String geometryPropertyName;
 	private SimpleFeatureSource originalCatchmentLines;
-	private DefaultFeatureCollection updatedCatchmentLines;
+	private CatchmentSectionStore updatedCatchmentLines;
+	private SimpleFeatureCollection updatedFeatures; //the updated sections as a collection. created on demand
+	private long updatedFeaturesVersion;
 	private Filter defaultFilter;
 	private int id;
 	
@@ -53,67 +63,64 @@ public class CatchmentLines {
 		this.geometryPropertyName = featureType.getGeometryDescriptor().getLocalName();
 		
 		this.originalCatchmentLines = catchmentLines;
-		this.updatedCatchmentLines = new DefaultFeatureCollection();
-		this.updatedCatchmentLines.addAll(catchmentLines.getFeatures());
+		this.updatedCatchmentLines = new CatchmentSectionStore(SpatialUtils.simpleFeatureCollectionToFeatList(catchmentLines.getFeatures()));
 		this.defaultFilter = defaultFilter;
 		this.id = NEXT_ID++; 
 	}
 	
+	private CatchmentLines(CatchmentLines other) {
+		this.filterFactory = other.filterFactory;
+		this.geometryFactory = other.geometryFactory;
+		this.featureType = other.featureType;
+		this.geometryPropertyName = other.geometryPropertyName;
+		this.originalCatchmentLines = other.originalCatchmentLines;
+		this.updatedCatchmentLines = other.updatedCatchmentLines.fork();
+		this.defaultFilter = other.defaultFilter;
+		this.id = NEXT_ID++;
+	}
+	
 	public int getId() {
 		return this.id;
 	}
 	
-	public CatchmentLines copy() throws IOException {
-
-		//clone each feature from 'updatedCatchmentLines', and add to a new
-		//feature collection.  
-		DefaultFeatureCollection dfc = new DefaultFeatureCollection();
-		SimpleFeatureIterator it = getOriginalFeatures().features();
-		while(it.hasNext()) {
-			SimpleFeature f = it.next();
-			f = getLatest(f);
-			SimpleFeature clone = SpatialUtils.copyFeature(f);
-			dfc.add(clone);
-		}
-		it.close();
-		
-		//create a new catchment lines object from the new feature collection
-		SpatialIndexFeatureCollection fc = new SpatialIndexFeatureCollection(dfc);
-		SpatialIndexFeatureSource fs = new SpatialIndexFeatureSource(fc);
-		CatchmentLines copy = new CatchmentLines(fs, null);
-		
-		return copy;
+	/**
+	 * Creates an independent copy.  Updates to the copy don't affect this object, and vice versa.
+	 * The copy has the same original features, and the same updated features.  Sections are shared 
+	 * (not cloned) until they are updated, so copying is cheap.
+	 */
+	public synchronized CatchmentLines copy() throws IOException {
+		return new CatchmentLines(this);
 	}
 	
-	private void setUpdatedCatchmentLines(DefaultFeatureCollection fc) {
-		this.updatedCatchmentLines = fc;
+	/**
+	 * the version of the updated sections.  increases each time a section is updated.
+	 */
+	public synchronized long getVersion() {
+		return updatedCatchmentLines.getVersion();
 	}
 	
 	public List<SimpleFeature> getSectionsTouchingJunction(Coordinate junction) throws IOException {
 		Point p = geometryFactory.createPoint(junction);
 		List<SimpleFeature> touchingSections = new ArrayList<SimpleFeature>();
 		
-		//find routes from the original catchment set
-		Filter touchesFilter = filterFactory.touches(
-				filterFactory.property(geometryPropertyName), 
-				filterFactory.literal(p)
-				);
-		
-		SimpleFeatureCollection originalTouchingCatchmentEdges = getUpdatedFeatures(touchesFilter);
-		SimpleFeatureIterator it = originalTouchingCatchmentEdges.features();
-		try {
-			while(it.hasNext()) {
-				SimpleFeature f = it.next();
-				f = getLatest(f);
+		//find the latest version of the sections which touch the point
+		for (SimpleFeature f : getUpdatedSections(p.getEnvelopeInternal())) {
+			Geometry g = (Geometry)f.getDefaultGeometry();
+			if (g.touches(p)) {
 				touchingSections.add(f);
 			}
-		} finally {
-			it.close();	
 		}
 		
 		return touchingSections;
 	}
 	
+	/**
+	 * gets the latest version of each section whose bounding box intersects the given envelope
+	 */
+	public synchronized List<SimpleFeature> getUpdatedSections(Envelope envelope) {
+		return updatedCatchmentLines.query(envelope);
+	}
+	
 	public Filter getDefaultFilter() {
 		return this.defaultFilter;
 	}
@@ -142,14 +149,24 @@ public class CatchmentLines {
 		//	Filter allFilter = filterFactory.and(defaultFilter, f);
 		//	return updatedCatchmentLines.subCollection(allFilter);
 		//}
-		return updatedCatchmentLines.subCollection(f);
+		return getUpdatedFeatures().subCollection(f);
 	} 
 	
 	public SimpleFeatureCollection getUpdatedFeatures() throws IOException {
 		//if (defaultFilter != null) {
 		//	updatedCatchmentLines.subCollection(defaultFilter);
 		//}
-		return this.updatedCatchmentLines;
+		
+		//the collection is reused until the next update
+		synchronized(this) {
+			if (updatedFeatures == null || updatedFeaturesVersion != updatedCatchmentLines.getVersion()) {
+				DefaultFeatureCollection fc = new DefaultFeatureCollection();
+				fc.addAll(updatedCatchmentLines.getAll());
+				updatedFeatures = fc;
+				updatedFeaturesVersion = updatedCatchmentLines.getVersion();
+			}
+			return updatedFeatures;
+		}
 	}
 	
 	public List<Coordinate> getJunctions(Water waterAnalyzer) throws IOException {
@@ -185,18 +202,10 @@ public class CatchmentLines {
 	 * @return
 	 * @throws IOException 
 	 */
-	public SimpleFeature getLatest(SimpleFeature section) throws IOException {
-		Filter fidFilter = filterFactory.id(section.getIdentifier());
-		SimpleFeatureCollection matches = getUpdatedFeatures(fidFilter);
-		SimpleFeatureIterator matchesIt = matches.features();
-		try {
-			if (matchesIt.hasNext()) {
-				SimpleFeature match = matchesIt.next();
-				return match;
-			}
-		} 
-		finally {
-			matchesIt.close();	
+	public synchronized SimpleFeature getLatest(SimpleFeature section) throws IOException {
+		SimpleFeature match = updatedCatchmentLines.get(section.getID());
+		if (match != null) {
+			return match;
 		}
 		return section;
 	}
@@ -210,28 +219,7 @@ public class CatchmentLines {
 	 * @param f
 	 * @throws IOException 
 	 */
-	public void addOrUpdate(SimpleFeature f) throws IOException {
-		Filter fidFilter = filterFactory.id(f.getIdentifier());
-		SimpleFeatureCollection matches = getUpdatedFeatures(fidFilter);
-		SimpleFeatureIterator matchesIt = matches.features();
-
-		//if a feature with the same FID as the given feature already exists, 
-		//remove the existing feature (it will be replaced below)
-		SimpleFeature toRemove = null;
-		try {
-			while(matchesIt.hasNext()) {
-				SimpleFeature match = matchesIt.next();
-				toRemove = match;
-			}
-		}
-		finally {
-			matchesIt.close();
-		}
-		if (toRemove != null) {
-			updatedCatchmentLines.remove(toRemove);
-		}
-		
-		//add the new feature
-		updatedCatchmentLines.add(f);
+	public synchronized void addOrUpdate(SimpleFeature f) throws IOException {
+		updatedCatchmentLines.put(f);
 	}
 }
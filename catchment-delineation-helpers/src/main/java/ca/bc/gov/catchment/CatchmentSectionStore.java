@@ -0,0 +1,216 @@
+package ca.bc.gov.catchment;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.index.quadtree.Quadtree;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.opengis.feature.simple.SimpleFeature;
+
+/**
+ * The working set of catchment sections of a CatchmentLines object.  Sections can be looked up by FID
+ * (with a hash map) and by location (with a spatial index).
+ *
+ * Copies are cheap (copy-on-write).  The sections are held in two layers:
+ *  - a base layer, which is never modified once it is created, so it can be shared by many stores.
+ *    indexed with an STRtree.
+ *  - a delta layer, with the sections which have been added or replaced since the base was created.
+ *    indexed with a Quadtree, which can be updated one section at a time.
+ * A fork shares the base and copies the delta, so its cost depends on the number of changes, not the
+ * number of sections.  When the delta becomes large relative to the base, the layers are merged into a
+ * new base.
+ *
+ * Each change increments the version of the store.  Not thread-safe, but a store and its forks may be
+ * used by different threads.
+ */
+class CatchmentSectionStore {
+
+	//merge the delta into a new base once the delta is larger than this fraction of the base
+	private static final double MAX_DELTA_FRACTION = 0.25;
+	private static final int MIN_DELTA_SIZE_TO_MERGE = 64;
+
+	private Base base;
+	private Map<String, SimpleFeature> delta;
+	private Quadtree deltaIndex;
+	private int numAdded; //number of sections in the delta which aren't in the base
+	private long version;
+
+	public CatchmentSectionStore(Collection<SimpleFeature> sections) {
+		this.base = new Base(sections);
+		this.delta = new LinkedHashMap<String, SimpleFeature>();
+		this.deltaIndex = new Quadtree();
+		this.numAdded = 0;
+		this.version = 0;
+	}
+
+	private CatchmentSectionStore(CatchmentSectionStore other) {
+		this.base = other.base;
+		this.delta = new LinkedHashMap<String, SimpleFeature>(other.delta);
+		this.deltaIndex = new Quadtree();
+		for (SimpleFeature section : delta.values()) {
+			insert(deltaIndex, section);
+		}
+		this.numAdded = other.numAdded;
+		this.version = other.version;
+	}
+
+	/**
+	 * creates an independent copy of the store.  changes to either store don't affect the other.
+	 */
+	public CatchmentSectionStore fork() {
+		return new CatchmentSectionStore(this);
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	public int size() {
+		return base.size() + numAdded;
+	}
+
+	/**
+	 * gets the section with the given FID, or null if there is no such section
+	 */
+	public SimpleFeature get(String fid) {
+		SimpleFeature section = delta.get(fid);
+		if (section != null) {
+			return section;
+		}
+		return base.get(fid);
+	}
+
+	/**
+	 * adds the section, replacing any existing section with the same FID
+	 */
+	public void put(SimpleFeature section) {
+		String fid = section.getID();
+		SimpleFeature replaced = delta.put(fid, section);
+		if (replaced != null) {
+			remove(deltaIndex, replaced);
+		}
+		else if (base.get(fid) == null) {
+			numAdded++;
+		}
+		insert(deltaIndex, section);
+		version++;
+
+		if (delta.size() >= MIN_DELTA_SIZE_TO_MERGE && delta.size() > base.size() * MAX_DELTA_FRACTION) {
+			mergeDelta();
+		}
+	}
+
+	/**
+	 * gets the sections whose bounding boxes intersect the given envelope
+	 */
+	public List<SimpleFeature> query(Envelope envelope) {
+		List<SimpleFeature> result = new ArrayList<SimpleFeature>();
+		for (Object item : base.index.query(envelope)) {
+			SimpleFeature section = (SimpleFeature)item;
+			if (!delta.containsKey(section.getID())) {
+				result.add(section);
+			}
+		}
+		for (Object item : deltaIndex.query(envelope)) {
+			//the quadtree may return sections which don't intersect the envelope
+			SimpleFeature section = (SimpleFeature)item;
+			if (getEnvelope(section).intersects(envelope)) {
+				result.add(section);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * gets all the sections.  sections from the base come first (in the original order), followed by
+	 * sections added since the base was created.
+	 */
+	public List<SimpleFeature> getAll() {
+		List<SimpleFeature> result = new ArrayList<SimpleFeature>(size());
+		for (SimpleFeature section : base.sections) {
+			SimpleFeature replacement = delta.get(section.getID());
+			result.add(replacement != null ? replacement : section);
+		}
+		if (numAdded > 0) {
+			for (SimpleFeature section : delta.values()) {
+				if (base.get(section.getID()) == null) {
+					result.add(section);
+				}
+			}
+		}
+		return result;
+	}
+
+	private void mergeDelta() {
+		this.base = new Base(getAll());
+		this.delta = new LinkedHashMap<String, SimpleFeature>();
+		this.deltaIndex = new Quadtree();
+		this.numAdded = 0;
+	}
+
+	private static Envelope getEnvelope(SimpleFeature section) {
+		Geometry geometry = (Geometry)section.getDefaultGeometry();
+		return geometry != null ? geometry.getEnvelopeInternal() : new Envelope();
+	}
+
+	private static void insert(Quadtree index, SimpleFeature section) {
+		Envelope envelope = getEnvelope(section);
+		if (!envelope.isNull()) {
+			index.insert(envelope, section);
+		}
+	}
+
+	private static void remove(Quadtree index, SimpleFeature section) {
+		Envelope envelope = getEnvelope(section);
+		if (!envelope.isNull()) {
+			index.remove(envelope, section);
+		}
+	}
+
+	/**
+	 * An immutable set of sections, with an FID lookup and a spatial index
+	 */
+	private static class Base {
+
+		private List<SimpleFeature> sections;
+		private Map<String, SimpleFeature> byFid;
+		private STRtree index;
+
+		/**
+		 * @param sections if several sections have the same FID, only the first is kept
+		 */
+		Base(Collection<SimpleFeature> sections) {
+			this.sections = new ArrayList<SimpleFeature>(sections.size());
+			this.byFid = new HashMap<String, SimpleFeature>();
+			this.index = new STRtree();
+			for (SimpleFeature section : sections) {
+				if (byFid.containsKey(section.getID())) {
+					continue;
+				}
+				this.sections.add(section);
+				byFid.put(section.getID(), section);
+				Envelope envelope = getEnvelope(section);
+				if (!envelope.isNull()) {
+					index.insert(envelope, section);
+				}
+			}
+
+			//build now, so the index isn't modified by queries (from different threads)
+			index.build();
+		}
+
+		int size() {
+			return sections.size();
+		}
+
+		SimpleFeature get(String fid) {
+			return byFid.get(fid);
+		}
+	}
+}
@@ -1,9 +1,7 @@
 package ca.bc.gov.catchment.algorithms;
 
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
 
 import org.geotools.geometry.jts.JTSFactoryFinder;
 import org.locationtech.jts.geom.Coordinate;
@@ -13,6 +11,7 @@ import org.locationtech.jts.geom.LineString;
 import org.locationtech.jts.geom.Point;
 import org.opengis.feature.simple.SimpleFeature;
 
+import ca.bc.gov.catchment.utils.ConcurrentLruCache;
 import ca.bc.gov.catchment.utils.SpatialUtils;
 import ca.bc.gov.catchment.water.Water;
 
@@ -23,17 +22,13 @@ public class ElevationAdjuster {
 	
 	private Water water;
 	private GeometryFactory geometryFactory;
-	private Map<Coordinate, Double> distanceToWaterCache;
+	private ConcurrentLruCache<Coordinate, Double> distanceToWaterCache;
 		
 	public ElevationAdjuster(Water water) {
 		this.water = water;
 		this.geometryFactory = JTSFactoryFinder.getGeometryFactory();
 		
-		distanceToWaterCache = new LinkedHashMap<Coordinate, Double>(MAX_CACHE_SIZE, .75F, true) {
-		    public boolean removeEldestEntry(Map.Entry<Coordinate, Double> eldest) {
-		        return size() > MAX_CACHE_SIZE;
-		    }
-		};
+		distanceToWaterCache = new ConcurrentLruCache<Coordinate, Double>(MAX_CACHE_SIZE);
 	}
 	
 	public double getAdjustedZ(Coordinate c) {
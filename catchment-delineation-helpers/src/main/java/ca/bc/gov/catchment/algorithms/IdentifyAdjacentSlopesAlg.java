@@ -18,8 +18,10 @@ import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 
 import ca.bc.gov.catchment.tin.Edge;
+import ca.bc.gov.catchment.tin.EdgeSlopeTable;
 import ca.bc.gov.catchment.tin.TinPolys;
 import ca.bc.gov.catchment.tin.Triangle;
+import ca.bc.gov.catchment.tin.TriangleAdjacencyIndex;
 import ca.bc.gov.catchment.utils.SpatialUtils;
 
 public class IdentifyAdjacentSlopesAlg {
@@ -46,6 +48,9 @@ public class IdentifyAdjacentSlopesAlg {
 	 * computes the slope of the triangle on either side of each edge.  the output contains the same 
 	 * geometries from the input, but adds two new attributes: slope1 and slope 2. negative values mean 
 	 * downward, positive numbers mean upward.
+	 * the slopes of all edges are computed in parallel (see TinPolys.getEdgeSlopeTable).  the output can 
+	 * be loaded back into an EdgeSlopeTable with EdgeSlopeTable.fromFeatures, so fitness functions can 
+	 * look up the slopes instead of computing them.
 	 * @param tinEdges
 	 * @param outTableName
 	 * @param maxSlopeToKeep (optional).  if NaN, the output set will include all edges from the input set.  
@@ -76,6 +81,8 @@ public class IdentifyAdjacentSlopesAlg {
 			}
 		}
 		
+		EdgeSlopeTable edgeSlopes = tinPolys.getEdgeSlopeTable();
+		
 		int numFeatures = tinEdges.size();
 		int index = 0;
 		SimpleFeatureIterator tinEdgeIt = tinEdges.features();
@@ -83,7 +90,7 @@ public class IdentifyAdjacentSlopesAlg {
 			index++;
 			SimpleFeature inFeature = tinEdgeIt.next();
 			LineString segment = (LineString)inFeature.getDefaultGeometry();			
-			double[] adjacentSlopes = process(segment);
+			double[] adjacentSlopes = lookupSlopes(edgeSlopes, segment);
 			
 			SimpleFeature outFeature = SimpleFeatureBuilder.retype(inFeature, outFeatureType);
 			outFeature.setAttribute("slope1", adjacentSlopes[0]);
@@ -104,6 +111,21 @@ public class IdentifyAdjacentSlopesAlg {
 		return outFeatureCollection;	
 	}
 	
+	private double[] lookupSlopes(EdgeSlopeTable edgeSlopes, LineString segment) {
+		double[] result = {Double.NaN, Double.NaN};
+		
+		if (segment.getNumPoints() != 2) {
+			throw new IllegalArgumentException("segment must have exactly two points");
+		}
+		
+		int edgeId = edgeSlopes.getEdgeId(segment.getCoordinateN(0), segment.getCoordinateN(1));
+		if (edgeId != TriangleAdjacencyIndex.NONE) {
+			result[0] = edgeSlopes.getSlope1(edgeId);
+			result[1] = edgeSlopes.getSlope2(edgeId);
+		}
+		return result;
+	}
+	
 	/**
 	 * Returns the slopes of the two aajacent triangles that "hinge" on the given
 	 * tinEdge segment.  Values are negative for slopes that are downward from the tinEdge, 
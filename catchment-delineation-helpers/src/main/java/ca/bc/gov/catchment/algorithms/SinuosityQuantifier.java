@@ -1,6 +1,7 @@
 package ca.bc.gov.catchment.algorithms;
 
 import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.CoordinateSequence;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.LineString;
 import org.opengis.feature.simple.SimpleFeature;
@@ -37,6 +38,22 @@ public class SinuosityQuantifier {
 		return sinuosity;
 	}
 	
+	/**
+	 * the sinuosity of the line through the sequence's coordinates.  see getSinuosity(Geometry).
+	 */
+	public double getSinuosity(CoordinateSequence seq) {
+		int n = seq.size();
+		if (n < 2) {
+			return 1;
+		}
+		double len = 0;
+		for (int i = 1; i < n; i++) {
+			len += seq.getCoordinate(i-1).distance(seq.getCoordinate(i));
+		}
+		double sinuosity = len / seq.getCoordinate(0).distance(seq.getCoordinate(n-1));
+		return sinuosity;
+	}
+	
 	public double getSinuosityOld(Geometry g) {
 		if (g.getNumPoints() < 3) {
 			return 0;
@@ -10,11 +10,8 @@ import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.data.simple.SimpleFeatureSource;
 import org.geotools.factory.CommonFactoryFinder;
-import org.geotools.geometry.jts.JTSFactoryFinder;
 import org.locationtech.jts.geom.Coordinate;
-import org.locationtech.jts.geom.Geometry;
-import org.locationtech.jts.geom.GeometryFactory;
-import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.CoordinateSequence;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.filter.Filter;
@@ -32,7 +29,6 @@ import ca.bc.gov.catchment.utils.SpatialUtils;
  */
 public class AvgElevationLengthPenaltySectionFitness extends SectionFitness {
 
-	private GeometryFactory geometryFactory;
 	private TinPolys tinPolys;
 	private FilterFactory2 filterFactory;
 	private SimpleFeatureType tinPolysFeatureType;
@@ -44,18 +40,24 @@ public class AvgElevationLengthPenaltySectionFitness extends SectionFitness {
 		this.filterFactory = CommonFactoryFinder.getFilterFactory2();
 		this.tinPolysFeatureType = tinPolys.getSchema();
 		this.tinPolysGeometryProperty = tinPolysFeatureType.getGeometryDescriptor().getLocalName();
-		this.geometryFactory = JTSFactoryFinder.getGeometryFactory();
 		this.maxLen = 1500; //estimate
 	}
 	
 	@Override
-	public double fitness(Geometry geom) throws IOException {
-		double len = geom.getLength();
-		double sumZ = 0;
-		for(Coordinate coord : geom.getCoordinates()) {
-			sumZ += coord.getZ();
-		}
-		double avgZ = sumZ / geom.getNumPoints();
+	protected double fitness(CoordinateSequence seq) throws IOException {
+		return fitness(getSumZ(seq) / seq.size(), getLength(seq));
+	}
+	
+	@Override
+	public double fitness(Coordinate c1, Coordinate c2) throws IOException {
+		return fitness((c1.getZ() + c2.getZ()) / 2, c1.distance(c2));
+	}
+
+	
+	/**
+	 * the average elevation, reduced by a penalty which grows with the length
+	 */
+	private double fitness(double avgZ, double len) {
 		double lenFraction = len/maxLen; //[0-1]
 		if (lenFraction > 1) {
 			lenFraction = 1;
@@ -63,26 +65,7 @@ public class AvgElevationLengthPenaltySectionFitness extends SectionFitness {
 		double alpha = Math.log(1+lenFraction); //[0,1]
 		double lenPenalty = avgZ * alpha; //[0,avgZ]
 		double fitness = avgZ - lenPenalty;
-		/*
-		if (fitness < 0) {
-			System.out.println("avgLen:"+avgLen);
-			System.out.println("lenFraction:"+lenFraction);
-			System.out.println("alpha:"+alpha);
-			System.out.println("lenPenalty:"+lenPenalty);
-			System.out.println("fitness:"+fitness);
-			System.exit(1);
-		}		
-		*/
 		return fitness;
 	}
 	
-	@Override
-	public double fitness(Coordinate c1, Coordinate c2) throws IOException {		
-		Coordinate[] coords = {c1, c2};
-		LineString segment = geometryFactory.createLineString(coords);
-		return fitness(segment);
-	}
-
-	
-	
 }
@@ -10,11 +10,8 @@ import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.data.simple.SimpleFeatureSource;
 import org.geotools.factory.CommonFactoryFinder;
-import org.geotools.geometry.jts.JTSFactoryFinder;
 import org.locationtech.jts.geom.Coordinate;
-import org.locationtech.jts.geom.Geometry;
-import org.locationtech.jts.geom.GeometryFactory;
-import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.CoordinateSequence;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.filter.Filter;
@@ -33,27 +30,18 @@ import ca.bc.gov.catchment.utils.SpatialUtils;
  */
 public class AvgElevationSectionFitness extends SectionFitness {
 
-	private GeometryFactory geometryFactory;
 	
 	public AvgElevationSectionFitness(Tin tin) {
-		this.geometryFactory = JTSFactoryFinder.getGeometryFactory();
 	}
 	
 	@Override
-	public double fitness(Geometry geom) throws IOException {
-		double sumZ = 0;
-		for(Coordinate coord : geom.getCoordinates()) {
-			sumZ += coord.getZ();
-		}
-		double fitness = sumZ / geom.getNumPoints();
-		return fitness;
+	protected double fitness(CoordinateSequence seq) throws IOException {
+		return getSumZ(seq) / seq.size();
 	}
 	
 	@Override
-	public double fitness(Coordinate c1, Coordinate c2) throws IOException {		
-		Coordinate[] coords = {c1, c2};
-		LineString segment = geometryFactory.createLineString(coords);
-		return fitness(segment);
+	public double fitness(Coordinate c1, Coordinate c2) throws IOException {
+		return (c1.getZ() + c2.getZ()) / 2;
 	}
 
 	
@@ -0,0 +1,178 @@
+package ca.bc.gov.catchment.fitness;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.opengis.feature.simple.SimpleFeature;
+
+import ca.bc.gov.catchment.CatchmentLines;
+
+/**
+ * A spatial index of the catchment sections near an area which is being improved.  Used by
+ * CatchmentValidity to check many proposed routes in the same area against the catchments, without
+ * querying all the catchments for each route.
+ *
+ * The index includes every section whose bounding box intersects the bounds given when the neighbourhood
+ * is created.  Queries outside those bounds (see covers) are answered from the source of the sections 
+ * instead: the CatchmentLines' own spatial index, or a scan of the catchment collection.
+ *
+ * Each section is prepared (see PreparedGeometry) the first time it is tested against a route.
+ * The index is a snapshot.  Changes to the catchments after the neighbourhood is created aren't
+ * reflected.  May be used by multiple threads.
+ */
+public class CatchmentNeighbourhood {
+
+	private SimpleFeatureCollection catchments;
+	private CatchmentLines catchmentLines;
+	private Envelope bounds;
+	private STRtree index;
+	private int numSections;
+
+	/**
+	 * @param catchments
+	 * @param bounds the area in which routes will be checked
+	 */
+	public CatchmentNeighbourhood(SimpleFeatureCollection catchments, Envelope bounds) {
+		this.catchments = catchments;
+		this.bounds = new Envelope(bounds);
+		this.index = new STRtree();
+		this.numSections = 0;
+		for (Section section : scan(catchments, this.bounds)) {
+			index.insert(section.getGeometry().getEnvelopeInternal(), section);
+			numSections++;
+		}
+
+		//build now, so the index isn't modified by concurrent queries
+		index.build();
+	}
+
+	/**
+	 * @param catchmentLines the latest version of each section is used
+	 * @param bounds the area in which routes will be checked
+	 */
+	public CatchmentNeighbourhood(CatchmentLines catchmentLines, Envelope bounds) {
+		this.catchmentLines = catchmentLines;
+		this.bounds = new Envelope(bounds);
+		this.index = new STRtree();
+		this.numSections = 0;
+		for (Section section : toSections(catchmentLines.getUpdatedSections(this.bounds))) {
+			index.insert(section.getGeometry().getEnvelopeInternal(), section);
+			numSections++;
+		}
+		index.build();
+	}
+
+	public Envelope getBounds() {
+		return bounds;
+	}
+
+	/**
+	 * the number of sections in the neighbourhood
+	 */
+	public int size() {
+		return numSections;
+	}
+
+	/**
+	 * checks whether every section which may intersect the given envelope is in the neighbourhood
+	 */
+	public boolean covers(Envelope envelope) {
+		return bounds.covers(envelope);
+	}
+
+	/**
+	 * gets the sections whose bounding boxes intersect the given envelope
+	 */
+	public List<Section> query(Envelope envelope) {
+		if (!covers(envelope)) {
+			if (catchmentLines != null) {
+				return toSections(catchmentLines.getUpdatedSections(envelope));
+			}
+			return scan(catchments, envelope);
+		}
+		List<Section> result = new ArrayList<Section>();
+		for (Object item : index.query(envelope)) {
+			Section section = (Section)item;
+			if (section.getGeometry().getEnvelopeInternal().intersects(envelope)) {
+				result.add(section);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * finds the linear sections in the collection whose bounding boxes intersect the envelope
+	 */
+	private static List<Section> scan(SimpleFeatureCollection catchments, Envelope envelope) {
+		List<Section> result = new ArrayList<Section>();
+		SimpleFeatureIterator it = catchments.features();
+		try {
+			while (it.hasNext()) {
+				SimpleFeature feature = it.next();
+				Geometry geometry = (Geometry)feature.getDefaultGeometry();
+				if (geometry instanceof LineString && geometry.getEnvelopeInternal().intersects(envelope)) {
+					result.add(new Section(feature.getID(), (LineString)geometry));
+				}
+			}
+		}
+		finally {
+			it.close();
+		}
+		return result;
+	}
+
+	private static List<Section> toSections(List<SimpleFeature> features) {
+		List<Section> result = new ArrayList<Section>(features.size());
+		for (SimpleFeature feature : features) {
+			Geometry geometry = (Geometry)feature.getDefaultGeometry();
+			if (geometry instanceof LineString) {
+				result.add(new Section(feature.getID(), (LineString)geometry));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * A catchment section in the neighbourhood
+	 */
+	public static class Section {
+
+		private String fid;
+		private LineString geometry;
+		private volatile PreparedGeometry prepared;
+
+		Section(String fid, LineString geometry) {
+			this.fid = fid;
+			this.geometry = geometry;
+		}
+
+		public String getFid() {
+			return fid;
+		}
+
+		public LineString getGeometry() {
+			return geometry;
+		}
+
+		/**
+		 * the prepared section geometry.  created on first use.  (if two threads create it at the same time,
+		 * either result may be kept.)
+		 */
+		public PreparedGeometry getPreparedGeometry() {
+			PreparedGeometry result = prepared;
+			if (result == null) {
+				result = PreparedGeometryFactory.prepare(geometry);
+				prepared = result;
+			}
+			return result;
+		}
+	}
+}
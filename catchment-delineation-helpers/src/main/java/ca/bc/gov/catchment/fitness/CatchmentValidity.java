@@ -3,7 +3,9 @@ package ca.bc.gov.catchment.fitness;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
@@ -13,6 +15,7 @@ import org.geotools.feature.DefaultFeatureCollection;
 import org.geotools.geometry.jts.JTSFactoryFinder;
 import org.geotools.util.factory.Hints;
 import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.LineString;
@@ -23,8 +26,9 @@ import org.opengis.filter.Filter;
 import org.opengis.filter.FilterFactory2;
 import org.opengis.filter.identity.FeatureId;
 
-import ca.bc.gov.catchment.routes.LineStringRouter;
+import ca.bc.gov.catchment.CatchmentLines;
 import ca.bc.gov.catchment.water.Water;
+import ca.bc.gov.catchment.water.WaterNodeTable;
 
 public class CatchmentValidity {
 
@@ -89,66 +93,54 @@ public class CatchmentValidity {
 	 * validity depends on:
 	 * - segments of the route do not overlap segments of the water
 	 * - vertices of the route do not touch vertices of the water (except at a confluence)
+	 * 
+	 * Implementation note: vertices and segments are checked one at a time against the precomputed 
+	 * water node table (and its index of water segments), rather than with spatial queries of the 
+	 * whole route.  A spatial query is only used in the rare case that every vertex of a short route 
+	 * is on water.
 	 * @throws IOException 
 	 */
 	public boolean isRouteValidWrtWater(LineString route) throws IOException {
-		
-		//identify route line SEGMENTS that cover water line SEGMENTS
-		//i.e a route segment with both endpoints the same as a water segment
-		Filter containsFilter = filterFactory2D.contains(
-				filterFactory2D.property(waterGeometryPropertyName), 
-				filterFactory2D.literal(route));
-		
-		
-		SimpleFeatureCollection nonEndpointCrossings = waterFeatures.getFeatures(containsFilter);
-		
-		if (nonEndpointCrossings.size() > 0) {
-			return false;
-		}
-		
+		WaterNodeTable waterNodes = waterAnalyzer.getNodeTable();
+		Coordinate[] coords = route.getCoordinates();
 		
 		//check that each non-confluence VERTEX of the route doesn't touch water
 		if (route.getNumPoints() >= 4) {
-			//this is the most computationally efficient way to check if the 
-			//route touches water at non-endpoints, but it doesn't work when the route
-			//has less than 4 vertices (because LineStringRouter.removeEndpoints()
-			//will not create routes with less than 2 vertices).
-			//for short routes, use a less efficient algorithm below
-			
-			LineString routeNoEndpoints = LineStringRouter.removeEndpoints(route);
-			Filter touchesFilter = filterFactory2D.dwithin(
-					filterFactory2D.property(waterGeometryPropertyName),
-					filterFactory2D.literal(routeNoEndpoints),
-					0,
-					"meters"
-					);
-			SimpleFeatureCollection touchingWaterFeatures = waterFeatures.getFeatures(touchesFilter);		
-			if (touchingWaterFeatures.size() > 0) {
-				return false;
+			//the route is invalid if it touches water anywhere other than the first and last segments.  
+			//(i.e. if any part of the route between the second and second-last vertices touches water.)
+			for (int i = 1; i < coords.length - 1; i++) {
+				if (waterNodes.isOnWater(coords[i])) {
+					return false;
+				}
+				boolean isSegmentBetweenInteriorVertices = i < coords.length - 2;
+				if (isSegmentBetweenInteriorVertices && waterNodes.isSegmentTouchingWater(coords[i], coords[i+1], false)) {
+					return false;
+				}
 			}
 			
+			//a water feature can't contain the route, because some of the route doesn't touch water
+			return true;
 		} 
-		else {
-			//this is a less computationally efficient way to check if the route touches
-			//water at non end-points.  It is only used when the
-			//more efficient algorithm above cannot be used (i.e. for routes with less
-			//than 4 vertices)
-			for(Coordinate c : route.getCoordinates()) {
-				if (!waterAnalyzer.isConfluence(c)) {
-					Point p = geometryFactory.createPoint(c);
-					
-					Filter touchesFilter = filterFactory2D.dwithin(
-							filterFactory2D.property(waterGeometryPropertyName),
-							filterFactory2D.literal(p),
-							0,
-							"meters"
-							);
-					SimpleFeatureCollection touchingWaterFeatures = waterFeatures.getFeatures(touchesFilter);
-					
-					if (touchingWaterFeatures.size() > 0) {
-						return false;
-					}
-				}			
+		
+		//for short routes, every vertex which isn't a confluence must not touch water
+		boolean isEveryVertexOnWater = true;
+		for(Coordinate c : coords) {
+			boolean isOnWater = waterNodes.isOnWater(c);
+			if (isOnWater && !waterNodes.isConfluence(c)) {
+				return false;
+			}
+			isEveryVertexOnWater = isEveryVertexOnWater && isOnWater;
+		}
+		
+		//identify routes which are entirely covered by a water feature.  this is only possible if
+		//every vertex of the route is on water.
+		if (isEveryVertexOnWater) {
+			Filter containsFilter = filterFactory2D.contains(
+					filterFactory2D.property(waterGeometryPropertyName), 
+					filterFactory2D.literal(route));
+			SimpleFeatureCollection nonEndpointCrossings = waterFeatures.getFeatures(containsFilter);
+			if (nonEndpointCrossings.size() > 0) {
+				return false;
 			}
 		}
 		
@@ -193,13 +185,7 @@ public class CatchmentValidity {
 			SimpleFeature feature = matchesIt.next();
 			LineString g = (LineString)feature.getDefaultGeometry();
 			
-			//identify where the route intersects this catchment section
-			Geometry intersection = route.intersection(g);
-			
-			//if the intersection is not an endpoint of either the catchment section
-			//OR the route then, it is not a valid intsections 
-			if (!isEndpointOf(intersection, route) || !isEndpointOf(intersection, g)) {
-				
+			if (!isValidIntersection(route, g)) {
 				return false;
 			}
 		}
@@ -209,6 +195,72 @@ public class CatchmentValidity {
 		
 	}
 	
+	/**
+	 * Gets an index of the catchment sections near the given area, for checking many routes in that area
+	 * (see isRouteValidWrtCatchments(LineString, CatchmentNeighbourhood, List)).
+	 * @param catchments
+	 * @param area
+	 * @return
+	 */
+	public CatchmentNeighbourhood getNeighbourhood(SimpleFeatureCollection catchments, Envelope area) {
+		return new CatchmentNeighbourhood(catchments, area);
+	}
+	
+	/**
+	 * Gets an index of the latest catchment sections near the given area.  The sections are found with
+	 * the catchment lines' spatial index.
+	 * @param catchmentLines
+	 * @param area
+	 * @return
+	 */
+	public CatchmentNeighbourhood getNeighbourhood(CatchmentLines catchmentLines, Envelope area) {
+		return new CatchmentNeighbourhood(catchmentLines, area);
+	}
+	
+	/**
+	 * Same result as isRouteValidWrtCatchments(LineString, SimpleFeatureCollection, List), but the 
+	 * catchment sections are found with the neighbourhood's index.  The checks are applied cheapest first:
+	 *  1. sections whose bounding boxes don't intersect the route are skipped (by the index query)
+	 *  2. sections which don't intersect the route are skipped (using the prepared section geometry)
+	 *  3. the exact intersection is calculated, and must be an endpoint of both the route and the section
+	 * If the route extends beyond the neighbourhood, the sections are found from the neighbourhood's source
+	 * instead.
+	 * @param route
+	 * @param neighbourhood
+	 * @param fidsToIgnore
+	 * @return
+	 * @throws IOException
+	 */
+	public boolean isRouteValidWrtCatchments(LineString route, CatchmentNeighbourhood neighbourhood, List<FeatureId> fidsToIgnore) throws IOException {
+		Envelope routeEnvelope = route.getEnvelopeInternal();
+		
+		Set<String> fidsToIgnoreSet = new HashSet<String>();
+		for (FeatureId fid : fidsToIgnore) {
+			if (fid != null) {
+				fidsToIgnoreSet.add(fid.getID());
+			}
+		}
+		
+		for (CatchmentNeighbourhood.Section section : neighbourhood.query(routeEnvelope)) {
+			if (fidsToIgnoreSet.contains(section.getFid())) {
+				continue;
+			}
+			if (!section.getPreparedGeometry().intersects(route)) {
+				continue;
+			}
+			if (!isValidIntersection(route, section.getGeometry())) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	public boolean isRouteValidWrtCatchments(LineString route, CatchmentNeighbourhood neighbourhood, FeatureId fidToIgnore) throws IOException {
+		List<FeatureId> fidsToIgnore = new ArrayList<FeatureId>();
+		fidsToIgnore.add(fidToIgnore);
+		return isRouteValidWrtCatchments(route, neighbourhood, fidsToIgnore);
+	}
+	
 	@Deprecated
 	public boolean isRouteValidWrtCatchmentsOld(LineString route, SimpleFeatureCollection catchments, List<FeatureId> fidsToIgnore) throws IOException {
 		String catchmentGeometryPropertyName = "geometry"; //catchments.getSchema().getGeometryDescriptor().getLocalName();
@@ -278,6 +330,61 @@ public class CatchmentValidity {
 		return true;
 	}
 	
+	/**
+	 * Same result as areSectionsValidWrtCatchments(List, SimpleFeatureCollection), but the sections are
+	 * checked against the catchments with the neighbourhood's index, and against each other with a 
+	 * bounding box test before the exact test.
+	 * @param sections
+	 * @param neighbourhood
+	 * @return
+	 * @throws IOException
+	 */
+	public boolean areSectionsValidWrtCatchments(List<SimpleFeature> sections, CatchmentNeighbourhood neighbourhood) throws IOException {
+		List<FeatureId> ignoreFids = new ArrayList<FeatureId>();
+		for(SimpleFeature f: sections) {
+			ignoreFids.add(f.getIdentifier());
+		}
+		
+		//check against the main catchment set
+		for(SimpleFeature f: sections) {
+			LineString route = (LineString)f.getDefaultGeometry();
+			boolean isValid = isRouteValidWrtCatchments(route, neighbourhood, ignoreFids);
+			if (!isValid) {
+				return false;
+			}
+		}
+		
+		//check against the other features in 'sections'
+		for(SimpleFeature f: sections) {
+			LineString route = (LineString)f.getDefaultGeometry();
+			for(SimpleFeature other: sections) {
+				if (other == f || other.getIdentifier().equals(f.getIdentifier())) {
+					continue;
+				}
+				LineString g = (LineString)other.getDefaultGeometry();
+				boolean mayIntersect = route.getEnvelopeInternal().intersects(g.getEnvelopeInternal());
+				if (mayIntersect && route.intersects(g) && !isValidIntersection(route, g)) {
+					return false;
+				}
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * checks whether the intersection of a route and a catchment section is acceptable.  (the route and 
+	 * section are expected to intersect.)  they may only meet at a point which is an endpoint of both.
+	 */
+	private boolean isValidIntersection(LineString route, LineString section) {
+		//identify where the route intersects this catchment section
+		Geometry intersection = route.intersection(section);
+		
+		//if the intersection is not an endpoint of either the catchment section
+		//OR the route then, it is not a valid intsections 
+		return isEndpointOf(intersection, route) && isEndpointOf(intersection, section);
+	}
+	
 	/**
 	 * checks whether possibleEndpoint is an endpoint of route
 	 * @param possibleEndpoint
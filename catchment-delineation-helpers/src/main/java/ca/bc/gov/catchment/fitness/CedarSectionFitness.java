@@ -4,28 +4,23 @@ import java.io.IOException;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.LinkedHashMap;
-import java.util.List;
-import java.util.Map;
 
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.data.simple.SimpleFeatureSource;
 import org.geotools.factory.CommonFactoryFinder;
-import org.geotools.geometry.jts.JTSFactoryFinder;
 import org.locationtech.jts.geom.Coordinate;
-import org.locationtech.jts.geom.Geometry;
-import org.locationtech.jts.geom.GeometryFactory;
-import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.CoordinateSequence;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.filter.Filter;
 import org.opengis.filter.FilterFactory2;
 
-import ca.bc.gov.catchment.tin.Edge;
+import ca.bc.gov.catchment.tin.EdgeSlopeTable;
 import ca.bc.gov.catchment.tin.TinEdges;
 import ca.bc.gov.catchment.tin.TinPolys;
-import ca.bc.gov.catchment.tin.Triangle;
+import ca.bc.gov.catchment.tin.TriangleAdjacencyIndex;
+import ca.bc.gov.catchment.utils.ConcurrentLruCache;
 import ca.bc.gov.catchment.utils.SpatialUtils;
 
 /**
@@ -44,30 +39,34 @@ public class CedarSectionFitness extends SectionFitness {
 	private static final int COLOR_GOOD = 2;
 	private static final int COLOR_MEDIUM = 1;
 	
-	private GeometryFactory geometryFactory;
 	private TinPolys tinPolys;
-	private Map<LineString, Double> fitnessCache;
+	private EdgeSlopeTable edgeSlopes;
+	private ConcurrentLruCache<Integer, Double> fitnessCache;
 	private double maxElevation;
 	
 	public CedarSectionFitness(TinPolys tinPolys) throws IOException {
+		this(tinPolys, MAX_CACHE_SIZE);
+	}
+	
+	/**
+	 * @param tinPolys
+	 * @param cacheSize the maximum number of segment fitness values to cache
+	 * @throws IOException
+	 */
+	public CedarSectionFitness(TinPolys tinPolys, int cacheSize) throws IOException {
 		this.tinPolys = tinPolys;
-		this.geometryFactory = JTSFactoryFinder.getGeometryFactory();
 		
-		//define a map that removes the oldest entry when the 
-		//cache reaches its maximum size.  i.e. the least-recently-used entry is
-		//removed
-		fitnessCache = new LinkedHashMap<LineString, Double>(MAX_CACHE_SIZE, .75F, true) {
-		    public boolean removeEldestEntry(Map.Entry<LineString, Double> eldest) {
-		        return size() > MAX_CACHE_SIZE;
-		    }
-		};
+		//the cache is shared by all threads which use this fitness object.
+		//it is keyed by tin edge id, so no geometry is built to look up a segment
+		fitnessCache = new ConcurrentLruCache<Integer, Double>(cacheSize);
+		this.edgeSlopes = tinPolys.getEdgeSlopeTable();
 		maxElevation = tinPolys.getMaxElevation(); 
 	}
 	
 	@Override
-	public double fitness(Geometry geom) throws IOException {
-		double originalFitness = super.fitness(geom);
-		double len = geom.getLength();
+	protected double fitness(CoordinateSequence seq) throws IOException {
+		double originalFitness = super.fitness(seq);
+		double len = getLength(seq);
 		double fitnessAdjustedForLength = originalFitness / len;
 		return fitnessAdjustedForLength;
 	}
@@ -80,27 +79,22 @@ public class CedarSectionFitness extends SectionFitness {
 	 * section is on a ridge, and low if it isn't
 	 */
 	public double fitness(Coordinate c1, Coordinate c2) throws IOException {		
-		Coordinate[] coords = {c1, c2};
-		LineString segment = geometryFactory.createLineString(coords);
+		int edgeId = edgeSlopes.getEdgeId(c1, c2);
 		
-		//lookup fitness in cache
-		Double cachedResult = fitnessCache.get(segment);
-		if (cachedResult != null) {
-			return cachedResult.doubleValue();
+		//lookup fitness in cache.  segments which aren't tin edges aren't cached
+		if (edgeId != TriangleAdjacencyIndex.NONE) {
+			Double cachedResult = fitnessCache.get(edgeId);
+			if (cachedResult != null) {
+				return cachedResult.doubleValue();
+			}
 		}
 		
-		double length = segment.getLength();
+		double length = c1.distance(c2);
 		double avgElevation = (c1.getZ() + c2.getZ()) / 2;
 		
-		List<Triangle> triangles = tinPolys.getTrianglesOnEdge(segment);
 		double color = COLOR_UNDEFINED;
-		if (triangles.size() == 2) {
-			Triangle t1 = triangles.get(0);
-			Triangle t2 = triangles.get(1);
-			Edge baseEdge = new Edge(c1, c2);			
-			double alpha = t1.getSlopeRelativeToBaseEdge(baseEdge);
-			double beta = t2.getSlopeRelativeToBaseEdge(baseEdge);
-			double maxSlope = Math.max(alpha, beta);
+		if (edgeId != TriangleAdjacencyIndex.NONE && edgeSlopes.hasTwoTriangles(edgeId)) {
+			double maxSlope = edgeSlopes.getMaxSlope(edgeId);
 			if (maxSlope < 0) {
 				//ridge
 				color =  COLOR_GOOD;
@@ -116,10 +110,15 @@ public class CedarSectionFitness extends SectionFitness {
 			}
 		}
 		double fitness = length * color;
-		fitnessCache.put(segment, fitness);
+		if (edgeId != TriangleAdjacencyIndex.NONE) {
+			fitnessCache.put(edgeId, fitness);
+		}
+		
 		return fitness;
 	}
-
 	
+	public ConcurrentLruCache<Integer, Double> getFitnessCache() {
+		return fitnessCache;
+	}
 	
 }
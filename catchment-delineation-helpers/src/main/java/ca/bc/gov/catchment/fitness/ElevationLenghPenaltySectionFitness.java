@@ -10,11 +10,8 @@ import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.data.simple.SimpleFeatureSource;
 import org.geotools.factory.CommonFactoryFinder;
-import org.geotools.geometry.jts.JTSFactoryFinder;
 import org.locationtech.jts.geom.Coordinate;
-import org.locationtech.jts.geom.Geometry;
-import org.locationtech.jts.geom.GeometryFactory;
-import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.CoordinateSequence;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.filter.Filter;
@@ -31,7 +28,6 @@ import ca.bc.gov.catchment.utils.SpatialUtils;
  */
 public class ElevationLenghPenaltySectionFitness extends SectionFitness {
 
-	private GeometryFactory geometryFactory;
 	private TinPolys tinPolys;
 	private FilterFactory2 filterFactory;
 	private SimpleFeatureType tinPolysFeatureType;
@@ -42,26 +38,16 @@ public class ElevationLenghPenaltySectionFitness extends SectionFitness {
 		this.filterFactory = CommonFactoryFinder.getFilterFactory2();
 		this.tinPolysFeatureType = tinPolys.getSchema();
 		this.tinPolysGeometryProperty = tinPolysFeatureType.getGeometryDescriptor().getLocalName();
-		this.geometryFactory = JTSFactoryFinder.getGeometryFactory();
 	}
 	
 	@Override
-	public double fitness(Geometry geom) throws IOException {
-		double len = geom.getLength();
-		double sumZ = 0;
-		for(Coordinate coord : geom.getCoordinates()) {
-			sumZ += coord.getZ();
-		}
-		//double avgZ = sumZ / geom.getNumPoints();
-		double fitness = sumZ / len;
-		return fitness;
+	protected double fitness(CoordinateSequence seq) throws IOException {
+		return getSumZ(seq) / getLength(seq);
 	}
 	
 	@Override
-	public double fitness(Coordinate c1, Coordinate c2) throws IOException {		
-		Coordinate[] coords = {c1, c2};
-		LineString segment = geometryFactory.createLineString(coords);
-		return fitness(segment);
+	public double fitness(Coordinate c1, Coordinate c2) throws IOException {
+		return (c1.getZ() + c2.getZ()) / c1.distance(c2);
 	}
 
 	
@@ -40,15 +40,9 @@ public class RidgeSectionFitness extends SectionFitness {
 	private static final double FITNESS_SCALE_FACTOR = 100;
 	
 	private TinPolys tinPolys;
-	private FilterFactory2 filterFactory;
-	private SimpleFeatureType tinPolysFeatureType;
-	private String tinPolysGeometryProperty;
 	
 	public RidgeSectionFitness(TinPolys tinPolys) {
 		this.tinPolys = tinPolys;
-		this.filterFactory = CommonFactoryFinder.getFilterFactory2();
-		this.tinPolysFeatureType = tinPolys.getSchema();
-		this.tinPolysGeometryProperty = tinPolysFeatureType.getGeometryDescriptor().getLocalName();
 	}
 	
 	@Override
@@ -68,7 +62,7 @@ public class RidgeSectionFitness extends SectionFitness {
 		double segmentAngle = Math.toDegrees(Math.atan((c2.getY() - c1.getY()) / (c2.getX() - c1.getX() ))) % 180;
 		
 		//identify the two triangles which share the edge defined by the line segment
-		List<Triangle> touchingTriangles = getTouchingTriangles(segment);
+		List<Triangle> touchingTriangles = tinPolys.getTrianglesOnEdge(segment);
 		if (touchingTriangles.size() != 2) {
 			for(Triangle t : touchingTriangles) {
 				System.out.println(t);
@@ -157,41 +151,6 @@ public class RidgeSectionFitness extends SectionFitness {
 		return weightedFitness;
 	}
 
-	private List<Triangle> getTouchingTriangles(LineString segment) throws IOException {
-		
-		List<Triangle> result = new ArrayList<Triangle>();
-		
-		Filter overlapsFilter = filterFactory.touches(
-			filterFactory.property(tinPolysGeometryProperty),
-			filterFactory.literal(segment)
-		);
-		SimpleFeatureCollection fc = tinPolys.getFeatures(overlapsFilter);
-		
-		SimpleFeatureIterator it = fc.features();
-		try {
-			while(it.hasNext()) {
-				SimpleFeature f = it.next();
-				Geometry g = (Geometry)f.getDefaultGeometry();
-				Triangle t = new Triangle(g);
-				if (!t.hasEdge(new Edge(segment.getCoordinates()))) {
-					//triangle touches, but doesn't share the specified edge
-					continue;
-				}
-				if (!t.isComplete()) {
-					throw new IllegalStateException("Invalid triangle found.");
-				}
-				if (!result.contains(t)) {
-					result.add(t);
-				}
-			}
-		}
-		finally {
-			it.close();
-		}
-		
-		return result;
-	}
-	
 	/*
 	private Edge getSpine(Edge edgeOfT, Triangle t) {
 		Coordinate topCoord = t.getOtherCoord(edgeOfT.getA(), edgeOfT.getB());
@@ -1,12 +1,20 @@
 package ca.bc.gov.catchment.fitness;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.CoordinateSequence;
 import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.impl.CoordinateArraySequence;
 import org.opengis.feature.simple.SimpleFeature;
 
 /**
@@ -19,11 +27,19 @@ import org.opengis.feature.simple.SimpleFeature;
  * Larger values mean "more fit" than smaller values.  The meaning of sign and magnitude of the fitness values 
  * are not prescribed here (i.e. subclasses are free to define fitness such that sign and magnitude are 
  * somehow meaningful, or they may treat these as meaningless)
+ * The parallel methods call fitness(Geometry) from several threads at once, so subclasses which are used
+ * with them must be thread-safe.
  * @author Brock
  *
  */
 public abstract class SectionFitness {
 
+	/**
+	 * the number of features scored by each task of the parallel methods.  the sums of the tasks are added
+	 * in order, so the result doesn't depend on the number of threads.
+	 */
+	private static final int FEATURES_PER_TASK = 64;
+
 	public double fitnessSum(List<SimpleFeature> features) throws IOException {
 		double totalFitness = 0;
 		for(SimpleFeature f : features) {
@@ -51,6 +67,52 @@ public abstract class SectionFitness {
 		return totalFitness;
 	}
 	
+	/**
+	 * sums the fitnesses of the features, scoring groups of features in parallel with the given executor
+	 */
+	public double fitnessSum(List<SimpleFeature> features, ExecutorService executor) throws IOException {
+		if (features.size() <= FEATURES_PER_TASK) {
+			return fitnessSum(features);
+		}
+		List<Callable<Double>> tasks = new ArrayList<Callable<Double>>();
+		for (int start = 0; start < features.size(); start += FEATURES_PER_TASK) {
+			final List<SimpleFeature> group = features.subList(start, Math.min(start + FEATURES_PER_TASK, features.size()));
+			tasks.add(new Callable<Double>() {
+				public Double call() throws IOException {
+					return fitnessSum(group);
+				}
+			});
+		}
+		
+		double totalFitness = 0;
+		try {
+			for (Future<Double> future : executor.invokeAll(tasks)) {
+				totalFitness += future.get();
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while computing fitness", e);
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException)e.getCause();
+			}
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException)e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+		return totalFitness;
+	}
+	
+	/**
+	 * sums the fitnesses of the features, scoring groups of features in parallel with the given executor
+	 */
+	public double fitnessSum(SimpleFeatureCollection features, ExecutorService executor) throws IOException {
+		return fitnessSum(toList(features), executor);
+	}
+	
 	public double fitnessAvg(List<SimpleFeature> features) throws IOException {
 		double avg = fitnessSum(features) / features.size();
 		return avg;
@@ -61,19 +123,72 @@ public abstract class SectionFitness {
 		return avg;
 	}
 
-	public double fitness(Geometry geom) throws IOException {
+	public double fitnessAvg(List<SimpleFeature> features, ExecutorService executor) throws IOException {
+		double avg = fitnessSum(features, executor) / features.size();
+		return avg;
+	}
+	
+	public double fitnessAvg(SimpleFeatureCollection features, ExecutorService executor) throws IOException {
+		List<SimpleFeature> list = toList(features);
+		double avg = fitnessSum(list, executor) / list.size();
+		return avg;
+	}
+
+	/**
+	 * the fitness of a geometry is the fitness of its coordinate sequence.  subclasses customize fitness
+	 * by overriding fitness(CoordinateSequence) and fitness(Coordinate, Coordinate), so every caller
+	 * gets the same result.
+	 */
+	public final double fitness(Geometry geom) throws IOException {
+		if (geom instanceof LineString) {
+			//avoids copying the coordinates
+			return fitness(((LineString)geom).getCoordinateSequence());
+		}
+		return fitness(new CoordinateArraySequence(geom.getCoordinates()));
+	}
+	
+	/**
+	 * sums the fitnesses of the segments of the sequence.  the sequence's coordinates are passed to 
+	 * fitness(Coordinate, Coordinate) as they are, without being copied.
+	 * subclasses which score a whole section differently from the sum of its segments override this.
+	 */
+	protected double fitness(CoordinateSequence seq) throws IOException {
 		double totalFitness = 0;
-		Coordinate prev = null;
-		for(Coordinate coord : geom.getCoordinates()) {
-			if (prev != null) {
-				double fitness = fitness(prev, coord);
-				totalFitness += fitness;
-			}
+		int n = seq.size();
+		if (n < 2) {
+			return totalFitness;
+		}
+		Coordinate prev = seq.getCoordinate(0);
+		for (int i = 1; i < n; i++) {
+			Coordinate coord = seq.getCoordinate(i);
+			totalFitness += fitness(prev, coord);
 			prev = coord;
 		}
 		return totalFitness;
 	}
 	
+	/**
+	 * the 2D length of the sequence
+	 */
+	protected static double getLength(CoordinateSequence seq) {
+		double len = 0;
+		for (int i = 1; i < seq.size(); i++) {
+			len += seq.getCoordinate(i-1).distance(seq.getCoordinate(i));
+		}
+		return len;
+	}
+	
+	/**
+	 * the sum of the z values of the sequence
+	 */
+	protected static double getSumZ(CoordinateSequence seq) {
+		double sumZ = 0;
+		for (int i = 0; i < seq.size(); i++) {
+			sumZ += seq.getOrdinate(i, CoordinateSequence.Z);
+		}
+		return sumZ;
+	}
+	
 	public void describe(Geometry geom) throws IOException {
 		double totalFitness = 0;
 		Coordinate prev = null;
@@ -90,4 +205,18 @@ public abstract class SectionFitness {
 	
 	public abstract double fitness(Coordinate c1, Coordinate c2) throws IOException;
 	
+	private List<SimpleFeature> toList(SimpleFeatureCollection features) {
+		List<SimpleFeature> result = new ArrayList<SimpleFeature>(features.size());
+		SimpleFeatureIterator it = features.features();
+		try {
+			while(it.hasNext()) {
+				result.add(it.next());
+			}
+		}
+		finally {
+			it.close();
+		}
+		return result;
+	}
+	
 }
@@ -20,9 +20,9 @@ import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.filter.Filter;
 import org.opengis.filter.FilterFactory2;
 
-import ca.bc.gov.catchment.tin.Edge;
+import ca.bc.gov.catchment.tin.EdgeSlopeTable;
 import ca.bc.gov.catchment.tin.TinPolys;
-import ca.bc.gov.catchment.tin.Triangle;
+import ca.bc.gov.catchment.tin.TriangleAdjacencyIndex;
 import ca.bc.gov.catchment.utils.SpatialUtils;
 
 /**
@@ -32,12 +32,14 @@ import ca.bc.gov.catchment.utils.SpatialUtils;
 public class SondheimSectionFitness extends SectionFitness {
 
 	private TinPolys tinPolys;
+	private EdgeSlopeTable edgeSlopes;
 
 	private double r; //maximum elevation in data set
 	private double L; //maximum TIN edge length
 	
 	public SondheimSectionFitness(TinPolys tinPolys) throws IOException {
 		this.tinPolys = tinPolys;
+		this.edgeSlopes = tinPolys.getEdgeSlopeTable();
 		r = tinPolys.getMaxElevation();
 		L = tinPolys.getMaxEdgeLength();
 		
@@ -49,26 +51,20 @@ public class SondheimSectionFitness extends SectionFitness {
 			throw new IllegalArgumentException("unable to determine fitness for segment without elevation.  z1: "+coord1.getZ()+", z2: "+coord2.getZ());
 		}
 		
-		LineString segment = SpatialUtils.toLineString(coord1, coord2);
-		Edge baseEdge = new Edge(coord1, coord2);
-		
 		double c1 = 0;
 		double c2 = 1;
 		
 		double v = (coord1.getZ() + coord2.getZ()) / 2; //average elevation of the segment
 		
-		List<Triangle> adjacentTriangles = tinPolys.getTrianglesOnEdge(segment);
-		if (adjacentTriangles.size() != 2) {
+		int edgeId = edgeSlopes.getEdgeId(coord1, coord2);
+		if (edgeId == TriangleAdjacencyIndex.NONE || !edgeSlopes.hasTwoTriangles(edgeId)) {
 			return 0;
 		}
 		
-		Triangle t1 = adjacentTriangles.get(0);
-		Triangle t2 = adjacentTriangles.get(1);
-		
 		//alpha and beta are slopes of the triangles relative to the shared edge.
 		//values are positive if downward, negative if upward
-		double alpha = -t1.getSlopeRelativeToBaseEdge(baseEdge);
-		double beta = -t2.getSlopeRelativeToBaseEdge(baseEdge);
+		double alpha = -edgeSlopes.getSlope1(edgeId);
+		double beta = -edgeSlopes.getSlope2(edgeId);
 		
 		//ensure -0 is converted to 0
 		if (beta == 0) {
@@ -79,7 +75,7 @@ public class SondheimSectionFitness extends SectionFitness {
 		}
 		
 		//radio of the segment's length to the length of the longest segment in the TIN
-		double d = segment.getLength() / L; //d is 0-1
+		double d = coord1.distance(coord2) / L; //d is 0-1
 		
 		double minAngleRadians = Math.min(alpha, beta)*Math.PI/180;
 		double numerator = (c1+Math.log(r/v));
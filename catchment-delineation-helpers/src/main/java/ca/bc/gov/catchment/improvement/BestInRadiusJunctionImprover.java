@@ -17,6 +17,7 @@ import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.filter.identity.FeatureId;
 
 import ca.bc.gov.catchment.CatchmentLines;
+import ca.bc.gov.catchment.fitness.CatchmentNeighbourhood;
 import ca.bc.gov.catchment.fitness.CatchmentValidity;
 import ca.bc.gov.catchment.fitness.JunctionFitness;
 import ca.bc.gov.catchment.fitness.SectionFitness;
@@ -54,7 +55,7 @@ public class BestInRadiusJunctionImprover extends JunctionImprover {
 		this.catchmentValidityChecker = new CatchmentValidity(waterFeatures);
 		this.router = new WaterAwareLineStringRouter(tinEdges, new Water(waterFeatures));
 		this.radius = radius;
-		this.improvementCoverage = new ImprovementCoverage(tinEdges.getPointCloud());
+		this.improvementCoverage = new ImprovementCoverage(tinEdges.getVertexCloud());
 	}
 	
 	@Override
@@ -86,6 +87,10 @@ public class BestInRadiusJunctionImprover extends JunctionImprover {
 		int numFreedomValues = (MAX_FREEDOM - MIN_FREEDOM) / FREEDOM_STEP;
 		System.out.println(" testing "+coordsToTest.size()+ " neighbours for "+numFreedomValues+" freedom values ("+(coordsToTest.size()*numFreedomValues)+" total tests)");
 		
+		//index of the catchment sections near the junction, for checking the validity of neighbours
+		CatchmentNeighbourhood neighbourhood = catchmentValidityChecker.getNeighbourhood(
+				catchmentLines, getImprovementArea(originalJunction, radius));
+		
 		double bestFit = originalFit;
 		for (int freedom = MIN_FREEDOM; freedom < MAX_FREEDOM; freedom+=FREEDOM_STEP) {
 			for (Coordinate neighbourCoord : coordsToTest) {			
@@ -114,7 +119,7 @@ public class BestInRadiusJunctionImprover extends JunctionImprover {
 				}
 				
 				boolean isValidWrtCatchments = 
-						catchmentValidityChecker.areSectionsValidWrtCatchments(newSections, catchmentLines.getUpdatedFeatures());
+						catchmentValidityChecker.areSectionsValidWrtCatchments(newSections, neighbourhood);
 				if (!isValidWrtCatchments) {
 					System.out.println("  neighbour rejected.  invalid w.r.t catchments");
 					continue;
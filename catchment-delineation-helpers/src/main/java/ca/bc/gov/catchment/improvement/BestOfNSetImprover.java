@@ -1,24 +1,24 @@
 package ca.bc.gov.catchment.improvement;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Logger;
 
-import org.geotools.data.collection.SpatialIndexFeatureCollection;
-import org.geotools.data.collection.SpatialIndexFeatureSource;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
-import org.geotools.data.simple.SimpleFeatureSource;
-import org.geotools.factory.CommonFactoryFinder;
-import org.geotools.feature.SchemaException;
-import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.locationtech.jts.geom.Coordinate;
 import org.opengis.feature.simple.SimpleFeature;
 
 import ca.bc.gov.catchment.CatchmentLines;
-import ca.bc.gov.catchment.fitness.CatchmentValidity;
 import ca.bc.gov.catchment.fitness.SectionFitness;
 import ca.bc.gov.catchment.water.Water;
 
@@ -42,59 +42,119 @@ public class BestOfNSetImprover extends SetImprover {
 	private CatchmentLines bestResult;
 	private CatchmentLines randomResult;
 	private double bestGlobalFitness;
+	private int numThreads;
+	private SplittableRandom random;
+	private volatile ExecutorService iterationPool;
 	
 	public BestOfNSetImprover(
 			Water waterAnalyzer,
 			SectionImprover sectionImprover,
 			JunctionImprover junctionImprover,
 			int n) throws IOException {
+		this(waterAnalyzer, sectionImprover, junctionImprover, n, 1);
+	}
+	
+	/**
+	 * @param waterAnalyzer
+	 * @param sectionImprover must be safe to use from multiple threads if numThreads > 1
+	 * @param junctionImprover must be safe to use from multiple threads if numThreads > 1
+	 * @param n the number of candidate sets to generate
+	 * @param numThreads the number of candidate sets to generate at the same time
+	 * @throws IOException
+	 */
+	public BestOfNSetImprover(
+			Water waterAnalyzer,
+			SectionImprover sectionImprover,
+			JunctionImprover junctionImprover,
+			int n,
+			int numThreads) throws IOException {
+		if (numThreads < 1) {
+			throw new IllegalArgumentException("numThreads must be >= 1");
+		}
 		this.waterAnalyzer = waterAnalyzer;
 		this.sectionImprover = sectionImprover;
 		this.junctionImprover = junctionImprover;
 		this.globalFitness = sectionImprover.getSectionFitness();
 		this.n = n;
+		this.numThreads = numThreads;
+		this.random = new SplittableRandom();
 		reset();
 	}
 	
 	@Override
-	protected CatchmentLines improveImpl(CatchmentLines catchmentLines) throws IOException {
+	protected CatchmentLines improveImpl(final CatchmentLines catchmentLines) throws IOException {
 		reset();
 		double initialFitness = checkGlobalFitness(catchmentLines.getUpdatedFeatures());
 		this.bestGlobalFitness = initialFitness;
-		SimpleFeatureCollection bestSet = catchmentLines.getUpdatedFeatures();
-		SimpleFeatureCollection randomSet = bestSet;
+		CatchmentLines bestSet = catchmentLines;
+		CatchmentLines randomSet = bestSet;
 		
 		LOG.info("best of "+n+", initial set fitness: "+initialFitness);
 		
-		long r = (long)Math.floor(Math.random() * n);
+		int r;
+		List<SplittableRandom> setRandoms = new ArrayList<SplittableRandom>(n);
+		synchronized(this) {
+			r = n > 0 ? random.nextInt(n) : 0;
+			//split in set order, so each set's random numbers don't depend on the order the sets run in
+			for (int i = 0; i < n; i++) {
+				setRandoms.add(random.split());
+			}
+		}
 		
-		Date overallStart = new Date();
+		//each candidate set is generated from its own copy of the input, with its own no-improvement 
+		//counts and random number generator, so the sets can be generated in parallel
+		List<Callable<Iteration>> tasks = new ArrayList<Callable<Iteration>>();
 		for (int i = 0; i < n; i++) {
-			Date iterationStart = new Date();			
-			LOG.info("set "+(i+1)+" of "+n);
-			SimpleFeatureCollection iterationResult = improveIteration(catchmentLines);
-			double iterationGlobalFitness = checkGlobalFitness(iterationResult);
-			Date iterationEnd = new Date();
-			long iterationTime = (iterationEnd.getTime() - iterationStart.getTime())/1000;
-			LOG.info(" set fitness: "+iterationGlobalFitness +", run time: "+iterationTime+"s");
-			if (iterationGlobalFitness > bestGlobalFitness) {
-				bestSet = iterationResult;
-				bestGlobalFitness = iterationGlobalFitness;
+			final int setNum = i + 1;
+			final SplittableRandom setRandom = setRandoms.get(i);
+			tasks.add(new Callable<Iteration>() {
+				public Iteration call() throws IOException {
+					Date iterationStart = new Date();
+					LOG.info("set "+setNum+" of "+n);
+					CatchmentLines iterationResult = improveIteration(catchmentLines, setRandom);
+					double iterationGlobalFitness = checkGlobalFitness(iterationResult.getUpdatedFeatures());
+					Date iterationEnd = new Date();
+					long iterationTime = (iterationEnd.getTime() - iterationStart.getTime())/1000;
+					LOG.info(" set "+setNum+" fitness: "+iterationGlobalFitness +", run time: "+iterationTime+"s");
+					return new Iteration(iterationResult, iterationGlobalFitness);
+				}
+			});
+		}
+		
+		Date overallStart = new Date();
+		List<Iteration> iterations = runIterations(tasks);
+		
+		//choose in set order, so the choice doesn't depend on which sets finished first
+		for (int i = 0; i < iterations.size(); i++) {
+			Iteration iteration = iterations.get(i);
+			if (iteration.fitness > bestGlobalFitness) {
+				bestSet = iteration.catchmentLines;
+				bestGlobalFitness = iteration.fitness;
 			}
 			if (i == r) {
-				randomSet = iterationResult;
+				randomSet = iteration.catchmentLines;
 			}
 		}
 		Date overallEnd = new Date();
 		long overallTime = (overallEnd.getTime() - overallStart.getTime())/1000;
 		LOG.info("best set fitness: "+bestGlobalFitness +", run time: "+overallTime+"s");
 		
-		this.bestResult = toCatchmentLines(bestSet);
-		this.randomResult = toCatchmentLines(randomSet);
+		//copies are cheap, and ensure the results are independent of the input
+		this.bestResult = bestSet.copy();
+		this.randomResult = randomSet.copy();
 		
 		return this.bestResult;
 	}
 	
+	/**
+	 * Sets the seed of the random number generator which chooses the random set, and from which each 
+	 * set's generator is split, so runs can be repeated (with any number of threads).
+	 * @param seed
+	 */
+	public synchronized void setRandomSeed(long seed) {
+		this.random = new SplittableRandom(seed);
+	}
+	
 	public CatchmentLines getRandomSet() {
 		return this.randomResult;
 	}
@@ -103,131 +163,188 @@ public class BestOfNSetImprover extends SetImprover {
 		return this.bestResult;
 	}
 	
-	private SimpleFeatureCollection improveIteration(CatchmentLines catchmentLinesOriginal) throws IOException {
-		resetShortCircuitStatistics();
+	/**
+	 * runs the tasks, in parallel if more than one thread is configured
+	 * @return the results, in the same order as the tasks
+	 */
+	private List<Iteration> runIterations(List<Callable<Iteration>> tasks) throws IOException {
+		List<Iteration> results = new ArrayList<Iteration>(tasks.size());
+		if (numThreads == 1 || tasks.size() <= 1) {
+			for (Callable<Iteration> task : tasks) {
+				try {
+					results.add(task.call());
+				}
+				catch (IOException e) {
+					throw e;
+				}
+				catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+			}
+			return results;
+		}
+		
+		try {
+			for (Future<Iteration> future : getIterationPool().invokeAll(tasks)) {
+				results.add(future.get());
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while generating sets", e);
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException)e.getCause();
+			}
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException)e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+		return results;
+	}
+	
+	/**
+	 * The pool which generates candidate sets.  Created on first use.  Its threads are daemon threads, 
+	 * so the pool doesn't need to be shut down.
+	 */
+	private ExecutorService getIterationPool() {
+		ExecutorService result = iterationPool;
+		if (result == null) {
+			synchronized(this) {
+				result = iterationPool;
+				if (result == null) {
+					result = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+						public Thread newThread(Runnable r) {
+							Thread t = new Thread(r, "best-of-n-set");
+							t.setDaemon(true);
+							return t;
+						}
+					});
+					iterationPool = result;
+				}
+			}
+		}
+		return result;
+	}
+	
+	private CatchmentLines improveIteration(CatchmentLines catchmentLinesOriginal, SplittableRandom random) throws IOException {
+		NoImprovementCounts noImprovementCounts = new NoImprovementCounts();
 		Date start = new Date();
-		SimpleFeatureCollection outFeatureCollection = null;
 		
 		CatchmentLines catchmentLines = catchmentLinesOriginal.copy();
 		
-		try {
-
+		LOG.fine("improving junctions...");
+		for(int iterationNum = 1; iterationNum <= MAX_JUNCTION_ITERATIONS; iterationNum++) {
 			
-			LOG.fine("improving junctions...");
-			for(int iterationNum = 1; iterationNum <= MAX_JUNCTION_ITERATIONS; iterationNum++) {
-				
-				//double roundStartGlobalFitness = globalFitness.fitnessAvg(catchmentLines.getUpdatedFeatures());
-				
-				ImprovementMetrics metrics = improveJunctions(catchmentLines, NUM_TESTS_PER_JUNCTION);
-				
-				/*
-				String outFilename1 = outputGeopackageFilename.replace(".gpkg", "-j"+iterationNum+".gpkg");
-				SimpleFeatureCollection outFeatureCollection1 = catchmentLines.getUpdatedFeatures();
-				outFeatureCollection1 = SpatialUtils.renameFeatureType(outFeatureCollection1, outTable);
-				SaveUtils.saveToGeoPackage(outFilename1, outFeatureCollection1, true);
-				*/
-				
-				//double roundEndGlobalFitness = globalFitness.fitnessAvg(catchmentLines.getUpdatedFeatures());
-				//double percentImprovementThisRound = (roundEndGlobalFitness - roundStartGlobalFitness)/roundEndGlobalFitness * 100;
-				/*
-				System.out.println("junction round "+iterationNum+" complete");
-				System.out.println(" improvements: ");
-				System.out.println("  - # requested: "+metrics.getNumImprovementRequests());
-				System.out.println("  - # succeeded: "+metrics.getNumImproved());
-				System.out.println(" alternatives tested: ");
-				System.out.println("  - # total: "+metrics.getNumAlternativesTested());
-				System.out.println("  - # valid: "+metrics.getNumValidAlternativesTested());
-				System.out.println(" runtime: ");
-				System.out.println("  - total for all improvement requests: "+metrics.getRuntimeMs()+ " ms");
-				System.out.println("  - average per improvement request: "+metrics.getAvgRuntimeMsPerTest()+ " ms");
-				System.out.println("  - average per improvement request alternative: "+metrics.getAvgRuntimeMsPerTest()+ " ms");				
-				System.out.println(" global fitness:");
-				System.out.println("  - start: "+roundStartGlobalFitness);
-				System.out.println("  - end: "+roundEndGlobalFitness);
-				System.out.println("  - improved by: "+percentImprovementThisRound+"%");
-				*/
-				
-				if(metrics.getNumImprovementRequests() == 0) {
-					LOG.fine("Junction improvements no improvements were requested in the previous round");
-					break;
-				}
-				/*
-				if (percentImprovementThisRound < MIN_JUNCTION_IMPROVEMENT_PERCENT) {
-					System.out.println("Junction improvements halted because latest improvement < "+MIN_JUNCTION_IMPROVEMENT_PERCENT);
-					break;
-				}
-				*/
-			}
-				
-			LOG.fine("improving sections...");
+			//double roundStartGlobalFitness = globalFitness.fitnessAvg(catchmentLines.getUpdatedFeatures());
 			
-			for(int iterationNum = 1; iterationNum <= MAX_SECTION_ITERATIONS; iterationNum++) {
-				int numSteps = MAX_TESTS_PER_SECTION;
-				if (iterationNum < 5) {
-					//ramp up number of tests for the first 5 rounds
-					numSteps = Math.min(MIN_TESTS_PER_SECTION * iterationNum, MAX_TESTS_PER_SECTION);
-				}
-				LOG.fine("round "+iterationNum+". ("+ numSteps +" tests per section)");
-				
-				//double roundStartGlobalFitness = globalFitness.fitnessAvg(catchmentLines.getUpdatedFeatures());
-				
-				ImprovementMetrics metrics = improveSections(catchmentLines, numSteps);
-				
-				//double roundEndGlobalFitness = globalFitness.fitnessAvg(catchmentLines.getUpdatedFeatures());
-				//double percentImprovementThisRound = (roundEndGlobalFitness - roundStartGlobalFitness)/roundEndGlobalFitness * 100;			
-				/*
-				System.out.println("section round "+iterationNum+" complete");
-				System.out.println(" round settings: ");
-				System.out.println("  - # steps per section: "+numSteps);
-				System.out.println(" improvements: ");
-				System.out.println("  - # requested: "+metrics.getNumImprovementRequests());
-				System.out.println("  - # succeeded: "+metrics.getNumImproved());
-				System.out.println(" alternatives tested: ");
-				System.out.println("  - # total: "+metrics.getNumAlternativesTested());
-				System.out.println("  - # valid: "+metrics.getNumValidAlternativesTested());				
-				System.out.println(" runtime: ");
-				System.out.println("  - total for all improvement requests: "+metrics.getRuntimeMs()+ " ms");
-				System.out.println("  - average per improvement request: "+metrics.getAvgRuntimeMsPerRequest()+ " ms");
-				System.out.println("  - average per improvement request alternative: "+metrics.getAvgRuntimeMsPerTest()+ " ms");				
-				System.out.println(" global fitness:");
-				System.out.println("  - start: "+roundStartGlobalFitness);
-				System.out.println("  - end: "+roundEndGlobalFitness);
-				System.out.println("  - improved by: "+percentImprovementThisRound+"%");
-				*/
-				
-				if(metrics.getNumImprovementRequests() == 0) {
-					LOG.fine("Section improvements - no improvements were requested in the previous round");
-					break;
-				}
-				/*
-				if (percentImprovementThisRound < MIN_SECTION_IMPROVEMENT_PERCENT) {
-					System.out.println("section improvements halted because latest improvement < "+MIN_SECTION_IMPROVEMENT_PERCENT);
-					break;
-				}
-				*/
+			ImprovementMetrics metrics = improveJunctions(catchmentLines, NUM_TESTS_PER_JUNCTION, noImprovementCounts, random);
+			
+			/*
+			String outFilename1 = outputGeopackageFilename.replace(".gpkg", "-j"+iterationNum+".gpkg");
+			SimpleFeatureCollection outFeatureCollection1 = catchmentLines.getUpdatedFeatures();
+			outFeatureCollection1 = SpatialUtils.renameFeatureType(outFeatureCollection1, outTable);
+			SaveUtils.saveToGeoPackage(outFilename1, outFeatureCollection1, true);
+			*/
+			
+			//double roundEndGlobalFitness = globalFitness.fitnessAvg(catchmentLines.getUpdatedFeatures());
+			//double percentImprovementThisRound = (roundEndGlobalFitness - roundStartGlobalFitness)/roundEndGlobalFitness * 100;
+			/*
+			System.out.println("junction round "+iterationNum+" complete");
+			System.out.println(" improvements: ");
+			System.out.println("  - # requested: "+metrics.getNumImprovementRequests());
+			System.out.println("  - # succeeded: "+metrics.getNumImproved());
+			System.out.println(" alternatives tested: ");
+			System.out.println("  - # total: "+metrics.getNumAlternativesTested());
+			System.out.println("  - # valid: "+metrics.getNumValidAlternativesTested());
+			System.out.println(" runtime: ");
+			System.out.println("  - total for all improvement requests: "+metrics.getRuntimeMs()+ " ms");
+			System.out.println("  - average per improvement request: "+metrics.getAvgRuntimeMsPerTest()+ " ms");
+			System.out.println("  - average per improvement request alternative: "+metrics.getAvgRuntimeMsPerTest()+ " ms");				
+			System.out.println(" global fitness:");
+			System.out.println("  - start: "+roundStartGlobalFitness);
+			System.out.println("  - end: "+roundEndGlobalFitness);
+			System.out.println("  - improved by: "+percentImprovementThisRound+"%");
+			*/
+			
+			if(metrics.getNumImprovementRequests() == 0) {
+				LOG.fine("Junction improvements no improvements were requested in the previous round");
+				break;
+			}
+			/*
+			if (percentImprovementThisRound < MIN_JUNCTION_IMPROVEMENT_PERCENT) {
+				System.out.println("Junction improvements halted because latest improvement < "+MIN_JUNCTION_IMPROVEMENT_PERCENT);
+				break;
 			}
+			*/
+		}
 			
-			Date end = new Date();
+		LOG.fine("improving sections...");
+		
+		for(int iterationNum = 1; iterationNum <= MAX_SECTION_ITERATIONS; iterationNum++) {
+			int numSteps = MAX_TESTS_PER_SECTION;
+			if (iterationNum < 5) {
+				//ramp up number of tests for the first 5 rounds
+				numSteps = Math.min(MIN_TESTS_PER_SECTION * iterationNum, MAX_TESTS_PER_SECTION);
+			}
+			LOG.fine("round "+iterationNum+". ("+ numSteps +" tests per section)");
 			
-			//saving improved catchments
-			//-----------------------------------------------------------------
-			outFeatureCollection = catchmentLines.getUpdatedFeatures();
-			//outFeatureCollection = SpatialUtils.renameFeatureType(outFeatureCollection, catchmentLines.getSchema().getTypeName());
+			//double roundStartGlobalFitness = globalFitness.fitnessAvg(catchmentLines.getUpdatedFeatures());
 			
-			//System.out.println("initial avg catchment elevation:"+initialFitness);
-			double finalFitness = globalFitness.fitnessAvg(catchmentLines.getUpdatedFeatures());
-			//System.out.println("final avg catchment fitness:"+finalFitness);
+			ImprovementMetrics metrics = improveSections(catchmentLines, numSteps, noImprovementCounts, random);
 			
-			double runtimeMinutes = (end.getTime() - start.getTime())/(1000.0*60);
-			LOG.fine("run time (minutes): "+runtimeMinutes); //minutes
+			//double roundEndGlobalFitness = globalFitness.fitnessAvg(catchmentLines.getUpdatedFeatures());
+			//double percentImprovementThisRound = (roundEndGlobalFitness - roundStartGlobalFitness)/roundEndGlobalFitness * 100;			
+			/*
+			System.out.println("section round "+iterationNum+" complete");
+			System.out.println(" round settings: ");
+			System.out.println("  - # steps per section: "+numSteps);
+			System.out.println(" improvements: ");
+			System.out.println("  - # requested: "+metrics.getNumImprovementRequests());
+			System.out.println("  - # succeeded: "+metrics.getNumImproved());
+			System.out.println(" alternatives tested: ");
+			System.out.println("  - # total: "+metrics.getNumAlternativesTested());
+			System.out.println("  - # valid: "+metrics.getNumValidAlternativesTested());				
+			System.out.println(" runtime: ");
+			System.out.println("  - total for all improvement requests: "+metrics.getRuntimeMs()+ " ms");
+			System.out.println("  - average per improvement request: "+metrics.getAvgRuntimeMsPerRequest()+ " ms");
+			System.out.println("  - average per improvement request alternative: "+metrics.getAvgRuntimeMsPerTest()+ " ms");				
+			System.out.println(" global fitness:");
+			System.out.println("  - start: "+roundStartGlobalFitness);
+			System.out.println("  - end: "+roundEndGlobalFitness);
+			System.out.println("  - improved by: "+percentImprovementThisRound+"%");
+			*/
 			
-		} catch(IOException e) {
-			e.printStackTrace();
-			System.exit(1);
+			if(metrics.getNumImprovementRequests() == 0) {
+				LOG.fine("Section improvements - no improvements were requested in the previous round");
+				break;
+			}
+			/*
+			if (percentImprovementThisRound < MIN_SECTION_IMPROVEMENT_PERCENT) {
+				System.out.println("section improvements halted because latest improvement < "+MIN_SECTION_IMPROVEMENT_PERCENT);
+				break;
+			}
+			*/
 		}
 		
+		Date end = new Date();
+		
+		//saving improved catchments
+		//-----------------------------------------------------------------
+		//outFeatureCollection = SpatialUtils.renameFeatureType(outFeatureCollection, catchmentLines.getSchema().getTypeName());
+		
+		//System.out.println("initial avg catchment elevation:"+initialFitness);
+		double finalFitness = globalFitness.fitnessAvg(catchmentLines.getUpdatedFeatures());
+		//System.out.println("final avg catchment fitness:"+finalFitness);
+		
+		double runtimeMinutes = (end.getTime() - start.getTime())/(1000.0*60);
+		LOG.fine("run time (minutes): "+runtimeMinutes); //minutes
+		
+		
 		LOG.fine("All done");
-		return outFeatureCollection;
+		return catchmentLines;
 		
 	}
 	
@@ -237,7 +354,7 @@ public class BestOfNSetImprover extends SetImprover {
 		bestGlobalFitness = Double.NaN;
 	}
 
-	private ImprovementMetrics improveJunctions(CatchmentLines catchmentLines, int numSteps) throws IOException {
+	private ImprovementMetrics improveJunctions(CatchmentLines catchmentLines, int numSteps, NoImprovementCounts noImprovementCounts, SplittableRandom random) throws IOException {
 		ImprovementMetrics metricsTotal = new ImprovementMetrics();
 			
 		List<Coordinate> junctions = catchmentLines.getJunctions(waterAnalyzer);
@@ -249,13 +366,13 @@ public class BestOfNSetImprover extends SetImprover {
 			Junction junction = new Junction(junctionCoord, touchingSections);
 			
 			LOG.finer("---");
-			if (getNoImprovementCount(junction) >= MIN_NO_IMPROVEMENT_COUNT_TO_SKIP_JUNCTION) {
-				//System.out.println("skipping. this junction has "+getNoImprovementCount(junction)+" prior no-improvement events");
+			if (noImprovementCounts.get(junction) >= MIN_NO_IMPROVEMENT_COUNT_TO_SKIP_JUNCTION) {
+				//System.out.println("skipping. this junction has "+noImprovementCounts.get(junction)+" prior no-improvement events");
 				continue;
 			}
 			JunctionModification modification = null;
 			try {
-				modification = junctionImprover.improve(junction, catchmentLines);
+				modification = junctionImprover.improve(junction, catchmentLines, random);
 				metricsTotal.merge(modification.getImprovementMetrics());
 			}
 			catch(Exception e) {
@@ -263,21 +380,21 @@ public class BestOfNSetImprover extends SetImprover {
 			}
 			 
 			if (modification != null && modification.isModified()) {
-				resetNoImprovementCount(junction);
+				noImprovementCounts.reset(junction);
 				LOG.finer("  moved junction "+modification.getOriginalJunction().getCoordinate()+" to "+modification.getModifiedJunction().getCoordinate());
 				for (SimpleFeature touchingSection : modification.getModifiedJunction().getTouchingSections()) {
 					//System.out.println("  updated section with fid="+touchingSection.getIdentifier());
 					catchmentLines.addOrUpdate(touchingSection);
 				}
 			} else {
-				incrementNoImprovementCount(junction);
+				noImprovementCounts.increment(junction);
 			}
 		}
 		
 		return metricsTotal;
 	}
 	
-	private ImprovementMetrics improveSections(CatchmentLines catchmentLines, int numSteps) throws IOException {
+	private ImprovementMetrics improveSections(CatchmentLines catchmentLines, int numSteps, NoImprovementCounts noImprovementCounts, SplittableRandom random) throws IOException {
 		
 		ImprovementMetrics metricsTotal = new ImprovementMetrics();
 		
@@ -289,14 +406,14 @@ public class BestOfNSetImprover extends SetImprover {
 		while(sectionIt.hasNext()) {
 			LOG.finer("---");
 			SimpleFeature section = sectionIt.next();	
-			if (getNoImprovementCount(section) >= MIN_NO_IMPROVEMENT_COUNT_TO_SKIP_SECTION) {
+			if (noImprovementCounts.get(section) >= MIN_NO_IMPROVEMENT_COUNT_TO_SKIP_SECTION) {
 				//System.out.println("skipping.  assume this section cannot be improved further.");
 				continue;
 			}
 			section = catchmentLines.getLatest(section);
 			SectionModification modification = null;
 			try {
-				modification = sectionImprover.improve(section, catchmentLines);
+				modification = sectionImprover.improve(section, catchmentLines, random);
 				metricsTotal.merge(modification.getImprovementMetrics());
 			} 
 			catch (Exception e) {
@@ -306,7 +423,7 @@ public class BestOfNSetImprover extends SetImprover {
 			
 			if (modification != null && modification.isModified()) {
 				catchmentLines.addOrUpdate(modification.getModifiedSection());
-				resetNoImprovementCount(section);
+				noImprovementCounts.reset(section);
 				for (SimpleFeature touchingSection : modification.getModifiedTouchingSections()) {
 					//System.out.println(" updated section with fid="+touchingSection.getIdentifier());
 					catchmentLines.addOrUpdate(touchingSection);
@@ -314,7 +431,7 @@ public class BestOfNSetImprover extends SetImprover {
 				}	
 			}
 			else {
-				incrementNoImprovementCount(section);
+				noImprovementCounts.increment(section);
 			}
 			
 		}
@@ -323,6 +440,20 @@ public class BestOfNSetImprover extends SetImprover {
 		return metricsTotal;
 	}
 
+	/**
+	 * A generated candidate set and its fitness
+	 */
+	private static class Iteration {
+		
+		private CatchmentLines catchmentLines;
+		private double fitness;
+		
+		Iteration(CatchmentLines catchmentLines, double fitness) {
+			this.catchmentLines = catchmentLines;
+			this.fitness = fitness;
+		}
+	}
+
 	@Override
 	public SectionFitness getGlobalFitness() {
 		return sectionImprover.getSectionFitness();
@@ -3,6 +3,7 @@ package ca.bc.gov.catchment.improvement;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.SplittableRandom;
 import java.util.logging.Logger;
 
 import ca.bc.gov.catchment.CatchmentLines;
@@ -26,6 +27,20 @@ public class EvolutionSetImprover extends SetImprover {
 			int childrenPerGeneration,
 			int maxGenerations, 
 			boolean stopEarlyIfNoImprovement) throws IOException {
+		this(waterAnalyzer, sectionImprover, junctionImprover, childrenPerGeneration, maxGenerations, stopEarlyIfNoImprovement, 1);
+	}
+	
+	/**
+	 * @param numThreads the number of children of each parent to generate at the same time
+	 */
+	public EvolutionSetImprover(
+			Water waterAnalyzer,
+			SectionImprover sectionImprover,
+			JunctionImprover junctionImprover,
+			int childrenPerGeneration,
+			int maxGenerations, 
+			boolean stopEarlyIfNoImprovement,
+			int numThreads) throws IOException {
 		
 		if (childrenPerGeneration < 2) {
 			throw new IllegalArgumentException("must be at least 2 children per generation");
@@ -36,17 +51,28 @@ public class EvolutionSetImprover extends SetImprover {
 		
 		this.globalFitness = sectionImprover.getSectionFitness();
 		int halfChildren = Math.round(childrenPerGeneration/2);
-		this.childGenerator1 = new BestOfNSetImprover(waterAnalyzer, sectionImprover, junctionImprover, halfChildren);
-		this.childGenerator2 = new BestOfNSetImprover(waterAnalyzer, sectionImprover, junctionImprover, halfChildren);
+		this.childGenerator1 = new BestOfNSetImprover(waterAnalyzer, sectionImprover, junctionImprover, halfChildren, numThreads);
+		this.childGenerator2 = new BestOfNSetImprover(waterAnalyzer, sectionImprover, junctionImprover, halfChildren, numThreads);
 		this.maxGenerations = maxGenerations;
 		this.stopEarlyIfNoImprovement = stopEarlyIfNoImprovement;
 	}
 	
+	/**
+	 * Sets the seeds of the random number generators used to generate children, so runs can be repeated 
+	 * (with any number of threads).
+	 * @param seed
+	 */
+	public void setRandomSeed(long seed) {
+		SplittableRandom seeds = new SplittableRandom(seed);
+		childGenerator1.setRandomSeed(seeds.nextLong());
+		childGenerator2.setRandomSeed(seeds.nextLong());
+	}
+	
 	@Override
 	protected CatchmentLines improveImpl(CatchmentLines initialCatchmentLines) throws IOException {
 		CatchmentLines bestOfGeneration = initialCatchmentLines;
 		CatchmentLines otherFromGeneration = bestOfGeneration;
-		double initialFitness = getGlobalFitness().fitnessAvg(initialCatchmentLines.getUpdatedFeatures());
+		double initialFitness = checkGlobalFitness(initialCatchmentLines.getUpdatedFeatures());
 		double bestFitnessMostRecentGeneration = initialFitness;
 		
 		for(int i = 0; i < maxGenerations; i++) {
@@ -64,11 +90,11 @@ public class EvolutionSetImprover extends SetImprover {
 			bestOfGeneration = nextParents.get(0);
 			otherFromGeneration = nextParents.get(1);
 			
-			bestFitnessMostRecentGeneration = getGlobalFitness().fitnessAvg(bestOfGeneration.getUpdatedFeatures());
+			bestFitnessMostRecentGeneration = checkGlobalFitness(bestOfGeneration.getUpdatedFeatures());
 						
 		}
 		LOG.info("best set fitness from generation: "+bestFitnessMostRecentGeneration);
-		CatchmentLines bestResult = toCatchmentLines(bestOfGeneration.getUpdatedFeatures());
+		CatchmentLines bestResult = bestOfGeneration.copy();
 		return bestResult;
 	}
 	
@@ -83,8 +109,8 @@ public class EvolutionSetImprover extends SetImprover {
 	private List<CatchmentLines> spawnChildrenAndChooseNextParents(CatchmentLines parent1, CatchmentLines parent2) throws IOException {
 		List<CatchmentLines> nextParents = new ArrayList<CatchmentLines>();
 		
-		double parent1Fitness = getGlobalFitness().fitnessAvg(parent1.getUpdatedFeatures());
-		double parent2Fitness = getGlobalFitness().fitnessAvg(parent2.getUpdatedFeatures());
+		double parent1Fitness = checkGlobalFitness(parent1.getUpdatedFeatures());
+		double parent2Fitness = checkGlobalFitness(parent2.getUpdatedFeatures());
 		
 		//spawn half children from parent1
 		childGenerator1.improve(parent1);
@@ -94,11 +120,11 @@ public class EvolutionSetImprover extends SetImprover {
 		
 		CatchmentLines bestChildFromParent1 = childGenerator1.getBestSet();
 		CatchmentLines randomChildFromParent1 = childGenerator1.getRandomSet();
-		double fitnessBest1 = getGlobalFitness().fitnessAvg(bestChildFromParent1.getUpdatedFeatures());
+		double fitnessBest1 = checkGlobalFitness(bestChildFromParent1.getUpdatedFeatures());
 		
 		CatchmentLines bestChildFromParent2 = childGenerator2.getBestSet();
 		CatchmentLines randomChildFromParent2 = childGenerator2.getRandomSet();
-		double fitnessBest2 = getGlobalFitness().fitnessAvg(bestChildFromParent2.getUpdatedFeatures());
+		double fitnessBest2 = checkGlobalFitness(bestChildFromParent2.getUpdatedFeatures());
 		
 		if (fitnessBest1 <= parent1Fitness && fitnessBest2 <= parent2Fitness) {
 			return null;
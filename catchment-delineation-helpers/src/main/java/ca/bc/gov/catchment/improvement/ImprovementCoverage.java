@@ -1,7 +1,10 @@
 package ca.bc.gov.catchment.improvement;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
@@ -26,20 +29,52 @@ import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
+import ca.bc.gov.catchment.tin.VertexCloud;
+import ca.bc.gov.catchment.tin.VertexTable;
 import ca.bc.gov.catchment.utils.SpatialUtils;
 
+/**
+ * Counts how many times each point of a point cloud was tested (and found valid) during improvement.
+ * When created from a VertexCloud, the counts for the cloud's vertices are kept in arrays indexed by 
+ * vertex id (the vertices themselves are shared with the cloud, not copied).  Counts for coordinates 
+ * which aren't in the cloud are kept in a map.
+ */
 public class ImprovementCoverage {
 
+	private static final int[] NO_COUNTS = new int[0];
+	
 	private Map<Coordinate, ImprovementCoverageItem> coordinateMap; 
 	private int pointCloudSrid;
+	
+	//per-vertex counts.  only used if created from a VertexCloud
+	private VertexCloud vertexCloud;
+	private int[] vertexCountTotal;
+	private int[] vertexCountValid;
+	private Map<Integer, List<String>> vertexFids;
 		
 	public ImprovementCoverage(SimpleFeatureSource pointCloud) throws IOException {
 		coordinateMap = new TreeMap<Coordinate, ImprovementCoverageItem>();
+		vertexCountTotal = NO_COUNTS;
+		vertexCountValid = NO_COUNTS;
+		vertexFids = new HashMap<Integer, List<String>>();
 		if(pointCloud != null) {
 			initializeFromPointCloud(pointCloud);
 		}
 	}
 	
+	public ImprovementCoverage(VertexCloud vertexCloud) {
+		coordinateMap = new TreeMap<Coordinate, ImprovementCoverageItem>();
+		vertexCountTotal = NO_COUNTS;
+		vertexCountValid = NO_COUNTS;
+		vertexFids = new HashMap<Integer, List<String>>();
+		if(vertexCloud != null) {
+			this.vertexCloud = vertexCloud;
+			this.pointCloudSrid = vertexCloud.getSrid();
+			this.vertexCountTotal = new int[vertexCloud.getNumVertices()];
+			this.vertexCountValid = new int[vertexCloud.getNumVertices()];
+		}
+	}
+	
 	/**
 	 * Increments the "valid" counter for all coordinates in the specified LineString
 	 * @param route
@@ -58,14 +93,20 @@ public class ImprovementCoverage {
 	 * section for which the coordinate was tested
 	 */
 	public void incrementCountValid(Coordinate coordTested, SimpleFeature featureBeingImproved) {
-		ImprovementCoverageItem item = coordinateMap.get(coordTested);
-		if (item == null) {
-			item = new ImprovementCoverageItem();
-		}
 		String fid = null;
 		if (featureBeingImproved != null) {
 			fid = featureBeingImproved.getIdentifier().toString();
 		}
+		int vertexId = getVertexId(coordTested);
+		if (vertexId != VertexTable.NONE) {
+			vertexCountValid[vertexId]++;
+			addVertexFid(vertexId, fid);
+			return;
+		}
+		ImprovementCoverageItem item = coordinateMap.get(coordTested);
+		if (item == null) {
+			item = new ImprovementCoverageItem();
+		}
 		item.incrementCountValid(fid);
 		coordinateMap.put(coordTested, item);
 	}
@@ -96,14 +137,20 @@ public class ImprovementCoverage {
 	 * section for which the coordinate was tested
 	 */
 	public void incrementCountTotal(Coordinate coordTested, SimpleFeature featureBeingImproved) {
-		ImprovementCoverageItem item = coordinateMap.get(coordTested);
-		if (item == null) {
-			item = new ImprovementCoverageItem();
-		}
 		String fid = null;
 		if (featureBeingImproved != null) {
 			fid = featureBeingImproved.getIdentifier().toString();
 		}
+		int vertexId = getVertexId(coordTested);
+		if (vertexId != VertexTable.NONE) {
+			vertexCountTotal[vertexId]++;
+			addVertexFid(vertexId, fid);
+			return;
+		}
+		ImprovementCoverageItem item = coordinateMap.get(coordTested);
+		if (item == null) {
+			item = new ImprovementCoverageItem();
+		}
 		item.incrementCountTotal(fid);
 		coordinateMap.put(coordTested, item);
 	}
@@ -124,10 +171,22 @@ public class ImprovementCoverage {
 		}
 		SimpleFeatureBuilder featureBuilder = new SimpleFeatureBuilder(improvementCoverageFeatureType);
 		
-		//convert "coordinateMap" into a FeatureCollection of coverage information
+		//convert the per-vertex counts and "coordinateMap" into a FeatureCollection of coverage information
+		int nextFid = 0;
+		for (int vertexId = 0; vertexId < vertexCountTotal.length; vertexId++) {
+			Point point = geometryFactory.createPoint(vertexCloud.getCoordinate(vertexId));
+			List<String> fids = vertexFids.get(vertexId);
+			Object[] attrValues = {
+					point,
+					vertexCountTotal[vertexId],
+					vertexCountValid[vertexId],
+					fids != null ? fids.toString() : "[]"
+					};
+			SimpleFeature feature = featureBuilder.buildFeature(""+nextFid++, attrValues);
+			dfc.add(feature);
+		}
 		Set<Coordinate> keys = coordinateMap.keySet();
 		Iterator<Coordinate> keyIt = keys.iterator();
-		int nextFid = 0;
 		while(keyIt.hasNext()) {
 			Coordinate c = keyIt.next();
 			ImprovementCoverageItem item = coordinateMap.get(c);
@@ -175,6 +234,31 @@ public class ImprovementCoverage {
 		}
 	}
 	
+	/**
+	 * the id of the vertex cloud vertex at the given coordinate, or NONE if there is no vertex cloud, or 
+	 * the coordinate isn't one of its vertices
+	 */
+	private int getVertexId(Coordinate c) {
+		if (vertexCloud == null) {
+			return VertexTable.NONE;
+		}
+		return vertexCloud.getVertexTable().getVertexId(c);
+	}
+	
+	private void addVertexFid(int vertexId, String fid) {
+		if (fid == null) {
+			return;
+		}
+		List<String> fids = vertexFids.get(vertexId);
+		if (fids == null) {
+			fids = new ArrayList<String>();
+			vertexFids.put(vertexId, fids);
+		}
+		if (!fids.contains(fid)) {
+			fids.add(fid);
+		}
+	}
+	
 	/**
 	 * returns a number in [0,1] representing the fraction of the point cloud which 
 	 * has been covered.
@@ -183,6 +267,14 @@ public class ImprovementCoverage {
 	public double getTotalCoverageFraction() {
 		int countTouched = 0;
 		int countUntouched = 0;
+		for (int count : vertexCountTotal) {
+			if (count == 0) {
+				countUntouched++;
+			}
+			else {
+				countTouched++;
+			}
+		}
 		Set<Coordinate> keys = coordinateMap.keySet();
 		Iterator<Coordinate> keyIt = keys.iterator();
 		while(keyIt.hasNext()) {
@@ -208,6 +300,14 @@ public class ImprovementCoverage {
 	public double getValidCoverageFraction() {
 		int countTouched = 0;
 		int countUntouched = 0;
+		for (int count : vertexCountValid) {
+			if (count == 0) {
+				countUntouched++;
+			}
+			else {
+				countTouched++;
+			}
+		}
 		Set<Coordinate> keys = coordinateMap.keySet();
 		Iterator<Coordinate> keyIt = keys.iterator();
 		while(keyIt.hasNext()) {
@@ -1,8 +1,11 @@
 package ca.bc.gov.catchment.improvement;
 
 import java.io.IOException;
+import java.util.SplittableRandom;
 
 import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
 import org.opengis.feature.simple.SimpleFeature;
 
 import ca.bc.gov.catchment.CatchmentLines;
@@ -11,4 +14,25 @@ public abstract class JunctionImprover {
 
 	public abstract JunctionModification improve(Junction junction, CatchmentLines catchmentLines) throws IOException;
 	
+	/**
+	 * improves the junction using the given random number generator, so that callers running on several 
+	 * threads can give each thread its own generator.  improvers which don't use random numbers ignore it.
+	 */
+	public JunctionModification improve(Junction junction, CatchmentLines catchmentLines, SplittableRandom random) throws IOException {
+		return improve(junction, catchmentLines);
+	}
+	
+	/**
+	 * gets the area in which the sections of a junction are likely to be when the junction is moved up to
+	 * 'radius' away.  (the bounds of the sections, expanded by twice the radius.)
+	 */
+	protected Envelope getImprovementArea(Junction junction, double radius) {
+		Envelope area = new Envelope(junction.getCoordinate());
+		for (SimpleFeature section : junction.getTouchingSections()) {
+			area.expandToInclude(((Geometry)section.getDefaultGeometry()).getEnvelopeInternal());
+		}
+		area.expandBy(radius * 2);
+		return area;
+	}
+	
 }
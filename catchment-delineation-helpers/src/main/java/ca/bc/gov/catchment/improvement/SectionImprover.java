@@ -1,6 +1,7 @@
 package ca.bc.gov.catchment.improvement;
 
 import java.io.IOException;
+import java.util.SplittableRandom;
 
 import org.opengis.feature.simple.SimpleFeature;
 
@@ -13,6 +14,14 @@ public abstract class SectionImprover {
 	
 	public abstract SectionModification improve(SimpleFeature section, CatchmentLines catchmentLines) throws IOException;
 	
+	/**
+	 * improves the section using the given random number generator, so that callers running on several 
+	 * threads can give each thread its own generator.  improvers which don't use random numbers ignore it.
+	 */
+	public SectionModification improve(SimpleFeature section, CatchmentLines catchmentLines, SplittableRandom random) throws IOException {
+		return improve(section, catchmentLines);
+	}
+	
 	public SectionFitness getSectionFitness() {
 		return this.sectionFitness;
 	}
@@ -3,9 +3,10 @@ package ca.bc.gov.catchment.improvement;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
-import org.geotools.data.collection.SpatialIndexFeatureCollection;
-import org.geotools.data.collection.SpatialIndexFeatureSource;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.filter.identity.FeatureId;
@@ -15,19 +16,16 @@ import ca.bc.gov.catchment.fitness.SectionFitness;
 
 public abstract class SetImprover {
 
-	private static Map<FeatureId, Integer> sectionNoImprovementCount;
-	private static Map<String, Integer> junctionNoImprovementCount;
+	/**
+	 * The pool which computes global fitness.  Shared by all set improvers, and created on first use.  Its 
+	 * threads are daemon threads, so the pool doesn't need to be shut down.
+	 */
+	private static volatile ExecutorService fitnessPool;
 	
 	public SetImprover() {
 	}
 	
-	protected void resetShortCircuitStatistics() {
-		sectionNoImprovementCount = new HashMap<FeatureId, Integer>();
-		junctionNoImprovementCount = new HashMap<String, Integer>();
-	}
-	
 	public CatchmentLines improve(CatchmentLines catchmentLines) throws IOException {
-		resetShortCircuitStatistics();
 		return improveImpl(catchmentLines);
 	}
 	
@@ -36,68 +34,100 @@ public abstract class SetImprover {
 	
 	public abstract SectionFitness getGlobalFitness();
 	
+	/**
+	 * the average global fitness of the sections.  the sections are scored in parallel.
+	 */
 	public double checkGlobalFitness(SimpleFeatureCollection fc) throws IOException {
-		return getGlobalFitness().fitnessAvg(fc);
+		return getGlobalFitness().fitnessAvg(fc, getFitnessPool());
 	}
 	
-	protected CatchmentLines toCatchmentLines(SimpleFeatureCollection fc) throws IOException {
-		SpatialIndexFeatureCollection fastFc = new SpatialIndexFeatureCollection(fc);
-		SpatialIndexFeatureSource fastFs = new SpatialIndexFeatureSource(fastFc);
-		CatchmentLines result = new CatchmentLines(fastFs);
+	private static ExecutorService getFitnessPool() {
+		ExecutorService result = fitnessPool;
+		if (result == null) {
+			synchronized(SetImprover.class) {
+				result = fitnessPool;
+				if (result == null) {
+					result = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+						public Thread newThread(Runnable r) {
+							Thread t = new Thread(r, "global-fitness");
+							t.setDaemon(true);
+							return t;
+						}
+					});
+					fitnessPool = result;
+				}
+			}
+		}
 		return result;
 	}
 	
 	// ------------------------------------------------------------------------
 	// Functions to support testing of the end condition
 	// ------------------------------------------------------------------------
+	
+	/**
+	 * The number of consecutive times each junction and section could not be improved.  Used to skip 
+	 * junctions and sections which are unlikely to be improved further.
+	 * Each improvement run has its own counts, so runs may happen in parallel.  Not thread-safe.
+	 */
+	protected static class NoImprovementCounts {
+		
+		private Map<FeatureId, Integer> sectionNoImprovementCount;
+		private Map<String, Integer> junctionNoImprovementCount;
 		
-	protected void incrementNoImprovementCount(Junction junction) {
-		String key = junction.getID();
-		if(junctionNoImprovementCount.containsKey(key)) {
-			int count = junctionNoImprovementCount.get(key);
-			count++;
-			junctionNoImprovementCount.put(key, count);
+		public NoImprovementCounts() {
+			sectionNoImprovementCount = new HashMap<FeatureId, Integer>();
+			junctionNoImprovementCount = new HashMap<String, Integer>();
 		}
-		else {
-			junctionNoImprovementCount.put(key, 1);
+		
+		public void increment(Junction junction) {
+			String key = junction.getID();
+			if(junctionNoImprovementCount.containsKey(key)) {
+				int count = junctionNoImprovementCount.get(key);
+				count++;
+				junctionNoImprovementCount.put(key, count);
+			}
+			else {
+				junctionNoImprovementCount.put(key, 1);
+			}
 		}
-	}
-	
-	protected void resetNoImprovementCount(Junction junction) {
-		String key = junction.getID();
-		junctionNoImprovementCount.put(key, 0);
-	}
-	
-	protected void incrementNoImprovementCount(SimpleFeature section) {
-		FeatureId key = section.getIdentifier();
-		if(sectionNoImprovementCount.containsKey(key)) {
-			int count = sectionNoImprovementCount.get(key);
-			count++;
-			sectionNoImprovementCount.put(key, count);
+		
+		public void reset(Junction junction) {
+			String key = junction.getID();
+			junctionNoImprovementCount.put(key, 0);
 		}
-		else {
-			sectionNoImprovementCount.put(key, 1);
+		
+		public void increment(SimpleFeature section) {
+			FeatureId key = section.getIdentifier();
+			if(sectionNoImprovementCount.containsKey(key)) {
+				int count = sectionNoImprovementCount.get(key);
+				count++;
+				sectionNoImprovementCount.put(key, count);
+			}
+			else {
+				sectionNoImprovementCount.put(key, 1);
+			}
 		}
-	}
-	
-	protected void resetNoImprovementCount(SimpleFeature section) {
-		FeatureId key = section.getIdentifier();
-		sectionNoImprovementCount.put(key, 0);
-	}
-	
-	protected int getNoImprovementCount(Junction junction) {
-		String key = junction.getID();
-		if(junctionNoImprovementCount.containsKey(key)) {
-			return junctionNoImprovementCount.get(key);
+		
+		public void reset(SimpleFeature section) {
+			FeatureId key = section.getIdentifier();
+			sectionNoImprovementCount.put(key, 0);
 		}
-		return 0;
-	}
-	
-	protected int getNoImprovementCount(SimpleFeature section) {
-		FeatureId key = section.getIdentifier();
-		if(sectionNoImprovementCount.containsKey(key)) {
-			return sectionNoImprovementCount.get(key);
+		
+		public int get(Junction junction) {
+			String key = junction.getID();
+			if(junctionNoImprovementCount.containsKey(key)) {
+				return junctionNoImprovementCount.get(key);
+			}
+			return 0;
+		}
+		
+		public int get(SimpleFeature section) {
+			FeatureId key = section.getIdentifier();
+			if(sectionNoImprovementCount.containsKey(key)) {
+				return sectionNoImprovementCount.get(key);
+			}
+			return 0;
 		}
-		return 0;
 	}
 }
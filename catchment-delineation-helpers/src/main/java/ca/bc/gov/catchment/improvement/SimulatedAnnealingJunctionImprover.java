@@ -8,6 +8,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableSet;
+import java.util.SplittableRandom;
 import java.util.TreeMap;
 import java.util.logging.Logger;
 
@@ -18,6 +19,7 @@ import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.filter.identity.FeatureId;
 
 import ca.bc.gov.catchment.CatchmentLines;
+import ca.bc.gov.catchment.fitness.CatchmentNeighbourhood;
 import ca.bc.gov.catchment.fitness.CatchmentValidity;
 import ca.bc.gov.catchment.fitness.JunctionFitness;
 import ca.bc.gov.catchment.fitness.SectionFitness;
@@ -39,6 +41,7 @@ public class SimulatedAnnealingJunctionImprover extends JunctionImprover {
 	private WaterAwareLineStringRouter router;
 	private boolean shortCircuitOnFirstImprovement;
 	private ImprovementCoverage improvementCoverage;
+	private SplittableRandom random;
 	
 	public SimulatedAnnealingJunctionImprover(
 			TinEdges tinEdges,
@@ -54,11 +57,20 @@ public class SimulatedAnnealingJunctionImprover extends JunctionImprover {
 		this.radius = radius;
 		this.maxSteps = maxSteps;
 		this.shortCircuitOnFirstImprovement = shortCircuitOnFirstImprovement;
-		this.improvementCoverage = new ImprovementCoverage(tinEdges.getPointCloud());
+		this.improvementCoverage = new ImprovementCoverage(tinEdges.getVertexCloud());
+		this.random = new SplittableRandom();
 	}
 	
 	@Override
 	public JunctionModification improve(Junction originalJunction, CatchmentLines catchmentLines) throws IOException {
+		return improve(originalJunction, catchmentLines, nextRandom());
+	}
+	
+	/**
+	 * @param random used only by this call.  callers on different threads must pass different generators.
+	 */
+	@Override
+	public JunctionModification improve(Junction originalJunction, CatchmentLines catchmentLines, SplittableRandom random) throws IOException {
 		
 		ImprovementMetrics metrics = new ImprovementMetrics();
 		metrics.incrementNumImprovementRequests();
@@ -82,6 +94,10 @@ public class SimulatedAnnealingJunctionImprover extends JunctionImprover {
 		List<Coordinate> neighboursTested = new ArrayList<Coordinate>();
 		neighboursTested.add(originalJunction.getCoordinate());
 		
+		//index of the catchment sections near the junction, for checking the validity of neighbours
+		CatchmentNeighbourhood neighbourhood = catchmentValidityChecker.getNeighbourhood(
+				catchmentLines, getImprovementArea(originalJunction, radius));
+		
 		double favouredFit = originalFit;
 		TreeMap<Double, JunctionModification> modificationsToConsider = new TreeMap<Double, JunctionModification>();
 		modificationsToConsider.put(favouredFit, favouredModification);
@@ -94,7 +110,7 @@ public class SimulatedAnnealingJunctionImprover extends JunctionImprover {
 				metrics.incrementNumAlternativesTested();
 				List<Coordinate> exclude = new ArrayList<Coordinate>();
 				exclude.add(favouredModification.getModifiedJunction().getCoordinate());
-				neighbourCoord = tinEdges.getRandomCoordInRadius(favouredModification.getModifiedJunction().getCoordinate(), radius, exclude);
+				neighbourCoord = tinEdges.getRandomCoordInRadius(favouredModification.getModifiedJunction().getCoordinate(), radius, exclude, random);
 				
 				if (neighboursTested.contains(neighbourCoord)) {
 					continue;
@@ -102,11 +118,13 @@ public class SimulatedAnnealingJunctionImprover extends JunctionImprover {
 				
 				LOG.finer(" neighbour:"+neighbourCoord);
 				neighboursTested.add(neighbourCoord);
-				improvementCoverage.incrementCountTotal(neighbourCoord);	
+				synchronized(improvementCoverage) {
+					improvementCoverage.incrementCountTotal(neighbourCoord);
+				}
 				
 				//int freedom = 5; 
 				//int freedom = (int)(Math.random() * 10) + 1; //random 1-10
-				int freedom = (int)(Math.random() * 5) + 5; //random 5-10
+				int freedom = random.nextInt(5) + 5; //random 5-10
 				newSections = router.rerouteFeatures(favouredModification.getModifiedJunction().getTouchingSections(), favouredModification.getModifiedJunction().getCoordinate(), neighbourCoord, freedom);
 			} catch(IOException e) {
 				LOG.finer("  invalid: "+e);
@@ -116,7 +134,9 @@ public class SimulatedAnnealingJunctionImprover extends JunctionImprover {
 				continue;
 			}
 			
-			improvementCoverage.incrementCountValid(neighbourCoord, null);
+			synchronized(improvementCoverage) {
+				improvementCoverage.incrementCountValid(neighbourCoord, null);
+			}
 			
 			Junction neighbourJunction = new Junction(neighbourCoord, newSections);
 			double neighbourFit = fitnessFinder.fitness(neighbourJunction);
@@ -129,7 +149,7 @@ public class SimulatedAnnealingJunctionImprover extends JunctionImprover {
 				double fractionOfTimeElapsed = (stepNum+1.0f)/maxSteps;
 				double T = getTemperature(fractionOfTimeElapsed);
 				double p = getProbabilityOfSwitching(favouredFit, neighbourFit, T);
-				double r = Math.random();
+				double r = random.nextDouble();
 				acceptWorse = p > r;
 				if (!acceptWorse) {
 					LOG.finer("  rejected.  fit worsened from "+favouredFit+" to "+neighbourFit);
@@ -147,7 +167,7 @@ public class SimulatedAnnealingJunctionImprover extends JunctionImprover {
 			}
 			
 			boolean isValidWrtCatchments = 
-					catchmentValidityChecker.areSectionsValidWrtCatchments(newSections, catchmentLines.getUpdatedFeatures());
+					catchmentValidityChecker.areSectionsValidWrtCatchments(newSections, neighbourhood);
 			if (!isValidWrtCatchments) {
 				LOG.finer("  rejected.  invalid w.r.t catchments");
 				continue;
@@ -203,6 +223,15 @@ public class SimulatedAnnealingJunctionImprover extends JunctionImprover {
 		return chosenModification;
 	}
 	
+	/**
+	 * Sets the seed of the random number generator from which each call's generator is created when 
+	 * the caller doesn't provide one, so that single-threaded runs are repeatable.
+	 * @param seed
+	 */
+	public synchronized void setRandomSeed(long seed) {
+		this.random = new SplittableRandom(seed);
+	}
+	
 	/**
 	 * Initialize the ImprovementCoverage with an existing object
 	 * @param improvementCoverage
@@ -215,6 +244,10 @@ public class SimulatedAnnealingJunctionImprover extends JunctionImprover {
 		return improvementCoverage;
 	}
 	
+	private synchronized SplittableRandom nextRandom() {
+		return random.split();
+	}
+	
 	private String getJunctionId(List<SimpleFeature> touchingSections) {
 		String id = "";
 		for(SimpleFeature f : touchingSections) {
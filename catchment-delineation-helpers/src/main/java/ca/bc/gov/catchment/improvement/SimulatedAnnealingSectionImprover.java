@@ -4,11 +4,15 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.NavigableSet;
-import java.util.TreeMap;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Logger;
 
 import org.geotools.data.DataUtilities;
@@ -17,6 +21,7 @@ import org.geotools.feature.SchemaException;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.referencing.CRS;
 import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.LineString;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
@@ -25,6 +30,7 @@ import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
 import ca.bc.gov.catchment.CatchmentLines;
+import ca.bc.gov.catchment.fitness.CatchmentNeighbourhood;
 import ca.bc.gov.catchment.fitness.CatchmentValidity;
 import ca.bc.gov.catchment.fitness.SectionFitness;
 import ca.bc.gov.catchment.routes.RouteException;
@@ -34,9 +40,26 @@ import ca.bc.gov.catchment.utils.SaveUtils;
 import ca.bc.gov.catchment.utils.SpatialUtils;
 import ca.bc.gov.catchment.water.Water;
 
+/**
+ * Improves a section with simulated annealing.  
+ * 
+ * By default a single annealing chain is run.  Optionally, several chains may be run in parallel 
+ * (parallel tempering).  Each chain has its own random number generator and its own temperature: chain 0 
+ * follows the normal temperature schedule, and the temperatures of the other chains form a geometric 
+ * ladder down to MIN_TEMPERATURE_SCALE times the normal temperature (the coolest chain), so the range of 
+ * temperatures doesn't depend on the number of chains.  The run is divided into stages of 
+ * STEPS_PER_TEMPERATURE_STAGE steps.  At the boundary between stages, chains with 
+ * adjacent temperatures may exchange their current routes (using the standard parallel tempering 
+ * acceptance rule), so good routes found by the hotter, more exploratory chains are refined by the 
+ * cooler chains.  The best valid route found by any chain is returned, and the ImprovementMetrics include
+ * the alternatives tested by all chains.
+ */
 public class SimulatedAnnealingSectionImprover extends SectionImprover {
 
 	private static final double MAX_TEMPERATURE = 100;
+	static final double MIN_TEMPERATURE_SCALE = 0.05;
+	private static final int STEPS_PER_TEMPERATURE_STAGE = 5;
+	private static final double NEIGHBOURHOOD_RADIUS_FACTOR = 2;
 	private static Logger LOG = Logger.getAnonymousLogger();
 	
 	private CatchmentValidity catchmentValidityChecker;
@@ -45,6 +68,10 @@ public class SimulatedAnnealingSectionImprover extends SectionImprover {
 	private double radius;
 	private WaterAwareLineStringRouter router;
 	private ImprovementCoverage improvementCoverage;
+	private int numChains;
+	private int numThreads;
+	private SplittableRandom random;
+	private volatile ExecutorService chainPool;
 	
 	public SimulatedAnnealingSectionImprover(
 			TinEdges tinEdges,
@@ -52,17 +79,57 @@ public class SimulatedAnnealingSectionImprover extends SectionImprover {
 			SectionFitness fitnessFinder, 
 			double radius,
 			int maxSteps) throws IOException {
+		this(tinEdges, waterFeatures, fitnessFinder, radius, maxSteps, 1, 1);
+	}
+	
+	/**
+	 * @param tinEdges
+	 * @param waterFeatures
+	 * @param fitnessFinder must be safe to use from multiple threads if numThreads > 1
+	 * @param radius
+	 * @param maxSteps the number of steps taken by each chain
+	 * @param numChains the number of annealing chains run for each section.  a few chains (4-8) are usually 
+	 * enough.  more chains make the temperature ladder finer, not wider.
+	 * @param numThreads the number of threads used to run the chains
+	 * @throws IOException
+	 */
+	public SimulatedAnnealingSectionImprover(
+			TinEdges tinEdges,
+			SimpleFeatureSource waterFeatures,
+			SectionFitness fitnessFinder, 
+			double radius,
+			int maxSteps,
+			int numChains,
+			int numThreads) throws IOException {
+		if (numChains < 1) {
+			throw new IllegalArgumentException("numChains must be >= 1");
+		}
+		if (numThreads < 1) {
+			throw new IllegalArgumentException("numThreads must be >= 1");
+		}
 		this.tinEdges = tinEdges;
 		this.setSectionFitness(fitnessFinder);
 		this.catchmentValidityChecker = new CatchmentValidity(waterFeatures);
 		this.router = new WaterAwareLineStringRouter(tinEdges, new Water(waterFeatures));
 		this.maxSteps = maxSteps;
 		this.radius = radius;
-		this.improvementCoverage = new ImprovementCoverage(tinEdges.getPointCloud());
+		this.improvementCoverage = new ImprovementCoverage(tinEdges.getVertexCloud());
+		this.numChains = numChains;
+		this.numThreads = numThreads;
+		this.random = new SplittableRandom();
 	}
 	
 	@Override
 	public SectionModification improve(SimpleFeature section, CatchmentLines catchmentLines) throws IOException {
+		return improve(section, catchmentLines, nextRandom());
+	}
+	
+	/**
+	 * @param random used only by this call (each chain's generator is split from it).  callers on different
+	 * threads must pass different generators.
+	 */
+	@Override
+	public SectionModification improve(SimpleFeature section, CatchmentLines catchmentLines, SplittableRandom random) throws IOException {
 		
 		ImprovementMetrics metrics = new ImprovementMetrics();
 		metrics.incrementNumImprovementRequests();
@@ -71,103 +138,42 @@ public class SimulatedAnnealingSectionImprover extends SectionImprover {
 		SectionModification result = new SectionModification(section);
 		result.setImprovementMetrics(metrics);
 		
-		//this list is kept just so we can output all neighbours, then visualize it later for debugging.
-		List<SimpleFeature> neighboursTested = new ArrayList<SimpleFeature>();
-		
 		LineString originalRoute = (LineString)section.getDefaultGeometry();
 		double originalFit = getSectionFitness().fitness(originalRoute);
 		
-		//favouredRoute is the simulated annealing algorithm's best suggestion, although
-		//it only considers fitness of the route (not whether the route is valid).
-		//the reason for this is: fitness is quick to calculate, but validity is 
-		//computationally expensive.
-		LineString favouredRoute = originalRoute;
-		double favouredFit = originalFit;
-		TreeMap<Double, LineString> routesToConsider = new TreeMap<Double, LineString>();
-		routesToConsider.put(favouredFit, favouredRoute);
-		for(int stepNum = 0; stepNum < maxSteps; stepNum++) {
-			LineString neighbourRoute = null;
-			try {
-				metrics.incrementNumAlternativesTested();
-				neighbourRoute = getRandomNeighbour(favouredRoute);
-			} catch(RouteException e) {
-				continue;
-			} catch(IOException e) {
-				continue;
-			}
-			
-			//document the neighbour route
-			improvementCoverage.incrementCountTotal(neighbourRoute, section);	
-			
-			double neighbourFit = getSectionFitness().fitness(neighbourRoute);
-			SimpleFeature neighbourFeature = toTestedFeature(neighbourRoute, neighbourFit, ""+stepNum, catchmentLines);
-			neighboursTested.add(neighbourFeature);
-			boolean fitnessImproved = neighbourFit > favouredFit;
-			boolean acceptWorse = false;
-			if (!fitnessImproved) {
-				//if the fit is not an improvement, still consider setting it as the favoured route
-				//based on a probability function
-				double fractionOfTimeElapsed = (stepNum+1.0f)/maxSteps;
-				double T = getTemperature(fractionOfTimeElapsed);
-				double p = getProbabilityOfSwitching(favouredFit, neighbourFit, T);
-				double r = Math.random();
-				acceptWorse = p > r;
-				if (!acceptWorse) {
-					LOG.finer("neighbour rejected.  fit worsened from "+favouredFit+" to "+neighbourFit);
-					continue;
-				}
-			}
-			
-			//validate the neighbour route.  if invalid, skip the route and try again
-			boolean isValidWrtWater = catchmentValidityChecker.isRouteValidWrtWater(neighbourRoute);
-			if (!isValidWrtWater) {
-				LOG.finer("neighbour rejected.  invalid w.r.t water");
-				continue;
-			}
-			boolean isValidWrtCatchments = 
-					catchmentValidityChecker.isRouteValidWrtCatchments(neighbourRoute, catchmentLines.getUpdatedFeatures(), section.getIdentifier());
-			if (!isValidWrtCatchments) {
-				LOG.finer("neighbour rejected.  invalid w.r.t catchments");
-				continue;
-			}
-			
-			//document the neighbour route
-			improvementCoverage.incrementCountValid(neighbourRoute, section);
-			metrics.incrementNumValidAlternativesTested();
-			
-			//System.out.println("neighbourFit:"+neighbourFit+", favouredFit:"+favouredFit);
-			
-			//if the fit is an improvement, record the route
-			if (fitnessImproved) {
-				routesToConsider.put(neighbourFit, neighbourRoute);
-				favouredFit = neighbourFit;	
-				favouredRoute = neighbourRoute;
-				LOG.finer("neighbour accepted.  fit improved from "+favouredFit+" to "+neighbourFit);
-				continue;
-			}
-						
-			if (acceptWorse) {
-				favouredFit = neighbourFit;
-				favouredRoute = neighbourRoute;
-				LOG.finer("neighbour accepted.  fit worsened from "+favouredFit+" to "+neighbourFit);
-				continue;
-			}
-			
-			//if the execution reaches here, then the neighbour wasn't accepted as the favoured route
+		//index of the catchment sections near the section, for checking the validity of neighbour routes
+		Envelope area = new Envelope(originalRoute.getEnvelopeInternal());
+		area.expandBy(radius * NEIGHBOURHOOD_RADIUS_FACTOR);
+		CatchmentNeighbourhood neighbourhood = catchmentValidityChecker.getNeighbourhood(catchmentLines, area);
+		
+		List<Chain> chains = new ArrayList<Chain>(numChains);
+		for (int i = 0; i < numChains; i++) {
+			double temperatureScale = getTemperatureScale(i, numChains);
+			chains.add(new Chain(section, catchmentLines, neighbourhood, originalRoute, originalFit, temperatureScale, random.split()));
+		}
+		if (numChains == 1) {
+			chains.get(0).run(0, maxSteps);
+		}
+		else {
+			runChains(chains, random.split());
 		}
 
-
-		//the chosenRoute may be the same as the favouredRoute, but not necessarily.
-		//chosenRoute takes into account fitness *and* validity.  
-		//chosenRoute may also be null of no suitable route could be found
-		LineString chosenRoute = chooseRoute(routesToConsider);
+		//the chosen route is the best valid route found by any chain.  it may be the original route.
+		double[] bestFits = new double[chains.size()];
+		for (int i = 0; i < chains.size(); i++) {
+			metrics.merge(chains.get(i).metrics);
+			bestFits[i] = chains.get(i).bestFit;
+		}
+		Chain chosenChain = chains.get(getBestChainIndex(bestFits));
+		LineString chosenRoute = chosenChain.bestRoute;
+		double chosenFit = chosenChain.bestFit;
 		
 		//prepare result object which includes the chosenRoute		
 		if (chosenRoute != null && !chosenRoute.equals(originalRoute)) {
 			SimpleFeature modifiedSection = SpatialUtils.geomToFeature(chosenRoute, section.getFeatureType(), section.getID());
 			result.setModifiedSection(modifiedSection);
 			metrics.incrementNumImproved();
-			LOG.finer("improved section from "+originalFit+" to "+getSectionFitness().fitness(chosenRoute));
+			LOG.finer("improved section from "+originalFit+" to "+chosenFit);
 		}
 		else {
 			LOG.finer("section could not be improved from "+originalFit);
@@ -178,6 +184,10 @@ public class SimulatedAnnealingSectionImprover extends SectionImprover {
 		metrics.setRuntimeMs(runtimeMs);
 		
 		/*
+		List<SimpleFeature> neighboursTested = new ArrayList<SimpleFeature>();
+		for (Chain chain : chains) {
+			neighboursTested.addAll(chain.neighboursTested);
+		}
 		SaveUtils.saveToGeoPackage("C:/Temp/catchment-section-"+section.getID()+".gpkg", 
 				SpatialUtils.featListToSimpleFeatureCollection(neighboursTested), 
 				false);
@@ -186,6 +196,15 @@ public class SimulatedAnnealingSectionImprover extends SectionImprover {
 		return result;
 	}
 	
+	/**
+	 * Sets the seed of the random number generator from which each call's generator is created when 
+	 * the caller doesn't provide one, so that single-threaded runs are repeatable.
+	 * @param seed
+	 */
+	public synchronized void setRandomSeed(long seed) {
+		this.random = new SplittableRandom(seed);
+	}
+	
 	/**
 	 * Initialize the ImprovementCoverage with an existing object
 	 * @param improvementCoverage
@@ -199,21 +218,120 @@ public class SimulatedAnnealingSectionImprover extends SectionImprover {
 	}
 	
 	/**
-	 * Chooses the route from the given map with the best fit.  
-	 * Assumption: all routes in the given map are valid.  Therefore, the chosen route will be a valid route.
-	 * @param routesToConsider
-	 * @return
+	 * Runs all the chains on the thread pool.  Chains run independently within each temperature stage, 
+	 * and may exchange routes at the boundaries between stages.
+	 * @param chains ordered from hottest to coolest
+	 * @param exchangeRandom decides which routes are exchanged
 	 * @throws IOException
 	 */
-	private LineString chooseRoute(TreeMap<Double, LineString> routesToConsider) throws IOException {
-		NavigableSet<Double> keySet = routesToConsider.descendingKeySet();
-		Iterator<Double> it = keySet.iterator(); //ascending order (of the descending key set), which is big to small
-		while(it.hasNext()) {
-			double key = it.next();
-			LineString route = routesToConsider.get(key);
-			return route;
+	private void runChains(List<Chain> chains, SplittableRandom exchangeRandom) throws IOException {
+		ExecutorService pool = getChainPool();
+		for (int stageStart = 0; stageStart < maxSteps; stageStart += STEPS_PER_TEMPERATURE_STAGE) {
+			final int fromStep = stageStart;
+			final int toStep = Math.min(maxSteps, stageStart + STEPS_PER_TEMPERATURE_STAGE);
+			
+			List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(chains.size());
+			for (final Chain chain : chains) {
+				tasks.add(new Callable<Void>() {
+					public Void call() throws IOException {
+						chain.run(fromStep, toStep);
+						return null;
+					}
+				});
+			}
+			
+			try {
+				for (Future<Void> future : pool.invokeAll(tasks)) {
+					future.get();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("interrupted while improving section", e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof IOException) {
+					throw (IOException)e.getCause();
+				}
+				throw new RuntimeException(e.getCause());
+			}
+			
+			exchangeRoutes(chains, (double)toStep / maxSteps, exchangeRandom);
 		}
-		return null;
+	}
+	
+	/**
+	 * Offers each pair of chains with adjacent temperatures the chance to swap their current routes.  
+	 * A swap which moves the fitter route to the cooler chain is always accepted.  Otherwise it is
+	 * accepted with probability e^((fitCooler - fitHotter) * (1/T_hotter - 1/T_cooler)).
+	 * @param chains ordered from hottest to coolest
+	 */
+	private void exchangeRoutes(List<Chain> chains, double fractionOfTimeElapsed, SplittableRandom exchangeRandom) {
+		double T = getTemperature(fractionOfTimeElapsed);
+		if (T <= 0) {
+			return;
+		}
+		for (int i = 0; i < chains.size() - 1; i++) {
+			Chain hotter = chains.get(i);
+			Chain cooler = chains.get(i+1);
+			if (isExchangeAccepted(hotter.favouredFit, cooler.favouredFit, T * hotter.temperatureScale, T * cooler.temperatureScale, exchangeRandom)) {
+				LineString route = hotter.favouredRoute;
+				double fit = hotter.favouredFit;
+				hotter.favouredRoute = cooler.favouredRoute;
+				hotter.favouredFit = cooler.favouredFit;
+				cooler.favouredRoute = route;
+				cooler.favouredFit = fit;
+			}
+		}
+	}
+	
+	/**
+	 * Decides whether the routes of two chains with adjacent temperatures are swapped.  A random number is 
+	 * drawn only when the swap would move the fitter route to the hotter chain.
+	 * @return true if the swap is accepted
+	 */
+	static boolean isExchangeAccepted(double hotterFit, double coolerFit, double hotterTemperature, double coolerTemperature, SplittableRandom random) {
+		double x = (coolerFit - hotterFit) * (1 / hotterTemperature - 1 / coolerTemperature);
+		return x >= 0 || random.nextDouble() < Math.exp(x);
+	}
+	
+	/**
+	 * The index of the chain with the highest best fit.  Ties go to the earliest (hottest) chain.
+	 */
+	static int getBestChainIndex(double[] bestFits) {
+		int bestIndex = 0;
+		for (int i = 1; i < bestFits.length; i++) {
+			if (bestFits[i] > bestFits[bestIndex]) {
+				bestIndex = i;
+			}
+		}
+		return bestIndex;
+	}
+	
+	/**
+	 * The pool which runs chains.  Created on first use, and shared by all sections.  Its threads are 
+	 * daemon threads, so the pool doesn't need to be shut down.
+	 */
+	private ExecutorService getChainPool() {
+		ExecutorService result = chainPool;
+		if (result == null) {
+			synchronized(this) {
+				result = chainPool;
+				if (result == null) {
+					result = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+						public Thread newThread(Runnable r) {
+							Thread t = new Thread(r, "section-annealing-chain");
+							t.setDaemon(true);
+							return t;
+						}
+					});
+					chainPool = result;
+				}
+			}
+		}
+		return result;
+	}
+	
+	private synchronized SplittableRandom nextRandom() {
+		return random.split();
 	}
 	
 	/**
@@ -221,19 +339,20 @@ public class SimulatedAnnealingSectionImprover extends SectionImprover {
 	 * The neighbour route is a similar route to the initial route provided, but with some perturbation.
 	 * neighbour route are not guaranteed to be valid (e.g. with respect to water or other catchment routes)
 	 * @param route
+	 * @param random
 	 * @return
 	 * @throws RouteException
 	 * @throws IOException
 	 */
-	private LineString getRandomNeighbour(LineString route) throws RouteException, IOException {
+	private LineString getRandomNeighbour(LineString route, SplittableRandom random) throws RouteException, IOException {
 		List<Coordinate> existingRouteCoords = SpatialUtils.toCoordinateList(route.getCoordinates());
 		int MAX_TRIES = 10;
 		for(int attemptNum = 0; attemptNum < MAX_TRIES; attemptNum++) { 
 			//pick a pivotIndex, which is the main coordinate that will be displaced.
-			int pivotIndex = (int)(Math.random() * route.getNumPoints());
+			int pivotIndex = random.nextInt(route.getNumPoints());
 			Coordinate oldCoord = route.getCoordinateN(pivotIndex);
-			Coordinate newCoord = tinEdges.getRandomCoordInRadius(oldCoord, radius, existingRouteCoords);
-			int freedom = (int)(Math.random() * route.getNumPoints()/2);
+			Coordinate newCoord = tinEdges.getRandomCoordInRadius(oldCoord, radius, existingRouteCoords, random);
+			int freedom = (int)(random.nextDouble() * route.getNumPoints()/2);
 			try {
 				LineString neighbourRoute = router.reroute(route, oldCoord, newCoord, freedom, false);
 				return neighbourRoute;
@@ -246,6 +365,18 @@ public class SimulatedAnnealingSectionImprover extends SectionImprover {
 		throw new RouteException("Unable to find a neighbour route");		
 	}
 	
+	/**
+	 * The fraction of the normal temperature at which the given chain runs: 
+	 * MIN_TEMPERATURE_SCALE^(chainIndex/(numChains-1)), from 1 for the hottest chain down to 
+	 * MIN_TEMPERATURE_SCALE for the coolest.
+	 */
+	static double getTemperatureScale(int chainIndex, int numChains) {
+		if (numChains == 1) {
+			return 1;
+		}
+		return Math.pow(MIN_TEMPERATURE_SCALE, (double)chainIndex / (numChains - 1));
+	}
+	
 	/**
 	 * A function which gives temperature (0-MAX_TEMPERATURE) as a function of the fraction of elapsed time (0-1).
 	 * @param fractionOfTimeElapsed
@@ -308,4 +439,127 @@ public class SimulatedAnnealingSectionImprover extends SectionImprover {
 		SimpleFeature feature = featureBuilder.buildFeature(fid, values);
 		return feature;
 	}
+	
+	/**
+	 * The state of one annealing chain.  A chain is only run by one thread at a time.
+	 */
+	private class Chain {
+		
+		private SimpleFeature section;
+		private CatchmentLines catchmentLines;
+		private CatchmentNeighbourhood neighbourhood;
+		private double temperatureScale;
+		private SplittableRandom random;
+		private ImprovementMetrics metrics;
+		
+		//this list is kept just so we can output all neighbours, then visualize it later for debugging.
+		private List<SimpleFeature> neighboursTested;
+		
+		//favouredRoute is the simulated annealing algorithm's best suggestion, although
+		//it only considers fitness of the route (not whether the route is valid).
+		//the reason for this is: fitness is quick to calculate, but validity is 
+		//computationally expensive.
+		private LineString favouredRoute;
+		private double favouredFit;
+		
+		//the best valid route found by the chain.  initially the original route.
+		private LineString bestRoute;
+		private double bestFit;
+		
+		Chain(SimpleFeature section, CatchmentLines catchmentLines, CatchmentNeighbourhood neighbourhood, 
+				LineString originalRoute, double originalFit, double temperatureScale, SplittableRandom random) {
+			this.section = section;
+			this.catchmentLines = catchmentLines;
+			this.neighbourhood = neighbourhood;
+			this.temperatureScale = temperatureScale;
+			this.random = random;
+			this.metrics = new ImprovementMetrics();
+			this.neighboursTested = new ArrayList<SimpleFeature>();
+			this.favouredRoute = originalRoute;
+			this.favouredFit = originalFit;
+			this.bestRoute = originalRoute;
+			this.bestFit = originalFit;
+		}
+		
+		/**
+		 * runs steps [fromStep, toStep) of the chain
+		 */
+		void run(int fromStep, int toStep) throws IOException {
+			for(int stepNum = fromStep; stepNum < toStep; stepNum++) {
+				LineString neighbourRoute = null;
+				try {
+					metrics.incrementNumAlternativesTested();
+					neighbourRoute = getRandomNeighbour(favouredRoute, random);
+				} catch(RouteException e) {
+					continue;
+				} catch(IOException e) {
+					continue;
+				}
+				
+				//document the neighbour route
+				synchronized(improvementCoverage) {
+					improvementCoverage.incrementCountTotal(neighbourRoute, section);
+				}
+				
+				double neighbourFit = getSectionFitness().fitness(neighbourRoute);
+				SimpleFeature neighbourFeature = toTestedFeature(neighbourRoute, neighbourFit, ""+stepNum, catchmentLines);
+				neighboursTested.add(neighbourFeature);
+				boolean fitnessImproved = neighbourFit > favouredFit;
+				boolean acceptWorse = false;
+				if (!fitnessImproved) {
+					//if the fit is not an improvement, still consider setting it as the favoured route
+					//based on a probability function
+					double fractionOfTimeElapsed = (stepNum+1.0f)/maxSteps;
+					double T = getTemperature(fractionOfTimeElapsed) * temperatureScale;
+					double p = getProbabilityOfSwitching(favouredFit, neighbourFit, T);
+					double r = random.nextDouble();
+					acceptWorse = p > r;
+					if (!acceptWorse) {
+						LOG.finer("neighbour rejected.  fit worsened from "+favouredFit+" to "+neighbourFit);
+						continue;
+					}
+				}
+				
+				//validate the neighbour route.  if invalid, skip the route and try again
+				boolean isValidWrtWater = catchmentValidityChecker.isRouteValidWrtWater(neighbourRoute);
+				if (!isValidWrtWater) {
+					LOG.finer("neighbour rejected.  invalid w.r.t water");
+					continue;
+				}
+				boolean isValidWrtCatchments = 
+						catchmentValidityChecker.isRouteValidWrtCatchments(neighbourRoute, neighbourhood, section.getIdentifier());
+				if (!isValidWrtCatchments) {
+					LOG.finer("neighbour rejected.  invalid w.r.t catchments");
+					continue;
+				}
+				
+				//document the neighbour route
+				synchronized(improvementCoverage) {
+					improvementCoverage.incrementCountValid(neighbourRoute, section);
+				}
+				metrics.incrementNumValidAlternativesTested();
+				
+				//if the fit is an improvement, record the route
+				if (fitnessImproved) {
+					if (neighbourFit >= bestFit) {
+						bestFit = neighbourFit;
+						bestRoute = neighbourRoute;
+					}
+					LOG.finer("neighbour accepted.  fit improved from "+favouredFit+" to "+neighbourFit);
+					favouredFit = neighbourFit;	
+					favouredRoute = neighbourRoute;
+					continue;
+				}
+							
+				if (acceptWorse) {
+					LOG.finer("neighbour accepted.  fit worsened from "+favouredFit+" to "+neighbourFit);
+					favouredFit = neighbourFit;
+					favouredRoute = neighbourRoute;
+					continue;
+				}
+				
+				//if the execution reaches here, then the neighbour wasn't accepted as the favoured route
+			}
+		}
+	}
 }
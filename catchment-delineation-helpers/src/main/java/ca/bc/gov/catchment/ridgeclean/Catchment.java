@@ -22,7 +22,22 @@ public class Catchment {
 		this.fids = new ArrayList<FeatureId>();
 		this.fids.add(fid);
 	}
-	
+
+	/**
+	 * @param fids the ids of the original polygons which make up this catchment
+	 * @param polygon
+	 */
+	public Catchment(List<FeatureId> fids, Polygon polygon) {
+		if (fids == null || fids.isEmpty()) {
+			throw new IllegalArgumentException("fids must not be empty");
+		}
+		if (polygon == null) {
+			throw new IllegalArgumentException("polygon must not be null");
+		}
+		this.polygon = polygon;
+		this.fids = new ArrayList<FeatureId>(fids);
+	}
+
 	/**
 	 * merger the other object into this object
 	 * @param other
@@ -5,76 +5,150 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import org.geotools.data.simple.SimpleFeatureCollection;
-import org.geotools.data.simple.SimpleFeatureIterator;
-import org.geotools.factory.CommonFactoryFinder;
+import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.operation.union.CascadedPolygonUnion;
 import org.opengis.feature.simple.SimpleFeature;
-import org.opengis.filter.Filter;
-import org.opengis.filter.FilterFactory2;
 import org.opengis.filter.identity.FeatureId;
 
+/**
+ * Tracks which of a set of catchment polygons have been merged together.  Polygons are identified by
+ * their index in the list given to the constructor.
+ *
+ * Merges are recorded with a union-find structure (union by rank, with path halving), so each union and
+ * lookup takes near-constant time.  The polygons themselves aren't unioned until getAllCatchments is called,
+ * which unions the polygons of each merged catchment once (with CascadedPolygonUnion).
+ */
 public class CatchmentUnionTracker {
-	
-	private FilterFactory2 filterFactory;
-	private SimpleFeatureCollection originalCatchments;
-	private List<Catchment> newCatchments;
-	
-	public CatchmentUnionTracker (SimpleFeatureCollection originalCatchments) {
+
+	private List<SimpleFeature> originalCatchments;
+	private Map<FeatureId, Integer> indexByFid;
+	private int[] parent;
+	private int[] rank;
+	private int numCatchments;
+
+	/**
+	 * @param originalCatchments features with polygon geometries
+	 */
+	public CatchmentUnionTracker(List<SimpleFeature> originalCatchments) {
+		int n = originalCatchments.size();
 		this.originalCatchments = originalCatchments;
-		this.newCatchments  = new ArrayList<Catchment>();
-		this.filterFactory = CommonFactoryFinder.getFilterFactory2();
+		this.indexByFid = new HashMap<FeatureId, Integer>();
+		this.parent = new int[n];
+		this.rank = new int[n];
+		this.numCatchments = n;
+		for (int i = 0; i < n; i++) {
+			SimpleFeature f = originalCatchments.get(i);
+			if (f.getDefaultGeometry() == null) {
+				throw new IllegalStateException("Null polygon for featureId "+f.getIdentifier());
+			}
+			if (indexByFid.put(f.getIdentifier(), i) != null) {
+				throw new IllegalStateException("Multiple features match featureId="+f.getIdentifier());
+			}
+			parent[i] = i;
+		}
 	}
 
-	public void union(Catchment catchmentA, Catchment catchmentB) {
-		
-		//merge B into A (then keep A, and discard B)
-		catchmentA.union(catchmentB);
-		newCatchments.remove(catchmentB);	
+	/**
+	 * gets the index of the original polygon with the given feature id
+	 */
+	public int indexOf(FeatureId fid) {
+		Integer index = indexByFid.get(fid);
+		if (index == null) {
+			throw new IllegalArgumentException("Unknown featureId "+fid);
+		}
+		return index;
 	}
-	
-	public Catchment getCatchment(FeatureId fid) {
-		//System.out.println("getCatchment "+fid);
-		for (Catchment c : newCatchments) {
-			if (c.contains(fid)) {
-				//System.out.println(" found existing");
-				return c;
-			}
+
+	/**
+	 * gets the index of the polygon which represents the merged catchment that includes the given polygon.
+	 * two polygons are in the same catchment if and only if find returns the same value for both.
+	 */
+	public int find(int index) {
+		while (parent[index] != index) {
+			parent[index] = parent[parent[index]];
+			index = parent[index];
 		}
-		
-		//System.out.println(" registering new");
-		//no new catchment includes the given fid, so register a new catchment object and return it
-		Catchment newCatchment = new Catchment(fid, getOriginalPolygon(fid));
-		newCatchments.add(newCatchment);
-		return newCatchment;
+		return index;
 	}
-	
-	private Polygon getOriginalPolygon(FeatureId fid) {
-		//System.out.println("getOriginalPolygon "+fid);
-		Filter filter = filterFactory.id(fid);
-		SimpleFeatureCollection matches = originalCatchments.subCollection(filter);
-		if (matches.size() == 1) {
-			//System.out.println("one match");
-			SimpleFeatureIterator it = matches.features();
-			SimpleFeature f = it.next();
-			it.close();
-			Polygon p = (Polygon)f.getDefaultGeometry();
-			if (p == null) {
-				throw new IllegalStateException("Null polygon for featureId "+fid);
-			}
-			return p;
+
+	/**
+	 * merges the catchments which include the two given polygons
+	 * @return the representative polygon index of the merged catchment, or -1 if the polygons were
+	 * already in the same catchment
+	 */
+	public int union(int indexA, int indexB) {
+		int rootA = find(indexA);
+		int rootB = find(indexB);
+		if (rootA == rootB) {
+			return -1;
 		}
-		else if (matches.size() == 0) {
-			throw new IllegalArgumentException("Unknown featureId "+fid);
+		if (rank[rootA] < rank[rootB]) {
+			int swap = rootA;
+			rootA = rootB;
+			rootB = swap;
 		}
-		else {
-			throw new IllegalStateException("Multiple features match featureId="+fid);
+		parent[rootB] = rootA;
+		if (rank[rootA] == rank[rootB]) {
+			rank[rootA]++;
 		}
-		
+		numCatchments--;
+		return rootA;
+	}
+
+	/**
+	 * the number of catchments after merging
+	 */
+	public int getNumCatchments() {
+		return numCatchments;
 	}
-	
+
+	/**
+	 * unions the polygons of each merged catchment.  catchments are returned in order of their
+	 * lowest polygon index.
+	 */
 	public List<Catchment> getAllCatchments() {
-		return this.newCatchments;
+		int n = originalCatchments.size();
+		List<List<Integer>> members = new ArrayList<List<Integer>>();
+		int[] memberListIndex = new int[n];
+		for (int i = 0; i < n; i++) {
+			memberListIndex[i] = -1;
+		}
+		for (int i = 0; i < n; i++) {
+			int root = find(i);
+			if (memberListIndex[root] == -1) {
+				memberListIndex[root] = members.size();
+				members.add(new ArrayList<Integer>());
+			}
+			members.get(memberListIndex[root]).add(i);
+		}
+
+		List<Catchment> result = new ArrayList<Catchment>(members.size());
+		for (List<Integer> indices : members) {
+			List<FeatureId> fids = new ArrayList<FeatureId>(indices.size());
+			List<Polygon> polygons = new ArrayList<Polygon>(indices.size());
+			for (int i : indices) {
+				SimpleFeature f = originalCatchments.get(i);
+				fids.add(f.getIdentifier());
+				polygons.add((Polygon)f.getDefaultGeometry());
+			}
+			if (polygons.size() == 1) {
+				result.add(new Catchment(fids, polygons.get(0)));
+				continue;
+			}
+
+			Geometry union = CascadedPolygonUnion.union(polygons);
+			if (union instanceof Polygon) {
+				result.add(new Catchment(fids, (Polygon)union));
+			}
+			else {
+				//members which only touch at points don't form a single polygon.  keep each part.
+				for (int i = 0; i < union.getNumGeometries(); i++) {
+					result.add(new Catchment(fids, (Polygon)union.getGeometryN(i)));
+				}
+			}
+		}
+		return result;
 	}
-	
-}
\ No newline at end of file
+
+}
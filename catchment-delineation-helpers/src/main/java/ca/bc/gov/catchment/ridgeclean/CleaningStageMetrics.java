@@ -0,0 +1,40 @@
+package ca.bc.gov.catchment.ridgeclean;
+
+/**
+ * The run time of one stage of ridge cleaning, and the number of features into and out of the stage
+ */
+public class CleaningStageMetrics {
+
+	private String stageName;
+	private int numIn;
+	private int numOut;
+	private long runtimeMs;
+
+	public CleaningStageMetrics(String stageName, int numIn, int numOut, long runtimeMs) {
+		this.stageName = stageName;
+		this.numIn = numIn;
+		this.numOut = numOut;
+		this.runtimeMs = runtimeMs;
+	}
+
+	public String getStageName() {
+		return stageName;
+	}
+
+	public int getNumIn() {
+		return numIn;
+	}
+
+	public int getNumOut() {
+		return numOut;
+	}
+
+	public long getRuntimeMs() {
+		return runtimeMs;
+	}
+
+	@Override
+	public String toString() {
+		return stageName+": "+numIn+" in, "+numOut+" out, "+runtimeMs+" ms";
+	}
+}
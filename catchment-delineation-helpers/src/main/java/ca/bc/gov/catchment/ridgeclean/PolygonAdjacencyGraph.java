@@ -0,0 +1,80 @@
+package ca.bc.gov.catchment.ridgeclean;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.opengis.feature.simple.SimpleFeature;
+
+/**
+ * Records which polygons intersect which other polygons.  Polygons are identified by their index in
+ * the list given to the constructor.  The graph is built once, using a spatial index to find the
+ * candidate neighbours of each polygon, so only polygons with overlapping bounding boxes are compared.
+ */
+public class PolygonAdjacencyGraph {
+
+	private static final int[] NO_NEIGHBOURS = new int[0];
+
+	private int[][] neighbours;
+
+	/**
+	 * @param polyFeatures features with polygon geometries
+	 */
+	public PolygonAdjacencyGraph(List<SimpleFeature> polyFeatures) {
+		int n = polyFeatures.size();
+		Geometry[] geoms = new Geometry[n];
+		STRtree index = new STRtree();
+		for (int i = 0; i < n; i++) {
+			geoms[i] = (Geometry)polyFeatures.get(i).getDefaultGeometry();
+			index.insert(geoms[i].getEnvelopeInternal(), i);
+		}
+		index.build();
+
+		List<List<Integer>> adjacent = new ArrayList<List<Integer>>(n);
+		for (int i = 0; i < n; i++) {
+			adjacent.add(new ArrayList<Integer>());
+		}
+		for (int i = 0; i < n; i++) {
+			for (Object item : index.query(geoms[i].getEnvelopeInternal())) {
+				int j = (Integer)item;
+				//test each pair once
+				if (j <= i) {
+					continue;
+				}
+				if (geoms[i].intersects(geoms[j])) {
+					adjacent.get(i).add(j);
+					adjacent.get(j).add(i);
+				}
+			}
+		}
+
+		this.neighbours = new int[n][];
+		for (int i = 0; i < n; i++) {
+			List<Integer> list = adjacent.get(i);
+			if (list.isEmpty()) {
+				neighbours[i] = NO_NEIGHBOURS;
+				continue;
+			}
+			int[] sorted = new int[list.size()];
+			for (int k = 0; k < sorted.length; k++) {
+				sorted[k] = list.get(k);
+			}
+			Arrays.sort(sorted);
+			neighbours[i] = sorted;
+		}
+	}
+
+	public int size() {
+		return neighbours.length;
+	}
+
+	/**
+	 * gets the indexes of the polygons which intersect the given polygon (excluding itself), in ascending order
+	 */
+	public int[] getNeighbours(int index) {
+		return neighbours[index];
+	}
+
+}
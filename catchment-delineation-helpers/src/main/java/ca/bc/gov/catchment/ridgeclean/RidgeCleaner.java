@@ -2,14 +2,18 @@ package ca.bc.gov.catchment.ridgeclean;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.geotools.data.DataUtilities;
-import org.geotools.data.collection.SpatialIndexFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.factory.CommonFactoryFinder;
@@ -24,18 +28,17 @@ import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.LineString;
 import org.locationtech.jts.geom.Point;
 import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.index.strtree.STRtree;
 import org.locationtech.jts.operation.polygonize.Polygonizer;
+import org.locationtech.jts.operation.union.CascadedPolygonUnion;
 import org.locationtech.jts.operation.valid.IsValidOp;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
-import org.opengis.filter.Filter;
 import org.opengis.filter.FilterFactory2;
 import org.opengis.filter.identity.FeatureId;
 import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
-import ca.bc.gov.catchment.algorithms.JunctionFinder;
-import ca.bc.gov.catchment.algorithms.LineSegmenter;
 import ca.bc.gov.catchment.algorithms.SinuosityQuantifier;
 import ca.bc.gov.catchment.utils.SpatialUtils;
 import ca.bc.gov.catchment.utils.VectorUtils;
@@ -43,12 +46,21 @@ import ca.bc.gov.catchment.water.Water;
 
 /**
  * This algorithm is intended to be run after RidgeGrower
+ * 
+ * Stages which process each ridge independently run on chunks of the ridges in parallel.  Stages which
+ * build a graph of the ridges node the ridges in spatial tiles in parallel (see RidgeGraph), then check
+ * chunks of the sections (or of the intersecting pairs) in parallel.
+ * Results are combined in their original order, so the output doesn't depend on the number of threads.
+ * The run time and the number of features in and out of each stage are recorded (see getStageMetrics).
  * @author Brock
  *
  */
 public class RidgeCleaner {
 	
 	private static int NEXT_FID = 0;
+	//the number of chunks per thread when ridges are processed independently.  more chunks than threads
+	//balance the load when some ridges take longer than others.
+	private static final int CHUNKS_PER_THREAD = 4;
 	
 	private SimpleFeatureCollection inRidges;
 	private FilterFactory2 filterFactory;
@@ -56,11 +68,28 @@ public class RidgeCleaner {
 	private SimpleFeatureType ridgeFeatureType;
 	private String ridgeGeometryPropertyName;
 	private Water water;
-	private LineSegmenter lineSegmenter;
 	private SimpleFeatureType catchmentPolysFeatureType;
+	private ForkJoinPool pool;
+	private List<CleaningStageMetrics> stageMetrics;
 	
-	public RidgeCleaner(SimpleFeatureCollection ridges, Water water, String catchmentPolysTable) throws SchemaException {	
+	public RidgeCleaner(SimpleFeatureCollection ridges, Water water, String catchmentPolysTable) throws SchemaException {
+		this(ridges, water, catchmentPolysTable, Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * @param ridges
+	 * @param water
+	 * @param catchmentPolysTable
+	 * @param numThreads the number of threads which run each stage
+	 * @throws SchemaException
+	 */
+	public RidgeCleaner(SimpleFeatureCollection ridges, Water water, String catchmentPolysTable, int numThreads) throws SchemaException {
+		if (numThreads < 1) {
+			throw new IllegalArgumentException("numThreads must be >= 1");
+		}
 		this.inRidges = ridges;
+		this.pool = new ForkJoinPool(numThreads);
+		this.stageMetrics = new ArrayList<CleaningStageMetrics>();
 		this.water = water;
 		this.filterFactory = CommonFactoryFinder.getFilterFactory2();
 		this.geometryFactory = JTSFactoryFinder.getGeometryFactory();
@@ -70,7 +99,6 @@ public class RidgeCleaner {
 			throw new IllegalArgumentException("input feature collection must have a non-null schema");
 		}
 		this.ridgeGeometryPropertyName = ridgeFeatureType.getGeometryDescriptor().getLocalName();
-		this.lineSegmenter = new LineSegmenter();
 
 		CoordinateReferenceSystem crs = ridgeFeatureType.getCoordinateReferenceSystem();
 		int srid = -1;
@@ -137,64 +165,69 @@ public class RidgeCleaner {
 		return result;
 	}
 	
+	/**
+	 * gets the metrics of each stage run so far, in the order the stages were run
+	 */
+	public List<CleaningStageMetrics> getStageMetrics() {
+		return stageMetrics;
+	}
+	
 	public SimpleFeatureCollection getWorkingJunctions() throws SchemaException {
 		SimpleFeatureType junctionFeatureType = DataUtilities.createType("working_junctions", "geometry:Point:srid=3005");
-		SimpleFeatureIterator ridgeIt = inRidges.features();
+		RidgeGraph graph = new RidgeGraph(toLineStringList(inRidges));
 		DefaultFeatureCollection allJunctions = new DefaultFeatureCollection(); 
-		while (ridgeIt.hasNext()) {
-			SimpleFeature ridge = ridgeIt.next();
-			List<Coordinate> junctions = getJunctions(ridge, inRidges);
-			
-			for(Coordinate c: junctions) {
-				Point p = geometryFactory.createPoint(c);
-				SimpleFeature f = SpatialUtils.geomToFeature(p, junctionFeatureType, allJunctions.size()+"");
-				allJunctions.add(f);
-			}
+		for(Coordinate c: graph.getJunctions()) {
+			Point p = geometryFactory.createPoint(c);
+			SimpleFeature f = SpatialUtils.geomToFeature(p, junctionFeatureType, allJunctions.size()+"");
+			allJunctions.add(f);
 		}
-		ridgeIt.close();
 		return allJunctions;
 				
 	}
 	
-	private DefaultFeatureCollection truncateLoopbackLines(SimpleFeatureCollection fc) {
+	private DefaultFeatureCollection truncateLoopbackLines(SimpleFeatureCollection fc) throws IOException {
 		System.out.println("Truncating lines at loop-backs");
+		long start = System.currentTimeMillis();
+		
+		List<SimpleFeature> features = SpatialUtils.simpleFeatureCollectionToFeatList(fc);
+		List<SimpleFeature> truncated = transformInParallel(features, new FeatureTransform() {
+			public SimpleFeature transform(SimpleFeature f) {
+				LineString original = (LineString)f.getDefaultGeometry();
+				LineString truncatedRoute = truncateAtLoopback(original);
+				return SpatialUtils.geomToFeature(truncatedRoute, f.getFeatureType(), f.getID());
+			}
+		});
 		DefaultFeatureCollection result = new DefaultFeatureCollection();
+		result.addAll(truncated);
 		
-		SimpleFeatureIterator it = fc.features();
-		while(it.hasNext()) {
-			SimpleFeature f = it.next();
-			LineString original = (LineString)f.getDefaultGeometry();
-			LineString truncated = truncateAtLoopback(original);
-			SimpleFeature newF = SpatialUtils.geomToFeature(truncated, f.getFeatureType(), f.getID());
-			result.add(newF);		
-		}
-		it.close();
+		recordStage("truncate loop-back lines", features.size(), result.size(), start);
 		return result;
 		
 	}
 	
-	private DefaultFeatureCollection truncateSinuousLines(SimpleFeatureCollection fc) {
-		DefaultFeatureCollection result = new DefaultFeatureCollection();
-		SinuosityQuantifier sinuosityQuantifier = new SinuosityQuantifier();
-		SimpleFeatureIterator it = fc.features();
-		while(it.hasNext()) {
-			SimpleFeature f = it.next();
-			
-			double MAX_SINUOSITY = 1.5;
-			double sinuosity = sinuosityQuantifier.getSinuosity(f);	
-			if (sinuosity > MAX_SINUOSITY) {
-				System.out.println("truncating sinuous line");
-				LineString g = (LineString)f.getDefaultGeometry();
-				LineString truncatedGeom = truncateAtHighPoint(g);
-				SimpleFeature truncatedFeature = SpatialUtils.geomToFeature(truncatedGeom, f.getFeatureType(), f.getID());
-				result.add(truncatedFeature);
-			}
-			else {
+	private DefaultFeatureCollection truncateSinuousLines(SimpleFeatureCollection fc) throws IOException {
+		long start = System.currentTimeMillis();
+		final SinuosityQuantifier sinuosityQuantifier = new SinuosityQuantifier();
+		
+		List<SimpleFeature> features = SpatialUtils.simpleFeatureCollectionToFeatList(fc);
+		List<SimpleFeature> truncated = transformInParallel(features, new FeatureTransform() {
+			public SimpleFeature transform(SimpleFeature f) {
+				double MAX_SINUOSITY = 1.5;
+				double sinuosity = sinuosityQuantifier.getSinuosity(f);	
+				if (sinuosity > MAX_SINUOSITY) {
+					System.out.println("truncating sinuous line");
+					LineString g = (LineString)f.getDefaultGeometry();
+					LineString truncatedGeom = truncateAtHighPoint(g);
+					return SpatialUtils.geomToFeature(truncatedGeom, f.getFeatureType(), f.getID());
+				}
 				//keep original feature
-				result.add(f);
+				return f;
 			}
-		}
-		it.close();
+		});
+		DefaultFeatureCollection result = new DefaultFeatureCollection();
+		result.addAll(truncated);
+		
+		recordStage("truncate sinuous lines", features.size(), result.size(), start);
 		return result;
 		
 	}
@@ -229,298 +262,265 @@ public class RidgeCleaner {
 		return result;
 	}
 	
+	/**
+	 * nodes the ridges (see RidgeGraph), and splits them into sections which end at junctions or 
+	 * loose ends.  sections shared by several ridges are kept once.
+	 * @param fc
+	 * @return
+	 * @throws IOException 
+	 */
 	private SimpleFeatureCollection splitAndFilterOutDuplicates(SimpleFeatureCollection fc) throws IOException {
-		
-		SpatialIndexFeatureCollection fastFc = new SpatialIndexFeatureCollection(fc);
 		System.out.println("Splitting and filtering out dups. "+fc.size()+" features to process.");
-				
-		List<LineString> segments = new ArrayList<LineString>();
-		SimpleFeatureIterator ridgeIt = fc.features();
-		int index = 0;
-		while (ridgeIt.hasNext()) {
-			//System.out.println(index++);			
-			SimpleFeature ridge = ridgeIt.next();
-			List<Coordinate> junctions = getJunctions(ridge, fastFc);			
-			List<LineString> ridgePieces = lineSegmenter.segment((LineString)ridge.getDefaultGeometry(), junctions);			
-			
-			for (LineString piece : ridgePieces) {
-				
-				LineString reverse = (LineString)piece.reverse();
-				boolean isDuplicate = segments.contains(piece) || segments.contains(reverse);
-				if (!isDuplicate) {
-					segments.add(piece);
-				}	
-			}
-			
-		}
-		ridgeIt.close();
+		long start = System.currentTimeMillis();
 		
+		RidgeGraph graph = createGraph(SpatialUtils.simpleFeatureCollectionToFeatList(fc));
 		DefaultFeatureCollection result = new DefaultFeatureCollection();
-		for(LineString segment : segments) {
+		for(LineString segment : graph.getEdges()) {
 			String fid = (NEXT_FID++)+"";
 			SimpleFeature segmentFeature = SpatialUtils.geomToFeature(segment, fc.getSchema(), fid);
 			result.add(segmentFeature);
 		}
-			
+		
+		recordStage("split and filter out duplicates", fc.size(), result.size(), start);
 		return result;
 		
 	}
 	
+	/**
+	 * removes sections with an end which touches no other section (and which don't touch a confluence).
+	 * assumes the sections have already been split at junctions.  chunks of the sections are checked in
+	 * parallel.
+	 */
 	private DefaultFeatureCollection filterOutLooseEnds(SimpleFeatureCollection fc) throws IOException {
 		System.out.println("Filtering out loose ends");
+		long start = System.currentTimeMillis();
 		int initialNumSections = fc.size();
-		DefaultFeatureCollection result = new DefaultFeatureCollection();
 		
-		SimpleFeatureIterator it = fc.features();
-		while(it.hasNext()) {
-			SimpleFeature f = it.next();
-			LineString g = (LineString)f.getDefaultGeometry();
-			Coordinate first = g.getCoordinateN(0);
-			Coordinate last = g.getCoordinateN(g.getNumPoints()-1);
-			
-			Coordinate[] coordsToTest = {first, last};
-			int numStickyCoords = 0;
-			boolean touchesConfluence = false;
-			for (Coordinate c: coordsToTest) {
-				touchesConfluence = touchesConfluence || water.isConfluence(c);
-				Point p = geometryFactory.createPoint(c);
-				Filter filter = filterFactory.and(
-						//endpoint of this feature touch other feature
-						filterFactory.touches(
-								filterFactory.property(ridgeGeometryPropertyName), 
-								filterFactory.literal(p)),
-						
-						//but otherwise no overlap between this feature and the other feature
-						filterFactory.not(
-								filterFactory.overlaps(
-										filterFactory.property(ridgeGeometryPropertyName), 
-										filterFactory.literal(g))
-						)
-				);
-				
-				SimpleFeatureCollection matches = fc.subCollection(filter);
-				
-				//of the touching features, consider only those which touch at their endpoints
-				matches = touchesOnlyAtEndpoints(matches, coordsToTest);
-				
-				boolean isConnectedToAnotherEndpoint = matches.size() > 1; //touches self and at least one more
-				//System.out.println("isConnectionCoord: "+isConnectionCoord+" ("+matches.size()+"), touchesConfluence: "+touchesConfluence);
-				
-				if (touchesConfluence || isConnectedToAnotherEndpoint) {
-					numStickyCoords++;
-				}
-				
-			}
-			
-			boolean hasLooseEnd = numStickyCoords != 2 && !touchesConfluence;
-			if (!hasLooseEnd) {
-				result.add(f);
-			}
-			else {
-				//System.out.println("filtering out segment from "+first+" to "+last+", num sticky:"+numStickyCoords);
+		List<SimpleFeature> sections = SpatialUtils.simpleFeatureCollectionToFeatList(fc);
+		final RidgeGraph graph = createGraph(sections);
+		DefaultFeatureCollection result = new DefaultFeatureCollection();
+		result.addAll(filterInParallel(sections, new FeatureFilter() {
+			public boolean keep(SimpleFeature f) throws IOException {
+				return !hasLooseEnd(f, graph);
 			}
-		}
-		it.close();
+		}));
+		
 		int numSectionsRemoved = initialNumSections - result.size();
 		System.out.println(" - "+numSectionsRemoved+" of "+initialNumSections +" removed.");
 		
+		recordStage("filter out loose ends", initialNumSections, result.size(), start);
 		return result;
 	}
 	
-	private SimpleFeatureCollection touchesOnlyAtEndpoints(SimpleFeatureCollection touching, Coordinate[] endPoints) {
-		DefaultFeatureCollection result = new DefaultFeatureCollection();
-		SimpleFeatureIterator it = touching.features();
-		while(it.hasNext()) {
-			SimpleFeature f = it.next();
-			LineString g = (LineString)f.getDefaultGeometry();
-			Coordinate first = g.getCoordinateN(0);
-			Coordinate last = g.getCoordinateN(g.getNumPoints()-1);
-			for (Coordinate c : endPoints) {
-				if (c.equals(first) || c.equals(last)) {
-					result.add(f);
-				}
+	/**
+	 * checks whether an end of the section touches no other section of the graph (and the section 
+	 * doesn't touch a confluence)
+	 */
+	private boolean hasLooseEnd(SimpleFeature f, RidgeGraph graph) throws IOException {
+		LineString g = (LineString)f.getDefaultGeometry();
+		Coordinate first = g.getCoordinateN(0);
+		Coordinate last = g.getCoordinateN(g.getNumPoints()-1);
+		
+		Coordinate[] coordsToTest = {first, last};
+		int numStickyCoords = 0;
+		boolean touchesConfluence = false;
+		for (Coordinate c: coordsToTest) {
+			touchesConfluence = touchesConfluence || water.isConfluence(c);
+			
+			//the end touches at least one other section
+			boolean isConnectedToAnotherEndpoint = graph.getDegree(c) > 1;
+			
+			if (touchesConfluence || isConnectedToAnotherEndpoint) {
+				numStickyCoords++;
 			}
+			
 		}
-		it.close();
-		if (result.size() != touching.size()) {
-			System.out.println("filtered out");
-		}
-		return result;
+		
+		return numStickyCoords != 2 && !touchesConfluence;
 	}
 	
+	/**
+	 * removes sections which cross another section.  only the pairs of sections found to intersect while 
+	 * noding (see RidgeGraph) are tested, in chunks in parallel.
+	 */
 	private DefaultFeatureCollection filterOutCrossingLines(SimpleFeatureCollection fc) throws IOException {
-		SimpleFeatureIterator it = fc.features();
-
-		//identify crossing features that should be excluded
-		List<SimpleFeature> allExcluded = new ArrayList<SimpleFeature>();
-		while(it.hasNext()) {
-			SimpleFeature f = it.next();
-			LineString g = (LineString)f.getDefaultGeometry();
-			
-			Filter filter = filterFactory.crosses(
-					filterFactory.property(ridgeGeometryPropertyName), 
-					filterFactory.literal(g));
-			SimpleFeatureCollection matches = fc.subCollection(filter);
-			SimpleFeatureIterator matchesIt = matches.features();
-			while(matchesIt.hasNext()) {
-				allExcluded.add(matchesIt.next());
-			}
-			matchesIt.close();		
+		long start = System.currentTimeMillis();
+		
+		List<SimpleFeature> features = SpatialUtils.simpleFeatureCollectionToFeatList(fc);
+		final List<LineString> lines = toLineStringList(features);
+		RidgeGraph graph = createGraph(features);
+		
+		//find the crossing pairs
+		List<int[]> pairs = graph.getIntersectingLinePairs();
+		int numChunks = pool.getParallelism() * CHUNKS_PER_THREAD;
+		int chunkSize = Math.max(1, (pairs.size() + numChunks - 1) / numChunks);
+		List<Callable<List<int[]>>> tasks = new ArrayList<Callable<List<int[]>>>();
+		for (int from = 0; from < pairs.size(); from += chunkSize) {
+			final List<int[]> chunk = pairs.subList(from, Math.min(from + chunkSize, pairs.size()));
+			tasks.add(new Callable<List<int[]>>() {
+				public List<int[]> call() {
+					List<int[]> crossing = new ArrayList<int[]>();
+					for (int[] pair : chunk) {
+						if (lines.get(pair[0]).crosses(lines.get(pair[1]))) {
+							crossing.add(pair);
+						}
+					}
+					return crossing;
+				}
+			});
 		}
-		it.close();
 		
-		//create a new set that excludes the crossing features
+		//exclude both features of each crossing pair
+		boolean[] excluded = new boolean[features.size()];
+		for (List<int[]> crossing : runAll(tasks)) {
+			for (int[] pair : crossing) {
+				excluded[pair[0]] = true;
+				excluded[pair[1]] = true;
+			}
+		}
 		DefaultFeatureCollection result = new DefaultFeatureCollection();
-		it = fc.features();
-		while(it.hasNext()) {
-			SimpleFeature f = it.next();
-			if (!allExcluded.contains(f)) {
-				result.add(f);
+		for (int i = 0; i < features.size(); i++) {
+			if (!excluded[i]) {
+				result.add(features.get(i));
 			}
 		}
-		it.close();
 		
+		recordStage("filter out crossing lines", fc.size(), result.size(), start);
 		return result;
 	}
 	
-	private List<SimpleFeature> getTouchingRidges(SimpleFeature ridge, SimpleFeatureCollection allRidges) {
-		LineString section = (LineString)ridge.getDefaultGeometry();
-		
-		List<Filter> filters = new ArrayList<Filter>();
-
-		filters.add(filterFactory.touches(
-				filterFactory.property(ridgeGeometryPropertyName), 
-				filterFactory.literal(section)));		
-		//filters.add(filterFactory.overlaps(
-		//		filterFactory.property(ridgeGeometryPropertyName), 
-		//		filterFactory.literal(section)));
-		filters.add(filterFactory.dwithin(
-				filterFactory.property(ridgeGeometryPropertyName), 
-				filterFactory.literal(section),
-				0,
-				"meters"));
-		filters.add(filterFactory.intersects(
-				filterFactory.property(ridgeGeometryPropertyName), 
-				filterFactory.literal(section)));
-
-		
-		Filter overlapsFilter = filterFactory.or(filters);
-		SimpleFeatureCollection overlappingRidges = allRidges.subCollection(overlapsFilter);
-		
-		return SpatialUtils.simpleFeatureCollectionToList(overlappingRidges);		
+	/**
+	 * builds the graph of the features, noding them in tiles on the pool
+	 */
+	private RidgeGraph createGraph(List<SimpleFeature> features) throws IOException {
+		return new RidgeGraph(toLineStringList(features), pool, pool.getParallelism() * CHUNKS_PER_THREAD);
 	}
 	
-	/*
-	private List<Coordinate> getJunctions(SimpleFeature ridge) {
-		List<Coordinate> coordsOfIntersection = new ArrayList<Coordinate>();
-		List<SimpleFeature> overlappingRidges = getIntersectingRidges(ridge);
-		LineString section = (LineString)ridge.getDefaultGeometry();
-		
-		for(Coordinate ridgeCoord : section.getCoordinates()) {
-			Point ridgePoint = geometryFactory.createPoint(ridgeCoord);
-			for (SimpleFeature overlappingRidge : overlappingRidges) {
-				LineString overlappingSection = (LineString)overlappingRidge.getDefaultGeometry();
-				if (!overlappingSection.contains(ridgePoint)) {
-					continue;
-				}
-				Coordinate prevCoordOfOverlappingSection = getPrevCoordOfSection(overlappingSection, ridgeCoord);
-				if (prevCoordOfOverlappingSection == null) {
-					//this occurs when:
-					// a. the *first coord* of the "overlapping section" is contained in the "primary section", or
-					// b. the ridge coordinate isn't in the overlapping section
-					// Possibility b is ruled out above, so practically the cause is possibility a.
-					throw new IllegalStateException("the possible junction point under consideration has no previous coordinate on the overlapping section.");
-				}
-				Point prevPointOfOveralappingCoord = geometryFactory.createPoint(prevCoordOfOverlappingSection);
-				boolean isJunction = !section.contains(prevPointOfOveralappingCoord);
-				if (isJunction) {
-					coordsOfIntersection.add(ridgeCoord);
+	/**
+	 * A transformation which is applied to each feature independently
+	 */
+	private interface FeatureTransform {
+		SimpleFeature transform(SimpleFeature f);
+	}
+	
+	/**
+	 * A test of whether to keep each feature, which is applied to each feature independently
+	 */
+	private interface FeatureFilter {
+		boolean keep(SimpleFeature f) throws IOException;
+	}
+	
+	/**
+	 * keeps the features which pass the filter, with chunks of the features processed in parallel
+	 * @return the kept features, in the same order as the input features
+	 */
+	private List<SimpleFeature> filterInParallel(List<SimpleFeature> features, final FeatureFilter filter) throws IOException {
+		int numChunks = pool.getParallelism() * CHUNKS_PER_THREAD;
+		int chunkSize = Math.max(1, (features.size() + numChunks - 1) / numChunks);
+		List<Callable<List<SimpleFeature>>> tasks = new ArrayList<Callable<List<SimpleFeature>>>();
+		for (int from = 0; from < features.size(); from += chunkSize) {
+			final List<SimpleFeature> chunk = features.subList(from, Math.min(from + chunkSize, features.size()));
+			tasks.add(new Callable<List<SimpleFeature>>() {
+				public List<SimpleFeature> call() throws IOException {
+					List<SimpleFeature> kept = new ArrayList<SimpleFeature>();
+					for (SimpleFeature f : chunk) {
+						if (filter.keep(f)) {
+							kept.add(f);
+						}
+					}
+					return kept;
 				}
-			}
+			});
 		}
-		
-		return coordsOfIntersection;
+		List<SimpleFeature> result = new ArrayList<SimpleFeature>();
+		for (List<SimpleFeature> kept : runAll(tasks)) {
+			result.addAll(kept);
+		}
+		return result;
 	}
-	*/
 	
-	private List<Coordinate> getJunctions(SimpleFeature ridge, SimpleFeatureCollection allRidges) {
-		/*
-		 * This function attempts to handle the difficult case where:
-		 * - a ridge line loops back on itself several times. 
-		 * - a touching line touches at several points, including some
-		 *   before and some after the true junction
-		 * 
-		 */
-		JunctionFinder junctionFinder = new JunctionFinder();
-		List<Coordinate> allJunctions = new ArrayList<Coordinate>();
-		List<SimpleFeature> overlappingRidges = getTouchingRidges(ridge, allRidges);
-		for (SimpleFeature overlappingRidge : overlappingRidges) {
-			//System.out.println("find junction");
-			List<Coordinate> junctions = junctionFinder.getJunctions(ridge, overlappingRidge);
-			for(Coordinate junction : junctions) {
-				if (junction != null && !allJunctions.contains(junction)) {
-					allJunctions.add(junction);
-				}				
-			}
+	/**
+	 * applies the transform to each feature, with chunks of the features processed in parallel
+	 * @return the transformed features, in the same order as the input features
+	 */
+	private List<SimpleFeature> transformInParallel(List<SimpleFeature> features, final FeatureTransform transform) throws IOException {
+		int numChunks = pool.getParallelism() * CHUNKS_PER_THREAD;
+		int chunkSize = Math.max(1, (features.size() + numChunks - 1) / numChunks);
+		List<Callable<List<SimpleFeature>>> tasks = new ArrayList<Callable<List<SimpleFeature>>>();
+		for (int from = 0; from < features.size(); from += chunkSize) {
+			final List<SimpleFeature> chunk = features.subList(from, Math.min(from + chunkSize, features.size()));
+			tasks.add(new Callable<List<SimpleFeature>>() {
+				public List<SimpleFeature> call() {
+					List<SimpleFeature> transformed = new ArrayList<SimpleFeature>(chunk.size());
+					for (SimpleFeature f : chunk) {
+						transformed.add(transform.transform(f));
+					}
+					return transformed;
+				}
+			});
 		}
-				
-		return allJunctions;
-		
+		List<SimpleFeature> result = new ArrayList<SimpleFeature>(features.size());
+		for (List<SimpleFeature> transformed : runAll(tasks)) {
+			result.addAll(transformed);
+		}
+		return result;
 	}
-
-
 	
 	/**
-	 * gets the coord one before the given coord
-	 * @param section
-	 * @param coord
-	 * @return
+	 * runs the tasks on the pool
+	 * @return the results, in the same order as the tasks
 	 */
-	/*
-	private Coordinate getPrevCoordOfSection(LineString section, Coordinate coord) {
-		Coordinate prev = null;
-		for (Coordinate c : section.getCoordinates()) {
-			if (c.equals(coord)) {
-				return prev;
+	private <T> List<T> runAll(List<Callable<T>> tasks) throws IOException {
+		List<T> results = new ArrayList<T>(tasks.size());
+		try {
+			for (Future<T> future : pool.invokeAll(tasks)) {
+				results.add(future.get());
 			}
-			prev = c;
 		}
-		return null;
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while cleaning ridges", e);
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException)e.getCause();
+			}
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException)e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+		return results;
 	}
-	*/
 	
-	/*
-	private List<SimpleFeature> splitRidgeByJunctions(SimpleFeature ridge, List<Coordinate> junctions) {
-		List<SimpleFeature> pieces = new ArrayList<SimpleFeature>();
-		
-		LineString section = (LineString)ridge.getDefaultGeometry();
-		List<Coordinate> coordsOfCurrentPiece = new ArrayList<Coordinate>();
-		coordsOfCurrentPiece.add(section.getCoordinateN(0));
-		
-		Coordinate lastCoord = section.getCoordinateN(section.getNumPoints()-1);
-		
-		for(Coordinate c : section.getCoordinates()) {
-			if (!coordsOfCurrentPiece.contains(c)) {
-				coordsOfCurrentPiece.add(c);
-			}
-			boolean endOfPiece = junctions.contains(c) || c.equals(lastCoord);
-			if (endOfPiece) {				
-				if (coordsOfCurrentPiece.size() >= 2) {
-					String fid = (NEXT_FID++)+"";
-					LineString pieceGeometry = SpatialUtils.toLineString(coordsOfCurrentPiece);
-					SimpleFeature pieceFeature = SpatialUtils.geomToFeature(pieceGeometry, ridgeFeatureType, fid);
-					pieces.add(pieceFeature);
-					
-					//reset for next piece
-					coordsOfCurrentPiece.clear();
-					coordsOfCurrentPiece.add(c);
-				}
+	private void recordStage(String stageName, int numIn, int numOut, long startMs) {
+		CleaningStageMetrics metrics = new CleaningStageMetrics(stageName, numIn, numOut, System.currentTimeMillis() - startMs);
+		stageMetrics.add(metrics);
+		System.out.println(" - "+metrics);
+	}
+	
+	private List<LineString> toLineStringList(List<SimpleFeature> features) {
+		List<LineString> result = new ArrayList<LineString>(features.size());
+		for (SimpleFeature f : features) {
+			result.add((LineString)f.getDefaultGeometry());
+		}
+		return result;
+	}
+	
+	private List<LineString> toLineStringList(SimpleFeatureCollection fc) {
+		List<LineString> result = new ArrayList<LineString>();
+		SimpleFeatureIterator it = fc.features();
+		try {
+			while(it.hasNext()) {
+				SimpleFeature f = it.next();
+				result.add((LineString)f.getDefaultGeometry());
 			}
 		}
-		
-		return pieces;
+		finally {
+			it.close();
+		}
+		return result;
 	}
-	*/
 	
 	public static LineString truncateAtLoopback(LineString ridge) {
 		int windowSize = 6;
@@ -585,6 +585,7 @@ public class RidgeCleaner {
 	 */
 	private SimpleFeatureCollection filterOutFalseCatchments(SimpleFeatureCollection fc) throws IOException {
 		System.out.println("Filtering out false catchments.  startng with "+fc.size()+" lines");
+		long start = System.currentTimeMillis();
 
 		//convert the input linestring features to polygon features
 		Collection<Geometry> polys = toPolygons(fc);
@@ -593,23 +594,28 @@ public class RidgeCleaner {
 		sortedPolyFeatures.sort(new DescendingAreaComparator());
 		
 		//initialize a special-purpose collection to help track which catchments have been merged together
-		CatchmentUnionTracker tracker = new CatchmentUnionTracker(initialPolyFeatures);
+		CatchmentUnionTracker tracker = new CatchmentUnionTracker(sortedPolyFeatures);
 		
-		//sort the initial polygon features so that we can process the largest polygons first
+		//find which polygons touch which other polygons (once, rather than once per false catchment)
+		PolygonAdjacencyGraph adjacency = new PolygonAdjacencyGraph(sortedPolyFeatures);
 		
-
-		for (SimpleFeature f : sortedPolyFeatures) {
-			Polygon po = (Polygon)f.getDefaultGeometry();
-			System.out.println("poly area: "+po.getArea());
-			Catchment catchment = tracker.getCatchment(f.getIdentifier());
-			boolean containsWater = water.containsWater(catchment.getPolygon());
-			if (!containsWater) {
+		//whether each merged catchment contains water, indexed by the catchment's representative polygon.
+		//a merged catchment contains water if any of its original polygons does, or if it includes all the
+		//polygons covered by a water feature which isn't within any single polygon.
+		boolean[] containsWater = containsWater(sortedPolyFeatures);
+		Map<Integer, List<int[]>> spanningWaterByCatchment = getSpanningWater(sortedPolyFeatures);
+		
+		//the polygons are sorted so that we can process the largest polygons first
+		for (int i = 0; i < sortedPolyFeatures.size(); i++) {
+			SimpleFeature f = sortedPolyFeatures.get(i);
+			int catchment = tracker.find(i);
+			if (!containsWater[catchment]) {
 				//false catchment.  merge into adjacent catchment
 				//note: the adjacent catchment may also be a false catchment.
 				//as such, this function should be run multiple times until no further merging
 				//is done.
 				
-				List<SimpleFeature> touching = getTouching(f, initialPolyFeatures);
+				List<SimpleFeature> touching = getTouching(i, sortedPolyFeatures, adjacency);
 				SimpleFeature adjacentFeat = chooseMergeCandidateByLowestSharedEdge(f, touching);
 				
 				if (adjacentFeat == null) {
@@ -617,17 +623,22 @@ public class RidgeCleaner {
 					continue;
 				}				
 
-				//get the latest polygon associated with the adjacent feature's ID
-				//(the original adjacent polygon may have been merged in another polygon during an earlier
+				//get the catchment which the adjacent polygon currently belongs to
+				//(the adjacent polygon may have been merged in another polygon during an earlier
 				//iteration of this loop)
-				Catchment adjacentCatchment = tracker.getCatchment(adjacentFeat.getIdentifier());
+				int adjacentCatchment = tracker.find(tracker.indexOf(adjacentFeat.getIdentifier()));
 								
 				//merge "catchment" and "adjacentCatchment"
-				tracker.union(catchment, adjacentCatchment);				
+				int merged = tracker.union(catchment, adjacentCatchment);
+				if (merged != -1) {
+					containsWater[merged] = containsWater[catchment] || containsWater[adjacentCatchment]
+							|| isSpanningWaterContained(merged, catchment, adjacentCatchment, spanningWaterByCatchment, tracker);
+				}
 			}		
 			
 		}
 		
+		//union the polygons of each merged catchment
 		List<Polygon> keptPolys = new ArrayList<Polygon>();
 		for (Catchment catchment : tracker.getAllCatchments()) {
 			keptPolys.add(catchment.getPolygon());
@@ -646,9 +657,134 @@ public class RidgeCleaner {
 		//convert lines to features
 		SimpleFeatureCollection results = SpatialUtils.geomCollectionToSimpleFeatureCollection(geoms, ridgeFeatureType);
 		
+		recordStage("filter out false catchments", fc.size(), results.size(), start);
 		return results;		
 	}
 	
+	/**
+	 * checks whether each polygon feature contains water.  the polygons are checked in parallel.
+	 */
+	private boolean[] containsWater(final List<SimpleFeature> polyFeatures) throws IOException {
+		final boolean[] result = new boolean[polyFeatures.size()];
+		int numChunks = pool.getParallelism() * CHUNKS_PER_THREAD;
+		int chunkSize = Math.max(1, (polyFeatures.size() + numChunks - 1) / numChunks);
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int from = 0; from < polyFeatures.size(); from += chunkSize) {
+			final int chunkStart = from;
+			final int chunkEnd = Math.min(from + chunkSize, polyFeatures.size());
+			tasks.add(new Callable<Void>() {
+				public Void call() throws IOException {
+					for (int i = chunkStart; i < chunkEnd; i++) {
+						Polygon po = (Polygon)polyFeatures.get(i).getDefaultGeometry();
+						result[i] = water.containsWater(po);
+					}
+					return null;
+				}
+			});
+		}
+		runAll(tasks);
+		return result;
+	}
+	
+	/**
+	 * finds the water features which aren't within any single polygon, but are within the union of the 
+	 * polygons they intersect.  for each such water feature, the indexes of the polygons it intersects are 
+	 * recorded under the first of those polygons.
+	 */
+	private Map<Integer, List<int[]>> getSpanningWater(List<SimpleFeature> polyFeatures) throws IOException {
+		Geometry[] polys = new Geometry[polyFeatures.size()];
+		STRtree index = new STRtree();
+		for (int i = 0; i < polys.length; i++) {
+			polys[i] = (Geometry)polyFeatures.get(i).getDefaultGeometry();
+			index.insert(polys[i].getEnvelopeInternal(), i);
+		}
+		index.build();
+		
+		Map<Integer, List<int[]>> result = new HashMap<Integer, List<int[]>>();
+		SimpleFeatureIterator it = water.getFeatureSource().getFeatures().features();
+		try {
+			while(it.hasNext()) {
+				Geometry waterGeom = (Geometry)it.next().getDefaultGeometry();
+				if (waterGeom == null) {
+					continue;
+				}
+				List<Integer> intersecting = new ArrayList<Integer>();
+				boolean isWithinOne = false;
+				for (Object item : index.query(waterGeom.getEnvelopeInternal())) {
+					int i = (Integer)item;
+					if (!polys[i].intersects(waterGeom)) {
+						continue;
+					}
+					if (waterGeom.within(polys[i])) {
+						isWithinOne = true;
+						break;
+					}
+					intersecting.add(i);
+				}
+				if (isWithinOne || intersecting.size() < 2) {
+					continue;
+				}
+				
+				List<Geometry> spanned = new ArrayList<Geometry>(intersecting.size());
+				int[] polyIndexes = new int[intersecting.size()];
+				for (int k = 0; k < polyIndexes.length; k++) {
+					polyIndexes[k] = intersecting.get(k);
+					spanned.add(polys[polyIndexes[k]]);
+				}
+				//water which extends beyond the polygons can't be contained by any catchment
+				if (!waterGeom.within(CascadedPolygonUnion.union(spanned))) {
+					continue;
+				}
+				Arrays.sort(polyIndexes);
+				List<int[]> list = result.get(polyIndexes[0]);
+				if (list == null) {
+					list = new ArrayList<int[]>();
+					result.put(polyIndexes[0], list);
+				}
+				list.add(polyIndexes);
+			}
+		}
+		finally {
+			it.close();
+		}
+		return result;
+	}
+	
+	/**
+	 * checks whether a catchment, just merged from catchments 'a' and 'b', now includes all the polygons
+	 * spanned by one of their water features.  the water features recorded for 'a' and 'b' are moved to 
+	 * the merged catchment.
+	 */
+	private boolean isSpanningWaterContained(int merged, int a, int b, Map<Integer, List<int[]>> spanningWaterByCatchment, CatchmentUnionTracker tracker) {
+		List<int[]> listA = spanningWaterByCatchment.remove(a);
+		List<int[]> listB = spanningWaterByCatchment.remove(b);
+		List<int[]> list = new ArrayList<int[]>();
+		if (listA != null) {
+			list.addAll(listA);
+		}
+		if (listB != null) {
+			list.addAll(listB);
+		}
+		if (list.isEmpty()) {
+			return false;
+		}
+		spanningWaterByCatchment.put(merged, list);
+		
+		for (int[] polyIndexes : list) {
+			boolean isContained = true;
+			for (int polyIndex : polyIndexes) {
+				if (tracker.find(polyIndex) != merged) {
+					isContained = false;
+					break;
+				}
+			}
+			if (isContained) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
 	/**
 	 * Given a polygon and list of adjacent polygons, selects one of the adjacent polygons.
 	 * This implementation is not sophisticated.  One of the adjacent polygons is arbitrarily chosen.
@@ -872,21 +1008,15 @@ public class RidgeCleaner {
 		
 	}
 	
-	private List<SimpleFeature> getTouching(SimpleFeature polyFeature, SimpleFeatureCollection allPolyFeatures) {
-		String geomPropertyName = allPolyFeatures.getSchema().getGeometryDescriptor().getLocalName();
-		Geometry g = (Geometry)polyFeature.getDefaultGeometry();
-		
-		Filter filter = filterFactory.and(
-				//touches the input feature
-				filterFactory.intersects(
-						filterFactory.property(geomPropertyName), 
-						filterFactory.literal(g)),
-				//... but not the same as the input feature
-				filterFactory.not(filterFactory.id(polyFeature.getIdentifier()))
-				);
-		SimpleFeatureCollection matches = allPolyFeatures.subCollection(filter);
-
-		List<SimpleFeature> result = SpatialUtils.simpleFeatureCollectionToFeatList(matches);
+	/**
+	 * gets the polygon features which touch the polygon feature at the given index
+	 */
+	private List<SimpleFeature> getTouching(int index, List<SimpleFeature> polyFeatures, PolygonAdjacencyGraph adjacency) {
+		int[] neighbours = adjacency.getNeighbours(index);
+		List<SimpleFeature> result = new ArrayList<SimpleFeature>(neighbours.length);
+		for (int neighbour : neighbours) {
+			result.add(polyFeatures.get(neighbour));
+		}
 		return result;
 	}
 	
@@ -0,0 +1,465 @@
+package ca.bc.gov.catchment.ridgeclean;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.locationtech.jts.algorithm.LineIntersector;
+import org.locationtech.jts.algorithm.RobustLineIntersector;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.locationtech.jts.noding.BasicSegmentString;
+import org.locationtech.jts.noding.MCIndexSegmentSetMutualIntersector;
+import org.locationtech.jts.noding.NodedSegmentString;
+import org.locationtech.jts.noding.SegmentIntersector;
+import org.locationtech.jts.noding.SegmentString;
+
+import ca.bc.gov.catchment.utils.SpatialUtils;
+
+/**
+ * A planar graph of ridge lines.
+ *
+ * The lines are noded, then broken into segments, and segments which are shared by several lines (or which
+ * are repeated in one line) are kept once.  Nodes are the segment endpoints, and the degree of a node is
+ * the number of distinct segments which touch it.  The edges of the graph are the chains of segments
+ * between nodes whose degree isn't 2, so:
+ *  - overlapping ridges are merged into one edge
+ *  - ridges are split where they branch (degree >= 3)
+ *  - edges which end at a node of degree 1 are loose ends
+ *
+ * The pairs of input lines which intersect each other are also recorded while noding, so that crossing
+ * lines can be found without comparing every pair of lines.
+ *
+ * Noding is done in spatial tiles, which may run in parallel.  Each line belongs to the tile which 
+ * contains the centre of its bounding box, and only its own tile adds nodes to it.  A tile's lines are 
+ * intersected with every line which overlaps the tile (including lines of other tiles), so lines which 
+ * cross a tile boundary are noded by both tiles.  The intersection of two segments is always computed 
+ * with the segment of the lower line index first, so both tiles add exactly the same node.  The graph is 
+ * then built from the noded lines in their original order, so it doesn't depend on the number of tiles.
+ */
+public class RidgeGraph {
+
+	private Map<Coordinate, List<Coordinate>> adjacency;
+	private List<LineString> edges;
+	private List<int[]> intersectingLinePairs;
+
+	/**
+	 * @param lines ridge lines.  lines with fewer than two coordinates are ignored.
+	 */
+	public RidgeGraph(List<LineString> lines) {
+		NodedSegmentString[] nodedStrings = new NodedSegmentString[lines.size()];
+		List<int[]> pairs = new ArrayList<int[]>();
+		for (Tile tile : getTiles(lines, nodedStrings, 1)) {
+			pairs.addAll(tile.node());
+		}
+		build(nodedStrings, pairs);
+	}
+	
+	/**
+	 * @param lines ridge lines.  lines with fewer than two coordinates are ignored.
+	 * @param pool runs the tiles
+	 * @param numTiles the number of tiles to divide the lines into.  (some tiles may have no lines.)
+	 * @throws IOException if interrupted
+	 */
+	public RidgeGraph(List<LineString> lines, ExecutorService pool, int numTiles) throws IOException {
+		NodedSegmentString[] nodedStrings = new NodedSegmentString[lines.size()];
+		List<Callable<List<int[]>>> tasks = new ArrayList<Callable<List<int[]>>>();
+		for (final Tile tile : getTiles(lines, nodedStrings, numTiles)) {
+			tasks.add(new Callable<List<int[]>>() {
+				public List<int[]> call() {
+					return tile.node();
+				}
+			});
+		}
+		
+		List<int[]> pairs = new ArrayList<int[]>();
+		try {
+			for (Future<List<int[]>> future : pool.invokeAll(tasks)) {
+				pairs.addAll(future.get());
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while noding ridges", e);
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException)e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+		build(nodedStrings, pairs);
+	}
+
+	/**
+	 * gets the edges of the graph.  each edge is a chain of segments between two nodes whose degree
+	 * isn't 2 (or a closed ring, if no node along the chain has a degree other than 2).
+	 */
+	public List<LineString> getEdges() {
+		return edges;
+	}
+
+	/**
+	 * gets the number of distinct segments which touch the given coordinate.  0 if the coordinate
+	 * isn't a node of the graph.
+	 */
+	public int getDegree(Coordinate c) {
+		List<Coordinate> neighbours = adjacency.get(c);
+		return neighbours != null ? neighbours.size() : 0;
+	}
+
+	/**
+	 * gets the nodes of the graph with degree >= 3 (where ridges branch)
+	 */
+	public List<Coordinate> getJunctions() {
+		List<Coordinate> result = new ArrayList<Coordinate>();
+		for (Map.Entry<Coordinate, List<Coordinate>> entry : adjacency.entrySet()) {
+			if (entry.getValue().size() >= 3) {
+				result.add(entry.getKey());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * gets the pairs of input lines (as indexes into the list given to the constructor) which intersect
+	 * or touch.  the lower index of each pair is first.  these are the candidates for crossing lines.
+	 */
+	public List<int[]> getIntersectingLinePairs() {
+		return intersectingLinePairs;
+	}
+
+	// Private
+	// ------------------------------------------------------------------------
+
+	/**
+	 * builds the graph from the noded lines
+	 * @param nodedStrings the noded lines, by line index.  null for lines which were ignored.
+	 * @param pairs the intersecting pairs found by each tile.  (each pair is found by both of its tiles.)
+	 */
+	private void build(NodedSegmentString[] nodedStrings, List<int[]> pairs) {
+		this.adjacency = new LinkedHashMap<Coordinate, List<Coordinate>>();
+		this.edges = new ArrayList<LineString>();
+		
+		//each pair once, in order of the lower line index then the higher
+		TreeSet<Long> pairKeys = new TreeSet<Long>();
+		for (int[] pair : pairs) {
+			pairKeys.add(((long)pair[0] << 32) | pair[1]);
+		}
+		this.intersectingLinePairs = new ArrayList<int[]>(pairKeys.size());
+		for (long key : pairKeys) {
+			intersectingLinePairs.add(new int[] {(int)(key >>> 32), (int)key});
+		}
+		
+		List<SegmentString> segmentStrings = new ArrayList<SegmentString>();
+		for (NodedSegmentString nodedString : nodedStrings) {
+			if (nodedString != null) {
+				segmentStrings.add(nodedString);
+			}
+		}
+
+		//add each distinct segment to the graph.  coordinates are compared in 2D.  the first instance of
+		//each coordinate is kept (so its z value is kept).
+		Map<Coordinate, Coordinate> canonical = new HashMap<Coordinate, Coordinate>();
+		for (Object item : NodedSegmentString.getNodedSubstrings(segmentStrings)) {
+			SegmentString nodedString = (SegmentString)item;
+			Coordinate[] coords = nodedString.getCoordinates();
+			for (int i = 1; i < coords.length; i++) {
+				Coordinate a = getCanonical(canonical, coords[i-1]);
+				Coordinate b = getCanonical(canonical, coords[i]);
+				if (a.equals2D(b)) {
+					continue;
+				}
+				List<Coordinate> neighboursOfA = getNeighbours(a);
+				if (!neighboursOfA.contains(b)) {
+					neighboursOfA.add(b);
+					getNeighbours(b).add(a);
+				}
+			}
+		}
+
+		buildEdges();
+	}
+	
+	/**
+	 * divides the lines into a grid of about 'numTiles' tiles, by the centre of each line's bounding box
+	 * @param nodedStrings filled in by the tiles as they are noded
+	 */
+	private static List<Tile> getTiles(List<LineString> lines, NodedSegmentString[] nodedStrings, int numTiles) {
+		STRtree index = new STRtree();
+		Envelope extent = new Envelope();
+		for (int i = 0; i < lines.size(); i++) {
+			LineString line = lines.get(i);
+			if (line != null && line.getNumPoints() >= 2) {
+				index.insert(line.getEnvelopeInternal(), i);
+				extent.expandToInclude(line.getEnvelopeInternal());
+			}
+		}
+		//built now, so the tiles only read the index
+		index.build();
+		
+		int numCols = (int)Math.ceil(Math.sqrt(numTiles));
+		int numRows = (numTiles + numCols - 1) / numCols;
+		Map<Integer, List<Integer>> linesByTile = new TreeMap<Integer, List<Integer>>();
+		for (int i = 0; i < lines.size(); i++) {
+			LineString line = lines.get(i);
+			if (line == null || line.getNumPoints() < 2) {
+				continue;
+			}
+			Coordinate centre = line.getEnvelopeInternal().centre();
+			int col = getCell(centre.x, extent.getMinX(), extent.getWidth(), numCols);
+			int row = getCell(centre.y, extent.getMinY(), extent.getHeight(), numRows);
+			int tileNum = row * numCols + col;
+			List<Integer> tileLines = linesByTile.get(tileNum);
+			if (tileLines == null) {
+				tileLines = new ArrayList<Integer>();
+				linesByTile.put(tileNum, tileLines);
+			}
+			tileLines.add(i);
+		}
+		
+		List<Tile> tiles = new ArrayList<Tile>(linesByTile.size());
+		for (List<Integer> tileLines : linesByTile.values()) {
+			tiles.add(new Tile(lines, tileLines, index, nodedStrings));
+		}
+		return tiles;
+	}
+	
+	private static int getCell(double value, double min, double size, int numCells) {
+		if (size <= 0) {
+			return 0;
+		}
+		return Math.min(numCells - 1, (int)((value - min) / size * numCells));
+	}
+
+	private List<Coordinate> getNeighbours(Coordinate c) {
+		List<Coordinate> neighbours = adjacency.get(c);
+		if (neighbours == null) {
+			neighbours = new ArrayList<Coordinate>(2);
+			adjacency.put(c, neighbours);
+		}
+		return neighbours;
+	}
+
+	private static Coordinate getCanonical(Map<Coordinate, Coordinate> canonical, Coordinate c) {
+		Coordinate existing = canonical.get(c);
+		if (existing == null) {
+			canonical.put(c, c);
+			return c;
+		}
+		return existing;
+	}
+
+	private void buildEdges() {
+		Set<Segment> visited = new HashSet<Segment>();
+
+		//chains which start and end at a node of degree != 2
+		for (Map.Entry<Coordinate, List<Coordinate>> entry : adjacency.entrySet()) {
+			Coordinate node = entry.getKey();
+			if (entry.getValue().size() == 2) {
+				continue;
+			}
+			for (Coordinate next : entry.getValue()) {
+				if (!visited.contains(new Segment(node, next))) {
+					edges.add(walk(node, next, visited));
+				}
+			}
+		}
+
+		//closed rings in which every node has degree 2
+		for (Map.Entry<Coordinate, List<Coordinate>> entry : adjacency.entrySet()) {
+			Coordinate node = entry.getKey();
+			for (Coordinate next : entry.getValue()) {
+				if (!visited.contains(new Segment(node, next))) {
+					edges.add(walk(node, next, visited));
+				}
+			}
+		}
+	}
+
+	/**
+	 * follows the chain of segments which starts with (start, next) until it reaches a node whose degree
+	 * isn't 2, or returns to the start
+	 */
+	private LineString walk(Coordinate start, Coordinate next, Set<Segment> visited) {
+		List<Coordinate> coords = new ArrayList<Coordinate>();
+		coords.add(start);
+		Coordinate prev = start;
+		Coordinate current = next;
+		visited.add(new Segment(prev, current));
+		coords.add(current);
+		while (getDegree(current) == 2 && !current.equals2D(start)) {
+			List<Coordinate> neighbours = adjacency.get(current);
+			Coordinate following = neighbours.get(0).equals2D(prev) ? neighbours.get(1) : neighbours.get(0);
+			Segment segment = new Segment(current, following);
+			if (!visited.add(segment)) {
+				break;
+			}
+			coords.add(following);
+			prev = current;
+			current = following;
+		}
+		return SpatialUtils.toLineString(coords);
+	}
+
+	/**
+	 * An undirected segment, for recording which segments have been included in an edge
+	 */
+	private static class Segment {
+
+		private Coordinate c0;
+		private Coordinate c1;
+
+		Segment(Coordinate a, Coordinate b) {
+			if (a.compareTo(b) <= 0) {
+				this.c0 = a;
+				this.c1 = b;
+			}
+			else {
+				this.c0 = b;
+				this.c1 = a;
+			}
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Segment)) {
+				return false;
+			}
+			Segment other = (Segment)o;
+			return c0.equals2D(other.c0) && c1.equals2D(other.c1);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * c0.hashCode() + c1.hashCode();
+		}
+	}
+
+	/**
+	 * The lines of one tile.  Noding a tile only changes the noded strings of its own lines.
+	 */
+	private static class Tile {
+		
+		private List<LineString> lines;
+		private List<Integer> tileLines;
+		private STRtree index;
+		private NodedSegmentString[] nodedStrings;
+		
+		Tile(List<LineString> lines, List<Integer> tileLines, STRtree index, NodedSegmentString[] nodedStrings) {
+			this.lines = lines;
+			this.tileLines = tileLines;
+			this.index = index;
+			this.nodedStrings = nodedStrings;
+		}
+		
+		/**
+		 * nodes the tile's lines with every line which overlaps the tile
+		 * @return the pairs of lines which intersect, for the tile's lines
+		 */
+		List<int[]> node() {
+			List<SegmentString> own = new ArrayList<SegmentString>(tileLines.size());
+			Envelope tileEnvelope = new Envelope();
+			for (int i : tileLines) {
+				LineString line = lines.get(i);
+				NodedSegmentString nodedString = new NodedSegmentString(line.getCoordinates(), i);
+				nodedStrings[i] = nodedString;
+				own.add(nodedString);
+				tileEnvelope.expandToInclude(line.getEnvelopeInternal());
+			}
+			
+			//the overlapping lines (including the tile's own lines) are only read
+			List<SegmentString> overlapping = new ArrayList<SegmentString>();
+			for (Object item : index.query(tileEnvelope)) {
+				int j = (Integer)item;
+				overlapping.add(new BasicSegmentString(lines.get(j).getCoordinates(), j));
+			}
+			
+			TileIntersector intersector = new TileIntersector();
+			MCIndexSegmentSetMutualIntersector mutualIntersector = new MCIndexSegmentSetMutualIntersector(overlapping);
+			mutualIntersector.process(own, intersector);
+			return intersector.pairs;
+		}
+	}
+
+	/**
+	 * Adds nodes to a tile's own lines (the NodedSegmentStrings) where they intersect an overlapping line,
+	 * and records the pairs of different lines which intersect
+	 */
+	private static class TileIntersector implements SegmentIntersector {
+
+		private LineIntersector li;
+		private Set<Long> pairKeys;
+		private List<int[]> pairs;
+
+		TileIntersector() {
+			this.li = new RobustLineIntersector();
+			this.pairKeys = new HashSet<Long>();
+			this.pairs = new ArrayList<int[]>();
+		}
+
+		public void processIntersections(SegmentString e0, int segIndex0, SegmentString e1, int segIndex1) {
+			NodedSegmentString own;
+			SegmentString other;
+			int ownSegIndex;
+			int otherSegIndex;
+			if (e0 instanceof NodedSegmentString) {
+				own = (NodedSegmentString)e0;
+				ownSegIndex = segIndex0;
+				other = e1;
+				otherSegIndex = segIndex1;
+			}
+			else {
+				own = (NodedSegmentString)e1;
+				ownSegIndex = segIndex1;
+				other = e0;
+				otherSegIndex = segIndex0;
+			}
+			int ownLine = (Integer)own.getData();
+			int otherLine = (Integer)other.getData();
+			if (ownLine == otherLine && ownSegIndex == otherSegIndex) {
+				return;
+			}
+			
+			//the same order in whichever tile the intersection is computed, so the node is the same
+			boolean isOwnFirst = ownLine < otherLine || (ownLine == otherLine && ownSegIndex < otherSegIndex);
+			Coordinate[] ownCoords = own.getCoordinates();
+			Coordinate[] otherCoords = other.getCoordinates();
+			if (isOwnFirst) {
+				li.computeIntersection(ownCoords[ownSegIndex], ownCoords[ownSegIndex+1], otherCoords[otherSegIndex], otherCoords[otherSegIndex+1]);
+			}
+			else {
+				li.computeIntersection(otherCoords[otherSegIndex], otherCoords[otherSegIndex+1], ownCoords[ownSegIndex], ownCoords[ownSegIndex+1]);
+			}
+			if (!li.hasIntersection()) {
+				return;
+			}
+			own.addIntersections(li, ownSegIndex, isOwnFirst ? 0 : 1);
+			
+			if (ownLine != otherLine) {
+				int lo = Math.min(ownLine, otherLine);
+				int hi = Math.max(ownLine, otherLine);
+				if (pairKeys.add(((long)lo << 32) | hi)) {
+					pairs.add(new int[] {lo, hi});
+				}
+			}
+		}
+
+		public boolean isDone() {
+			return false;
+		}
+	}
+}
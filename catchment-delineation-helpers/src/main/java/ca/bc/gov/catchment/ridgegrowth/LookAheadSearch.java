@@ -0,0 +1,310 @@
+package ca.bc.gov.catchment.ridgegrowth;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+
+import ca.bc.gov.catchment.tin.TinEdges;
+import ca.bc.gov.catchment.tin.VertexTable;
+import ca.bc.gov.catchment.water.Water;
+
+/**
+ * Finds the best look-ahead extension of a ridge, for HillClimbStrategy.
+ *
+ * Extensions are ranked by:
+ *  1. is the end of the extension moving away from the stem?
+ *  2. is the start of the extension moving away from the stem?
+ *  3. does the extension end at least as high as it starts?
+ *  4. number of coordinates
+ *  5. (average elevation - starting elevation) / length
+ * Ties are won by the extension which would be listed first by an exhaustive enumeration (neighbours in
+ * the order of ElevationPointFitness.getCoordinateComparator, and longer extensions before the shorter 
+ * extensions they start with), so the result is the same as a stable sort of every possible extension.
+ *
+ * The search is a depth-first branch and bound over vertex ids.  No geometries are created, except for the
+ * best extension.  Before searching below a partial extension, an upper bound on the rank of any extension
+ * that starts with it is calculated.  If the best extension found so far ranks at least as high as the
+ * bound, that branch is skipped.  The bound uses the highest elevation reachable from a vertex in N
+ * steps, which is memoised per vertex.  Whether each vertex may be part of a ridge (because of water) is
+ * also memoised.  The memo tables are shared by all threads which use the search.  (Concurrent writes
+ * of the same entry always write the same value.)
+ */
+class LookAheadSearch {
+
+	private static final byte UNKNOWN = 0;
+	private static final byte VALID = 1;
+	private static final byte INVALID = 2;
+
+	//relative tolerance on the slope bound, so that rounding can't cause a branch to be skipped
+	private static final double BOUND_TOLERANCE = 1e-9;
+
+	private TinEdges tinEdges;
+	private Water water;
+	private VertexTable vertices;
+	private int maxExtensionLen;
+	private GeometryFactory geometryFactory;
+
+	private byte[] waterValidity;
+
+	//maxReachableZ[r-1][v] is an upper bound on the elevation of any vertex 1 to r steps from v. NaN if unknown.
+	private float[][] maxReachableZ;
+
+	public LookAheadSearch(TinEdges tinEdges, Water water, int maxExtensionLen, GeometryFactory geometryFactory) throws IOException {
+		if (maxExtensionLen < 1) {
+			throw new IllegalArgumentException("'maxExtensionLen' must be >= 1");
+		}
+		this.tinEdges = tinEdges;
+		this.water = water;
+		this.vertices = tinEdges.getVertexTable();
+		this.maxExtensionLen = maxExtensionLen;
+		this.geometryFactory = geometryFactory;
+
+		int numVertices = vertices.getNumVertices();
+		this.waterValidity = new byte[numVertices];
+		this.maxReachableZ = new float[maxExtensionLen - 1][];
+		for (int r = 0; r < maxReachableZ.length; r++) {
+			maxReachableZ[r] = new float[numVertices];
+			Arrays.fill(maxReachableZ[r], Float.NaN);
+		}
+	}
+
+	/**
+	 * Finds the best extension of the stem.  The stem is temporarily extended during the search, but is
+	 * unchanged when this function returns.
+	 * @param stem
+	 * @return the best extension, starting with the last coordinate of the stem.  null if the stem can't
+	 * be extended.
+	 * @throws IOException
+	 */
+	public LineString findBestExtension(RidgePath stem) throws IOException {
+		Search search = new Search(stem);
+		search.run(0, stem.getLastVertexId(), false);
+		if (search.bestLen == 0) {
+			return null;
+		}
+		int[] ids = new int[search.bestLen + 1];
+		ids[0] = stem.getLastVertexId();
+		System.arraycopy(search.bestExtension, 0, ids, 1, search.bestLen);
+		return vertices.toLineString(ids, ids.length, geometryFactory);
+	}
+
+	// Private
+	// ------------------------------------------------------------------------
+
+	/**
+	 * The state of one search
+	 */
+	private class Search {
+
+		private RidgePath path;
+		private double refX;
+		private double refY;
+		private double stemEndDist;
+		private double z0;
+
+		//the current partial extension.  prefixZ[d] and prefixLength[d] are the sum of elevations and
+		//the length of the first d extension coordinates (plus the starting coordinate)
+		private int[] extension;
+		private double[] prefixZ;
+		private double[] prefixLength;
+
+		private int[] bestExtension;
+		private int bestLen;
+		private boolean bestEndMovingAway;
+		private boolean bestStartMovingAway;
+		private boolean bestEndsHigher;
+		private double bestSlope;
+
+		Search(RidgePath stem) {
+			this.path = stem;
+
+			//reference point for the "moving away" test.  see RidgeGrowthHelpers.isMovingAway
+			int refId = stem.getVertexId((int)Math.floor(stem.size() * 0.75));
+			int startId = stem.getLastVertexId();
+			this.refX = vertices.getX(refId);
+			this.refY = vertices.getY(refId);
+			this.stemEndDist = Math.hypot(vertices.getX(startId) - refX, vertices.getY(startId) - refY);
+			this.z0 = vertices.getZ(startId);
+
+			this.extension = new int[maxExtensionLen];
+			this.prefixZ = new double[maxExtensionLen + 1];
+			this.prefixLength = new double[maxExtensionLen + 1];
+			this.prefixZ[0] = 0 + z0;
+			this.prefixLength[0] = 0;
+
+			this.bestExtension = new int[maxExtensionLen];
+			this.bestLen = 0;
+		}
+
+		/**
+		 * @param depth the number of coordinates in the current partial extension
+		 * @param fromId the last vertex of the current partial extension
+		 * @param startMovingAway whether the first coordinate of the extension is moving away (if depth > 0)
+		 */
+		void run(int depth, int fromId, boolean startMovingAway) throws IOException {
+			int[] next = tinEdges.getConnectedVertexIds(fromId);
+			sortByElevation(next);
+
+			for (int id : next) {
+				if (path.contains(id) || !isValidForWater(id)) {
+					continue;
+				}
+
+				int d = depth + 1;
+				extension[depth] = id;
+				double dx = vertices.getX(id) - vertices.getX(fromId);
+				double dy = vertices.getY(id) - vertices.getY(fromId);
+				prefixLength[d] = prefixLength[depth] + Math.sqrt(dx*dx + dy*dy);
+				prefixZ[d] = prefixZ[depth] + vertices.getZ(id);
+				boolean isStartMovingAway = depth == 0 ? isMovingAway(id) : startMovingAway;
+
+				path.add(id);
+				if (d < maxExtensionLen && !canSkip(d, id, isStartMovingAway)) {
+					run(d, id, isStartMovingAway);
+				}
+				path.removeLast();
+
+				//longer extensions are considered before the shorter extension they start with
+				consider(d, id, isStartMovingAway);
+			}
+		}
+
+		private boolean isMovingAway(int id) {
+			return Math.hypot(vertices.getX(id) - refX, vertices.getY(id) - refY) > stemEndDist;
+		}
+
+		private void consider(int len, int endId, boolean startMovingAway) {
+			boolean endMovingAway = isMovingAway(endId);
+			boolean endsHigher = z0 <= vertices.getZ(endId);
+			double slope = (prefixZ[len] / (len + 1) - z0) / prefixLength[len];
+			if (bestLen == 0 || compare(endMovingAway, startMovingAway, endsHigher, len, slope) < 0) {
+				System.arraycopy(extension, 0, bestExtension, 0, len);
+				bestLen = len;
+				bestEndMovingAway = endMovingAway;
+				bestStartMovingAway = startMovingAway;
+				bestEndsHigher = endsHigher;
+				bestSlope = slope;
+			}
+		}
+
+		/**
+		 * compares the given extension with the best so far.  negative if the given extension is better,
+		 * positive if the best so far is better, 0 if equal.
+		 */
+		private int compare(boolean endMovingAway, boolean startMovingAway, boolean endsHigher, int len, double slope) {
+			if (endMovingAway != bestEndMovingAway) {
+				return endMovingAway ? -1 : 1;
+			}
+			if (startMovingAway != bestStartMovingAway) {
+				return startMovingAway ? -1 : 1;
+			}
+			if (endsHigher != bestEndsHigher) {
+				return endsHigher ? -1 : 1;
+			}
+			if (len != bestLen) {
+				return len > bestLen ? -1 : 1;
+			}
+			return slope > bestSlope ? -1
+					: slope < bestSlope ? 1
+					: 0;
+		}
+
+		/**
+		 * determines whether no extension of the current partial extension can rank higher than the best
+		 * so far.
+		 * The best possible rank is: moving away at the end, ends higher, maximum length, and the highest
+		 * possible slope.  The slope of a full length extension can't exceed the slope it would have if
+		 * every remaining coordinate was at the highest elevation reachable in the remaining steps,
+		 * with no additional length.
+		 */
+		private boolean canSkip(int depth, int fromId, boolean startMovingAway) throws IOException {
+			if (bestLen == 0) {
+				return false;
+			}
+			int remaining = maxExtensionLen - depth;
+			double maxZ = getMaxReachableZ(fromId, remaining);
+			if (maxZ == Double.NEGATIVE_INFINITY) {
+				return true; //no further extension is possible
+			}
+
+			double maxRise = (prefixZ[depth] + remaining * maxZ) / (maxExtensionLen + 1) - z0;
+			double slopeBound;
+			if (Double.isNaN(maxRise) || prefixLength[depth] <= 0) {
+				slopeBound = Double.POSITIVE_INFINITY;
+			}
+			else if (maxRise >= 0) {
+				slopeBound = maxRise / prefixLength[depth];
+				slopeBound += Math.abs(slopeBound) * BOUND_TOLERANCE;
+			}
+			else {
+				slopeBound = 0;
+			}
+
+			//compare the best so far with the bound.  skip if the best so far is at least as good
+			return compare(true, startMovingAway, true, maxExtensionLen, slopeBound) >= 0;
+		}
+	}
+
+	private boolean isValidForWater(int id) throws IOException {
+		byte validity = waterValidity[id];
+		if (validity == UNKNOWN) {
+			//it's okay to touch water at a confluence, but nowhere else
+			org.locationtech.jts.geom.Coordinate c = vertices.getCoordinate(id);
+			boolean isValid = !(water.isTouchingWater(c) && !water.isConfluence(c));
+			validity = isValid ? VALID : INVALID;
+			waterValidity[id] = validity;
+		}
+		return validity == VALID;
+	}
+
+	/**
+	 * gets an upper bound on the elevation of every vertex within 1 to 'steps' edges of the given vertex
+	 * (-infinity if the vertex has no neighbours)
+	 */
+	private double getMaxReachableZ(int vertexId, int steps) throws IOException {
+		float[] memo = maxReachableZ[steps - 1];
+		float cached = memo[vertexId];
+		if (!Float.isNaN(cached)) {
+			return cached;
+		}
+
+		double max = Double.NEGATIVE_INFINITY;
+		for (int neighbourId : tinEdges.getConnectedVertexIds(vertexId)) {
+			double z = vertices.getZ(neighbourId);
+			if (Double.isNaN(z)) {
+				z = Double.POSITIVE_INFINITY;
+			}
+			max = Math.max(max, z);
+			if (steps > 1) {
+				max = Math.max(max, getMaxReachableZ(neighbourId, steps - 1));
+			}
+		}
+
+		//round up, so the value remains an upper bound
+		float result = (float)max;
+		if (result < max) {
+			result = Math.nextUp(result);
+		}
+		memo[vertexId] = result;
+		return result;
+	}
+
+	/**
+	 * sorts vertex ids from highest to lowest elevation.  stable, to match sorting with the elevation
+	 * comparator.
+	 */
+	private void sortByElevation(int[] ids) {
+		for (int i = 1; i < ids.length; i++) {
+			int id = ids[i];
+			double z = vertices.getZ(id);
+			int j = i;
+			while (j > 0 && vertices.getZ(ids[j-1]) < z) {
+				ids[j] = ids[j-1];
+				j--;
+			}
+			ids[j] = id;
+		}
+	}
+}
@@ -5,22 +5,25 @@ import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 
+import org.geotools.geometry.jts.JTSFactoryFinder;
 import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.LineString;
 import org.opengis.feature.simple.SimpleFeature;
 
 import ca.bc.gov.catchment.tin.TinEdges;
-import ca.bc.gov.catchment.utils.SpatialUtils;
 import ca.bc.gov.catchment.water.Water;
 
 public class MedialAxisStrategy implements RidgeGrowthStrategy {
 
 	private Water water;
 	private TinEdges tinEdges;
+	private GeometryFactory geometryFactory;
 	
 	public MedialAxisStrategy(Water water, TinEdges tinEdges) {
 		this.water = water;
 		this.tinEdges = tinEdges;
+		this.geometryFactory = JTSFactoryFinder.getGeometryFactory();
 	}
 		
 	public LineString growRidge(RidgeGrowthTask task) throws IOException {
@@ -40,7 +43,7 @@ public class MedialAxisStrategy implements RidgeGrowthStrategy {
 			throw new IllegalArgumentException("'stemCoords' must contain at least two coordinates");
 		}
 				
-		LineString ridge = stem;		
+		RidgePath ridge = RidgePath.fromLineString(stem, tinEdges.getVertexTable());
 		while(true) {
 			
 			//boolean loopedBackOnSelf = isLoopedBackOnSelf(ridge);
@@ -49,10 +52,8 @@ public class MedialAxisStrategy implements RidgeGrowthStrategy {
 			//}
 			Coordinate nextCoord = chooseNext(ridge, adjacentWater);
 			
-			boolean isTouchingWater = water.isTouchingWater(nextCoord);
-			
 			boolean endConditionMet = nextCoord == null ||
-					isTouchingWater;
+					water.isTouchingWater(nextCoord);
 					
 			if (endConditionMet) {
 				break;
@@ -60,24 +61,20 @@ public class MedialAxisStrategy implements RidgeGrowthStrategy {
 			//System.out.println("chose:" +nextCoord.getZ()+" dist:"+water.getDistanceToNearestWater(nextCoord));
 			
 			//extend the ridge with the new coordinate
-			List<Coordinate> existingCoords = SpatialUtils.toCoordinateList(ridge.getCoordinates());
-			List<Coordinate> extendedCoords = new ArrayList<Coordinate>();
-			extendedCoords.addAll(existingCoords);
-			extendedCoords.add(nextCoord);
-			ridge = SpatialUtils.toLineString(extendedCoords);
+			ridge.add(nextCoord);
 		}
 		
-		return ridge;
+		return ridge.toLineString(geometryFactory);
 	}
 	
-	public boolean canChooseNext(LineString stem, List<SimpleFeature> adjacentWater) {
+	public boolean canChooseNext(RidgePath stem, List<SimpleFeature> adjacentWater) {
 		return true;
 	}
 	
-	public Coordinate chooseNext(LineString stem, List<SimpleFeature> adjacentWater) throws IOException {
+	public Coordinate chooseNext(RidgePath stem, List<SimpleFeature> adjacentWater) throws IOException {
 		
 		Coordinate nextCoord = null;
-		Coordinate leadingCoord = stem.getCoordinateN(stem.getNumPoints()-1);
+		Coordinate leadingCoord = stem.getLastCoordinate();
 		
 		List<Coordinate> growthPossibilities = getPossibleNextCoords(stem, true);
 		if (growthPossibilities.size() == 0) {
@@ -116,10 +113,9 @@ public class MedialAxisStrategy implements RidgeGrowthStrategy {
 	 * @return
 	 * @throws IOException
 	 */
-	private List<Coordinate> getPossibleNextCoords(LineString stem, boolean validOnly) throws IOException {
+	private List<Coordinate> getPossibleNextCoords(RidgePath stem, boolean validOnly) throws IOException {
 				
-		List<Coordinate> stemCoords = SpatialUtils.toCoordinateList(stem.getCoordinates());
-		Coordinate leadingCoord = stem.getCoordinateN(stem.getNumPoints()-1);
+		Coordinate leadingCoord = stem.getLastCoordinate();
 		List<Coordinate> nextCoordsToConsider = tinEdges.getConnectedCoordinates(leadingCoord);
 		Comparator<Coordinate> uphillComparator = getUphillComparator(stem);
 		nextCoordsToConsider.sort(uphillComparator);
@@ -127,7 +123,7 @@ public class MedialAxisStrategy implements RidgeGrowthStrategy {
 		List<Coordinate> coordsToConsider = new ArrayList<Coordinate>();
 
 		for (Coordinate ext : nextCoordsToConsider) {
-			boolean isValid = RidgeGrowthHelpers.isCoordValidInRidge(ext, stemCoords, water);
+			boolean isValid = RidgeGrowthHelpers.isCoordValidInRidge(ext, stem, water);
 			//boolean isHigher = isHigherWithinUncertainty(ext, leadingCoord);
 			if (validOnly && !isValid) {
 				continue;
@@ -144,7 +140,7 @@ public class MedialAxisStrategy implements RidgeGrowthStrategy {
 	}
 	
 
-	private Comparator<Coordinate> getUphillComparator(final LineString stem) {
+	private Comparator<Coordinate> getUphillComparator(final RidgePath stem) {
 		Comparator<Coordinate> comparator = new Comparator<Coordinate>() {
 			public int compare(Coordinate c1, Coordinate c2) {
 
@@ -168,7 +164,7 @@ public class MedialAxisStrategy implements RidgeGrowthStrategy {
 		return comparator;		
 	}
 	
-	private Comparator<Coordinate> getDownhillComparator(final LineString stem) {
+	private Comparator<Coordinate> getDownhillComparator(final RidgePath stem) {
 		Comparator<Coordinate> comparator = new Comparator<Coordinate>() {
 			public int compare(Coordinate c1, Coordinate c2) {
 				
@@ -1,15 +1,15 @@
 package ca.bc.gov.catchment.ridgegrowth;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.List;
 
+import org.geotools.geometry.jts.JTSFactoryFinder;
 import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.LineString;
 import org.opengis.feature.simple.SimpleFeature;
 
 import ca.bc.gov.catchment.tin.TinEdges;
-import ca.bc.gov.catchment.utils.SpatialUtils;
 import ca.bc.gov.catchment.water.Water;
 
 /**
@@ -26,12 +26,14 @@ public class PlanAPlanBStrategy implements RidgeGrowthStrategy {
 	private RidgeGrowthStrategy planB;
 	private Water water;
 	private TinEdges tinEdges;
+	private GeometryFactory geometryFactory;
 	
 	public PlanAPlanBStrategy(RidgeGrowthStrategy planA, RidgeGrowthStrategy planB, Water water, TinEdges tinEdges) {
 		this.planA = planA;
 		this.planB = planB;
 		this.water = water;
 		this.tinEdges = tinEdges;
+		this.geometryFactory = JTSFactoryFinder.getGeometryFactory();
 	}
 	
 	public LineString growRidge(RidgeGrowthTask task) throws IOException {
@@ -54,15 +56,13 @@ public class PlanAPlanBStrategy implements RidgeGrowthStrategy {
 			throw new IllegalArgumentException("'stemCoords' must contain at least two coordinates");
 		}
 		
-		LineString ridge = stem;
+		RidgePath ridge = RidgePath.fromLineString(stem, tinEdges.getVertexTable());
 		while(true) {
 			
 			Coordinate nextCoord = chooseNext(ridge, adjacentWater);
 			
-			boolean isTouchingWater = water.isTouchingWater(nextCoord);
-			
 			boolean endConditionMet = nextCoord == null ||
-					isTouchingWater;
+					water.isTouchingWater(nextCoord);
 			
 			if (endConditionMet) {
 				break;
@@ -70,17 +70,13 @@ public class PlanAPlanBStrategy implements RidgeGrowthStrategy {
 			//System.out.println("chose:" +nextCoord.getZ()+" dist:"+water.getDistanceToNearestWater(nextCoord));
 			
 			//extend the ridge with the new coordinate
-			List<Coordinate> existingCoords = SpatialUtils.toCoordinateList(ridge.getCoordinates());
-			List<Coordinate> extendedCoords = new ArrayList<Coordinate>();
-			extendedCoords.addAll(existingCoords);
-			extendedCoords.add(nextCoord);
-			ridge = SpatialUtils.toLineString(extendedCoords);
+			ridge.add(nextCoord);
 		}
 		
-		return ridge;
+		return ridge.toLineString(geometryFactory);
 	}
 	
-	public boolean canChooseNext(LineString stem, List<SimpleFeature> adjacentWater) throws IOException {
+	public boolean canChooseNext(RidgePath stem, List<SimpleFeature> adjacentWater) throws IOException {
 		RidgeGrowthStrategy strategy = 
 				planA.canChooseNext(stem, adjacentWater) ?
 						planA :
@@ -88,7 +84,7 @@ public class PlanAPlanBStrategy implements RidgeGrowthStrategy {
 		return strategy.canChooseNext(stem, adjacentWater);
 	}
 	
-	public Coordinate chooseNext(LineString stem, List<SimpleFeature> adjacentWater) throws IOException {
+	public Coordinate chooseNext(RidgePath stem, List<SimpleFeature> adjacentWater) throws IOException {
 		
 		Coordinate nextCoord = planA.chooseNext(stem, adjacentWater);
 		if (nextCoord == null) {
@@ -2,11 +2,23 @@ package ca.bc.gov.catchment.ridgegrowth;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import org.geotools.data.DataUtilities;
 import org.geotools.data.simple.SimpleFeatureCollection;
@@ -27,6 +39,7 @@ import ca.bc.gov.catchment.routes.RouteException;
 import ca.bc.gov.catchment.routes.WaterAwareLineStringRouter;
 import ca.bc.gov.catchment.tin.Edge;
 import ca.bc.gov.catchment.tin.TinEdges;
+import ca.bc.gov.catchment.utils.HilbertCurve;
 import ca.bc.gov.catchment.utils.SpatialUtils;
 import ca.bc.gov.catchment.utils.VectorUtils;
 import ca.bc.gov.catchment.water.Water;
@@ -53,6 +66,7 @@ import ca.bc.gov.catchment.water.Water;
 public class RidgeGrower {
 
 	protected static final int NUM_SEED_POINTS_FOR_ISOLATED_LAKE = 2;
+	private static final int PARTITIONS_PER_THREAD = 4; //more partitions than threads, to balance the load
 	protected static final String RIDGE_TABLE_NAME = "ridges";
 	protected Water water;
 	protected TinEdges tinEdges;	
@@ -60,6 +74,12 @@ public class RidgeGrower {
 	private SectionFitness seedEdgeFitness;
 	private RidgeGrowthStrategy strategy;
 	private int numThreads;
+	private long taskTimeoutMs;
+	private boolean partitioned;
+	private List<RidgeGrowthListener> listeners;
+	private volatile boolean cancelRequested;
+	private ConcurrentLinkedQueue<CompletableFuture<LineString>> pendingRidges;
+	private AtomicInteger numRidgesComplete;
 	
 	public RidgeGrower(Water water, TinEdges tinEdges, RidgeGrowthStrategy strategy) {
 		this(water,  tinEdges,  strategy, 1);
@@ -71,6 +91,12 @@ public class RidgeGrower {
 		this.strategy = strategy;
 		this.seedEdgeFitness = new ElevationSectionFitness(tinEdges);	
 		this.numThreads = numThreads;
+		this.taskTimeoutMs = 0;
+		this.partitioned = false;
+		this.listeners = new ArrayList<RidgeGrowthListener>();
+		this.cancelRequested = false;
+		this.pendingRidges = new ConcurrentLinkedQueue<CompletableFuture<LineString>>();
+		this.numRidgesComplete = new AtomicInteger();
 		
 		//create a feature type for the ridge features that are created
 		this.ridgeFeatureType = null;
@@ -82,124 +108,426 @@ public class RidgeGrower {
 		}
 	}
 	
+	/**
+	 * Sets the maximum time that may be spent growing a single ridge.  Ridges which take longer are 
+	 * reported as failed (and are omitted from the result).  0 means no limit.
+	 * The thread of a timed-out task is interrupted.  The strategy isn't required to respond to 
+	 * interruption, so a timed-out task may continue to use its thread until the strategy returns.
+	 * Only applies when growth isn't partitioned (see setPartitioned).
+	 * @param timeout
+	 * @param unit
+	 */
+	public void setTaskTimeout(long timeout, TimeUnit unit) {
+		this.taskTimeoutMs = unit.toMillis(timeout);
+	}
+	
+	/**
+	 * If enabled, confluences and lakes are divided into spatially compact partitions (by Hilbert curve 
+	 * order), and all the ridges from a partition are grown on one thread.  This improves memory 
+	 * locality, and gives the same output (in the same order) regardless of the number of threads.
+	 * Disabled by default.
+	 * @param partitioned
+	 */
+	public void setPartitioned(boolean partitioned) {
+		this.partitioned = partitioned;
+	}
+	
+	public void addListener(RidgeGrowthListener listener) {
+		this.listeners.add(listener);
+	}
+	
+	/**
+	 * Requests that growAllRidges() stops early.  Tasks which haven't started are skipped, and 
+	 * growAllRidges() returns the ridges which were completed.  May be called from any thread.
+	 */
+	public void cancel() {
+		this.cancelRequested = true;
+		for (CompletableFuture<LineString> pending : pendingRidges) {
+			pending.cancel(false);
+		}
+	}
+	
+	/**
+	 * Grows a ridge from each seed edge at each confluence, and around each isolated lake.
+	 * 
+	 * Seed edges are identified in parallel (one task per confluence and per isolated lake), and each ridge
+	 * is submitted for growth as soon as its seed edge is known.  All tasks run on a work-stealing pool 
+	 * with 'numThreads' threads.  Ridges are returned in the order their growth tasks were created,
+	 * regardless of the order in which the tasks finish.  (See also setPartitioned.)
+	 * @return
+	 * @throws IOException if seed edges couldn't be identified
+	 */
 	public SimpleFeatureCollection growAllRidges() throws IOException {
 		
-		final CountDownLatch latch = new CountDownLatch(1);
-		final List<LineString> ridges = Collections.synchronizedList(new ArrayList<LineString>());
-		
-		//spin up the worker threads
-		final List<RidgeGrowthWorker> workers = new ArrayList<RidgeGrowthWorker>();
-		BlockingQueue<RidgeGrowthTask> taskQueue = new ArrayBlockingQueue<RidgeGrowthTask>(this.numThreads);
-		for(int i = 0; i < this.numThreads; i++) {
-			RidgeGrowthWorker worker = new RidgeGrowthWorker(taskQueue, strategy);			
-			worker.addListener(new RidgeGrowthAdapter() {
-				public void onRidgeSuccess(RidgeGrowthTask task, LineString ridge) {
-					ridges.add(ridge);				
-					System.out.println("ridge complete. count "+ridges.size());
-				}
-				public void onRidgeError(RidgeGrowthTask task) {
-					System.out.println("ridge failed........................................");
-				}
-				public void onFinished() {
-					System.out.println("worker finished");
-					if (areAllWorkersFinished()) {
-						latch.countDown();
+		this.cancelRequested = false;
+		this.pendingRidges.clear();
+		this.numRidgesComplete.set(0);
+		final ForkJoinPool pool = new ForkJoinPool(this.numThreads);
+		final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "ridge-growth-timer");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		
+		List<LineString> ridges = null;
+		try {
+			//Create "tasks" for each line to grow.  there are
+			//two groups of lines to grow: a) those from confluences, b) those around isolated lakes.
+			//The seed edges for each task are identified later, in parallel, so here we just record 
+			//where each group of tasks is located and how to create it.
+			List<Coordinate> seedLocations = new ArrayList<Coordinate>();
+			List<Callable<List<RidgeGrowthTask>>> seedings = new ArrayList<Callable<List<RidgeGrowthTask>>>();
+			
+			//lines to be grown from confluences.
+			List<Coordinate> confluences = water.getConfluences();
+			System.out.println(confluences.size() + " confluences to process...");
+			for (final Coordinate confluence : confluences) {
+				seedLocations.add(confluence);
+				seedings.add(new Callable<List<RidgeGrowthTask>>() {
+					public List<RidgeGrowthTask> call() throws IOException {
+						return getTasksAtConfluence(confluence);
 					}
-				}			
-				private boolean areAllWorkersFinished() {
-					
-					for(RidgeGrowthWorker worker: workers) {
-						if (!worker.isFinished()) {
-							return false;
-						}
+				});
+			}
+			
+			//lines to grow around isolated lakes
+			List<Polygon> lakePolys = water.getLakePolygons();
+			System.out.println("found "+lakePolys.size()+" lakes");
+			for (final Polygon lakePoly : lakePolys) {
+				seedLocations.add(lakePoly.getEnvelopeInternal().centre());
+				seedings.add(new Callable<List<RidgeGrowthTask>>() {
+					public List<RidgeGrowthTask> call() throws IOException {
+						return getTasksForLake(lakePoly);
 					}
-					return true;
-				}
-				
-			});
-			workers.add(worker);
-			worker.start();
-		}	
-		
-		List<Coordinate> confluences = water.getConfluences();
-		System.out.println(confluences.size() + " confluences to process...");
-		
-		//Create "tasks" for each line to grow, and add them to the queue.  there are
-		//two groups of lines to grow: a) those from confluences, b) those around isolated lakes
-
-		//create the tasks for lines to be grown from confluences.		
-		for (Coordinate confluence : confluences) {
-			List<SimpleFeature> edgesTouchingConfluence = tinEdges.getEdgesTouchingCoordinate(confluence);
-			List<SimpleFeature> seedEdges = getSeedEdgesAtConfluence(edgesTouchingConfluence);
-			for (SimpleFeature seedEdge : seedEdges) {
-				List<SimpleFeature> adjacentWater = getAdjacentWater(seedEdge, edgesTouchingConfluence);				
-				RidgeGrowthTask task = new RidgeGrowthTask(confluence, (LineString)seedEdge.getDefaultGeometry(), adjacentWater);
-				try {
-					taskQueue.put(task);
-					System.out.println("confluence task added");
-				} catch (InterruptedException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
-				}		
+				});
+			}
+			
+			if (partitioned) {
+				ridges = growPartitioned(seedLocations, seedings, pool);
+			}
+			else {
+				ridges = growUnpartitioned(seedings, pool, timer);
 			}
 		}
+		finally {
+			pool.shutdownNow();
+			timer.shutdownNow();
+			this.pendingRidges.clear();
+		}
 		
+		for (RidgeGrowthListener listener : listeners) {
+			listener.onFinished();
+		}
 		
-		
-		//Create the tasks for lines to grow around isolated lakes
-		//Isolated lakes aren't connected to rivers, so there is no confluence coordinate to
-		//start growing lines from. Instead we identify one coordinate that should be part of the catchment 
-		//around the isolated lake (call this the seed coord).  Then we create two stem lines in opposite
-		//directions
-		List<Polygon> lakePolys = water.getLakePolygons();
-		System.out.println("found "+lakePolys.size()+" lakes");
-		for (Polygon lakePoly : lakePolys) {
-			List<SimpleFeature> touching = water.getTouchingWater(lakePoly);			
-			List<SimpleFeature> overlapping = water.getOverlappingByWater(lakePoly);			
-			touching.removeAll(overlapping);
-			boolean isIsolatedWater = touching.size() == 0;
-			if (isIsolatedWater) {
+		System.out.println("all tasks finished");
+		System.out.println("grew "+ ridges.size() +" ridges");
 				
-				//Create tasks for growing two seed edges starting outside the lake
-				//and pointing in opposite directions around the lake
-				List<RidgeGrowthTask> tasks = getSeedEdgesForIsolatedLake(lakePoly, NUM_SEED_POINTS_FOR_ISOLATED_LAKE);
-								
-				//add the tasks to the queue
-				for (RidgeGrowthTask task : tasks) {
-					//stems.add(task.getStem());
-					try {
-						taskQueue.put(task);
-						System.out.println("lake task added");
-					} catch (InterruptedException e) {
-						e.printStackTrace();
-					}		
+		SimpleFeatureCollection result = SpatialUtils.linestringCollectionToSimpleFeatureCollection(ridges, ridgeFeatureType);
+		return result;
+	}
+	
+	/**
+	 * Each seeding task, and each growth task it creates, runs as a separate task on the pool.
+	 * @return the ridges, in task creation order
+	 */
+	private List<LineString> growUnpartitioned(
+			List<Callable<List<RidgeGrowthTask>>> seedings, 
+			ExecutorService pool, 
+			ScheduledExecutorService timer) throws IOException {
+		
+		List<CompletableFuture<List<CompletableFuture<LineString>>>> seedingFutures = 
+				new ArrayList<CompletableFuture<List<CompletableFuture<LineString>>>>();
+		for (Callable<List<RidgeGrowthTask>> seeding : seedings) {
+			seedingFutures.add(submitSeeding(seeding, pool, timer));
+		}
+		System.out.println("all tasks have been submitted for processing");
+		
+		//collect the results in task creation order
+		List<LineString> ridges = new ArrayList<LineString>();
+		for (CompletableFuture<List<CompletableFuture<LineString>>> seedingFuture : seedingFutures) {
+			List<CompletableFuture<LineString>> ridgeFutures = awaitOrThrow(seedingFuture, new ArrayList<CompletableFuture<LineString>>());
+			for (CompletableFuture<LineString> ridgeFuture : ridgeFutures) {
+				LineString ridge = awaitRidge(ridgeFuture);
+				if (ridge != null) {
+					ridges.add(ridge);
 				}
-			}			
+			}
 		}
-				
+		return ridges;
+	}
+	
+	/**
+	 * The seeding tasks are sorted into Hilbert curve order (by location), then divided into contiguous 
+	 * partitions.  Each partition is run as a single task on the pool: its seeding tasks, and the 
+	 * growth tasks they create, run one after another on the same thread.  So each thread works on a 
+	 * compact region of the TIN at a time.  (The task timeout isn't applied in this mode.)
+	 * @return the ridges, in Hilbert order of their seed locations.  For ridges with the same seed 
+	 * location, in task creation order.  The order doesn't depend on the number of threads.
+	 */
+	private List<LineString> growPartitioned(
+			List<Coordinate> seedLocations, 
+			final List<Callable<List<RidgeGrowthTask>>> seedings, 
+			ExecutorService pool) throws IOException {
 		
-		System.out.println("all tasks have been submitted for processing");
+		final List<Integer> order = HilbertCurve.getHilbertOrder(seedLocations);
+		int numPartitions = Math.min(order.size(), numThreads * PARTITIONS_PER_THREAD);
 		
-		//tell the workers to finish 
-		for(RidgeGrowthWorker worker : workers) {
-			worker.requestFinishWhenQueueEmpty();
+		List<CompletableFuture<List<LineString>>> partitions = new ArrayList<CompletableFuture<List<LineString>>>();
+		for (int p = 0; p < numPartitions; p++) {
+			final int from = (int)((long)order.size() * p / numPartitions);
+			final int to = (int)((long)order.size() * (p + 1) / numPartitions);
+			partitions.add(CompletableFuture.supplyAsync(new Supplier<List<LineString>>() {
+				public List<LineString> get() {
+					List<LineString> partitionRidges = new ArrayList<LineString>();
+					for (int i = from; i < to && !cancelRequested; i++) {
+						List<RidgeGrowthTask> tasks = null;
+						try {
+							tasks = seedings.get(order.get(i)).call();
+						}
+						catch (Exception e) {
+							throw new CompletionException(e);
+						}
+						for (RidgeGrowthTask task : tasks) {
+							if (cancelRequested) {
+								break;
+							}
+							LineString ridge = growRidge(task);
+							if (ridge != null) {
+								partitionRidges.add(ridge);
+							}
+						}
+					}
+					return partitionRidges;
+				}
+			}, pool));
 		}
+		System.out.println("all "+numPartitions+" partitions have been submitted for processing");
 		
-		try {			
-			latch.await();
-		} catch (InterruptedException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+		//merge the results in partition order
+		List<LineString> ridges = new ArrayList<LineString>();
+		for (CompletableFuture<List<LineString>> partition : partitions) {
+			ridges.addAll(awaitOrThrow(partition, new ArrayList<LineString>()));
 		}
-
-		System.out.println("all workers finished");
-		System.out.println("grew "+ ridges.size() +" ridges");
-				
-		SimpleFeatureCollection result = SpatialUtils.linestringCollectionToSimpleFeatureCollection(ridges, ridgeFeatureType);
-		//SimpleFeatureCollection result = SpatialUtils.linestringCollectionToSimpleFeatureCollection(stems, ridgeFeatureType);
+		return ridges;
+	}
+	
+	/**
+	 * grows a ridge on the current thread.  returns null if the ridge couldn't be grown.
+	 */
+	private LineString growRidge(RidgeGrowthTask task) {
+		try {
+			LineString ridge = strategy.growRidge(task);
+			notifyListenersSuccess(task, ridge);
+			return ridge;
+		}
+		catch (Exception e) {
+			notifyListenersError(task);
+			return null;
+		}
+	}
+	
+	/**
+	 * Runs the given seeding task on the pool.  When it completes, a growth task is submitted for each
+	 * ridge it identified.
+	 * @return a future list of the (future) ridges
+	 */
+	private CompletableFuture<List<CompletableFuture<LineString>>> submitSeeding(
+			final Callable<List<RidgeGrowthTask>> seeding, 
+			final ExecutorService pool, 
+			final ScheduledExecutorService timer) {
+		
+		CompletableFuture<List<RidgeGrowthTask>> tasks = CompletableFuture.supplyAsync(new Supplier<List<RidgeGrowthTask>>() {
+			public List<RidgeGrowthTask> get() {
+				if (cancelRequested) {
+					return new ArrayList<RidgeGrowthTask>();
+				}
+				try {
+					return seeding.call();
+				} 
+				catch (Exception e) {
+					throw new CompletionException(e);
+				}
+			}
+		}, pool);
+		
+		return tasks.thenApply(new Function<List<RidgeGrowthTask>, List<CompletableFuture<LineString>>>() {
+			public List<CompletableFuture<LineString>> apply(List<RidgeGrowthTask> tasks) {
+				List<CompletableFuture<LineString>> ridgeFutures = new ArrayList<CompletableFuture<LineString>>();
+				for (RidgeGrowthTask task : tasks) {
+					ridgeFutures.add(submitGrowth(task, pool, timer));
+				}
+				return ridgeFutures;
+			}
+		});
+	}
+	
+	/**
+	 * Runs the given growth task on the pool.  The timeout (if any) starts when the task starts running, 
+	 * not when it is submitted.  When a task times out, its thread is interrupted (the strategy may or may 
+	 * not stop early as a result).
+	 * @return a future ridge.  completes exceptionally if the ridge couldn't be grown, or 
+	 * if the task timed out
+	 */
+	private CompletableFuture<LineString> submitGrowth(
+			final RidgeGrowthTask task, 
+			ExecutorService pool, 
+			final ScheduledExecutorService timer) {
+		
+		final CompletableFuture<LineString> result = new CompletableFuture<LineString>();
+		pendingRidges.add(result);
+		pool.execute(new Runnable() {
+			public void run() {
+				final Thread runner = Thread.currentThread();
+				//guards 'running', so the timer can't interrupt the thread after it moves on to another task
+				final Object runningLock = new Object();
+				final boolean[] running = {true};
+				ScheduledFuture<?> timeout = null;
+				try {
+					if (result.isDone()) {
+						return; //cancelled before it started
+					}
+					if (cancelRequested) {
+						result.cancel(false);
+						return;
+					}
+					if (taskTimeoutMs > 0) {
+						timeout = timer.schedule(new Runnable() {
+							public void run() {
+								TimeoutException e = new TimeoutException("ridge growth task timed out after "+taskTimeoutMs+" ms");
+								if (result.completeExceptionally(e)) {
+									notifyListenersError(task);
+									synchronized(runningLock) {
+										if (running[0]) {
+											runner.interrupt();
+										}
+									}
+								}
+							}
+						}, taskTimeoutMs, TimeUnit.MILLISECONDS);
+					}
+					LineString ridge = strategy.growRidge(task);
+					if (result.complete(ridge)) {
+						notifyListenersSuccess(task, ridge);
+					}
+				}
+				catch (Exception e) {
+					if (result.completeExceptionally(e)) {
+						notifyListenersError(task);
+					}
+				}
+				finally {
+					if (timeout != null) {
+						timeout.cancel(false);
+					}
+					synchronized(runningLock) {
+						running[0] = false;
+					}
+					//clear any interrupt from the timer, so it doesn't affect the next task on this thread
+					Thread.interrupted();
+					pendingRidges.remove(result);
+				}
+			}
+		});
 		return result;
 	}
 	
+	/**
+	 * waits for the future to complete.  checked exceptions thrown by the task are rethrown as IOExceptions.
+	 * @param valueIfCancelled the result if the task was cancelled
+	 */
+	private <T> T awaitOrThrow(CompletableFuture<T> future, T valueIfCancelled) throws IOException {
+		try {
+			return future.join();
+		}
+		catch (CancellationException e) {
+			return valueIfCancelled;
+		}
+		catch (CompletionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException)cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
+			}
+			throw new IOException("Unable to identify seed edges", cause);
+		}
+	}
+	
+	/**
+	 * waits for the ridge to be grown.  returns null if the ridge couldn't be grown
+	 */
+	private LineString awaitRidge(CompletableFuture<LineString> ridgeFuture) {
+		try {
+			return ridgeFuture.join();
+		}
+		catch (CancellationException e) {
+			return null;
+		}
+		catch (CompletionException e) {
+			return null;
+		}
+	}
+	
+	private void notifyListenersSuccess(RidgeGrowthTask task, LineString ridge) {
+		System.out.println("ridge complete. count "+numRidgesComplete.incrementAndGet());
+		for (RidgeGrowthListener listener : listeners) {
+			listener.onRidgeSuccess(task, ridge);
+		}
+	}
+	
+	private void notifyListenersError(RidgeGrowthTask task) {
+		System.out.println("ridge failed........................................");
+		for (RidgeGrowthListener listener : listeners) {
+			listener.onRidgeError(task);
+		}
+	}
+	
+	/**
+	 * creates tasks to grow ridges from the seed edges at the given confluence
+	 * @param confluence
+	 * @return
+	 * @throws IOException
+	 */
+	private List<RidgeGrowthTask> getTasksAtConfluence(Coordinate confluence) throws IOException {
+		List<RidgeGrowthTask> tasks = new ArrayList<RidgeGrowthTask>();
+		List<SimpleFeature> edgesTouchingConfluence = tinEdges.getEdgesTouchingCoordinate(confluence);
+		List<SimpleFeature> seedEdges = getSeedEdgesAtConfluence(edgesTouchingConfluence);
+		for (SimpleFeature seedEdge : seedEdges) {
+			List<SimpleFeature> adjacentWater = getAdjacentWater(seedEdge, edgesTouchingConfluence);				
+			RidgeGrowthTask task = new RidgeGrowthTask(confluence, (LineString)seedEdge.getDefaultGeometry(), adjacentWater);
+			tasks.add(task);
+		}
+		return tasks;
+	}
+	
+	/**
+	 * Creates tasks to grow ridges around the given lake, if it is isolated.  (returns an empty list if 
+	 * the lake isn't isolated)
+	 * Isolated lakes aren't connected to rivers, so there is no confluence coordinate to
+	 * start growing lines from. Instead we identify one coordinate that should be part of the catchment 
+	 * around the isolated lake (call this the seed coord).  Then we create two stem lines in opposite
+	 * directions
+	 * @param lakePoly
+	 * @return
+	 * @throws IOException
+	 */
+	private List<RidgeGrowthTask> getTasksForLake(Polygon lakePoly) throws IOException {
+		List<SimpleFeature> touching = water.getTouchingWater(lakePoly);			
+		List<SimpleFeature> overlapping = water.getOverlappingByWater(lakePoly);			
+		touching.removeAll(overlapping);
+		boolean isIsolatedWater = touching.size() == 0;
+		if (!isIsolatedWater) {
+			return new ArrayList<RidgeGrowthTask>();
+		}
+		
+		//Create tasks for growing two seed edges starting outside the lake
+		//and pointing in opposite directions around the lake
+		return getSeedEdgesForIsolatedLake(lakePoly, NUM_SEED_POINTS_FOR_ISOLATED_LAKE);
+	}
+	
 	
 	/**
 	 * gets a collection of seed edges for a given a set of all edges touching a confluence.  The seed edges
@@ -7,6 +7,7 @@ import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.LineString;
 import org.opengis.feature.simple.SimpleFeature;
 
+import ca.bc.gov.catchment.tin.VertexTable;
 import ca.bc.gov.catchment.uncertainty.PointUncertainty;
 import ca.bc.gov.catchment.utils.SpatialUtils;
 import ca.bc.gov.catchment.water.Water;
@@ -40,6 +41,26 @@ public class RidgeGrowthHelpers {
 		return isMovingAway;
 	}
 	
+	/**
+	 * Same as isMovingAway(LineString, Coordinate), but for a path that is being grown.  O(1).
+	 * @param stem
+	 * @param nextCoord
+	 * @return
+	 */
+	public static boolean isMovingAway(RidgePath stem, Coordinate nextCoord) {
+		VertexTable vertices = stem.getVertexTable();
+		int refId = stem.getVertexId((int)Math.floor(stem.size() * 0.75));
+		int endId = stem.getLastVertexId();
+		double refX = vertices.getX(refId);
+		double refY = vertices.getY(refId);
+		
+		double dist1 = Math.hypot(vertices.getX(endId) - refX, vertices.getY(endId) - refY);
+		double dist2 = Math.hypot(nextCoord.getX() - refX, nextCoord.getY() - refY);
+		
+		boolean isMovingAway = dist2 > dist1;
+		return isMovingAway;
+	}
+	
 	/**
 	 * determines if a coordinate is a valid candidate as a member of a ridge line.
 	 * @param coord
@@ -66,6 +87,30 @@ public class RidgeGrowthHelpers {
 		return true;
 	}
 
+	/**
+	 * Same as isCoordValidInRidge(Coordinate, List, Water), but for a path that is being grown.  The
+	 * check for whether the coordinate is already in the path is O(1).
+	 * @param coord
+	 * @param ridge
+	 * @param water
+	 * @return
+	 * @throws IOException
+	 */
+	public static boolean isCoordValidInRidge(Coordinate coord, RidgePath ridge, Water water) throws IOException {
+		
+		//is the coordinate already part of the line?  if so, disallow it again.  (no loops permitted)
+		if (ridge.contains(coord)) {
+			return false;
+		}
+		
+		//it's okay to touch water at a confluence, but nowhere else
+		if (water.isTouchingWater(coord) && !water.isConfluence(coord)) {
+			return false;
+		}
+		
+		return true;
+	}
+
 	/**
 	 * create a new line which starts with 'stem', but is extended by 'extension'  
 	 * @param stem
@@ -12,7 +12,7 @@ public interface RidgeGrowthStrategy {
 
 	public LineString growRidge(RidgeGrowthTask task) throws IOException;
 	
-	public boolean canChooseNext(LineString stem, List<SimpleFeature> adjacentWater) throws IOException;
+	public boolean canChooseNext(RidgePath stem, List<SimpleFeature> adjacentWater) throws IOException;
 	
-	public Coordinate chooseNext(LineString stem, List<SimpleFeature> adjacentWater) throws IOException;
+	public Coordinate chooseNext(RidgePath stem, List<SimpleFeature> adjacentWater) throws IOException;
 }
@@ -0,0 +1,147 @@
+package ca.bc.gov.catchment.ridgegrowth;
+
+import java.util.Arrays;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+
+import ca.bc.gov.catchment.tin.VertexTable;
+import ca.bc.gov.catchment.utils.IntHashSet;
+
+/**
+ * A ridge which is being grown.  The path is a sequence of TIN vertex ids, which can be extended (add)
+ * and shortened (removeLast) in O(1).  Also keeps a set of the vertices in the path, so checking whether a
+ * vertex is already in the path is O(1).
+ * A path may not visit the same vertex twice.
+ *
+ * A LineString is only created when requested (see toLineString), so strategies should grow a RidgePath and
+ * convert it once the ridge is complete.
+ * Not thread-safe.  Each ridge should have its own path.
+ */
+public class RidgePath {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private VertexTable vertices;
+	private int[] ids;
+	private int length;
+	private IntHashSet members;
+
+	public RidgePath(VertexTable vertices) {
+		this.vertices = vertices;
+		this.ids = new int[INITIAL_CAPACITY];
+		this.length = 0;
+		this.members = new IntHashSet(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Creates a path with the same vertices as the given line
+	 * @param line
+	 * @param vertices
+	 * @return
+	 * @throws IllegalArgumentException if the line has a coordinate that isn't a vertex, or if it visits a
+	 * vertex more than once
+	 */
+	public static RidgePath fromLineString(LineString line, VertexTable vertices) {
+		RidgePath path = new RidgePath(vertices);
+		for (Coordinate c : line.getCoordinates()) {
+			int id = vertices.getVertexId(c);
+			if (id == VertexTable.NONE) {
+				throw new IllegalArgumentException("line coordinate "+c+" is not a TIN vertex");
+			}
+			path.add(id);
+		}
+		return path;
+	}
+
+	public VertexTable getVertexTable() {
+		return vertices;
+	}
+
+	public int size() {
+		return length;
+	}
+
+	public int getVertexId(int index) {
+		if (index < 0 || index >= length) {
+			throw new IndexOutOfBoundsException("index "+index+" is outside the path (size "+length+")");
+		}
+		return ids[index];
+	}
+
+	public int getLastVertexId() {
+		return getVertexId(length - 1);
+	}
+
+	/**
+	 * creates a new coordinate for the vertex at the given position in the path
+	 */
+	public Coordinate getCoordinate(int index) {
+		return vertices.getCoordinate(getVertexId(index));
+	}
+
+	public Coordinate getLastCoordinate() {
+		return getCoordinate(length - 1);
+	}
+
+	public boolean contains(int vertexId) {
+		return members.contains(vertexId);
+	}
+
+	/**
+	 * checks whether the path contains a vertex at the same 2D position as the coordinate
+	 */
+	public boolean contains(Coordinate c) {
+		int id = vertices.getVertexId(c);
+		return id != VertexTable.NONE && members.contains(id);
+	}
+
+	/**
+	 * appends a vertex to the end of the path
+	 * @throws IllegalArgumentException if the vertex is already in the path
+	 */
+	public void add(int vertexId) {
+		if (!members.add(vertexId)) {
+			throw new IllegalArgumentException("vertex "+vertexId+" is already in the path");
+		}
+		if (length == ids.length) {
+			ids = Arrays.copyOf(ids, length * 2);
+		}
+		ids[length++] = vertexId;
+	}
+
+	/**
+	 * appends the vertex at the given coordinate to the end of the path
+	 * @throws IllegalArgumentException if the coordinate isn't a vertex, or if it is already in the path
+	 */
+	public void add(Coordinate c) {
+		int id = vertices.getVertexId(c);
+		if (id == VertexTable.NONE) {
+			throw new IllegalArgumentException("coordinate "+c+" is not a TIN vertex");
+		}
+		add(id);
+	}
+
+	/**
+	 * removes the last vertex from the path
+	 * @return the id of the removed vertex
+	 */
+	public int removeLast() {
+		int id = getLastVertexId();
+		length--;
+		members.remove(id);
+		return id;
+	}
+
+	/**
+	 * creates a linestring with the vertices of the path
+	 */
+	public LineString toLineString(GeometryFactory geometryFactory) {
+		return vertices.toLineString(ids, length, geometryFactory);
+	}
+
+	public String toString() {
+		return "RidgePath: "+length+" vertices";
+	}
+}
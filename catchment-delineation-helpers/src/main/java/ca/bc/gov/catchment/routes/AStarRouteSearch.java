@@ -0,0 +1,311 @@
+package ca.bc.gov.catchment.routes;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import ca.bc.gov.catchment.tin.TinEdges;
+import ca.bc.gov.catchment.tin.VertexTable;
+
+/**
+ * Finds the lowest cost route between two TIN vertices, following TIN edges.  Uses A* search over vertex
+ * ids, with the straight line distance to the end (times the minimum cost per unit length) as the estimate
+ * of the remaining cost.
+ *
+ * Constraints:
+ *  - vertices may be blocked (e.g. a blacklist, or the vertices of the route so far), as a bitset of vertex ids
+ *  - an optional SegmentValidator is applied to each segment as the route is built.  Segments which
+ *    aren't valid aren't followed, so the search finds a valid route if there is one.
+ *
+ * Each search keeps its state in a primitive hash table of the vertices it reaches, so the memory used 
+ * depends on the size of the search, not the size of the TIN, and nothing is kept between searches.
+ * May be used by multiple threads.
+ */
+public class AStarRouteSearch {
+
+	private TinEdges tinEdges;
+	private VertexTable vertices;
+	private EdgeCost edgeCost;
+	private SegmentValidator validator;
+
+	public AStarRouteSearch(TinEdges tinEdges, EdgeCost edgeCost) throws IOException {
+		this(tinEdges, edgeCost, null);
+	}
+
+	/**
+	 * @param tinEdges
+	 * @param edgeCost
+	 * @param validator may be null if all segments are valid
+	 * @throws IOException
+	 */
+	public AStarRouteSearch(TinEdges tinEdges, EdgeCost edgeCost, SegmentValidator validator) throws IOException {
+		this.tinEdges = tinEdges;
+		this.vertices = tinEdges.getVertexTable();
+		this.edgeCost = edgeCost;
+		this.validator = validator;
+	}
+
+	/**
+	 * finds the lowest cost route from 'startId' to 'endId'
+	 * @param startId
+	 * @param endId
+	 * @param blocked vertices which the route may not include.  may be null.  (the start vertex is allowed
+	 * even if it is blocked.)
+	 * @param isRouteStart true if 'startId' is the first vertex of the whole route.  false if the route
+	 * will be joined to the end of another route (so 'startId' will be an interior vertex).
+	 * @return the vertex ids of the route (including the start and end), or null if there is no route
+	 * @throws IOException
+	 */
+	public int[] findRoute(int startId, int endId, BitSet blocked, boolean isRouteStart) throws IOException {
+		if (startId == endId) {
+			return new int[] {startId};
+		}
+		if (blocked != null && blocked.get(endId)) {
+			return null;
+		}
+
+		SearchState state = new SearchState();
+		double minCostPerUnitLength = edgeCost.getMinCostPerUnitLength();
+		double endX = vertices.getX(endId);
+		double endY = vertices.getY(endId);
+
+		state.open(startId, 0, VertexTable.NONE, estimate(startId, endX, endY, minCostPerUnitLength));
+		while(!state.isEmpty()) {
+			int currentId = state.pollBest();
+			if (currentId == endId) {
+				return state.getPathTo(endId);
+			}
+
+			boolean isFromStart = isRouteStart && currentId == startId;
+			double costSoFar = state.getCost(currentId);
+			for (int nextId : tinEdges.getConnectedVertexIds(currentId)) {
+				if (state.isClosed(nextId) || (blocked != null && blocked.get(nextId))) {
+					continue;
+				}
+				double cost = costSoFar + edgeCost.getCost(currentId, nextId);
+				if (state.isOpen(nextId) && cost >= state.getCost(nextId)) {
+					continue;
+				}
+				if (validator != null && !validator.isValidSegment(currentId, nextId, isFromStart)) {
+					continue;
+				}
+				state.open(nextId, cost, currentId, cost + estimate(nextId, endX, endY, minCostPerUnitLength));
+			}
+		}
+
+		return null;
+	}
+
+	// Private
+	// ------------------------------------------------------------------------
+
+	private double estimate(int vertexId, double endX, double endY, double minCostPerUnitLength) {
+		if (minCostPerUnitLength <= 0) {
+			return 0;
+		}
+		double dx = vertices.getX(vertexId) - endX;
+		double dy = vertices.getY(vertexId) - endY;
+		return Math.sqrt(dx*dx + dy*dy) * minCostPerUnitLength;
+	}
+
+	/**
+	 * The state of a search: the cost and previous vertex of each vertex reached, and a priority queue
+	 * of open vertices.
+	 * The vertices reached are kept in an open-addressing hash table (keyed by vertex id) which grows
+	 * as the search grows.
+	 */
+	private static class SearchState {
+
+		private static final int INITIAL_CAPACITY = 256; //must be a power of 2
+		
+		//hash table slots.  empty slots have key NONE
+		private int[] keys;
+		private boolean[] closed;
+		private double[] costs;
+		private int[] previous;
+		private int size;
+
+		//binary min-heap of (priority, vertex id).  a vertex may appear more than once (if a lower cost
+		//is found after it has been added), in which case the stale entries are skipped when polled.
+		private double[] heapPriorities;
+		private int[] heapIds;
+		private int heapSize;
+
+		SearchState() {
+			allocate(INITIAL_CAPACITY);
+			this.heapPriorities = new double[64];
+			this.heapIds = new int[64];
+		}
+
+		boolean isOpen(int id) {
+			int slot = find(id);
+			return slot != VertexTable.NONE && !closed[slot];
+		}
+
+		boolean isClosed(int id) {
+			int slot = find(id);
+			return slot != VertexTable.NONE && closed[slot];
+		}
+
+		/**
+		 * the cost of the given vertex.  the vertex must have been reached.
+		 */
+		double getCost(int id) {
+			return costs[find(id)];
+		}
+
+		void open(int id, double cost, int previousId, double priority) {
+			int slot = find(id);
+			if (slot == VertexTable.NONE) {
+				slot = insert(id);
+			}
+			closed[slot] = false;
+			costs[slot] = cost;
+			previous[slot] = previousId;
+			push(priority, id);
+		}
+
+		boolean isEmpty() {
+			while (heapSize > 0 && isClosed(heapIds[0])) {
+				pop();
+			}
+			return heapSize == 0;
+		}
+
+		/**
+		 * removes the open vertex with the lowest priority from the queue, and closes it
+		 */
+		int pollBest() {
+			int id = pop();
+			closed[find(id)] = true;
+			return id;
+		}
+
+		int[] getPathTo(int id) {
+			int length = 0;
+			for (int v = id; v != VertexTable.NONE; v = previous[find(v)]) {
+				length++;
+			}
+			int[] path = new int[length];
+			for (int v = id; v != VertexTable.NONE; v = previous[find(v)]) {
+				path[--length] = v;
+			}
+			return path;
+		}
+
+		/**
+		 * the slot of the given vertex, or NONE if it hasn't been reached
+		 */
+		private int find(int id) {
+			int mask = keys.length - 1;
+			for (int slot = hash(id) & mask; ; slot = (slot + 1) & mask) {
+				if (keys[slot] == id) {
+					return slot;
+				}
+				if (keys[slot] == VertexTable.NONE) {
+					return VertexTable.NONE;
+				}
+			}
+		}
+
+		/**
+		 * adds a slot for a vertex which isn't in the table yet
+		 */
+		private int insert(int id) {
+			//keep the table at most half full
+			if ((size + 1) * 2 > keys.length) {
+				grow();
+			}
+			int mask = keys.length - 1;
+			int slot = hash(id) & mask;
+			while (keys[slot] != VertexTable.NONE) {
+				slot = (slot + 1) & mask;
+			}
+			keys[slot] = id;
+			size++;
+			return slot;
+		}
+
+		private void grow() {
+			int[] oldKeys = keys;
+			boolean[] oldClosed = closed;
+			double[] oldCosts = costs;
+			int[] oldPrevious = previous;
+			allocate(oldKeys.length * 2);
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != VertexTable.NONE) {
+					int slot = insert(oldKeys[i]);
+					closed[slot] = oldClosed[i];
+					costs[slot] = oldCosts[i];
+					previous[slot] = oldPrevious[i];
+				}
+			}
+		}
+
+		private void allocate(int capacity) {
+			this.keys = new int[capacity];
+			Arrays.fill(keys, VertexTable.NONE);
+			this.closed = new boolean[capacity];
+			this.costs = new double[capacity];
+			this.previous = new int[capacity];
+			this.size = 0;
+		}
+
+		private static int hash(int id) {
+			int h = id * 0x9E3779B9;
+			return h ^ (h >>> 16);
+		}
+
+		private void push(double priority, int id) {
+			if (heapSize == heapIds.length) {
+				heapPriorities = Arrays.copyOf(heapPriorities, heapSize * 2);
+				heapIds = Arrays.copyOf(heapIds, heapSize * 2);
+			}
+			int i = heapSize++;
+			while (i > 0) {
+				int parent = (i - 1) / 2;
+				if (!isLower(priority, id, heapPriorities[parent], heapIds[parent])) {
+					break;
+				}
+				heapPriorities[i] = heapPriorities[parent];
+				heapIds[i] = heapIds[parent];
+				i = parent;
+			}
+			heapPriorities[i] = priority;
+			heapIds[i] = id;
+		}
+
+		private int pop() {
+			int result = heapIds[0];
+			heapSize--;
+			double priority = heapPriorities[heapSize];
+			int id = heapIds[heapSize];
+			int i = 0;
+			while (true) {
+				int child = 2 * i + 1;
+				if (child >= heapSize) {
+					break;
+				}
+				if (child + 1 < heapSize && isLower(heapPriorities[child+1], heapIds[child+1], heapPriorities[child], heapIds[child])) {
+					child++;
+				}
+				if (!isLower(heapPriorities[child], heapIds[child], priority, id)) {
+					break;
+				}
+				heapPriorities[i] = heapPriorities[child];
+				heapIds[i] = heapIds[child];
+				i = child;
+			}
+			heapPriorities[i] = priority;
+			heapIds[i] = id;
+			return result;
+		}
+
+		/**
+		 * orders by priority, then by vertex id, so the search is deterministic
+		 */
+		private static boolean isLower(double priority1, int id1, double priority2, int id2) {
+			return priority1 < priority2 || (priority1 == priority2 && id1 < id2);
+		}
+	}
+}
@@ -0,0 +1,24 @@
+package ca.bc.gov.catchment.routes;
+
+import ca.bc.gov.catchment.tin.VertexTable;
+
+/**
+ * The cost of an edge is its 2D length, so routes are as short as possible.
+ */
+public class DistanceEdgeCost implements EdgeCost {
+
+	private VertexTable vertices;
+	
+	public DistanceEdgeCost(VertexTable vertices) {
+		this.vertices = vertices;
+	}
+	
+	public double getCost(int fromId, int toId) {
+		return vertices.distance2D(fromId, toId);
+	}
+
+	public double getMinCostPerUnitLength() {
+		return 1;
+	}
+	
+}
@@ -0,0 +1,28 @@
+package ca.bc.gov.catchment.routes;
+
+import java.io.IOException;
+
+/**
+ * The cost of including a TIN edge in a route.  Used by AStarRouteSearch, which finds the route with the 
+ * lowest total cost.
+ */
+public interface EdgeCost {
+
+	/**
+	 * gets the cost of the edge from 'fromId' to 'toId'.  must be at least getMinCostPerUnitLength() 
+	 * times the 2D length of the edge.
+	 * @param fromId
+	 * @param toId
+	 * @return
+	 * @throws IOException
+	 */
+	public double getCost(int fromId, int toId) throws IOException;
+	
+	/**
+	 * a lower bound on the cost of an edge, per unit of 2D length.  the search uses this to estimate 
+	 * the remaining cost to the end of a route.  0 is always a valid lower bound, but larger values 
+	 * make the search faster.
+	 * @return
+	 */
+	public double getMinCostPerUnitLength();
+}
@@ -2,13 +2,13 @@ package ca.bc.gov.catchment.routes;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Date;
-import java.util.LinkedHashMap;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 
 import org.geotools.data.simple.SimpleFeatureCollection;
-import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.data.simple.SimpleFeatureSource;
 import org.geotools.factory.CommonFactoryFinder;
 import org.geotools.geometry.jts.JTSFactoryFinder;
@@ -16,26 +16,38 @@ import org.geotools.util.factory.Hints;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.LineString;
-import org.locationtech.jts.geom.Point;
-import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.filter.Filter;
 import org.opengis.filter.FilterFactory2;
 
 import ca.bc.gov.catchment.tin.TinEdges;
+import ca.bc.gov.catchment.tin.VertexTable;
+import ca.bc.gov.catchment.utils.ConcurrentLruCache;
+import ca.bc.gov.catchment.utils.IntHashSet;
 import ca.bc.gov.catchment.utils.SpatialUtils;
 
 /**
  * This class provides an API for re-routing a linestring between two points
  * by providing one or more additional points that must be included in the route
+ * 
+ * There are two ways of finding a route between two points:
+ *  - A* search (see AStarRouteSearch): finds the lowest cost route, where the cost of each edge is given by
+ *    an EdgeCost.  a SegmentValidator is applied to each segment as the route is built, so invalid 
+ *    segments are avoided rather than causing the route to fail.  this is the default, with the 2D length 
+ *    of each edge as its cost.
+ *  - greedy (see createGreedyRouter): each step moves to the neighbouring vertex closest to the destination.  
+ *    a RouteValidator is applied to the route so far after each step.
  * @author Brock
  *
  */
 public class LineStringRouter {
 
-	private static final int MAX_CONNECTED_COORD_CACHE_SIZE = 1000;
 	public static final int INVALID_ROUTE_ACTION_STOP = 1;
 	public static final int INVALID_ROUTE_ACTION_ROUTEEXCEPTION = 2;
+	public static final int DEFAULT_ROUTE_CACHE_SIZE = 10000;
+	
+	//cached result when there is no route
+	private static final int[] NO_ROUTE = new int[0];
 	
 	private TinEdges tinEdges;
 	private SimpleFeatureType tinEdgesFeatureType;
@@ -44,21 +56,21 @@ public class LineStringRouter {
 	private FilterFactory2 filterFactory2D;
 	private boolean allowSelfIntersection;
 	private boolean allowRepeatedCoords;
-	private Map<Coordinate, List<Coordinate>> connectedCoordCache;
 	private RouteValidator validator;
 	private int invalidRouteAction;
+	private AStarRouteSearch routeSearch;
+	private ConcurrentLruCache<RouteKey, int[]> routeCache;
 	
-	public LineStringRouter(TinEdges tinEdges) {
-		this(tinEdges, 
-			new RouteValidator() {
-				public boolean isValid(LineString line) {
-					return true;
-				}			
-			}, 
-			INVALID_ROUTE_ACTION_ROUTEEXCEPTION);
+	/**
+	 * creates a router which finds the shortest routes with an A* search
+	 * @param tinEdges
+	 * @throws IOException
+	 */
+	public LineStringRouter(TinEdges tinEdges) throws IOException {
+		this(tinEdges, new DistanceEdgeCost(tinEdges.getVertexTable()), null);
 	}
 	
-	public LineStringRouter(TinEdges tinEdges, RouteValidator validator, int invalidRouteAction) {
+	private LineStringRouter(TinEdges tinEdges, RouteValidator validator, int invalidRouteAction) {
 		this.tinEdges = tinEdges;
 		this.allowSelfIntersection = true;
 		this.allowRepeatedCoords = false;
@@ -67,20 +79,50 @@ public class LineStringRouter {
 		this.geometryFactory = JTSFactoryFinder.getGeometryFactory();
 		this.validator = validator;
 		this.invalidRouteAction = invalidRouteAction;
+		this.routeCache = new ConcurrentLruCache<RouteKey, int[]>(DEFAULT_ROUTE_CACHE_SIZE);
 		
 		Hints filterHints = new Hints( Hints.FEATURE_2D, true ); // force 2D queries
 		this.filterFactory2D = CommonFactoryFinder.getFilterFactory2(filterHints);
 		
-		//define a map that removes the oldest entry when the 
-		//cache removes its maximum size.  i.e. the least-recently-used entry is
-		//removed
-		connectedCoordCache = new LinkedHashMap<Coordinate, List<Coordinate>>(MAX_CONNECTED_COORD_CACHE_SIZE, .75F, true) {
-		    public boolean removeEldestEntry(Map.Entry<Coordinate, List<Coordinate>> eldest) {
-		        return size() > MAX_CONNECTED_COORD_CACHE_SIZE;
-		    }
-		};
+	}
+	
+	/**
+	 * creates a router which finds routes with an A* search
+	 * @param tinEdges
+	 * @param edgeCost the cost of each edge.  routes have the lowest possible total cost.
+	 * @param segmentValidator applied to each segment of a route.  may be null.
+	 * @throws IOException
+	 */
+	public LineStringRouter(TinEdges tinEdges, EdgeCost edgeCost, SegmentValidator segmentValidator) throws IOException {
+		this(tinEdges, null, INVALID_ROUTE_ACTION_ROUTEEXCEPTION);
+		this.routeSearch = new AStarRouteSearch(tinEdges, edgeCost, segmentValidator);
 	}
 
+	/**
+	 * creates a router which finds routes greedily, and which accepts every route
+	 * @param tinEdges
+	 * @return
+	 */
+	public static LineStringRouter createGreedyRouter(TinEdges tinEdges) {
+		return createGreedyRouter(tinEdges, 
+			new RouteValidator() {
+				public boolean isValid(LineString line) {
+					return true;
+				}			
+			}, 
+			INVALID_ROUTE_ACTION_ROUTEEXCEPTION);
+	}
+	
+	/**
+	 * creates a router which finds routes greedily
+	 * @param tinEdges
+	 * @param validator applied to the route so far after each step
+	 * @param invalidRouteAction INVALID_ROUTE_ACTION_STOP or INVALID_ROUTE_ACTION_ROUTEEXCEPTION
+	 * @return
+	 */
+	public static LineStringRouter createGreedyRouter(TinEdges tinEdges, RouteValidator validator, int invalidRouteAction) {
+		return new LineStringRouter(tinEdges, validator, invalidRouteAction);
+	}
 	
 	// Public
 	// ------------------------------------------------------------------------
@@ -154,6 +196,9 @@ public class LineStringRouter {
 	
 	/**
 	 * finds alternative routes that don't pass through the given excluded point.  Keeps all other points the same.
+	 * There is one alternative for each vertex connected to the excluded point (unless the alternative
+	 * can't be routed or is the same as another alternative).  The parts of the route before and after
+	 * the excluded point are only computed once, and each alternative only routes the part between them.
 	 * @param route
 	 * @param exclude
 	 * @return
@@ -173,18 +218,40 @@ public class LineStringRouter {
 		}
 		
 		List<LineString> alternativeRoutes = new ArrayList<LineString>();
-				
+		int excludeIndex = origCoordinates.indexOf(exclude);
+		if (excludeIndex < 0) {
+			return alternativeRoutes;
+		}
+		
+		//the unchanged parts of the route, before and after the excluded point
+		List<Coordinate> beforeSlice = origCoordinates.subList(0, excludeIndex);
+		List<Coordinate> afterSlice = origCoordinates.subList(excludeIndex+1, origCoordinates.size());
+		Coordinate middleStart = beforeSlice.get(beforeSlice.size()-1);
+		Coordinate middleEnd = afterSlice.get(0);
+		Coordinate[] blacklist = {exclude};
+		
+		Set<Coordinate> origCoordinateSet = new HashSet<Coordinate>(origCoordinates);
+		Set<List<Coordinate>> alreadyFound = new HashSet<List<Coordinate>>();
+		alreadyFound.add(origCoordinates);
+		
 		List<Coordinate> connected = getConnectedCoords(exclude);
 		for (Coordinate alternativeCoord : connected) {
+			if (origCoordinateSet.contains(alternativeCoord)) {
+				continue;
+			}
 			try {
-				boolean alternativeCoordAlreadyInRoute = origCoordinates.contains(alternativeCoord);
-				if (alternativeCoordAlreadyInRoute) {
-					continue;
-				}
-				LineString newRoute = replaceRouteCoordinate(route, exclude, alternativeCoord);
-				boolean duplicateRoute = route.equals(newRoute) || alternativeRoutes.contains(newRoute);
-				if (!duplicateRoute) {	
-					alternativeRoutes.add(newRoute);
+				Coordinate[] keyCoords = {middleStart, alternativeCoord, middleEnd};
+				LineString middleRoute = makeRoute(keyCoords, blacklist);
+				
+				List<Coordinate> allCoords = new ArrayList<Coordinate>(beforeSlice.size() + middleRoute.getNumPoints() + afterSlice.size());
+				allCoords.addAll(beforeSlice);
+				allCoords.addAll(SpatialUtils.toCoordinateList(middleRoute.getCoordinates()));
+				allCoords.addAll(afterSlice);
+				Coordinate[] newCoords = SpatialUtils.removeDuplicateCoordinates(SpatialUtils.toCoordinateArray(allCoords));
+				
+				boolean isNew = alreadyFound.add(Arrays.asList(newCoords));
+				if (isNew) {	
+					alternativeRoutes.add(geometryFactory.createLineString(newCoords));
 				}
 			}
 			catch(IllegalArgumentException e) {
@@ -199,6 +266,13 @@ public class LineStringRouter {
 		
 	}
 	
+	/**
+	 * the cache of routes between pairs of vertices (e.g. to check its hit rate)
+	 */
+	public ConcurrentLruCache<?, ?> getRouteCache() {
+		return routeCache;
+	}
+	
 	// Public Helpers
 	// ------------------------------------------------------------------------
 	
@@ -296,42 +370,12 @@ public class LineStringRouter {
 	/**
 	 * identifies and returns coordinates in the TIN that are connected
 	 * to the given coordinate by a single edge
-	 * Implementation note: this function caches the results of each lookup so that subsequent
-	 * requests can be made faster. 
 	 * @param c
 	 * @return
 	 * @throws IOException 
 	 */
 	public List<Coordinate> getConnectedCoords(Coordinate c) throws IOException {
-		
-		//check if the answer is in cache
-		List<Coordinate> cachedResult = connectedCoordCache.get(c);
-		if (cachedResult != null) {
-			return cachedResult;
-		}
-		
-		//if not in cache, use a spatial query to look up the answer
-		Point p = geometryFactory.createPoint(c);
-		Filter firstCoordTouchesWaterFilter = filterFactory2D.touches(
-				filterFactory2D.property(tinEdgesGeometryProperty),
-				filterFactory2D.literal(p)
-				);		
-		SimpleFeatureCollection touching = tinEdges.getFeatures(firstCoordTouchesWaterFilter);
-		SimpleFeatureIterator touchingIt = touching.features();
-		List<Coordinate> results = new ArrayList<Coordinate>();
-		while(touchingIt.hasNext()) {
-			SimpleFeature f = touchingIt.next();
-			LineString g = (LineString)f.getDefaultGeometry();
-			Coordinate[] coords = g.getCoordinates();
-			Coordinate connectedCoord = c.equals(coords[0]) ? coords[coords.length-1] : coords[0];
-			results.add(connectedCoord);
-		}
-		touchingIt.close();
-		
-		//cache the answer for faster response next time
-		connectedCoordCache.put(c, results);
-		
-		return results;
+		return tinEdges.getConnectedCoordinates(c);
 	}
 	
 	public static boolean isEndPointOf(Coordinate c, LineString route) {
@@ -388,6 +432,12 @@ public class LineStringRouter {
 	/**
 	 * makes a route between the given start and end coordinates  assumes the route may be connect to the
 	 * end of another route, the points of which are provided in the 'previous' parameter
+	 * 
+	 * Implementation note: routes are remembered (as vertex ids) in a bounded cache, keyed by the start, 
+	 * end and the set of vertices the route may not include.  the improvers request the same partial 
+	 * routes many times, so a cached route is returned when possible.  (a route only depends on those
+	 * values, because the TIN, costs and validators don't change.)  failures to find a route are cached 
+	 * too.
 	 * @param startCoord
 	 * @param endCoord
 	 * @param previous a list of coordinates which this route will be connected to.  may be null if this is
@@ -398,101 +448,156 @@ public class LineStringRouter {
 	 * @throws RouteException 
 	 */
 	private LineString makeRoute(Coordinate startCoord, Coordinate endCoord, List<Coordinate> previous, List<Coordinate> blacklist) throws IOException, RouteException {
-		List<Coordinate> resultCoords = new ArrayList<Coordinate>();
-		resultCoords.add(startCoord);
-		Coordinate currentCoord = startCoord;
-		while(!currentCoord.equals(endCoord)) {
-			List<Coordinate> routeSoFar = new ArrayList<Coordinate>();
-			if (previous != null) {
-				routeSoFar.addAll(previous);
+		VertexTable vertices = tinEdges.getVertexTable();
+		int startId = vertices.getVertexId(startCoord);
+		if (startId == VertexTable.NONE) {
+			throw new IllegalArgumentException("Coordinate ["+startCoord.getX()+","+startCoord.getY()+"] is not a valid input.  It isn't a member of the TIN.");
+		}
+		int endId = vertices.getVertexId(endCoord);
+		if (endId == VertexTable.NONE) {
+			throw new RouteException("Unable to find route between the given coordinates");
+		}
+		
+		//vertices which the route may not include
+		IntHashSet blocked = toVertexIdSet(blacklist);
+		if (!allowRepeatedCoords && previous != null) {
+			for(Coordinate c : previous) {
+				int id = vertices.getVertexId(c);
+				if (id != VertexTable.NONE) {
+					blocked.add(id);
+				}
+			}
+		}
+		boolean isRouteStart = previous == null;
+		
+		RouteKey key = new RouteKey(startId, endId, isRouteStart, blocked.toSortedArray());
+		int[] path = routeCache.get(key);
+		if (path == null) {
+			if (routeSearch != null) {
+				path = findPathAStar(startId, endId, isRouteStart, key.blocked);
+			}
+			else {
+				path = findPathGreedy(startId, endId, endCoord, previous, blocked);
 			}
-			routeSoFar.addAll(resultCoords);
+			routeCache.put(key, path);
+		}
+		
+		if (path == NO_ROUTE || path.length == 0) {
+			throw new RouteException("Unable to find route between the given coordinates");
+		}
+		
+		LineString result = null;
+		try {
+			result = vertices.toLineString(path, path.length, geometryFactory);
+		} catch (Exception e) {
+			throw new RouteException("Invalid route. "+e.getMessage());			
+		}
+		return result;
+	}
+	
+	/**
+	 * finds a route by repeatedly moving to the neighbouring vertex which is closest to the end.
+	 * @return the vertex ids of the route, or NO_ROUTE
+	 */
+	private int[] findPathGreedy(int startId, int endId, Coordinate endCoord, List<Coordinate> previous, IntHashSet blocked) throws IOException {
+		VertexTable vertices = tinEdges.getVertexTable();
+		
+		//the route is built as a list of vertex ids.  it is only converted into a linestring
+		//when needed (by the validator and for the final result)
+		int[] path = new int[16];
+		int pathLength = 0;
+		path[pathLength++] = startId;
+		IntHashSet inPath = new IntHashSet();
+		inPath.add(startId);
+		
+		int currentId = startId;
+		while(currentId != endId) {
 			
 			//Note: alternative algorithms could be used for routing, such as lowest angle to destination or 
 			//closest to destination
-			Coordinate nextCoord = findEndpointClosestTo(currentCoord, endCoord, routeSoFar, blacklist);
-			
+			int nextId = findVertexClosestTo(currentId, endCoord, previous, path, pathLength, inPath, blocked);
 			
-			if (nextCoord == null || resultCoords.contains(nextCoord)) {
-				throw new RouteException("Unable to find route between the given coordinates");				
+			if (nextId == VertexTable.NONE || inPath.contains(nextId)) {
+				return NO_ROUTE;
 			}
 			
-			//add the next coord to the route
-			resultCoords.add(nextCoord);
-			currentCoord = nextCoord;
-			
-			
+			//add the next vertex to the route
+			if (pathLength == path.length) {
+				path = Arrays.copyOf(path, path.length * 2);
+			}
+			path[pathLength++] = nextId;
+			inPath.add(nextId);
+			currentId = nextId;
 			
 			//apply the validator
 			boolean validatorFailed = false;
-			if (this.validator != null && resultCoords.size() > 1) {
-				LineString lineSoFar = SpatialUtils.toLineString(resultCoords);
+			if (this.validator != null && pathLength > 1) {
+				LineString lineSoFar = vertices.toLineString(path, pathLength, geometryFactory);
 				if (!validator.isValid(lineSoFar)) {
 					validatorFailed = true;
 				}
 			}
 			
 			if (validatorFailed) {
-				//pop the last coordinate off the line. it makes the line invalid
-				resultCoords.remove(resultCoords.size()-1);
+				//pop the last vertex off the line. it makes the line invalid
+				pathLength--;
 				
 				//there are different options for how to handle an invalid next coordinate
 				if (invalidRouteAction == INVALID_ROUTE_ACTION_ROUTEEXCEPTION) {					
-					throw new RouteException("Unable to find route between the given coordinates");
+					return NO_ROUTE;
 				}
 				else {
 					break;
 				}				
 			}
-
-
 			
 		}
 		
-		System.out.println("resultCoords: "+resultCoords.size());
-		
-		LineString result = null;
-		try {
-			result = SpatialUtils.toLineString(resultCoords);
-		} catch (Exception e) {
-			throw new RouteException("Invalid route. "+e.getMessage());			
+		return Arrays.copyOf(path, pathLength);
+	}
+	
+	/**
+	 * finds the lowest cost route with the A* search.
+	 * @param blockedIds vertices which the route may not include
+	 * @return the vertex ids of the route, or NO_ROUTE
+	 */
+	private int[] findPathAStar(int startId, int endId, boolean isRouteStart, int[] blockedIds) throws IOException {
+		BitSet blocked = new BitSet();
+		for (int id : blockedIds) {
+			blocked.set(id);
 		}
-		return result;
+		int[] path = routeSearch.findRoute(startId, endId, blocked, isRouteStart);
+		return path != null ? path : NO_ROUTE;
 	}
 	
 	/**
-	 * finds the next point on a route that will lead from 'fromCoord' closest to 'toCoord'. 
-	 * returns null if no suitable point is found.  
-	 * @param coord
-	 * @param blacklist
-	 * @return
+	 * finds the next vertex on a route that will lead from 'fromId' closest to 'toCoord'. 
+	 * returns VertexTable.NONE if no suitable vertex is found.  
 	 * @throws IOException 
 	 */
-	private Coordinate findEndpointClosestTo(Coordinate fromCoord, Coordinate toCoord, List<Coordinate> routeSoFar, List<Coordinate> blacklist) throws IOException {
-		RouteFinder routeFitter = new ShortestDistanceRouteFinder(toCoord);
-		List<Coordinate> connectedCoords = getConnectedCoords(fromCoord);
-		if (connectedCoords.size() == 0) {
-			throw new IllegalArgumentException("Coordinate ["+fromCoord.getX()+","+fromCoord.getY()+"] is not a valid input.  It isn't a member of the TIN.");
+	private int findVertexClosestTo(int fromId, Coordinate toCoord, List<Coordinate> previous, int[] path, int pathLength, 
+			IntHashSet inPath, IntHashSet blocked) throws IOException {
+		VertexTable vertices = tinEdges.getVertexTable();
+		ShortestDistanceRouteFinder routeFitter = new ShortestDistanceRouteFinder(toCoord);
+		int[] connectedIds = tinEdges.getConnectedVertexIds(fromId);
+		if (connectedIds.length == 0) {
+			throw new IllegalArgumentException("Coordinate ["+vertices.getX(fromId)+","+vertices.getY(fromId)+"] is not a valid input.  It isn't a member of the TIN.");
 		}
 		
-		if (blacklist == null) {
-			blacklist = new ArrayList<Coordinate>();
-		}
-		
-		Coordinate bestFitCoord = null;
+		int bestFitId = VertexTable.NONE;
 		double bestFitness = -999999999;
-		for(Coordinate connectedCoord : connectedCoords) {
-			Point connectedPoint = geometryFactory.createPoint(connectedCoord);
+		for(int connectedId : connectedIds) {
 
 			//don't consider options that cause line to intersect self
 			if (!allowSelfIntersection) {
 				
 				//proposed line
 				List<Coordinate> proposedCoords = new ArrayList<Coordinate>();
-				if (routeSoFar != null) {
-					proposedCoords.addAll(routeSoFar);
+				if (previous != null) {
+					proposedCoords.addAll(previous);
 				}
-				proposedCoords.add(connectedCoord);
+				proposedCoords.addAll(SpatialUtils.toCoordinateList(vertices.toCoordinates(path, pathLength)));
+				proposedCoords.add(vertices.getCoordinate(connectedId));
 				LineString proposed = SpatialUtils.toLineString(proposedCoords);
 				
 				if (selfIntersects(proposed)) {
@@ -500,26 +605,40 @@ public class LineStringRouter {
 				}				
 			}
 			
-			boolean violatesRepeatedConstraint = !allowRepeatedCoords && routeSoFar.contains(connectedCoord);
-			boolean isBlacklisted = blacklist.contains(connectedCoord);
+			boolean violatesRepeatedConstraint = !allowRepeatedCoords && inPath.contains(connectedId);
+			boolean isBlocked = blocked.contains(connectedId);
 			
-			//define the proposed segment created from 'fromCoord' to the
-			//current 'connectedCoord'
-			List<Coordinate> proposedSegmentCoords = new ArrayList<Coordinate>();
-			proposedSegmentCoords.add(fromCoord);
-			proposedSegmentCoords.add(connectedCoord);
-			LineString proposedSegment = SpatialUtils.toLineString(proposedSegmentCoords);
-			
-			//quantify the fitness of the proposed segment.  higher values mean more fit.
-			double fitness = routeFitter.getFitness(proposedSegment);
-			if (fitness > bestFitness && !violatesRepeatedConstraint && !isBlacklisted) {
+			//quantify the fitness of the proposed segment from 'fromId' to 'connectedId'.  
+			//higher values mean more fit.
+			double fitness = routeFitter.getFitness(
+					vertices.getX(fromId), vertices.getY(fromId), 
+					vertices.getX(connectedId), vertices.getY(connectedId));
+			if (fitness > bestFitness && !violatesRepeatedConstraint && !isBlocked) {
 				bestFitness = fitness;
-				bestFitCoord = connectedCoord;
+				bestFitId = connectedId;
 			}
 		}
 		
-		Date de = new Date();
-		return bestFitCoord;
+		return bestFitId;
+	}
+	
+	/**
+	 * converts a list of coordinates into a set of vertex ids.  coordinates that aren't
+	 * TIN vertices are ignored.
+	 */
+	private IntHashSet toVertexIdSet(List<Coordinate> coords) throws IOException {
+		IntHashSet result = new IntHashSet();
+		if (coords == null) {
+			return result;
+		}
+		VertexTable vertices = tinEdges.getVertexTable();
+		for(Coordinate c : coords) {
+			int id = vertices.getVertexId(c);
+			if (id != VertexTable.NONE) {
+				result.add(id);
+			}
+		}
+		return result;
 	}
 	
 	private boolean selfIntersects(LineString ls) {
@@ -553,56 +672,6 @@ public class LineStringRouter {
 		return result;
 	}
 	
-	private LineString replaceRouteCoordinate(LineString route, Coordinate oldCoord, Coordinate newCoord) throws IOException, RouteException {
-		Coordinate[] blacklist = {oldCoord};
-		List<Coordinate> oldCoords = SpatialUtils.toCoordinateList(route.getCoordinates());
-		LineString newRoute = null;
-		
-		if (oldCoords.contains(newCoord)) {
-			throw new RouteException("new coordinate "+newCoord+" is already part of route.");
-		}
-	
-		int sliceIndex = oldCoords.indexOf(oldCoord);
-
-		if (sliceIndex < 0) {
-			throw new RouteException("old coordinate must be part of route");
-		}
-		if (sliceIndex == 0) { //first point of string to be replaced
-			List<Coordinate> endSlice = oldCoords.subList(sliceIndex+1, oldCoords.size());
-			LineString routeA = makeRoute(newCoord, oldCoords.get(1), blacklist); //changed portion
-			LineString routeB = SpatialUtils.toLineString(endSlice); //unchanged portion
-			
-			LineString[] routes = {routeA, routeB};
-			newRoute = joinRoutes(routes);
-		}
-		else if (sliceIndex == oldCoords.size() - 1) { //last point of string to be replaced
-			List<Coordinate> startSlice = oldCoords.subList(0, sliceIndex);
-			LineString routeA = SpatialUtils.toLineString(startSlice); //unchanged portion
-			LineString routeB = makeRoute(oldCoords.get(oldCoords.size()-2), newCoord, blacklist); //changed portion
-			
-			LineString[] routes = {routeA, routeB};
-			newRoute = joinRoutes(routes);
-		}
-		else { //mid point in string to be replaced
-			List<Coordinate> beforeSlice = oldCoords.subList(0, sliceIndex);
-			List<Coordinate> afterSlice = oldCoords.subList(sliceIndex+1, oldCoords.size());
-			Coordinate middleStart = beforeSlice.get(beforeSlice.size()-1);
-			Coordinate middleEnd = afterSlice.get(0);
-			
-			Coordinate[] keyCoords = {middleStart, newCoord, middleEnd};
-			LineString middleRoute = makeRoute(keyCoords, blacklist);
-			
-			LineString routeA = SpatialUtils.toLineString(beforeSlice);
-			LineString routeB = middleRoute;
-			LineString routeC = SpatialUtils.toLineString(afterSlice);
-			
-			LineString[] routes = {routeA, routeB, routeC};
-			newRoute = joinRoutes(routes);
-		}
-		
-		return newRoute;
-	}
-	
 	/**
 	 * checks for overlapping segments and non-endpoint touchings
 	 * @param routes
@@ -667,4 +736,45 @@ public class LineStringRouter {
 		return result;
 	}
 	
+	
+	/**
+	 * Identifies a route: the start and end vertices, whether the route is the start of a longer route,
+	 * and the vertices the route may not include (sorted).  The rest of a longer route only affects a 
+	 * partial route through the vertices it blocks (self intersections are allowed), so this is everything 
+	 * a route depends on.
+	 */
+	private static final class RouteKey {
+		
+		private final int startId;
+		private final int endId;
+		private final boolean isRouteStart;
+		private final int[] blocked;
+		private final int hash;
+		
+		RouteKey(int startId, int endId, boolean isRouteStart, int[] blocked) {
+			this.startId = startId;
+			this.endId = endId;
+			this.isRouteStart = isRouteStart;
+			this.blocked = blocked;
+			int h = 31 * startId + endId;
+			h = 31 * h + (isRouteStart ? 1 : 0);
+			this.hash = 31 * h + Arrays.hashCode(blocked);
+		}
+		
+		public int hashCode() {
+			return hash;
+		}
+		
+		public boolean equals(Object o) {
+			if (!(o instanceof RouteKey)) {
+				return false;
+			}
+			RouteKey other = (RouteKey)o;
+			return hash == other.hash 
+					&& startId == other.startId 
+					&& endId == other.endId 
+					&& isRouteStart == other.isRouteStart 
+					&& Arrays.equals(blocked, other.blocked);
+		}
+	}
 }
@@ -0,0 +1,51 @@
+package ca.bc.gov.catchment.routes;
+
+import java.io.IOException;
+
+import ca.bc.gov.catchment.fitness.SectionFitness;
+import ca.bc.gov.catchment.tin.VertexTable;
+
+/**
+ * The cost of an edge is its 2D length plus a penalty for edges which are less fit than the best possible 
+ * edge.  The penalty is (maxFitness - fitness of edge), so routes prefer fit edges (e.g. with 
+ * AvgElevationSectionFitness and maxFitness set to the highest elevation in the TIN, routes prefer to 
+ * stay high).
+ */
+public class SectionFitnessEdgeCost implements EdgeCost {
+
+	private VertexTable vertices;
+	private SectionFitness sectionFitness;
+	private double maxFitness;
+	private double fitnessWeight;
+	
+	public SectionFitnessEdgeCost(VertexTable vertices, SectionFitness sectionFitness, double maxFitness) {
+		this(vertices, sectionFitness, maxFitness, 1);
+	}
+	
+	/**
+	 * @param vertices
+	 * @param sectionFitness
+	 * @param maxFitness the highest fitness of any edge.  edges with higher fitness have no penalty.
+	 * @param fitnessWeight the penalty is multiplied by this value, to balance fitness against length. [>= 0]
+	 */
+	public SectionFitnessEdgeCost(VertexTable vertices, SectionFitness sectionFitness, double maxFitness, double fitnessWeight) {
+		if (fitnessWeight < 0) {
+			throw new IllegalArgumentException("fitnessWeight must be >= 0");
+		}
+		this.vertices = vertices;
+		this.sectionFitness = sectionFitness;
+		this.maxFitness = maxFitness;
+		this.fitnessWeight = fitnessWeight;
+	}
+	
+	public double getCost(int fromId, int toId) throws IOException {
+		double fitness = sectionFitness.fitness(vertices.getCoordinate(fromId), vertices.getCoordinate(toId));
+		double penalty = Math.max(0, maxFitness - fitness);
+		return vertices.distance2D(fromId, toId) + fitnessWeight * penalty;
+	}
+
+	public double getMinCostPerUnitLength() {
+		return 1;
+	}
+
+}
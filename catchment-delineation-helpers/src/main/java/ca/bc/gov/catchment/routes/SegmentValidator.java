@@ -0,0 +1,22 @@
+package ca.bc.gov.catchment.routes;
+
+import java.io.IOException;
+
+/**
+ * Checks routes one segment at a time, as they are built.  (Compare with RouteValidator, which checks
+ * a whole route.)  Because the rest of the route has already been checked, only the new segment and
+ * the vertex where it joins the route need to be checked.
+ */
+public interface SegmentValidator {
+
+	/**
+	 * checks whether a route which ends at 'fromId' may be extended to 'toId'
+	 * @param fromId the last vertex of the route so far
+	 * @param toId the next vertex
+	 * @param isFromStart true if 'fromId' is the first vertex of the route (so it will be an endpoint of 
+	 * the route, rather than an interior vertex)
+	 * @return
+	 * @throws IOException
+	 */
+	public boolean isValidSegment(int fromId, int toId, boolean isFromStart) throws IOException;
+}
@@ -25,4 +25,27 @@ public class ShortestDistanceRouteFinder implements RouteFinder {
 		return fitness;
 	}
 	
+	/**
+	 * Same as getFitness(LineString), but for the 2D segment (x1,y1)-(x2,y2).  Avoids creating
+	 * a LineString.
+	 */
+	public double getFitness(double x1, double y1, double x2, double y2) {
+		Coordinate end = endPoint.getCoordinate();
+		double dx = x2 - x1;
+		double dy = y2 - y1;
+		double lengthSquared = dx*dx + dy*dy;
+		
+		//parameter of the point on the segment which is nearest to the end point (clamped to the segment)
+		double t = 0;
+		if (lengthSquared > 0) {
+			t = ((end.x - x1) * dx + (end.y - y1) * dy) / lengthSquared;
+			t = Math.max(0, Math.min(1, t));
+		}
+		double nearestX = x1 + t * dx;
+		double nearestY = y1 + t * dy;
+		double distance = Math.sqrt((end.x - nearestX)*(end.x - nearestX) + (end.y - nearestY)*(end.y - nearestY));
+		double fitness = distance * -1;
+		return fitness;
+	}
+	
 }
@@ -29,22 +29,16 @@ public class WaterAwareLineStringRouter {
 		this.tinEdges = tinEdges;
 		this.water = water;
 
-		//define a route validator which disallows routes that touch water in any way, except
-		//if only touching at the first coordinate
-		RouteValidator validator = new RouteValidator() {
-
-			public boolean isValid(LineString line) {
-				boolean isValid = false;
-				try {
-					isValid = !(water.isCrossingWater(line) || water.isOverlappingWater(line));
-				} catch (IOException e) {
-					e.printStackTrace();
-				}				
-				return isValid;
-			}
-			
-		};
-		this.lineStringRouter = new LineStringRouter(tinEdges, validator, LineStringRouter.INVALID_ROUTE_ACTION_STOP);
+		//routes may not touch water, except at their endpoints.  each segment is validated as the route is
+		//built, and invalid segments are routed around.
+		try {
+			SegmentValidator validator = new WaterSegmentValidator(tinEdges.getVertexTable(), water.getNodeTable());
+			EdgeCost edgeCost = new DistanceEdgeCost(tinEdges.getVertexTable());
+			this.lineStringRouter = new LineStringRouter(tinEdges, edgeCost, validator);
+		}
+		catch (IOException e) {
+			throw new IllegalArgumentException("invalid TIN edges.");
+		}
 	}
 	
 	public LineString makeRoute(Coordinate startCoord, Coordinate endCoord) throws IOException, RouteException {
@@ -0,0 +1,58 @@
+package ca.bc.gov.catchment.routes;
+
+import java.io.IOException;
+
+import org.locationtech.jts.geom.Coordinate;
+
+import ca.bc.gov.catchment.tin.VertexTable;
+import ca.bc.gov.catchment.water.WaterNodeTable;
+
+/**
+ * Validates routes one segment at a time, so that a route doesn't touch water except at its endpoints.
+ * i.e.
+ *  - no vertex of the route, other than the first and last, may be on water
+ *  - no segment of the route may cross, overlap or touch water, except at its endpoints
+ * Uses the water node table and its index of water segments, so each segment is checked with a few
+ * index lookups (rather than a spatial query of the whole route).  Whether each TIN vertex is on water 
+ * is remembered. 
+ */
+public class WaterSegmentValidator implements SegmentValidator {
+
+	private static final byte UNKNOWN = 0;
+	private static final byte ON_WATER = 1;
+	private static final byte NOT_ON_WATER = 2;
+	
+	private VertexTable vertices;
+	private WaterNodeTable waterNodes;
+	private byte[] vertexStatus;
+	
+	public WaterSegmentValidator(VertexTable vertices, WaterNodeTable waterNodes) {
+		this.vertices = vertices;
+		this.waterNodes = waterNodes;
+		this.vertexStatus = new byte[vertices.getNumVertices()];
+	}
+	
+	public boolean isValidSegment(int fromId, int toId, boolean isFromStart) throws IOException {
+		//'fromId' becomes an interior vertex of the route (unless it is the start)
+		if (!isFromStart && isOnWater(fromId)) {
+			return false;
+		}
+		//'toId' is checked when the route is extended from it
+		Coordinate from = vertices.getCoordinate(fromId);
+		Coordinate to = vertices.getCoordinate(toId);
+		return !waterNodes.isSegmentTouchingWater(from, to, false);
+	}
+	
+	/**
+	 * checks whether the given TIN vertex is on water
+	 */
+	public boolean isOnWater(int vertexId) {
+		byte status = vertexStatus[vertexId];
+		if (status == UNKNOWN) {
+			status = waterNodes.isOnWater(vertices.getCoordinate(vertexId)) ? ON_WATER : NOT_ON_WATER;
+			vertexStatus[vertexId] = status;
+		}
+		return status == ON_WATER;
+	}
+
+}
@@ -14,7 +14,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -149,6 +152,10 @@ public class GrowCatchments {
 		options.addOption("outTable", true, "output table name");
 		options.addOption("bbox", true, "bbox (minx,miny,maxx,maxy)");
 		options.addOption("bboxcrs", true, "e.g. EPSG:3005");
+		options.addOption("taskTimeoutSeconds", true, "maximum time to grow one ridge (optional)");
+		options.addOption("maxRuntimeMinutes", true, "stop growing ridges after this time, and keep the ridges grown so far (optional)");
+		options.addOption("numThreads", true, "number of threads used to grow ridges (optional.  default: number of processors)");
+		options.addOption("partitioned", false, "grow ridges in spatially compact partitions, one partition per thread at a time.  output order doesn't depend on the number of threads");
 		CommandLineParser parser = new DefaultParser();
 		HelpFormatter formatter = new HelpFormatter();
 		
@@ -160,6 +167,10 @@ public class GrowCatchments {
 		String outTable = null;
 		String bboxStr = null;
 		String bboxCrs = null;
+		String taskTimeoutStr = null;
+		String maxRuntimeStr = null;
+		int numThreads = Runtime.getRuntime().availableProcessors();
+		boolean partitioned = false;
 		int bboxSrid = -1;
 		ReferencedEnvelope boundsToProcess = null;
 		
@@ -173,6 +184,12 @@ public class GrowCatchments {
 			outTable = cmd.getOptionValue("outTable");
 			bboxStr = cmd.getOptionValue("bbox");
 			bboxCrs = cmd.getOptionValue("bboxcrs");
+			taskTimeoutStr = cmd.getOptionValue("taskTimeoutSeconds");
+			maxRuntimeStr = cmd.getOptionValue("maxRuntimeMinutes");
+			if (cmd.hasOption("numThreads")) {
+				numThreads = Integer.parseInt(cmd.getOptionValue("numThreads"));
+			}
+			partitioned = cmd.hasOption("partitioned");
 		} catch (ParseException e2) {
 			formatter.printHelp( WKTList2GeoPackage.class.getSimpleName(), options );
 		}
@@ -206,6 +223,14 @@ public class GrowCatchments {
 		if (bboxStr != null) {
 			System.out.println("- bbox: "+bboxStr+" ("+bboxCrs+")");	
 		}
+		if (taskTimeoutStr != null) {
+			System.out.println("- task timeout: "+taskTimeoutStr+" s");
+		}
+		if (maxRuntimeStr != null) {
+			System.out.println("- max runtime: "+maxRuntimeStr+" min");
+		}
+		System.out.println("- num threads: "+numThreads);
+		System.out.println("- partitioned: "+partitioned);
 				
 		
 		//Open water input file
@@ -311,15 +336,36 @@ public class GrowCatchments {
 			//grow ridges.
 			//RidgeGrower ridgeGrower = new MedialAxisRidgeGrower(water, tinEdges);
 			//RidgeGrower ridgeGrower = new HybridRidgeGrower(water, tinEdges);
-			int numThreads = 24;
 			int lookAhead = 2;
 			RidgeGrowthStrategy hillClimbStrategy = new HillClimbStrategy(water, tinEdges, new PointUncertainty(0,  1), lookAhead);
 			RidgeGrowthStrategy medialAxisStrategy = new MedialAxisStrategy(water, tinEdges);
 			RidgeGrowthStrategy combinedStrategy = new PlanAPlanBStrategy(hillClimbStrategy, medialAxisStrategy, water, tinEdges);
 			
-			ca.bc.gov.catchment.ridgegrowth.RidgeGrower ridgeGrower = 
+			final ca.bc.gov.catchment.ridgegrowth.RidgeGrower ridgeGrower = 
 					new ca.bc.gov.catchment.ridgegrowth.RidgeGrower(water, tinEdges, hillClimbStrategy, numThreads);
-			SimpleFeatureCollection ridges = ridgeGrower.growAllRidges();
+			ridgeGrower.setPartitioned(partitioned);
+			if (taskTimeoutStr != null) {
+				ridgeGrower.setTaskTimeout(Long.parseLong(taskTimeoutStr), TimeUnit.SECONDS);
+			}
+			Timer runtimeLimit = null;
+			if (maxRuntimeStr != null) {
+				runtimeLimit = new Timer("ridge-growth-runtime-limit", true);
+				runtimeLimit.schedule(new TimerTask() {
+					public void run() {
+						System.out.println("max runtime reached.  cancelling ridge growth...");
+						ridgeGrower.cancel();
+					}
+				}, TimeUnit.MINUTES.toMillis(Long.parseLong(maxRuntimeStr)));
+			}
+			SimpleFeatureCollection ridges = null;
+			try {
+				ridges = ridgeGrower.growAllRidges();
+			}
+			finally {
+				if (runtimeLimit != null) {
+					runtimeLimit.cancel();
+				}
+			}
 			
 			System.out.println("done. grew "+ridges.size()+" ridges.");
 			ridges = SpatialUtils.renameFeatureType(ridges, outTable);			
@@ -104,9 +104,9 @@ import ca.bc.gov.catchment.improvement.JunctionImprover;
 import ca.bc.gov.catchment.improvement.JunctionModification;
 import ca.bc.gov.catchment.improvement.SectionImprover;
 import ca.bc.gov.catchment.improvement.SectionModification;
-import ca.bc.gov.catchment.improvement.SetImprover;
 import ca.bc.gov.catchment.improvement.SimulatedAnnealingJunctionImprover;
 import ca.bc.gov.catchment.improvement.SimulatedAnnealingSectionImprover;
+import ca.bc.gov.catchment.tin.EdgeSlopeTable;
 import ca.bc.gov.catchment.tin.TinEdges;
 import ca.bc.gov.catchment.tin.TinPolys;
 import ca.bc.gov.catchment.utils.SaveUtils;
@@ -153,6 +153,10 @@ public class ImproveCatchments {
 		options.addOption("outImprovementCoverageTable", true, "output table name for improvement coverage");
 		options.addOption("bbox", true, "bbox (minx,miny,maxx,maxy)");
 		options.addOption("bboxcrs", true, "e.g. EPSG:3005");
+		options.addOption("numThreads", true, "number of threads used to improve catchments (optional.  default: number of processors)");
+		options.addOption("childrenPerGeneration", true, "number of candidate sets generated per generation.  must be even.  (optional.  default: 2)");
+		options.addOption("numChains", true, "number of parallel tempering chains used to improve each section.  (optional.  default: 1)");
+		options.addOption("seed", true, "seed for the random number generators, so runs can be repeated (optional)");
 		CommandLineParser parser = new DefaultParser();
 		HelpFormatter formatter = new HelpFormatter();
 		
@@ -170,6 +174,10 @@ public class ImproveCatchments {
 		String bboxCrs = null;
 		int bboxSrid = -1;
 		ReferencedEnvelope boundsToProcess = null;
+		int numThreads = Runtime.getRuntime().availableProcessors();
+		int childrenPerGeneration = 2;
+		int numChains = 1;
+		String seedStr = null;
 		
 		try {
 			CommandLine cmd = parser.parse( options, args);
@@ -185,6 +193,16 @@ public class ImproveCatchments {
 			outTable = cmd.getOptionValue("outTable");
 			bboxStr = cmd.getOptionValue("bbox");
 			bboxCrs = cmd.getOptionValue("bboxcrs");
+			if (cmd.hasOption("numThreads")) {
+				numThreads = Integer.parseInt(cmd.getOptionValue("numThreads"));
+			}
+			if (cmd.hasOption("childrenPerGeneration")) {
+				childrenPerGeneration = Integer.parseInt(cmd.getOptionValue("childrenPerGeneration"));
+			}
+			if (cmd.hasOption("numChains")) {
+				numChains = Integer.parseInt(cmd.getOptionValue("numChains"));
+			}
+			seedStr = cmd.getOptionValue("seed");
 		} catch (ParseException e2) {
 			formatter.printHelp( WKTList2GeoPackage.class.getSimpleName(), options );
 		}
@@ -219,6 +237,12 @@ public class ImproveCatchments {
 		System.out.println("- TIN polys table: "+tinPolysTable);
 		System.out.println("- out file: "+outputGeopackageFilename);
 		System.out.println("- out table: "+outTable);
+		System.out.println("- num threads: "+numThreads);
+		System.out.println("- children per generation: "+childrenPerGeneration);
+		System.out.println("- num chains: "+numChains);
+		if (seedStr != null) {
+			System.out.println("- seed: "+seedStr);
+		}
 		if (bboxStr != null) {
 			System.out.println("- bbox: "+bboxStr+" ("+bboxCrs+")");	
 		}
@@ -392,6 +416,12 @@ public class ImproveCatchments {
 			
 			tinPolys = new TinPolys(tinPolysFeatureSource, bufferedBboxFilter);
 			tinEdges = new TinEdges(tinEdgesFeatureSource, bufferedBboxFilter);
+			
+			//reuse the slopes saved by ComputeAdjacentSlopes, if the tin edges have them
+			if (EdgeSlopeTable.hasSlopeAttributes(tinEdgesFeatureSource.getSchema())) {
+				System.out.println("Loading edge slopes...");
+				tinPolys.setEdgeSlopeTable(EdgeSlopeTable.fromFeatures(tinPolys.getTriangleIndex(), tinEdges.getFeatures()));
+			}
 			waterAnalyzer = new Water(fastWaterFeatureSource);
 			
 			System.out.println("Starting...");
@@ -408,7 +438,9 @@ public class ImproveCatchments {
 					waterFeatureSource, 
 					sectionFitness, 
 					SEARCH_RADIUS, 
-					20 //numSteps
+					20, //numSteps
+					numChains,
+					numThreads
 					);
 						
 			SimulatedAnnealingJunctionImprover junctionImprover = new SimulatedAnnealingJunctionImprover(
@@ -420,14 +452,18 @@ public class ImproveCatchments {
 					true //shortcircuit 
 					);
 			
-			SetImprover evolutionSetImprover = new EvolutionSetImprover(
+			EvolutionSetImprover evolutionSetImprover = new EvolutionSetImprover(
 					waterAnalyzer, 
 					sectionImprover, 
 					junctionImprover, 
-					2, //childrenPerGeneration
+					childrenPerGeneration,
 					100, //maxGenerations
-					true //stop early if no improvement
+					true, //stop early if no improvement
+					numThreads
 					);
+			if (seedStr != null) {
+				evolutionSetImprover.setRandomSeed(Long.parseLong(seedStr));
+			}
 			
 			//make improvements
 			
@@ -0,0 +1,221 @@
+package ca.bc.gov.catchment.tin;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ * The slopes of the two triangles on either side of each TIN edge, relative to the edge (see
+ * Triangle.getSlopeRelativeToBaseEdge).  Negative values mean downward from the edge, positive values
+ * mean upward.  The slopes only depend on the TIN, so they are computed once for every edge and
+ * stored in arrays indexed by edge id (see TriangleAdjacencyIndex.getEdgeId).
+ *
+ * Slopes are NaN for edges which don't have exactly two triangles.  The table can also be loaded from
+ * TIN edge features with "slope1" and "slope2" attributes (as saved by ComputeAdjacentSlopes), so
+ * the slopes don't need to be recomputed each run.
+ *
+ * The table is read-only after it is created, and may be shared between threads.
+ */
+public class EdgeSlopeTable {
+
+	public static final String SLOPE1_ATTRIBUTE = "slope1";
+	public static final String SLOPE2_ATTRIBUTE = "slope2";
+
+	private static final int EDGES_PER_TASK = 10000;
+
+	private TriangleAdjacencyIndex index;
+	private double[] slope1;
+	private double[] slope2;
+	private boolean[] hasTwoTriangles;
+
+	private EdgeSlopeTable(TriangleAdjacencyIndex index) {
+		int numEdges = index.getNumEdges();
+		this.index = index;
+		this.slope1 = new double[numEdges];
+		this.slope2 = new double[numEdges];
+		this.hasTwoTriangles = new boolean[numEdges];
+		Arrays.fill(slope1, Double.NaN);
+		Arrays.fill(slope2, Double.NaN);
+		for (int edgeId = 0; edgeId < numEdges; edgeId++) {
+			hasTwoTriangles[edgeId] = index.getTrianglesOnEdge(edgeId).length == 2;
+		}
+	}
+
+	/**
+	 * computes the slopes of every edge in the index.  groups of edges are computed in parallel.
+	 * @param index
+	 * @param numThreads
+	 * @return
+	 * @throws IOException
+	 */
+	public static EdgeSlopeTable compute(TriangleAdjacencyIndex index, int numThreads) throws IOException {
+		final EdgeSlopeTable table = new EdgeSlopeTable(index);
+		int numEdges = index.getNumEdges();
+		if (numThreads <= 1 || numEdges <= EDGES_PER_TASK) {
+			for (int edgeId = 0; edgeId < numEdges; edgeId++) {
+				table.computeSlopes(edgeId);
+			}
+			return table;
+		}
+
+		//each task fills a separate range of the arrays
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int start = 0; start < numEdges; start += EDGES_PER_TASK) {
+			final int from = start;
+			final int to = Math.min(start + EDGES_PER_TASK, numEdges);
+			tasks.add(new Callable<Void>() {
+				public Void call() {
+					for (int edgeId = from; edgeId < to; edgeId++) {
+						table.computeSlopes(edgeId);
+					}
+					return null;
+				}
+			});
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		try {
+			for (Future<Void> future : executor.invokeAll(tasks)) {
+				future.get();
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while computing edge slopes", e);
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException)e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+		finally {
+			executor.shutdown();
+		}
+		return table;
+	}
+
+	/**
+	 * creates a table from TIN edge features which have "slope1" and "slope2" attributes.  the slopes of
+	 * any edges of the index which aren't in the features are computed.
+	 * @param index
+	 * @param tinEdges
+	 * @return
+	 * @throws IOException
+	 */
+	public static EdgeSlopeTable fromFeatures(TriangleAdjacencyIndex index, SimpleFeatureCollection tinEdges) throws IOException {
+		if (!hasSlopeAttributes(tinEdges.getSchema())) {
+			throw new IllegalArgumentException("tin edges must have '"+SLOPE1_ATTRIBUTE+"' and '"+SLOPE2_ATTRIBUTE+"' attributes");
+		}
+		EdgeSlopeTable table = new EdgeSlopeTable(index);
+		boolean[] isLoaded = new boolean[index.getNumEdges()];
+		SimpleFeatureIterator it = tinEdges.features();
+		try {
+			while(it.hasNext()) {
+				SimpleFeature f = it.next();
+				Coordinate[] coords = ((Geometry)f.getDefaultGeometry()).getCoordinates();
+				if (coords.length != 2) {
+					continue;
+				}
+				int edgeId = index.getEdgeId(coords[0], coords[1]);
+				if (edgeId == TriangleAdjacencyIndex.NONE) {
+					continue;
+				}
+				table.slope1[edgeId] = toDouble(f.getAttribute(SLOPE1_ATTRIBUTE));
+				table.slope2[edgeId] = toDouble(f.getAttribute(SLOPE2_ATTRIBUTE));
+				isLoaded[edgeId] = true;
+			}
+		}
+		finally {
+			it.close();
+		}
+		for (int edgeId = 0; edgeId < isLoaded.length; edgeId++) {
+			if (!isLoaded[edgeId]) {
+				table.computeSlopes(edgeId);
+			}
+		}
+		return table;
+	}
+
+	/**
+	 * checks whether features of the given type have slopes which can be loaded with fromFeatures
+	 */
+	public static boolean hasSlopeAttributes(SimpleFeatureType featureType) {
+		return featureType.getDescriptor(SLOPE1_ATTRIBUTE) != null
+				&& featureType.getDescriptor(SLOPE2_ATTRIBUTE) != null;
+	}
+
+	public int getNumEdges() {
+		return slope1.length;
+	}
+
+	/**
+	 * Gets the id of the edge between the two given coordinates (in either order), or
+	 * TriangleAdjacencyIndex.NONE if there is no such edge
+	 */
+	public int getEdgeId(Coordinate a, Coordinate b) {
+		return index.getEdgeId(a, b);
+	}
+
+	/**
+	 * checks whether the edge is shared by exactly two triangles
+	 */
+	public boolean hasTwoTriangles(int edgeId) {
+		return hasTwoTriangles[edgeId];
+	}
+
+	/**
+	 * the slope of the first triangle on the edge, relative to the edge
+	 */
+	public double getSlope1(int edgeId) {
+		return slope1[edgeId];
+	}
+
+	/**
+	 * the slope of the second triangle on the edge, relative to the edge
+	 */
+	public double getSlope2(int edgeId) {
+		return slope2[edgeId];
+	}
+
+	public double getMaxSlope(int edgeId) {
+		return Math.max(slope1[edgeId], slope2[edgeId]);
+	}
+
+	// Private
+	// ------------------------------------------------------------------------
+
+	private void computeSlopes(int edgeId) {
+		if (!hasTwoTriangles[edgeId]) {
+			return;
+		}
+		Triangle[] triangles = index.getTrianglesOnEdge(edgeId);
+		Edge baseEdge = index.getEdge(edgeId);
+		if (triangles[0].is3D()) {
+			slope1[edgeId] = triangles[0].getSlopeRelativeToBaseEdge(baseEdge);
+		}
+		if (triangles[1].is3D()) {
+			slope2[edgeId] = triangles[1].getSlopeRelativeToBaseEdge(baseEdge);
+		}
+	}
+
+	private static double toDouble(Object value) {
+		if (value instanceof Number) {
+			return ((Number)value).doubleValue();
+		}
+		return Double.NaN;
+	}
+}
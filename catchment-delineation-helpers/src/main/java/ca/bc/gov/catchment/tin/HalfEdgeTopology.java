@@ -0,0 +1,283 @@
+package ca.bc.gov.catchment.tin;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.opengis.feature.simple.SimpleFeature;
+
+/**
+ * An in-memory half-edge representation of the edges of a TIN.  It is built once (in a single pass
+ * over the TIN edges) and then answers topology questions without evaluating any spatial filters:
+ *   - which vertices are connected to a given vertex
+ *   - which edge (if any) joins two vertices
+ *   - which edges touch a given vertex, in angular order
+ *
+ * Each TIN edge is stored as two half-edges pointing in opposite directions.  The half-edges for
+ * edge 'e' are 2e and 2e+1, so the twin of half-edge 'h' is always h^1.  The outgoing half-edges of
+ * each vertex are stored contiguously and are sorted by compass angle (0 is east, 90 is north), which
+ * is the same order produced by TinEdges.getEdgesTouchingCoordinate.  All queries about a single
+ * vertex are O(degree).
+ *
+ * Vertices are stored in a VertexTable, which identifies them by their 2D position and assigns 
+ * dense integer ids in the order they are first encountered.
+ *
+ * Instances are immutable after construction, so they may be shared between threads.
+ */
+public class HalfEdgeTopology {
+
+	public static final int NONE = VertexTable.NONE;
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private VertexTable vertices;
+
+	//half-edge table
+	private int numEdges;
+	private int[] halfEdgeOrigin;
+	private SimpleFeature[] edgeFeatures;
+
+	//outgoing half-edges of vertex v are: outgoing[vertexOffsets[v]] ... outgoing[vertexOffsets[v+1]-1]
+	private int[] vertexOffsets;
+	private int[] outgoing;
+
+	private HalfEdgeTopology() {
+		this.vertices = new VertexTable();
+		this.numEdges = 0;
+		this.halfEdgeOrigin = new int[INITIAL_CAPACITY * 2];
+		this.edgeFeatures = new SimpleFeature[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Builds a topology from a collection of TIN edges.  Each feature must be a two-point linestring.
+	 * @param tinEdges
+	 * @return
+	 * @throws IOException
+	 */
+	public static HalfEdgeTopology fromFeatures(SimpleFeatureCollection tinEdges) throws IOException {
+		HalfEdgeTopology topology = new HalfEdgeTopology();
+		SimpleFeatureIterator it = tinEdges.features();
+		try {
+			while(it.hasNext()) {
+				SimpleFeature f = it.next();
+				Geometry g = (Geometry)f.getDefaultGeometry();
+				Coordinate[] coords = g.getCoordinates();
+				if (coords.length != 2) {
+					throw new IllegalArgumentException("edge must have exactly two vertices.  found "+coords.length+" in feature "+f.getID());
+				}
+				topology.addEdge(coords[0], coords[1], f);
+			}
+		}
+		finally {
+			it.close();
+		}
+		topology.buildVertexIndex();
+		return topology;
+	}
+
+	// Vertices
+	// ------------------------------------------------------------------------
+
+	public VertexTable getVertexTable() {
+		return vertices;
+	}
+
+	public int getNumVertices() {
+		return vertices.getNumVertices();
+	}
+
+	/**
+	 * gets the id of the vertex at the given coordinate (2D comparison), or NONE if
+	 * the coordinate is not a vertex of the TIN
+	 */
+	public int getVertexId(Coordinate c) {
+		return vertices.getVertexId(c);
+	}
+
+	/**
+	 * creates a new (3D) coordinate object for the given vertex
+	 */
+	public Coordinate getCoordinate(int vertexId) {
+		return vertices.getCoordinate(vertexId);
+	}
+
+	public int getDegree(int vertexId) {
+		return vertexOffsets[vertexId+1] - vertexOffsets[vertexId];
+	}
+
+	/**
+	 * gets the ids of the vertices which are connected to the given vertex by a single edge.
+	 * Results are in the same angular order as the incident edges.  Duplicates are omitted.
+	 */
+	public int[] getNeighbours(int vertexId) {
+		int start = vertexOffsets[vertexId];
+		int end = vertexOffsets[vertexId+1];
+		int[] result = new int[end - start];
+		int count = 0;
+		for (int i = start; i < end; i++) {
+			int neighbour = getDestination(outgoing[i]);
+			boolean isDuplicate = false;
+			for (int j = 0; j < count; j++) {
+				if (result[j] == neighbour) {
+					isDuplicate = true;
+					break;
+				}
+			}
+			if (!isDuplicate) {
+				result[count++] = neighbour;
+			}
+		}
+		return count == result.length ? result : Arrays.copyOf(result, count);
+	}
+
+	// Edges
+	// ------------------------------------------------------------------------
+
+	public int getNumEdges() {
+		return numEdges;
+	}
+
+	public SimpleFeature getEdgeFeature(int edgeId) {
+		return edgeFeatures[edgeId];
+	}
+
+	/**
+	 * gets the ids of the edges that touch the given vertex, sorted by compass angle (from
+	 * the given vertex) starting from east
+	 */
+	public int[] getIncidentEdges(int vertexId) {
+		int start = vertexOffsets[vertexId];
+		int end = vertexOffsets[vertexId+1];
+		int[] result = new int[end - start];
+		for (int i = start; i < end; i++) {
+			result[i - start] = getEdge(outgoing[i]);
+		}
+		return result;
+	}
+
+	/**
+	 * finds the half-edge which starts at 'fromVertexId' and ends at 'toVertexId'.  Returns NONE
+	 * if the vertices aren't connected.
+	 */
+	public int findHalfEdge(int fromVertexId, int toVertexId) {
+		if (fromVertexId == NONE || toVertexId == NONE) {
+			return NONE;
+		}
+		int end = vertexOffsets[fromVertexId+1];
+		for (int i = vertexOffsets[fromVertexId]; i < end; i++) {
+			int h = outgoing[i];
+			if (getDestination(h) == toVertexId) {
+				return h;
+			}
+		}
+		return NONE;
+	}
+
+	/**
+	 * gets the i-th outgoing half-edge from the given vertex, where i is in [0, degree)
+	 */
+	public int getOutgoingHalfEdge(int vertexId, int i) {
+		return outgoing[vertexOffsets[vertexId] + i];
+	}
+
+	// Half-edges
+	// ------------------------------------------------------------------------
+
+	public int getOrigin(int halfEdge) {
+		return halfEdgeOrigin[halfEdge];
+	}
+
+	public int getDestination(int halfEdge) {
+		return halfEdgeOrigin[twin(halfEdge)];
+	}
+
+	public static int twin(int halfEdge) {
+		return halfEdge ^ 1;
+	}
+
+	public static int getEdge(int halfEdge) {
+		return halfEdge >> 1;
+	}
+
+	// Construction
+	// ------------------------------------------------------------------------
+
+	private void addEdge(Coordinate a, Coordinate b, SimpleFeature feature) {
+		int originA = vertices.addVertex(a);
+		int originB = vertices.addVertex(b);
+		if (numEdges == edgeFeatures.length) {
+			edgeFeatures = Arrays.copyOf(edgeFeatures, numEdges * 2);
+			halfEdgeOrigin = Arrays.copyOf(halfEdgeOrigin, numEdges * 4);
+		}
+		int edgeId = numEdges++;
+		halfEdgeOrigin[edgeId*2] = originA;
+		halfEdgeOrigin[edgeId*2+1] = originB;
+		edgeFeatures[edgeId] = feature;
+	}
+
+	/**
+	 * groups half-edges by origin vertex, then sorts each group by compass angle
+	 */
+	private void buildVertexIndex() {
+		int numVertices = vertices.getNumVertices();
+		int numHalfEdges = numEdges * 2;
+
+		//trim unused capacity
+		vertices.trim();
+		halfEdgeOrigin = Arrays.copyOf(halfEdgeOrigin, numHalfEdges);
+		edgeFeatures = Arrays.copyOf(edgeFeatures, numEdges);
+
+		//count the outgoing half-edges of each vertex, then convert counts into offsets
+		vertexOffsets = new int[numVertices+1];
+		for (int h = 0; h < numHalfEdges; h++) {
+			vertexOffsets[halfEdgeOrigin[h]+1]++;
+		}
+		for (int v = 0; v < numVertices; v++) {
+			vertexOffsets[v+1] += vertexOffsets[v];
+		}
+
+		int[] nextSlot = Arrays.copyOf(vertexOffsets, numVertices);
+		outgoing = new int[numHalfEdges];
+		for (int h = 0; h < numHalfEdges; h++) {
+			outgoing[nextSlot[halfEdgeOrigin[h]]++] = h;
+		}
+
+		//sort each vertex's half-edges by angle.  degree is small, so a (stable) insertion sort
+		//is used.  stability keeps ties in feature order, as with the filter-based lookup.
+		double[] angles = new double[numHalfEdges];
+		for (int h = 0; h < numHalfEdges; h++) {
+			angles[h] = angle2D(h);
+		}
+		for (int v = 0; v < numVertices; v++) {
+			int start = vertexOffsets[v];
+			int end = vertexOffsets[v+1];
+			for (int i = start + 1; i < end; i++) {
+				int h = outgoing[i];
+				int j = i - 1;
+				while (j >= start && angles[outgoing[j]] > angles[h]) {
+					outgoing[j+1] = outgoing[j];
+					j--;
+				}
+				outgoing[j+1] = h;
+			}
+		}
+	}
+
+	/**
+	 * angle of the half-edge in degrees [0-360), where 0 is east and 90 is north.
+	 * (same convention as VectorUtils.angle2D)
+	 */
+	private double angle2D(int halfEdge) {
+		int from = getOrigin(halfEdge);
+		int to = getDestination(halfEdge);
+		double dy = vertices.getY(to) - vertices.getY(from);
+		double dx = vertices.getX(to) - vertices.getX(from);
+		double angleDegrees = Math.toDegrees(Math.atan2(dy, dx));
+		if (angleDegrees < 0) {
+			angleDegrees += 360;
+		}
+		return angleDegrees;
+	}
+}
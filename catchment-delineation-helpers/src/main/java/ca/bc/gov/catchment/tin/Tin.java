@@ -3,24 +3,16 @@ package ca.bc.gov.catchment.tin;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.SplittableRandom;
 
-import org.geotools.data.DataUtilities;
-import org.geotools.data.collection.SpatialIndexFeatureCollection;
-import org.geotools.data.collection.SpatialIndexFeatureSource;
 import org.geotools.data.simple.SimpleFeatureCollection;
-import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.data.simple.SimpleFeatureSource;
 import org.geotools.factory.CommonFactoryFinder;
-import org.geotools.feature.DefaultFeatureCollection;
-import org.geotools.feature.SchemaException;
 import org.geotools.geometry.jts.JTSFactoryFinder;
 import org.geotools.referencing.CRS;
 import org.geotools.util.factory.Hints;
 import org.locationtech.jts.geom.Coordinate;
-import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.GeometryFactory;
-import org.locationtech.jts.geom.LineString;
-import org.locationtech.jts.geom.Point;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.filter.Filter;
@@ -28,8 +20,6 @@ import org.opengis.filter.FilterFactory2;
 import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
-import ca.bc.gov.catchment.utils.SpatialUtils;
-
 public abstract class Tin {
 
 	protected SimpleFeatureSource featureSource;
@@ -37,8 +27,11 @@ public abstract class Tin {
 	protected String geometryPropertyName;
 	protected FilterFactory2 filterFactory;
 	protected GeometryFactory geometryFactory;
-	private SimpleFeatureSource pointCloud;
 	private Filter defaultFilter;
+	private volatile VertexTable vertexTable;
+	private volatile VertexKdTree vertexIndex;
+	private volatile TinStatistics statistics;
+	private volatile VertexCloud vertexCloud;
 
 	public Tin(SimpleFeatureSource featureSource) {
 		this(featureSource, null);
@@ -51,7 +44,6 @@ public abstract class Tin {
 		Hints filterHints = new Hints( Hints.FEATURE_2D, true ); // force 2D queries
 		this.filterFactory = CommonFactoryFinder.getFilterFactory2(filterHints);
 		this.geometryFactory = JTSFactoryFinder.getGeometryFactory();
-		this.pointCloud = null;
 		this.defaultFilter = defaultFilter;
 	}
 	
@@ -83,10 +75,20 @@ public abstract class Tin {
 	} 
 	
 	public Coordinate getRandomCoordInRadius(Coordinate c, double radius, List<Coordinate> exclude) throws IOException {
+		return getRandomCoordInRadius(c, radius, exclude, null);
+	}
+	
+	/**
+	 * Picks a random vertex within the given distance of the given coordinate, which isn't in 'exclude'.
+	 * @param random the random number generator to use.  if null, Math.random() is used.
+	 * @return the vertex, or null if no suitable vertex was picked
+	 */
+	public Coordinate getRandomCoordInRadius(Coordinate c, double radius, List<Coordinate> exclude, SplittableRandom random) throws IOException {
 		int MAX_TRIES = 100;
 		List<Coordinate> coords = getCoordsInRadius(c, radius);
 		for(int i = 0; i < MAX_TRIES; i++) {
-			int pickedIndex = (int)(Math.random() * coords.size());
+			double r = random != null ? random.nextDouble() : Math.random();
+			int pickedIndex = (int)(r * coords.size());
 			Coordinate picked = coords.get(pickedIndex);
 			if (exclude == null || !exclude.contains(picked)) {
 				return picked;
@@ -95,138 +97,160 @@ public abstract class Tin {
 		return null;
 	}
 	
+	/**
+	 * Gets all vertices of the TIN within the given 2D distance of the given coordinate.
+	 */
 	public List<Coordinate> getCoordsInRadius(Coordinate c, double radius) throws IOException  {
-		Point p = geometryFactory.createPoint(c);
+		VertexTable vertices = getVertexTable();
 		List<Coordinate> coords = new ArrayList<Coordinate>();
 		
-		//first find water features that touch the given coordinate (at any point)
-		Filter radiusFilter = filterFactory.dwithin(
-				filterFactory.property(geometryPropertyName), 
-				filterFactory.literal(p),
-				radius,
-				"meter");
-		SimpleFeatureCollection matches = getFeatures(radiusFilter);	
-		System.out.println(matches.size()+" matches");
-		SimpleFeatureIterator matchesIt = matches.features();
-		try {
-			while(matchesIt.hasNext()) {
-				SimpleFeature match = matchesIt.next();
-				Geometry g = (Geometry)match.getDefaultGeometry();
-				for(Coordinate coord : g.getCoordinates()) {
-					if (c.distance(coord) <= radius && !coords.contains(coord)) { //2d distance
-						coords.add(coord);
-					}
-				}
+		//exact match.  no need to search the index
+		if (radius == 0) {
+			int id = vertices.getVertexId(c);
+			if (id != VertexTable.NONE) {
+				coords.add(vertices.getCoordinate(id));
 			}
-		} 
-		finally {
-			matchesIt.close();
+			return coords;
+		}
+		
+		for(int id : getVertexIndex().withinDistance(c.getX(), c.getY(), radius)) {
+			coords.add(vertices.getCoordinate(id));
 		}
 		return coords;
 	}
+	
+	/**
+	 * Gets the table of distinct vertices in the TIN.  Built on first use from the features which match 
+	 * the default filter.
+	 */
+	public VertexTable getVertexTable() throws IOException {
+		VertexTable result = vertexTable;
+		if (result == null) {
+			synchronized(this) {
+				result = vertexTable;
+				if (result == null) {
+					result = VertexTable.fromFeatures(getFeatures());
+					vertexTable = result;
+				}
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Gets a KD-tree index of the TIN vertices.  Built on first use.
+	 */
+	public VertexKdTree getVertexIndex() throws IOException {
+		VertexKdTree result = vertexIndex;
+		if (result == null) {
+			synchronized(this) {
+				result = vertexIndex;
+				if (result == null) {
+					result = new VertexKdTree(getVertexTable());
+					vertexIndex = result;
+				}
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Gets the TIN vertex nearest (in 2D) to the given coordinate, or null if the TIN is empty.
+	 */
+	public Coordinate getNearestCoordinate(Coordinate c) throws IOException {
+		VertexTable vertices = getVertexTable();
+		int id = vertices.getVertexId(c);
+		if (id == VertexTable.NONE) {
+			id = getVertexIndex().nearest(c.getX(), c.getY());
+		}
+		return id != VertexTable.NONE ? vertices.getCoordinate(id) : null;
+	}
+	
+	/**
+	 * Gets the TIN vertex at the given coordinate.  If there is no vertex at exactly that position, gets 
+	 * the nearest vertex within the given tolerance.  Returns null if there is no vertex within the tolerance.
+	 */
+	public Coordinate snapToVertex(Coordinate c, double tolerance) throws IOException {
+		Coordinate nearest = getNearestCoordinate(c);
+		if (nearest == null || c.distance(nearest) > tolerance) {
+			return null;
+		}
+		return nearest;
+	}
 
 	public abstract SimpleFeature getEdge(Coordinate c1, Coordinate c2) throws IOException;
 	
-	public double getMaxElevation() throws IOException {
-		double maxZ = 0;
-		SimpleFeatureCollection all = getFeatures();
-		SimpleFeatureIterator allIt = all.features();
-		try {
-			while(allIt.hasNext()) {
-				SimpleFeature f = allIt.next();
-				Geometry g = (Geometry)f.getDefaultGeometry();
-				Coordinate[] coords = g.getCoordinates();
-				for(Coordinate c : coords) {
-					if (c.getZ() > maxZ) {
-						maxZ = c.getZ();
-					}
+	/**
+	 * Gets summary statistics of the TIN.  They are computed on first use and reused after that.
+	 */
+	public TinStatistics getStatistics() throws IOException {
+		TinStatistics result = statistics;
+		if (result == null) {
+			synchronized(this) {
+				result = statistics;
+				if (result == null) {
+					result = TinStatistics.compute(getFeatures(), getVertexTable().getNumVertices());
+					statistics = result;
 				}
 			}
 		}
-		finally {
-			allIt.close();
-		}
-		return maxZ;
+		return result;
+	}
+	
+	/**
+	 * Gets the highest z value in the TIN (or 0 if all z values are negative or missing).
+	 */
+	public double getMaxElevation() throws IOException {
+		double maxZ = getStatistics().getMaxZ();
+		return maxZ > 0 ? maxZ : 0;
 	}
 
 	public double getMaxEdgeLength() throws IOException {
-		double maxLen = 0;
-		SimpleFeatureCollection all = getFeatures();
-		SimpleFeatureIterator allIt = all.features();
-		try {
-			while(allIt.hasNext()) {
-				SimpleFeature f = allIt.next();
-				Geometry g = (Geometry)f.getDefaultGeometry();
-				Coordinate[] coords = g.getCoordinates();
-				Coordinate prev = null;
-				for(Coordinate c : coords) {
-					if (prev != null) {
-						LineString segment = SpatialUtils.toLineString(prev, c);
-						double len = segment.getLength();
-						if (len > maxLen) {
-							maxLen = len;
-						}
-					}
-					prev = c;
+		return getStatistics().getMaxEdgeLength();
+	}
+	
+	/**
+	 * Gets the distinct vertices of the TIN, with a spatial index.  Built on first use, then shared by all 
+	 * callers.
+	 * @return
+	 * @throws IOException if the SRID of the TIN cannot be determined
+	 */
+	public VertexCloud getVertexCloud() throws IOException {
+		VertexCloud result = vertexCloud;
+		if (result == null) {
+			synchronized(this) {
+				result = vertexCloud;
+				if (result == null) {
+					result = new VertexCloud(getVertexTable(), getVertexIndex(), lookupSrid());
+					vertexCloud = result;
 				}
 			}
 		}
-		finally {
-			allIt.close();
-		}
-		return maxLen;
+		return result;
 	}
 	
+	/**
+	 * Gets a feature source with one point per distinct vertex of the TIN.  
+	 * Prefer getVertexCloud() unless features are needed.
+	 * @return
+	 * @throws IOException
+	 */
 	public SimpleFeatureSource getPointCloud() throws IOException {
-		if (this.pointCloud == null) {
-					
-			DefaultFeatureCollection dfc = new DefaultFeatureCollection();
-			
-			//lookup the SRID of the source data
-			SimpleFeatureType tinFeatureType = getSchema(); 
-			CoordinateReferenceSystem crs = tinFeatureType.getCoordinateReferenceSystem();
-			int srid = -1;
-			try {
-				srid = CRS.lookupEpsgCode(crs, true);
-			} catch (FactoryException e1) {
-				System.out.println("Unable to lookup SRID of TIN");
-				System.exit(1);
-			}
-			
-			//feature type for the point cloud
-			String outTable = "point_cloud";
-			SimpleFeatureType pointCloudFeatureType = null;
-			try {
-				pointCloudFeatureType = DataUtilities.createType(outTable, "geometry:Point:srid="+srid);
-			} catch (SchemaException e1) {
-				System.out.println("Unable to create feature type "+outTable);
-				System.exit(1);
-			}
-			
-			//iterate over each feature in the Tin, and add all its coordinates to
-			//a point cloud
-			SimpleFeatureCollection tinFeatures = getFeatures();
-			SimpleFeatureIterator it = tinFeatures.features();
-			int outFid = 1;
-			while(it.hasNext()) {
-				SimpleFeature tinFeature = it.next();
-				Geometry tinGeometry = (Geometry)tinFeature.getDefaultGeometry();
-				for (Coordinate coordinate : tinGeometry.getCoordinates()) {
-					Point point = geometryFactory.createPoint(coordinate);
-					SimpleFeature pointFeature = SpatialUtils.geomToFeature(point, pointCloudFeatureType, ""+outFid++);
-					dfc.add(pointFeature);
-				}
-			}
-			it.close();
-			
-			//add a spatial index to the point cloud
-			SpatialIndexFeatureCollection fastFeatureCollection = new SpatialIndexFeatureCollection(dfc);
-			SpatialIndexFeatureSource fastFeatureSource = new SpatialIndexFeatureSource(fastFeatureCollection);
-			this.pointCloud = fastFeatureSource;
+		return getVertexCloud().toFeatureSource();
+	}
+	
+	private int lookupSrid() throws IOException {
+		CoordinateReferenceSystem crs = getSchema().getCoordinateReferenceSystem();
+		Integer srid = null;
+		try {
+			srid = CRS.lookupEpsgCode(crs, true);
+		} catch (FactoryException e) {
+			throw new IOException("Unable to lookup SRID of TIN", e);
 		}
-			
-		return this.pointCloud;
-		
+		if (srid == null) {
+			throw new IOException("Unable to lookup SRID of TIN");
+		}
+		return srid;
 	}
 	
 	/**
@@ -239,9 +263,10 @@ public abstract class Tin {
 	 * @throws IOException
 	 */
 	public Coordinate getCoordinateAt(Coordinate c) throws IOException {
-		List<Coordinate> coords = getCoordsInRadius(c, 0);
-		if (coords.size() > 0) {
-			return coords.get(0);
+		VertexTable vertices = getVertexTable();
+		int id = vertices.getVertexId(c);
+		if (id != VertexTable.NONE) {
+			return vertices.getCoordinate(id);
 		}
 		return null;
 	}
@@ -2,29 +2,16 @@ package ca.bc.gov.catchment.tin;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
 
-import org.apache.commons.math3.util.Pair;
-import org.geotools.data.simple.SimpleFeatureCollection;
-import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.data.simple.SimpleFeatureSource;
-import org.geotools.factory.CommonFactoryFinder;
-import org.geotools.geometry.jts.JTSFactoryFinder;
 import org.locationtech.jts.geom.Coordinate;
-import org.locationtech.jts.geom.Geometry;
-import org.locationtech.jts.geom.GeometryFactory;
-import org.locationtech.jts.geom.LineString;
-import org.locationtech.jts.geom.Point;
 import org.opengis.feature.simple.SimpleFeature;
-import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.filter.Filter;
-import org.opengis.filter.FilterFactory2;
-
-import ca.bc.gov.catchment.utils.VectorUtils;
 
 public class TinEdges extends Tin {
 
+	private volatile HalfEdgeTopology topology;
 
 	public TinEdges(SimpleFeatureSource tinEdges)  {
 		super(tinEdges);
@@ -34,85 +21,96 @@ public class TinEdges extends Tin {
 		super(tinEdges, filter);
 	}
 	
-	public SimpleFeature getEdge(Coordinate c1, Coordinate c2) throws IOException  {
-		Coordinate coords[] = {c1, c2};
-		LineString edgeToFind = geometryFactory.createLineString(coords);
-		
-		//find the tin edge that overlaps the input edge
-		Filter overlapsFilter = filterFactory.overlaps(
-				filterFactory.property(geometryPropertyName), 
-				filterFactory.literal(edgeToFind)
-				);
-		SimpleFeatureCollection matches = getFeatures(overlapsFilter);		
-		SimpleFeatureIterator matchesIt = matches.features();
-		SimpleFeature result = null;
-		try {
-			if(matchesIt.hasNext()) {
-				result = matchesIt.next();
-				if (matchesIt.hasNext()) {
-					throw new IllegalStateException("found more than one overlapping edge");
+	/**
+	 * Gets the in-memory topology of the tin edges.  The topology is built on first use (from the 
+	 * edges that match the default filter) and is reused for all subsequent topology queries.
+	 * @return
+	 * @throws IOException
+	 */
+	public HalfEdgeTopology getTopology() throws IOException {
+		HalfEdgeTopology result = topology;
+		if (result == null) {
+			synchronized(this) {
+				result = topology;
+				if (result == null) {
+					result = HalfEdgeTopology.fromFeatures(getFeatures());
+					topology = result;
 				}
 			}
-		} 
-		finally {
-			matchesIt.close();
 		}
 		return result;
 	}
 	
 	/**
-	 * The resulting edges are sorted in clockwise order starting with east
+	 * Gets the table of vertices in the TIN.  Vertex ids from this table can be used with 
+	 * getConnectedVertexIds and with the topology.
+	 */
+	public VertexTable getVertexTable() throws IOException {
+		return getTopology().getVertexTable();
+	}
+	
+	/**
+	 * Gets the ids of the vertices which are connected to the given vertex by a single edge.
+	 */
+	public int[] getConnectedVertexIds(int vertexId) throws IOException {
+		return getTopology().getNeighbours(vertexId);
+	}
+	
+	/**
+	 * Gets the tin edge which joins the two given coordinates, or null if there is no such edge.
+	 * @throws IllegalStateException if more than one edge joins the coordinates (i.e. the tin has 
+	 * overlapping edges), because the result would be ambiguous
+	 */
+	public SimpleFeature getEdge(Coordinate c1, Coordinate c2) throws IOException  {
+		HalfEdgeTopology topology = getTopology();
+		int fromId = topology.getVertexId(c1);
+		int toId = topology.getVertexId(c2);
+		int halfEdge = topology.findHalfEdge(fromId, toId);
+		if (halfEdge == HalfEdgeTopology.NONE) {
+			return null;
+		}
+		int numMatches = 0;
+		for (int i = 0; i < topology.getDegree(fromId); i++) {
+			if (topology.getDestination(topology.getOutgoingHalfEdge(fromId, i)) == toId) {
+				numMatches++;
+			}
+		}
+		if (numMatches > 1) {
+			throw new IllegalStateException("found more than one overlapping edge");
+		}
+		return topology.getEdgeFeature(HalfEdgeTopology.getEdge(halfEdge));
+	}
+	
+	/**
+	 * The resulting edges are sorted by angle (as computed by VectorUtils.angle2D) starting with east
 	 * @param c
 	 * @return
 	 * @throws IOException
 	 */
 	public List<SimpleFeature> getEdgesTouchingCoordinate(final Coordinate c) throws IOException {
-		Point p = geometryFactory.createPoint(c);
 		List<SimpleFeature> result = new ArrayList<SimpleFeature>();
-		
-		//find the tin edges that touch the point
-		Filter touchesFilter = filterFactory.touches(
-				filterFactory.property(geometryPropertyName), 
-				filterFactory.literal(p)
-				);
-		SimpleFeatureCollection matches = getFeatures(touchesFilter);		
-		SimpleFeatureIterator matchesIt = matches.features();
-
-		try {
-			while(matchesIt.hasNext()) {
-				SimpleFeature f = matchesIt.next();
-				result.add(f);
-			}
-		} 
-		finally {
-			matchesIt.close();
+		HalfEdgeTopology topology = getTopology();
+		int vertexId = topology.getVertexId(c);
+		if (vertexId == HalfEdgeTopology.NONE) {
+			return result;
 		}
 		
-		//sort results by angle, clockwise from east
-		result.sort(new Comparator<SimpleFeature>() {
-			public int compare(SimpleFeature s1, SimpleFeature s2) {
-				double angle1 = VectorUtils.angle2D(c, (LineString)s1.getDefaultGeometry());
-				double angle2 = VectorUtils.angle2D(c, (LineString)s2.getDefaultGeometry());
-				return angle1 < angle2 ? -1 
-					 : angle1 > angle2 ? 1 
-				     : 0;
-			}			
-		});
-		
+		//incident edges are pre-sorted by angle
+		for(int edgeId : topology.getIncidentEdges(vertexId)) {
+			result.add(topology.getEdgeFeature(edgeId));
+		}
 		return result;
 	}
 	
 	public List<Coordinate> getConnectedCoordinates(Coordinate c) throws IOException {
 		List<Coordinate> result = new ArrayList<Coordinate>();
-		List<SimpleFeature> touchingEdges = getEdgesTouchingCoordinate(c);
-		for(SimpleFeature touchingEdge : touchingEdges) {
-			Geometry g = (Geometry)touchingEdge.getDefaultGeometry();
-			Coordinate[] coords = g.getCoordinates();
-			for(Coordinate edgeCoord : coords) {
-				if (!edgeCoord.equals(c) && !result.contains(edgeCoord)) {
-					result.add(edgeCoord);
-				}
-			}
+		HalfEdgeTopology topology = getTopology();
+		int vertexId = topology.getVertexId(c);
+		if (vertexId == HalfEdgeTopology.NONE) {
+			return result;
+		}
+		for(int neighbourId : topology.getNeighbours(vertexId)) {
+			result.add(topology.getCoordinate(neighbourId));
 		}
 		return result;
 	}
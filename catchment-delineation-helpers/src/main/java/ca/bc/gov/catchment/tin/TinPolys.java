@@ -1,26 +1,19 @@
 package ca.bc.gov.catchment.tin;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.List;
 
-import org.geotools.data.simple.SimpleFeatureCollection;
-import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.data.simple.SimpleFeatureSource;
-import org.geotools.factory.CommonFactoryFinder;
-import org.geotools.geometry.jts.JTSFactoryFinder;
 import org.locationtech.jts.geom.Coordinate;
-import org.locationtech.jts.geom.Geometry;
-import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.LineString;
-import org.locationtech.jts.geom.Point;
 import org.opengis.feature.simple.SimpleFeature;
-import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.filter.Filter;
-import org.opengis.filter.FilterFactory2;
 
 public class TinPolys extends Tin {
 
+	private volatile TriangleAdjacencyIndex triangleIndex;
+	private volatile EdgeSlopeTable edgeSlopeTable;
+	
 	public TinPolys(SimpleFeatureSource tinPolys) {
 		super(tinPolys);
 	}
@@ -30,43 +23,65 @@ public class TinPolys extends Tin {
 	}
 	
 	/**
-	 * Gets a list of (usually two) triangles that share the given edge in the TIN.
+	 * Gets the edge->triangles index.  The index is built from all triangles in the feature source
+	 * on first use, and is reused after that.
+	 * @return
+	 * @throws IOException
 	 */
-	public List<Triangle> getTrianglesOnEdge(LineString segment) throws IOException {
-		
-		List<Triangle> result = new ArrayList<Triangle>();
-		
-		Filter overlapsFilter = filterFactory.touches(
-			filterFactory.property(geometryPropertyName),
-			filterFactory.literal(segment)
-		);
-		SimpleFeatureCollection fc = featureSource.getFeatures(overlapsFilter);
-		
-		SimpleFeatureIterator it = fc.features();
-		try {
-			while(it.hasNext()) {
-				SimpleFeature f = it.next();
-				Geometry g = (Geometry)f.getDefaultGeometry();
-				Triangle t = new Triangle(g);
-				if (!t.hasEdge(new Edge(segment.getCoordinates()))) {
-					//triangle touches, but doesn't share the specified edge
-					continue;
-				}
-				if (!t.isComplete()) {
-					throw new IllegalStateException("Invalid triangle found.");
-				}
-				if (!result.contains(t)) {
-					result.add(t);
+	public TriangleAdjacencyIndex getTriangleIndex() throws IOException {
+		TriangleAdjacencyIndex result = triangleIndex;
+		if (result == null) {
+			synchronized(this) {
+				result = triangleIndex;
+				if (result == null) {
+					result = TriangleAdjacencyIndex.fromFeatures(featureSource.getFeatures());
+					triangleIndex = result;
 				}
 			}
 		}
-		finally {
-			it.close();
+		return result;
+	}
+	
+	/**
+	 * Gets the slopes of the triangles on either side of each edge.  If no table has been set, the 
+	 * slopes of all edges are computed (in parallel) on first use, and are reused after that.
+	 * @return
+	 * @throws IOException
+	 */
+	public EdgeSlopeTable getEdgeSlopeTable() throws IOException {
+		EdgeSlopeTable result = edgeSlopeTable;
+		if (result == null) {
+			synchronized(this) {
+				result = edgeSlopeTable;
+				if (result == null) {
+					result = EdgeSlopeTable.compute(getTriangleIndex(), Runtime.getRuntime().availableProcessors());
+					edgeSlopeTable = result;
+				}
+			}
 		}
-		
 		return result;
 	}
 	
+	/**
+	 * Sets the edge slopes (e.g. loaded with EdgeSlopeTable.fromFeatures), so they don't need to be 
+	 * computed
+	 */
+	public void setEdgeSlopeTable(EdgeSlopeTable edgeSlopeTable) {
+		this.edgeSlopeTable = edgeSlopeTable;
+	}
+	
+	/**
+	 * Gets a list of (usually two) triangles that share the given edge in the TIN.
+	 * The triangles are shared with other callers, and must not be modified.
+	 */
+	public List<Triangle> getTrianglesOnEdge(LineString segment) throws IOException {
+		Coordinate[] coords = segment.getCoordinates();
+		if (coords.length != 2) {
+			throw new IllegalArgumentException("segment must have exactly two coordinates");
+		}
+		return getTriangleIndex().getTrianglesOnEdge(coords[0], coords[1]);
+	}
+	
 	public SimpleFeature getEdge(Coordinate c1, Coordinate c2) throws IOException {
 		throw new IllegalStateException("not implemented yet.  Todo.  implement TinPolys.getEdge()");
 	}
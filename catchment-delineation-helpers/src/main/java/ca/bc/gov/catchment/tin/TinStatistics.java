@@ -0,0 +1,162 @@
+package ca.bc.gov.catchment.tin;
+
+import java.io.IOException;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Polygon;
+
+/**
+ * Summary statistics of a TIN.  Computed in a single pass over the TIN features (see Tin.getStatistics(),
+ * which computes them once and then reuses them).
+ *
+ * Edge lengths are 2D.  Each polygon ring segment is counted as an edge, so for a TIN of polygons,
+ * an edge shared by two triangles contributes twice to the mean edge length.
+ * The number of distinct edges and triangles are derived from Euler's formula for a planar
+ * triangulation (V - E + T = 1), so they assume the TIN has no holes.
+ */
+public class TinStatistics {
+
+	private double minZ;
+	private double maxZ;
+	private double maxEdgeLength;
+	private double meanEdgeLength;
+	private int numVertices;
+	private int numEdges;
+	private int numTriangles;
+	private int numFeatures;
+	private Envelope bounds;
+
+	private TinStatistics() {
+		this.minZ = Double.NaN;
+		this.maxZ = Double.NaN;
+		this.maxEdgeLength = 0;
+		this.meanEdgeLength = 0;
+		this.bounds = new Envelope();
+	}
+
+	/**
+	 * Computes statistics of the given TIN features (either edges or triangles)
+	 * @param features
+	 * @param numVertices the number of distinct vertices in the features
+	 * @return
+	 * @throws IOException
+	 */
+	public static TinStatistics compute(SimpleFeatureCollection features, int numVertices) throws IOException {
+		TinStatistics stats = new TinStatistics();
+		stats.numVertices = numVertices;
+
+		int numPolygons = 0;
+		long numSegments = 0;
+		double sumSegmentLength = 0;
+
+		SimpleFeatureIterator it = features.features();
+		try {
+			while(it.hasNext()) {
+				Geometry g = (Geometry)it.next().getDefaultGeometry();
+				stats.numFeatures++;
+				if (g instanceof Polygon) {
+					numPolygons++;
+				}
+				stats.bounds.expandToInclude(g.getEnvelopeInternal());
+
+				Coordinate[] coords = g.getCoordinates();
+				Coordinate prev = null;
+				for(Coordinate c : coords) {
+					double z = c.getZ();
+					if (!Double.isNaN(z)) {
+						if (Double.isNaN(stats.minZ) || z < stats.minZ) {
+							stats.minZ = z;
+						}
+						if (Double.isNaN(stats.maxZ) || z > stats.maxZ) {
+							stats.maxZ = z;
+						}
+					}
+					if (prev != null) {
+						double len = prev.distance(c); //2d
+						if (len > stats.maxEdgeLength) {
+							stats.maxEdgeLength = len;
+						}
+						sumSegmentLength += len;
+						numSegments++;
+					}
+					prev = c;
+				}
+			}
+		}
+		finally {
+			it.close();
+		}
+
+		if (numSegments > 0) {
+			stats.meanEdgeLength = sumSegmentLength / numSegments;
+		}
+
+		//V - E + T = 1
+		if (numPolygons > 0) {
+			stats.numTriangles = numPolygons;
+			stats.numEdges = numVertices + numPolygons - 1;
+		}
+		else {
+			stats.numEdges = stats.numFeatures;
+			stats.numTriangles = Math.max(0, stats.numEdges - numVertices + 1);
+		}
+
+		return stats;
+	}
+
+	/**
+	 * lowest z value of any vertex.  NaN if no vertices have a z value.
+	 */
+	public double getMinZ() {
+		return minZ;
+	}
+
+	/**
+	 * highest z value of any vertex.  NaN if no vertices have a z value.
+	 */
+	public double getMaxZ() {
+		return maxZ;
+	}
+
+	public double getMaxEdgeLength() {
+		return maxEdgeLength;
+	}
+
+	public double getMeanEdgeLength() {
+		return meanEdgeLength;
+	}
+
+	public int getNumVertices() {
+		return numVertices;
+	}
+
+	public int getNumEdges() {
+		return numEdges;
+	}
+
+	public int getNumTriangles() {
+		return numTriangles;
+	}
+
+	public int getNumFeatures() {
+		return numFeatures;
+	}
+
+	/**
+	 * 2D bounds of the TIN.  A copy is returned.
+	 */
+	public Envelope getBounds() {
+		return new Envelope(bounds);
+	}
+
+	public String toString() {
+		return "TinStatistics: "+numVertices+" vertices, "+numEdges+" edges, "+numTriangles+" triangles, "
+				+ "z=["+minZ+", "+maxZ+"], "
+				+ "max edge length="+maxEdgeLength+", mean edge length="+meanEdgeLength+", "
+				+ "bounds="+bounds;
+	}
+}
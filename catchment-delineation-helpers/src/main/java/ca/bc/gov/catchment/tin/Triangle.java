@@ -20,6 +20,7 @@ public class Triangle {
 	
 	List<Edge> edges;
 	private int id;
+	private double[] slopeAndAspect; //cached.  computed on first use
 	
 	public Triangle() {
 		this.id = NEXT_ID++;
@@ -137,6 +138,20 @@ public class Triangle {
 		addEdge(e);
 	}
 	
+	/**
+	 * creates a copy of the given triangle with its own edges and coordinates, so changes to the copy 
+	 * don't affect the original.  the cached slope and aspect are copied rather than recomputed.
+	 */
+	Triangle(Triangle other) {
+		this();
+		for (Edge e : other.edges) {
+			edges.add(new Edge(new Coordinate(e.getA()), new Coordinate(e.getB())));
+		}
+		if (other.slopeAndAspect != null) {
+			slopeAndAspect = other.slopeAndAspect.clone();
+		}
+	}
+	
 	public int getId() {
 		return id;
 	}
@@ -309,6 +324,7 @@ public class Triangle {
 	public void addEdge(Edge e) {
 		if (canReceiveEdge(e)) {
 			edges.add(e);
+			slopeAndAspect = null;
 			validate();
 			if (isComplete()) {
 				normalizeEdgeDirection();
@@ -392,9 +408,17 @@ public class Triangle {
 	 * slope is an angle (0-90 degrees) downwards from the horizontal in the direction of the aspect.  
 	 * 0 means horizontal.  90 means vertical.
 	 * aspect is a number 0-360 indicating the downhill direction.  0 means east, 90 means north, 180 means west, 270 means south
+	 * The values are computed once and then cached (until the triangle is modified).
 	 * @return
 	 */
 	public double[] getSlopeAndAspect() {
+		if (slopeAndAspect == null) {
+			slopeAndAspect = computeSlopeAndAspect();
+		}
+		return slopeAndAspect.clone();
+	}
+	
+	private double[] computeSlopeAndAspect() {
 		boolean surfaceNormalPointsUp = true;
 		Edge normal = getUpwardSurfaceNormal();
 		
@@ -496,7 +520,10 @@ public class Triangle {
 	}
 		
 	public double getSlope() {
-		return getSlopeAndAspect()[0];
+		if (slopeAndAspect == null) {
+			slopeAndAspect = computeSlopeAndAspect();
+		}
+		return slopeAndAspect[0];
 	}
 	
 	/**
@@ -504,7 +531,10 @@ public class Triangle {
 	 * @return
 	 */
 	public double getAspect() {
-		return getSlopeAndAspect()[1];
+		if (slopeAndAspect == null) {
+			slopeAndAspect = computeSlopeAndAspect();
+		}
+		return slopeAndAspect[1];
 	}
 	
 	public Coordinate getCentroid() {
@@ -0,0 +1,223 @@
+package ca.bc.gov.catchment.tin;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.opengis.feature.simple.SimpleFeature;
+
+/**
+ * An index from each TIN edge to the (usually two) triangles which share that edge.
+ * Edges are keyed by the canonical (unordered) pair of vertex ids of their endpoints, so a lookup
+ * is a single hash probe.  Each edge is also given an id (0 to getNumEdges()-1), so per-edge values 
+ * can be kept in arrays (see EdgeSlopeTable).  The Triangle objects are created once when the index is built, and
+ * their slope and aspect are precomputed at that time.
+ *
+ * Triangles returned by the public methods are copies, so callers can't change the index.  Features which
+ * aren't valid triangles are skipped (and logged) when the index is built.
+ */
+public class TriangleAdjacencyIndex {
+
+	public static final int NONE = VertexTable.NONE;
+	
+	private static Logger LOG = Logger.getAnonymousLogger();
+	
+	private static final Triangle[] NO_TRIANGLES = new Triangle[0];
+
+	private VertexTable vertices;
+	private Map<Long, Integer> edgeIds;
+	private List<Triangle[]> trianglesByEdgeId;
+	private long[] edgeKeys;
+	private int numTriangles;
+	private int numSkippedTriangles;
+
+	private TriangleAdjacencyIndex() {
+		this.vertices = new VertexTable();
+		this.edgeIds = new HashMap<Long, Integer>();
+		this.trianglesByEdgeId = new ArrayList<Triangle[]>();
+		this.edgeKeys = new long[16];
+		this.numTriangles = 0;
+		this.numSkippedTriangles = 0;
+	}
+
+	/**
+	 * Builds an index from a collection of TIN polygons.  Features which aren't triangles are skipped.
+	 * @param tinPolys
+	 * @return
+	 * @throws IOException
+	 */
+	public static TriangleAdjacencyIndex fromFeatures(SimpleFeatureCollection tinPolys) throws IOException {
+		TriangleAdjacencyIndex index = new TriangleAdjacencyIndex();
+		SimpleFeatureIterator it = tinPolys.features();
+		try {
+			while(it.hasNext()) {
+				SimpleFeature f = it.next();
+				Triangle t = toTriangle(f);
+				if (t == null) {
+					index.numSkippedTriangles++;
+					continue;
+				}
+				index.addTriangle(t);
+			}
+		}
+		finally {
+			it.close();
+		}
+		if (index.numSkippedTriangles > 0) {
+			LOG.warning("skipped "+index.numSkippedTriangles+" invalid triangles");
+		}
+		return index;
+	}
+	
+	/**
+	 * creates a triangle from the feature's geometry, or returns null if the geometry isn't a triangle
+	 */
+	private static Triangle toTriangle(SimpleFeature f) {
+		Geometry g = (Geometry)f.getDefaultGeometry();
+		if (g == null) {
+			LOG.fine("skipping triangle without geometry: "+f.getID());
+			return null;
+		}
+		Triangle t = null;
+		try {
+			t = new Triangle(g);
+		}
+		catch (IllegalArgumentException e) {
+			LOG.fine("skipping invalid triangle "+f.getID()+": "+e.getMessage());
+			return null;
+		}
+		catch (IllegalStateException e) {
+			LOG.fine("skipping invalid triangle "+f.getID()+": "+e.getMessage());
+			return null;
+		}
+		if (!t.isComplete()) {
+			LOG.fine("skipping incomplete triangle "+f.getID());
+			return null;
+		}
+		return t;
+	}
+
+	public int getNumTriangles() {
+		return numTriangles;
+	}
+
+	/**
+	 * the number of features which were skipped because they aren't valid triangles
+	 */
+	public int getNumSkippedTriangles() {
+		return numSkippedTriangles;
+	}
+
+	public int getNumEdges() {
+		return trianglesByEdgeId.size();
+	}
+
+	/**
+	 * Gets copies of the triangles which have an edge between the two given coordinates.  The result is 
+	 * a new list which may be empty (if there is no such edge).
+	 */
+	public List<Triangle> getTrianglesOnEdge(Coordinate a, Coordinate b) {
+		Triangle[] triangles = NO_TRIANGLES;
+		int edgeId = getEdgeId(a, b);
+		if (edgeId != NONE) {
+			triangles = trianglesByEdgeId.get(edgeId);
+		}
+		List<Triangle> result = new ArrayList<Triangle>(triangles.length);
+		for (Triangle t : triangles) {
+			result.add(new Triangle(t));
+		}
+		return result;
+	}
+	
+	/**
+	 * Gets the id of the edge between the two given coordinates (in either order), or NONE if there 
+	 * is no such edge
+	 */
+	public int getEdgeId(Coordinate a, Coordinate b) {
+		int idA = vertices.getVertexId(a);
+		int idB = vertices.getVertexId(b);
+		if (idA == VertexTable.NONE || idB == VertexTable.NONE) {
+			return NONE;
+		}
+		Integer edgeId = edgeIds.get(toEdgeKey(idA, idB));
+		return edgeId != null ? edgeId : NONE;
+	}
+	
+	/**
+	 * Gets the triangles which share the given edge.  The array and the triangles are shared (not copied), 
+	 * so this is only for use within the package, and they must not be modified.
+	 */
+	Triangle[] getTrianglesOnEdge(int edgeId) {
+		return trianglesByEdgeId.get(edgeId);
+	}
+	
+	/**
+	 * Creates an edge with the (3D) coordinates of the given edge's endpoints.  The endpoint with the 
+	 * lower vertex id is first.
+	 */
+	public Edge getEdge(int edgeId) {
+		long key = edgeKeys[edgeId];
+		int idA = (int)(key >>> 32);
+		int idB = (int)key;
+		return new Edge(vertices.getCoordinate(idA), vertices.getCoordinate(idB));
+	}
+
+	private void addTriangle(Triangle t) {
+		//compute now so the values are ready (and not recomputed) when the triangle is looked up
+		if (t.is3D()) {
+			t.getSlopeAndAspect();
+		}
+
+		for(Edge e : t.edges) {
+			long key = toEdgeKey(vertices.addVertex(e.getA()), vertices.addVertex(e.getB()));
+			Integer edgeId = edgeIds.get(key);
+			if (edgeId == null) {
+				addEdge(key, new Triangle[] {t});
+			}
+			else {
+				Triangle[] existing = trianglesByEdgeId.get(edgeId);
+				
+				//skip duplicate triangles (i.e. the same triangle stored in more than one feature)
+				boolean isDuplicate = false;
+				for(Triangle other : existing) {
+					if (other.equals(t)) {
+						isDuplicate = true;
+					}
+				}
+				if (!isDuplicate) {
+					Triangle[] updated = Arrays.copyOf(existing, existing.length+1);
+					updated[existing.length] = t;
+					trianglesByEdgeId.set(edgeId, updated);
+				}
+			}
+		}
+		numTriangles++;
+	}
+	
+	private void addEdge(long key, Triangle[] triangles) {
+		int edgeId = trianglesByEdgeId.size();
+		if (edgeId == edgeKeys.length) {
+			edgeKeys = Arrays.copyOf(edgeKeys, edgeKeys.length * 2);
+		}
+		edgeKeys[edgeId] = key;
+		edgeIds.put(key, edgeId);
+		trianglesByEdgeId.add(triangles);
+	}
+
+	/**
+	 * combines two vertex ids into a single key which doesn't depend on the order of the ids
+	 */
+	private static long toEdgeKey(int vertexId1, int vertexId2) {
+		int min = Math.min(vertexId1, vertexId2);
+		int max = Math.max(vertexId1, vertexId2);
+		return ((long)min << 32) | (max & 0xffffffffL);
+	}
+}
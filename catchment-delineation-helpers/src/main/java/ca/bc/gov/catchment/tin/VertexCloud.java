@@ -0,0 +1,107 @@
+package ca.bc.gov.catchment.tin;
+
+import java.io.IOException;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.data.collection.SpatialIndexFeatureCollection;
+import org.geotools.data.collection.SpatialIndexFeatureSource;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.feature.DefaultFeatureCollection;
+import org.geotools.feature.SchemaException;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Point;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ * The distinct vertices of a TIN (each vertex appears once), with a KD-tree index.
+ * Backed by the TIN's VertexTable, so no per-vertex objects are kept in memory.  A feature view of
+ * the points is only created if requested (see toFeatureSource).
+ *
+ * Obtain an instance with Tin.getVertexCloud(), which shares a single instance between all users of
+ * the same Tin.
+ */
+public class VertexCloud {
+
+	private VertexTable vertices;
+	private VertexKdTree index;
+	private int srid;
+	private volatile SimpleFeatureSource featureSource;
+
+	public VertexCloud(VertexTable vertices, VertexKdTree index, int srid) {
+		this.vertices = vertices;
+		this.index = index;
+		this.srid = srid;
+	}
+
+	public VertexTable getVertexTable() {
+		return vertices;
+	}
+
+	public VertexKdTree getIndex() {
+		return index;
+	}
+
+	public int getNumVertices() {
+		return vertices.getNumVertices();
+	}
+
+	public Coordinate getCoordinate(int vertexId) {
+		return vertices.getCoordinate(vertexId);
+	}
+
+	/**
+	 * the SRID of the TIN the vertices are from
+	 */
+	public int getSrid() {
+		return srid;
+	}
+
+	/**
+	 * Gets a (spatially indexed) feature source with one point feature per vertex.  The feature source is
+	 * created on first use.
+	 * @return
+	 * @throws IOException
+	 */
+	public SimpleFeatureSource toFeatureSource() throws IOException {
+		SimpleFeatureSource result = featureSource;
+		if (result == null) {
+			synchronized(this) {
+				result = featureSource;
+				if (result == null) {
+					result = createFeatureSource();
+					featureSource = result;
+				}
+			}
+		}
+		return result;
+	}
+
+	private SimpleFeatureSource createFeatureSource() throws IOException {
+		GeometryFactory geometryFactory = JTSFactoryFinder.getGeometryFactory();
+
+		String outTable = "point_cloud";
+		SimpleFeatureType pointCloudFeatureType = null;
+		try {
+			pointCloudFeatureType = DataUtilities.createType(outTable, "geometry:Point:srid="+srid);
+		} catch (SchemaException e) {
+			throw new IOException("Unable to create feature type "+outTable, e);
+		}
+		SimpleFeatureBuilder featureBuilder = new SimpleFeatureBuilder(pointCloudFeatureType);
+
+		DefaultFeatureCollection dfc = new DefaultFeatureCollection();
+		for (int id = 0; id < vertices.getNumVertices(); id++) {
+			Point point = geometryFactory.createPoint(vertices.getCoordinate(id));
+			Object[] values = {point};
+			SimpleFeature pointFeature = featureBuilder.buildFeature(""+(id+1), values);
+			dfc.add(pointFeature);
+		}
+
+		//add a spatial index to the point cloud
+		SpatialIndexFeatureCollection fastFeatureCollection = new SpatialIndexFeatureCollection(dfc);
+		return new SpatialIndexFeatureSource(fastFeatureCollection);
+	}
+}
@@ -0,0 +1,178 @@
+package ca.bc.gov.catchment.tin;
+
+import java.util.Arrays;
+
+/**
+ * A static 2D KD-tree over the vertices of a VertexTable.  Used to find the nearest vertex to a position
+ * which isn't exactly a vertex, and to find all vertices within a radius.
+ *
+ * The tree is stored implicitly in a single int[] of vertex ids: the node for the range [lo, hi) is
+ * the vertex at the middle of the range, with the left subtree in [lo, mid) and the right subtree
+ * in [mid+1, hi).  Levels alternate between splitting on x and splitting on y.
+ *
+ * The tree is immutable once built, and may be shared between threads.
+ */
+public class VertexKdTree {
+
+	private VertexTable vertices;
+	private int[] ids;
+
+	public VertexKdTree(VertexTable vertices) {
+		this.vertices = vertices;
+		int n = vertices.getNumVertices();
+		this.ids = new int[n];
+		for (int i = 0; i < n; i++) {
+			ids[i] = i;
+		}
+		build(0, n, 0);
+	}
+
+	public VertexTable getVertexTable() {
+		return vertices;
+	}
+
+	/**
+	 * finds the id of the vertex nearest (in 2D) to the given position.  returns VertexTable.NONE
+	 * if the tree is empty.
+	 */
+	public int nearest(double x, double y) {
+		if (ids.length == 0) {
+			return VertexTable.NONE;
+		}
+		NearestResult result = new NearestResult();
+		nearest(x, y, 0, ids.length, 0, result);
+		return result.id;
+	}
+
+	/**
+	 * finds the ids of all vertices within the given 2D distance of the position (inclusive)
+	 */
+	public int[] withinDistance(double x, double y, double radius) {
+		IdCollector result = new IdCollector();
+		withinDistance(x, y, radius, radius*radius, 0, ids.length, 0, result);
+		return Arrays.copyOf(result.ids, result.count);
+	}
+
+	// Private
+	// ------------------------------------------------------------------------
+
+	private static class NearestResult {
+		int id = VertexTable.NONE;
+		double distanceSquared = Double.POSITIVE_INFINITY;
+	}
+	
+	private static class IdCollector {
+		int[] ids = new int[8];
+		int count = 0;
+		
+		void add(int id) {
+			if (count == ids.length) {
+				ids = Arrays.copyOf(ids, count * 2);
+			}
+			ids[count++] = id;
+		}
+	}
+
+	private double getAxisValue(int vertexId, int axis) {
+		return axis == 0 ? vertices.getX(vertexId) : vertices.getY(vertexId);
+	}
+
+	private void build(int lo, int hi, int depth) {
+		if (hi - lo <= 1) {
+			return;
+		}
+		int mid = (lo + hi) >>> 1;
+		select(lo, hi - 1, mid, depth % 2);
+		build(lo, mid, depth + 1);
+		build(mid + 1, hi, depth + 1);
+	}
+
+	/**
+	 * partially sorts ids[left..right] so that ids[k] is the vertex which would be at position k if the
+	 * range were fully sorted on the given axis (quickselect)
+	 */
+	private void select(int left, int right, int k, int axis) {
+		while (right > left) {
+			double pivot = getAxisValue(ids[(left + right) >>> 1], axis);
+			int i = left;
+			int j = right;
+			while (i <= j) {
+				while (getAxisValue(ids[i], axis) < pivot) {
+					i++;
+				}
+				while (getAxisValue(ids[j], axis) > pivot) {
+					j--;
+				}
+				if (i <= j) {
+					int tmp = ids[i];
+					ids[i] = ids[j];
+					ids[j] = tmp;
+					i++;
+					j--;
+				}
+			}
+			if (k <= j) {
+				right = j;
+			}
+			else if (k >= i) {
+				left = i;
+			}
+			else {
+				return;
+			}
+		}
+	}
+
+	private void nearest(double x, double y, int lo, int hi, int depth, NearestResult result) {
+		if (lo >= hi) {
+			return;
+		}
+		int mid = (lo + hi) >>> 1;
+		int id = ids[mid];
+		double dx = vertices.getX(id) - x;
+		double dy = vertices.getY(id) - y;
+		double d2 = dx*dx + dy*dy;
+		if (d2 < result.distanceSquared) {
+			result.distanceSquared = d2;
+			result.id = id;
+		}
+
+		//search the side of the split containing the point first, then the other side only if
+		//it could contain something closer
+		double diff = depth % 2 == 0 ? x - vertices.getX(id) : y - vertices.getY(id);
+		if (diff < 0) {
+			nearest(x, y, lo, mid, depth + 1, result);
+			if (diff * diff < result.distanceSquared) {
+				nearest(x, y, mid + 1, hi, depth + 1, result);
+			}
+		}
+		else {
+			nearest(x, y, mid + 1, hi, depth + 1, result);
+			if (diff * diff < result.distanceSquared) {
+				nearest(x, y, lo, mid, depth + 1, result);
+			}
+		}
+	}
+
+	private void withinDistance(double x, double y, double radius, double radiusSquared, int lo, int hi, int depth, IdCollector result) {
+		if (lo >= hi) {
+			return;
+		}
+		int mid = (lo + hi) >>> 1;
+		int id = ids[mid];
+		double dx = vertices.getX(id) - x;
+		double dy = vertices.getY(id) - y;
+		if (dx*dx + dy*dy <= radiusSquared) {
+			result.add(id);
+		}
+		
+		//left subtree values are <= the split value, right subtree values are >= the split value
+		double diff = depth % 2 == 0 ? x - vertices.getX(id) : y - vertices.getY(id);
+		if (diff <= radius) {
+			withinDistance(x, y, radius, radiusSquared, lo, mid, depth + 1, result);
+		}
+		if (diff >= -radius) {
+			withinDistance(x, y, radius, radiusSquared, mid + 1, hi, depth + 1, result);
+		}
+	}
+}
@@ -0,0 +1,230 @@
+package ca.bc.gov.catchment.tin;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+
+/**
+ * A table of TIN vertices.  Each distinct 2D position is assigned a dense integer id (0, 1, 2, ...)
+ * in the order it is added.  x, y and z values are stored in primitive arrays, so code which works
+ * with vertex ids (and int[] paths) doesn't need to allocate a Coordinate per vertex.  Coordinates
+ * and LineStrings are only created on request (e.g. when a result is output).
+ *
+ * Vertices are looked up by 2D position, consistent with Coordinate.equals.  Lookups use a 
+ * primitive open-addressing hash of the x/y values, so an exact match is found in O(1) without 
+ * creating any objects.  (For the nearest vertex to a position that isn't an exact match, see 
+ * VertexKdTree.)
+ * The table is only modified while it is being built (by classes in this package).  After that
+ * it is read-only and may be shared between threads.
+ */
+public class VertexTable {
+
+	public static final int NONE = -1;
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private int numVertices;
+	private double[] xs;
+	private double[] ys;
+	private double[] zs;
+	
+	//hash table of vertex ids, keyed on x/y.  empty slots are NONE.  size is a power of 2
+	private int[] hashSlots;
+
+	VertexTable() {
+		this.numVertices = 0;
+		this.xs = new double[INITIAL_CAPACITY];
+		this.ys = new double[INITIAL_CAPACITY];
+		this.zs = new double[INITIAL_CAPACITY];
+		this.hashSlots = new int[INITIAL_CAPACITY * 2];
+		Arrays.fill(hashSlots, NONE);
+	}
+	
+	/**
+	 * Creates a table containing every distinct vertex of the given features
+	 * @param features
+	 * @return
+	 * @throws IOException
+	 */
+	public static VertexTable fromFeatures(SimpleFeatureCollection features) throws IOException {
+		VertexTable table = new VertexTable();
+		SimpleFeatureIterator it = features.features();
+		try {
+			while(it.hasNext()) {
+				Geometry g = (Geometry)it.next().getDefaultGeometry();
+				for (Coordinate c : g.getCoordinates()) {
+					table.addVertex(c);
+				}
+			}
+		}
+		finally {
+			it.close();
+		}
+		table.trim();
+		return table;
+	}
+
+	// Lookup
+	// ------------------------------------------------------------------------
+
+	public int getNumVertices() {
+		return numVertices;
+	}
+
+	/**
+	 * gets the id of the vertex at the given coordinate (2D comparison), or NONE if
+	 * the coordinate is not in the table
+	 */
+	public int getVertexId(Coordinate c) {
+		return getVertexId(c.getX(), c.getY());
+	}
+	
+	/**
+	 * gets the id of the vertex at the given x/y position, or NONE if there is no vertex there
+	 */
+	public int getVertexId(double x, double y) {
+		int mask = hashSlots.length - 1;
+		for (int i = hash(x, y) & mask; ; i = (i + 1) & mask) {
+			int id = hashSlots[i];
+			if (id == NONE) {
+				return NONE;
+			}
+			if (xs[id] == x && ys[id] == y) {
+				return id;
+			}
+		}
+	}
+
+	public double getX(int vertexId) {
+		return xs[vertexId];
+	}
+
+	public double getY(int vertexId) {
+		return ys[vertexId];
+	}
+
+	public double getZ(int vertexId) {
+		return zs[vertexId];
+	}
+
+	/**
+	 * 2D distance between two vertices
+	 */
+	public double distance2D(int vertexId1, int vertexId2) {
+		double dx = xs[vertexId1] - xs[vertexId2];
+		double dy = ys[vertexId1] - ys[vertexId2];
+		return Math.sqrt(dx*dx + dy*dy);
+	}
+
+	// Conversion
+	// ------------------------------------------------------------------------
+
+	/**
+	 * creates a new (3D) coordinate object for the given vertex
+	 */
+	public Coordinate getCoordinate(int vertexId) {
+		return new Coordinate(xs[vertexId], ys[vertexId], zs[vertexId]);
+	}
+
+	/**
+	 * converts the first 'length' vertex ids of the given path into coordinates
+	 */
+	public Coordinate[] toCoordinates(int[] path, int length) {
+		Coordinate[] coords = new Coordinate[length];
+		for (int i = 0; i < length; i++) {
+			coords[i] = getCoordinate(path[i]);
+		}
+		return coords;
+	}
+
+	/**
+	 * converts the first 'length' vertex ids of the given path into a linestring
+	 */
+	public LineString toLineString(int[] path, int length, GeometryFactory geometryFactory) {
+		return geometryFactory.createLineString(toCoordinates(path, length));
+	}
+
+	/**
+	 * converts a list of coordinates into vertex ids.  coordinates which aren't vertices
+	 * are converted to NONE.
+	 */
+	public int[] toVertexIds(List<Coordinate> coords) {
+		int[] result = new int[coords.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = getVertexId(coords.get(i));
+		}
+		return result;
+	}
+
+	// Construction
+	// ------------------------------------------------------------------------
+
+	/**
+	 * adds a vertex if there isn't already one at the same 2D position.
+	 * @return the id of the new or existing vertex
+	 */
+	int addVertex(Coordinate c) {
+		int existingId = getVertexId(c);
+		if (existingId != NONE) {
+			return existingId;
+		}
+		if (numVertices == xs.length) {
+			int newCapacity = Math.max(INITIAL_CAPACITY, xs.length * 2);
+			xs = Arrays.copyOf(xs, newCapacity);
+			ys = Arrays.copyOf(ys, newCapacity);
+			zs = Arrays.copyOf(zs, newCapacity);
+		}
+		int id = numVertices++;
+		xs[id] = c.getX();
+		ys[id] = c.getY();
+		zs[id] = c.getZ();
+		
+		//keep the hash table at most half full
+		if (numVertices * 2 > hashSlots.length) {
+			rehash(hashSlots.length * 2);
+		}
+		else {
+			insertIntoHash(id);
+		}
+		return id;
+	}
+	
+	private void insertIntoHash(int id) {
+		int mask = hashSlots.length - 1;
+		int i = hash(xs[id], ys[id]) & mask;
+		while (hashSlots[i] != NONE) {
+			i = (i + 1) & mask;
+		}
+		hashSlots[i] = id;
+	}
+	
+	private void rehash(int newSize) {
+		hashSlots = new int[newSize];
+		Arrays.fill(hashSlots, NONE);
+		for (int id = 0; id < numVertices; id++) {
+			insertIntoHash(id);
+		}
+	}
+	
+	private static int hash(double x, double y) {
+		//+0.0 converts -0.0 to 0.0, so that both hash the same (they are equal according to ==)
+		long bits = Double.doubleToLongBits(x + 0.0) * 31 + Double.doubleToLongBits(y + 0.0);
+		bits *= 0x9E3779B97F4A7C15L;
+		return (int)(bits ^ (bits >>> 32));
+	}
+
+	/**
+	 * releases unused capacity.  called once the table is complete.
+	 */
+	void trim() {
+		xs = Arrays.copyOf(xs, numVertices);
+		ys = Arrays.copyOf(ys, numVertices);
+		zs = Arrays.copyOf(zs, numVertices);
+	}
+}
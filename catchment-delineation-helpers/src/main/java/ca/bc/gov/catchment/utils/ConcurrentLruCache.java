@@ -0,0 +1,161 @@
+package ca.bc.gov.catchment.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache which may be shared between threads.
+ *
+ * Entries are spread over a number of independent stripes (by key hash).  Each stripe is a small
+ * access-ordered LinkedHashMap with its own lock, so threads only contend when they use the same stripe.
+ * When a stripe is full its least-recently-used entry is removed.  Eviction is therefore approximately
+ * LRU over the cache as a whole (exactly LRU within each stripe).
+ *
+ * The number of hits and misses is counted, which is useful to decide on a suitable cache size.
+ * Null values are not supported (get() returns null to indicate a miss).
+ */
+public class ConcurrentLruCache<K, V> {
+
+	private static final int DEFAULT_NUM_STRIPES = 16;
+
+	private Stripe<K, V>[] stripes;
+	private int maxSize;
+	private AtomicLong hits;
+	private AtomicLong misses;
+
+	public ConcurrentLruCache(int maxSize) {
+		this(maxSize, DEFAULT_NUM_STRIPES);
+	}
+
+	/**
+	 * @param maxSize the maximum number of entries in the cache (rounded up to a multiple of the number of stripes)
+	 * @param concurrencyLevel the expected number of threads which use the cache at the same time.
+	 * the number of stripes is the next power of 2 (limited so that each stripe holds at least one entry)
+	 */
+	@SuppressWarnings("unchecked")
+	public ConcurrentLruCache(int maxSize, int concurrencyLevel) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("maxSize must be at least 1");
+		}
+		int numStripes = 1;
+		while (numStripes < concurrencyLevel && numStripes * 2 <= maxSize) {
+			numStripes *= 2;
+		}
+		int stripeSize = (maxSize + numStripes - 1) / numStripes;
+
+		this.maxSize = stripeSize * numStripes;
+		this.stripes = new Stripe[numStripes];
+		for (int i = 0; i < numStripes; i++) {
+			stripes[i] = new Stripe<K, V>(stripeSize);
+		}
+		this.hits = new AtomicLong();
+		this.misses = new AtomicLong();
+	}
+
+	/**
+	 * gets the cached value for the key, or null if the key isn't in the cache
+	 */
+	public V get(K key) {
+		Stripe<K, V> stripe = stripeFor(key);
+		V value;
+		synchronized(stripe) {
+			value = stripe.get(key);
+		}
+		if (value != null) {
+			hits.incrementAndGet();
+		}
+		else {
+			misses.incrementAndGet();
+		}
+		return value;
+	}
+
+	public void put(K key, V value) {
+		if (value == null) {
+			throw new NullPointerException("null values are not supported");
+		}
+		Stripe<K, V> stripe = stripeFor(key);
+		synchronized(stripe) {
+			stripe.put(key, value);
+		}
+	}
+
+	/**
+	 * the number of entries currently in the cache
+	 */
+	public int size() {
+		int size = 0;
+		for (Stripe<K, V> stripe : stripes) {
+			synchronized(stripe) {
+				size += stripe.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * the maximum number of entries (the requested size, rounded up to a multiple of the number of stripes)
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * removes all entries.  hit and miss counts are not reset.
+	 */
+	public void clear() {
+		for (Stripe<K, V> stripe : stripes) {
+			synchronized(stripe) {
+				stripe.clear();
+			}
+		}
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * fraction of lookups which were found in the cache [0-1].  0 if there have been no lookups.
+	 */
+	public double getHitRate() {
+		long h = hits.get();
+		long total = h + misses.get();
+		return total == 0 ? 0 : (double)h / total;
+	}
+
+	public String toString() {
+		return "ConcurrentLruCache: size="+size()+"/"+maxSize+", hits="+getHitCount()+", misses="+getMissCount();
+	}
+
+	// Private
+	// ------------------------------------------------------------------------
+
+	private Stripe<K, V> stripeFor(K key) {
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		return stripes[h & (stripes.length - 1)];
+	}
+
+	/**
+	 * a map that removes the least-recently-used entry when it grows beyond its maximum size
+	 */
+	private static class Stripe<K, V> extends LinkedHashMap<K, V> {
+		private static final long serialVersionUID = 1L;
+		private int maxSize;
+
+		Stripe(int maxSize) {
+			super(16, .75F, true);
+			this.maxSize = maxSize;
+		}
+
+		protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+			return size() > maxSize;
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package ca.bc.gov.catchment.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+
+/**
+ * Maps 2D positions within a bounding box to their distance along a Hilbert curve which fills the box.
+ * Positions which are close to each other along the curve are also close to each other in space, so
+ * sorting by Hilbert index groups nearby positions together.
+ */
+public class HilbertCurve {
+
+	public static final int DEFAULT_ORDER = 16;
+
+	private Envelope bounds;
+	private int order;
+	private int maxCell;
+
+	public HilbertCurve(Envelope bounds) {
+		this(bounds, DEFAULT_ORDER);
+	}
+
+	/**
+	 * @param bounds the area covered by the curve
+	 * @param order the curve divides the bounds into a grid of 2^order x 2^order cells. [1-31]
+	 */
+	public HilbertCurve(Envelope bounds, int order) {
+		if (order < 1 || order > 31) {
+			throw new IllegalArgumentException("order must be in the range [1-31]");
+		}
+		this.bounds = new Envelope(bounds);
+		this.order = order;
+		this.maxCell = (1 << order) - 1;
+	}
+
+	/**
+	 * gets the index of the grid cell containing the given coordinate.  coordinates outside the bounds
+	 * are treated as being in the nearest cell on the edge of the grid.
+	 */
+	public long getIndex(Coordinate c) {
+		return getIndex(toCell(c.getX(), bounds.getMinX(), bounds.getWidth()), toCell(c.getY(), bounds.getMinY(), bounds.getHeight()));
+	}
+
+	/**
+	 * gets the index of grid cell (x, y) along the curve
+	 */
+	public long getIndex(int x, int y) {
+		long d = 0;
+		for (int s = 1 << (order - 1); s > 0; s >>= 1) {
+			int rx = (x & s) != 0 ? 1 : 0;
+			int ry = (y & s) != 0 ? 1 : 0;
+			d += (long)s * s * ((3 * rx) ^ ry);
+
+			//rotate the quadrant so the sub-curve has the standard orientation
+			if (ry == 0) {
+				if (rx == 1) {
+					x = maxCell - x;
+					y = maxCell - y;
+				}
+				int tmp = x;
+				x = y;
+				y = tmp;
+			}
+		}
+		return d;
+	}
+
+	/**
+	 * Gets the positions of the given coordinates when they are sorted by Hilbert index (over the bounds of
+	 * the coordinates).  Coordinates with equal indexes keep their original order.
+	 * @param coords
+	 * @return a list of positions in 'coords'
+	 */
+	public static List<Integer> getHilbertOrder(List<Coordinate> coords) {
+		Envelope bounds = new Envelope();
+		for (Coordinate c : coords) {
+			bounds.expandToInclude(c);
+		}
+		HilbertCurve curve = new HilbertCurve(bounds);
+		final long[] indexes = new long[coords.size()];
+		List<Integer> order = new ArrayList<Integer>(coords.size());
+		for (int i = 0; i < indexes.length; i++) {
+			indexes[i] = curve.getIndex(coords.get(i));
+			order.add(i);
+		}
+		Collections.sort(order, new Comparator<Integer>() {
+			public int compare(Integer i1, Integer i2) {
+				return Long.compare(indexes[i1], indexes[i2]);
+			}
+		});
+		return order;
+	}
+
+	private int toCell(double value, double min, double extent) {
+		if (extent <= 0) {
+			return 0;
+		}
+		int cell = (int)((value - min) / extent * maxCell);
+		return Math.max(0, Math.min(maxCell, cell));
+	}
+}
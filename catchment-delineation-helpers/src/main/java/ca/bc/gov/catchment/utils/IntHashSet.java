@@ -0,0 +1,155 @@
+package ca.bc.gov.catchment.utils;
+
+import java.util.Arrays;
+
+/**
+ * A set of non-negative ints (such as vertex ids) which doesn't box its values.
+ * Uses open addressing with linear probing.  Not thread-safe.
+ */
+public class IntHashSet {
+
+	private static final int EMPTY = -1;
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private int[] slots;
+	private int size;
+
+	public IntHashSet() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public IntHashSet(int expectedSize) {
+		int capacity = DEFAULT_CAPACITY;
+		while (capacity < expectedSize * 2) {
+			capacity *= 2;
+		}
+		this.slots = new int[capacity];
+		Arrays.fill(slots, EMPTY);
+		this.size = 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public boolean contains(int value) {
+		if (value < 0) {
+			return false;
+		}
+		int mask = slots.length - 1;
+		for (int i = hash(value) & mask; ; i = (i + 1) & mask) {
+			int slot = slots[i];
+			if (slot == value) {
+				return true;
+			}
+			if (slot == EMPTY) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * adds the value to the set
+	 * @return true if the value was added, false if it was already in the set
+	 */
+	public boolean add(int value) {
+		if (value < 0) {
+			throw new IllegalArgumentException("value must be non-negative");
+		}
+		if ((size + 1) * 2 > slots.length) {
+			resize(slots.length * 2);
+		}
+		int mask = slots.length - 1;
+		for (int i = hash(value) & mask; ; i = (i + 1) & mask) {
+			int slot = slots[i];
+			if (slot == value) {
+				return false;
+			}
+			if (slot == EMPTY) {
+				slots[i] = value;
+				size++;
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * removes the value from the set
+	 * @return true if the value was removed, false if it wasn't in the set
+	 */
+	public boolean remove(int value) {
+		if (value < 0) {
+			return false;
+		}
+		int mask = slots.length - 1;
+		int i = hash(value) & mask;
+		while (slots[i] != value) {
+			if (slots[i] == EMPTY) {
+				return false;
+			}
+			i = (i + 1) & mask;
+		}
+
+		//shift later entries of the probe sequence back, so that no entry is separated from its
+		//home slot by an empty slot
+		int gap = i;
+		for (int j = (gap + 1) & mask; slots[j] != EMPTY; j = (j + 1) & mask) {
+			int home = hash(slots[j]) & mask;
+			boolean homeIsCyclicallyAfterGap = gap <= j ? (gap < home && home <= j) : (gap < home || home <= j);
+			if (!homeIsCyclicallyAfterGap) {
+				slots[gap] = slots[j];
+				gap = j;
+			}
+		}
+		slots[gap] = EMPTY;
+		size--;
+		return true;
+	}
+
+	public void addAll(int[] values, int length) {
+		for (int i = 0; i < length; i++) {
+			add(values[i]);
+		}
+	}
+
+	/**
+	 * gets the values in the set, in ascending order
+	 */
+	public int[] toSortedArray() {
+		int[] result = new int[size];
+		int n = 0;
+		for (int value : slots) {
+			if (value != EMPTY) {
+				result[n++] = value;
+			}
+		}
+		Arrays.sort(result);
+		return result;
+	}
+
+	public void clear() {
+		Arrays.fill(slots, EMPTY);
+		size = 0;
+	}
+
+	private void resize(int newCapacity) {
+		int[] oldSlots = slots;
+		slots = new int[newCapacity];
+		Arrays.fill(slots, EMPTY);
+		size = 0;
+		for (int value : oldSlots) {
+			if (value != EMPTY) {
+				add(value);
+			}
+		}
+	}
+
+	private static int hash(int value) {
+		int h = value * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
@@ -5,7 +5,6 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -39,15 +38,13 @@ import ca.bc.gov.catchment.utils.VectorUtils;
 
 public class Water {
 	
-	private static final int MAX_CONFLUENCE_CACHE_SIZE = 1000;
-	
 	private FilterFactory2 filterFactory;
 	private GeometryFactory geometryFactory;
 	private SimpleFeatureSource waterFeatures;
 	private SimpleFeatureType waterFeatureType;
 	private String waterGeometryPropertyName;
-	private Map<Coordinate, Boolean> confluenceCache;
 	private NearestFinder nearestWaterFinder;
+	private WaterNodeTable nodeTable;
 
 	public Water(SimpleFeatureSource waterFeatures) {
 		Hints filterHints = new Hints(Hints.FEATURE_2D, true);
@@ -58,19 +55,11 @@ public class Water {
 		this.waterGeometryPropertyName = waterFeatureType.getGeometryDescriptor().getLocalName();
 		try {
 			this.nearestWaterFinder = new NearestFinder(waterFeatures.getFeatures());
+			this.nodeTable = new WaterNodeTable(waterFeatures.getFeatures());
 		} catch (IOException e) {
 			// TODO Auto-generated catch block
 			throw new IllegalArgumentException("invalid water features.");
 		}
-
-		//define a map that removes the oldest entry when the 
-		//cache removes its maximum size.  i.e. the least-recently-used entry is
-		//removed
-		confluenceCache = new LinkedHashMap<Coordinate, Boolean>(MAX_CONFLUENCE_CACHE_SIZE, .75F, true) {
-		    public boolean removeEldestEntry(Map.Entry<Coordinate, Boolean> eldest) {
-		        return size() > MAX_CONFLUENCE_CACHE_SIZE;
-		    }
-		};
 	}
 	
 	/**
@@ -82,53 +71,25 @@ public class Water {
 	}
 	
 	/**
-	 * Implementation note: this function caches the results of each lookup so that subsequent
-	 * can be made faster.  
+	 * gets the precomputed table of water vertices
+	 */
+	public WaterNodeTable getNodeTable() {
+		return nodeTable;
+	}
+	
+	/**
+	 * checks whether three or more water features meet at the given coordinate.
+	 * Implementation note: this is a lookup in the precomputed node table.
 	 * @param c
 	 * @return
 	 * @throws IOException
 	 */
 	public boolean isConfluence(Coordinate c) throws IOException {
-		if (confluenceCache.containsKey(c)) {
-			return confluenceCache.get(c);
-		}
-		
-		Point p = geometryFactory.createPoint(c);
-		Filter touchesFilter = filterFactory.touches(
-				filterFactory.property(waterGeometryPropertyName), 
-				filterFactory.literal(p));
-		SimpleFeatureCollection touchingWaterFeatures = waterFeatures.getFeatures(touchesFilter);
-		
-		boolean isConfluence = touchingWaterFeatures.size() >= 3;
-		confluenceCache.put(c, isConfluence);
-				
-		return isConfluence;
+		return nodeTable.isConfluence(c);
 	}
 	
 	public List<Coordinate> getConfluences() throws IOException {
-		List<Coordinate> confluences = new ArrayList<Coordinate>();
-		
-		SimpleFeatureIterator waterIt = waterFeatures.getFeatures().features();
-		while(waterIt.hasNext()) {
-			SimpleFeature waterFeature = waterIt.next();
-			Geometry g = (Geometry)waterFeature.getDefaultGeometry();
-			Coordinate[] coords = g.getCoordinates();
-			if (coords.length > 0) {
-				Coordinate firstCoord = coords[0];
-				if (isConfluence(firstCoord) && !confluences.contains(firstCoord)) {
-					confluences.add(firstCoord);
-				}
-			}
-			if (coords.length > 1) {
-				Coordinate lastCoord = coords[coords.length-1];
-				if (isConfluence(lastCoord) && !confluences.contains(lastCoord)) {
-					confluences.add(lastCoord);
-				}
-			}
-		}
-		waterIt.close();
-		
-		return confluences;
+		return nodeTable.getConfluences();
 	}
 	
 	public List<Polygon> getLakePolygons() throws IOException {
@@ -402,17 +363,7 @@ public class Water {
 	 * @throws IOException
 	 */
 	public boolean isTouchingWater(Coordinate c) throws IOException {
-		Point p = geometryFactory.createPoint(c);
-		Filter filter = filterFactory.or(
-				filterFactory.touches(
-						filterFactory.property(waterGeometryPropertyName), 
-						filterFactory.literal(p)),
-				filterFactory.contains( 
-						filterFactory.property(waterGeometryPropertyName), 
-						filterFactory.literal(p))
-				);
-		SimpleFeatureCollection overlappingWaterFeatures = waterFeatures.getFeatures(filter);
-		return overlappingWaterFeatures.size() > 0;
+		return nodeTable.isOnWater(c);
 	}
 	
 	/**
@@ -0,0 +1,199 @@
+package ca.bc.gov.catchment.water;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.locationtech.jts.algorithm.LineIntersector;
+import org.locationtech.jts.algorithm.Orientation;
+import org.locationtech.jts.algorithm.RobustLineIntersector;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.LineSegment;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.index.strtree.STRtree;
+
+/**
+ * A precomputed table of the nodes (vertices) of the water network.  For each vertex it records the
+ * number of water features which end at that vertex (its degree).  This allows questions such as
+ * "is this a confluence?" and "does this coordinate touch water?" to be answered with a hash lookup
+ * instead of a spatial query.
+ *
+ * Coordinates that aren't water vertices (e.g. a point part way along a water segment) are resolved with
+ * a spatial index of water segments.
+ *
+ * The table is built once (in the constructor) and is read-only after that, so it may be used
+ * from many threads without locking.
+ *
+ * The semantics match the filter-based queries that the table replaces, for linear water features:
+ *  - a feature "touches" a point if the point is one of the feature's endpoints (closed lines
+ *    have no endpoints)
+ *  - a feature "touches or contains" a point if the point lies anywhere on the feature
+ */
+public class WaterNodeTable {
+
+	private static final int MIN_CONFLUENCE_DEGREE = 3;
+
+	private Map<Coordinate, Integer> endpointDegree;
+	private List<Coordinate> confluences;
+	private STRtree segmentIndex;
+
+	public WaterNodeTable(SimpleFeatureCollection waterFeatures) throws IOException {
+		this.endpointDegree = new HashMap<Coordinate, Integer>();
+		this.confluences = new ArrayList<Coordinate>();
+		this.segmentIndex = new STRtree();
+
+		List<Coordinate> endpointsInFeatureOrder = new ArrayList<Coordinate>();
+
+		SimpleFeatureIterator it = waterFeatures.features();
+		try {
+			while(it.hasNext()) {
+				Geometry g = (Geometry)it.next().getDefaultGeometry();
+				if (g == null) {
+					continue;
+				}
+				addFeature(g, endpointsInFeatureOrder);
+			}
+		}
+		finally {
+			it.close();
+		}
+
+		//the index must be built before it is queried from multiple threads
+		segmentIndex.build();
+
+		//confluences are listed in the order in which they are first encountered as an endpoint
+		Set<Coordinate> confluenceSet = new HashSet<Coordinate>();
+		for (Coordinate c : endpointsInFeatureOrder) {
+			if (isConfluence(c) && confluenceSet.add(c)) {
+				confluences.add(c);
+			}
+		}
+	}
+
+	/**
+	 * the number of water features which have an endpoint at the given coordinate
+	 */
+	public int getDegree(Coordinate c) {
+		Integer degree = endpointDegree.get(c);
+		return degree != null ? degree : 0;
+	}
+
+	/**
+	 * checks whether the coordinate is a vertex of any water feature
+	 */
+	public boolean isVertex(Coordinate c) {
+		return endpointDegree.containsKey(c);
+	}
+
+	/**
+	 * a confluence is a point where three or more water features meet
+	 */
+	public boolean isConfluence(Coordinate c) {
+		return getDegree(c) >= MIN_CONFLUENCE_DEGREE;
+	}
+
+	/**
+	 * checks whether the coordinate lies anywhere on a water feature (at a vertex or part way along
+	 * a segment)
+	 */
+	public boolean isOnWater(Coordinate c) {
+		if (isVertex(c)) {
+			return true;
+		}
+		@SuppressWarnings("unchecked")
+		List<LineSegment> candidates = segmentIndex.query(new Envelope(c));
+		for (LineSegment segment : candidates) {
+			if (Orientation.index(segment.p0, segment.p1, c) == Orientation.COLLINEAR) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * checks whether the segment from p0 to p1 touches water anywhere (crossing, overlapping, or touching
+	 * at a point)
+	 * @param p0
+	 * @param p1
+	 * @param includeEndpoints if false, the segment only touches water if some point other than p0 or p1 
+	 * is on water
+	 * @return
+	 */
+	public boolean isSegmentTouchingWater(Coordinate p0, Coordinate p1, boolean includeEndpoints) {
+		LineIntersector intersector = new RobustLineIntersector();
+		@SuppressWarnings("unchecked")
+		List<LineSegment> candidates = segmentIndex.query(new Envelope(p0, p1));
+		for (LineSegment segment : candidates) {
+			intersector.computeIntersection(p0, p1, segment.p0, segment.p1);
+			if (!intersector.hasIntersection()) {
+				continue;
+			}
+			if (includeEndpoints || intersector.getIntersectionNum() == 2) {
+				//(collinear segments which share more than one point overlap along a length)
+				return true;
+			}
+			Coordinate c = intersector.getIntersection(0);
+			if (!c.equals2D(p0) && !c.equals2D(p1)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * gets all confluences.  The result is a new list.
+	 */
+	public List<Coordinate> getConfluences() {
+		return new ArrayList<Coordinate>(confluences);
+	}
+
+	/**
+	 * gets the spatial index of all water segments.  Items in the index are LineSegments.
+	 */
+	public STRtree getSegmentIndex() {
+		return segmentIndex;
+	}
+
+	private void addFeature(Geometry g, List<Coordinate> endpointsInFeatureOrder) {
+		//endpoints of this feature (counted once per feature, even if it has several parts)
+		Set<Coordinate> featureEndpoints = new HashSet<Coordinate>();
+
+		for (int i = 0; i < g.getNumGeometries(); i++) {
+			Geometry part = g.getGeometryN(i);
+			Coordinate[] coords = part.getCoordinates();
+			for (int j = 0; j < coords.length; j++) {
+				if (!endpointDegree.containsKey(coords[j])) {
+					endpointDegree.put(coords[j], 0);
+				}
+				if (j > 0 && !coords[j-1].equals2D(coords[j])) {
+					LineSegment segment = new LineSegment(coords[j-1], coords[j]);
+					Envelope env = new Envelope(coords[j-1], coords[j]);
+					segmentIndex.insert(env, segment);
+				}
+			}
+
+			if (coords.length == 0) {
+				continue;
+			}
+			endpointsInFeatureOrder.add(coords[0]);
+			endpointsInFeatureOrder.add(coords[coords.length-1]);
+			boolean isClosed = part instanceof LineString && ((LineString)part).isClosed();
+			if (part instanceof LineString && !isClosed) {
+				featureEndpoints.add(coords[0]);
+				featureEndpoints.add(coords[coords.length-1]);
+			}
+		}
+
+		for (Coordinate c : featureEndpoints) {
+			endpointDegree.put(c, endpointDegree.get(c) + 1);
+		}
+	}
+}
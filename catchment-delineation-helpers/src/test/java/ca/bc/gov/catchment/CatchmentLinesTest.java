@@ -0,0 +1,128 @@
+package ca.bc.gov.catchment;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.util.Assert;
+import org.opengis.feature.simple.SimpleFeature;
+
+import ca.bc.gov.catchment.routes.RouteException;
+import ca.bc.gov.catchment.synthetic.DummyFactory;
+import ca.bc.gov.catchment.utils.SpatialUtils;
+
+public class CatchmentLinesTest {
+
+	private GeometryFactory geometryFactory;
+	private SimpleFeatureSource catchments;
+
+	public CatchmentLinesTest() throws IOException, RouteException {
+		this.geometryFactory = JTSFactoryFinder.getGeometryFactory();
+		this.catchments = DummyFactory.createDummyCatchments();
+	}
+
+	@Test
+	public void testCopyIsIndependent() throws IOException {
+		CatchmentLines catchmentLines = new CatchmentLines(catchments);
+		SimpleFeature section = getFirstSection();
+
+		CatchmentLines copy = catchmentLines.copy();
+		SimpleFeature moved = moveSection(section, 100);
+		copy.addOrUpdate(moved);
+
+		Assert.isTrue(copy.getLatest(section) == moved, "copy expected to have the updated section");
+		Assert.isTrue(catchmentLines.getLatest(section) != moved, "original not expected to be affected by the copy");
+		Assert.isTrue(copy.getVersion() > catchmentLines.getVersion(), "copy version expected to increase");
+		Assert.isTrue(copy.getUpdatedFeatures().size() == catchmentLines.getUpdatedFeatures().size(), "update not expected to change the number of sections");
+	}
+
+	@Test
+	public void testGetUpdatedSections() throws IOException {
+		CatchmentLines catchmentLines = new CatchmentLines(catchments);
+		SimpleFeature section = getFirstSection();
+		Envelope oldEnvelope = ((LineString)section.getDefaultGeometry()).getEnvelopeInternal();
+
+		Assert.isTrue(containsFid(catchmentLines.getUpdatedSections(oldEnvelope), section.getID()), "section expected at its original location");
+
+		SimpleFeature moved = moveSection(section, 100);
+		catchmentLines.addOrUpdate(moved);
+		Envelope newEnvelope = ((LineString)moved.getDefaultGeometry()).getEnvelopeInternal();
+
+		List<SimpleFeature> atNewLocation = catchmentLines.getUpdatedSections(newEnvelope);
+		Assert.isTrue(atNewLocation.size() == 1 && atNewLocation.get(0) == moved, "only the moved section expected at its new location");
+		Assert.isTrue(!containsFid(catchmentLines.getUpdatedSections(oldEnvelope), section.getID()), "section not expected at its original location");
+	}
+
+	@Test
+	public void testManyUpdates() throws IOException {
+		CatchmentLines catchmentLines = new CatchmentLines(catchments);
+		int numSections = catchmentLines.getUpdatedFeatures().size();
+		SimpleFeature section = getFirstSection();
+
+		//enough updates that the changes are merged into the index several times
+		SimpleFeature moved = null;
+		for (int i = 1; i <= 500; i++) {
+			moved = moveSection(section, 100 + i);
+			catchmentLines.addOrUpdate(moved);
+		}
+
+		Assert.isTrue(catchmentLines.getLatest(section) == moved, "latest update expected");
+		Assert.isTrue(catchmentLines.getUpdatedFeatures().size() == numSections, "expected "+numSections+" sections.  found: "+catchmentLines.getUpdatedFeatures().size());
+		Envelope newEnvelope = ((LineString)moved.getDefaultGeometry()).getEnvelopeInternal();
+		Assert.isTrue(catchmentLines.getUpdatedSections(newEnvelope).size() == 1, "one section expected at the latest location");
+	}
+
+	@Test
+	public void testSectionsTouchingJunction() throws IOException {
+		CatchmentLines catchmentLines = new CatchmentLines(catchments);
+		SimpleFeature section = getFirstSection();
+		LineString route = (LineString)section.getDefaultGeometry();
+		Coordinate end = route.getCoordinateN(route.getNumPoints()-1);
+
+		List<SimpleFeature> touching = catchmentLines.getSectionsTouchingJunction(end);
+		Assert.isTrue(containsFid(touching, section.getID()), "section expected to touch its endpoint");
+		for (SimpleFeature f : touching) {
+			LineString g = (LineString)f.getDefaultGeometry();
+			boolean isEndpoint = g.getCoordinateN(0).equals2D(end) || g.getCoordinateN(g.getNumPoints()-1).equals2D(end);
+			Assert.isTrue(isEndpoint, "touching sections expected to end at the junction");
+		}
+	}
+
+	private SimpleFeature getFirstSection() throws IOException {
+		SimpleFeatureIterator it = catchments.getFeatures().features();
+		try {
+			return it.next();
+		}
+		finally {
+			it.close();
+		}
+	}
+
+	/**
+	 * creates a new version of the section, with a line at (offset, offset)
+	 */
+	private SimpleFeature moveSection(SimpleFeature section, double offset) {
+		Coordinate[] coords = {
+				new Coordinate(offset, offset),
+				new Coordinate(offset + 1, offset + 1)
+		};
+		LineString route = geometryFactory.createLineString(coords);
+		return SpatialUtils.geomToFeature(route, section.getFeatureType(), section.getID());
+	}
+
+	private boolean containsFid(List<SimpleFeature> sections, String fid) {
+		for (SimpleFeature f : sections) {
+			if (f.getID().equals(fid)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -11,12 +11,14 @@ import org.geotools.feature.DefaultFeatureCollection;
 import org.geotools.geometry.jts.JTSFactoryFinder;
 import org.junit.Test;
 import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.LineString;
 import org.locationtech.jts.io.ParseException;
 import org.locationtech.jts.io.WKTReader;
 import org.locationtech.jts.util.Assert;
 import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.filter.identity.FeatureId;
 
 import ca.bc.gov.catchment.routes.RouteException;
 import ca.bc.gov.catchment.synthetic.DummyFactory;
@@ -282,4 +284,33 @@ public class CatchmentValidityTest {
 		boolean isValid = validityChecker.isRouteValidWrtCatchments(route, catchments.getFeatures());
 		Assert.isTrue(!isValid, "catchment is expected to be invalid");
 	}
+	
+	@Test
+	public void testNeighbourhoodMatchesFullCheck() throws IOException, RouteException {
+		SimpleFeatureSource catchments = DummyFactory.createDummyCatchments();
+		SimpleFeatureCollection catchmentsFc = catchments.getFeatures();
+		List<FeatureId> fidsToIgnore = new ArrayList<FeatureId>();
+		
+		Coordinate[][] routesCoords = {
+				{new Coordinate(2, 8, 13), new Coordinate(2, 10, 12)},
+				{new Coordinate(4, 11, 14), new Coordinate(5, 11, 12)},
+				{new Coordinate(2, 8, 13), new Coordinate(2, 10, 12), new Coordinate(4, 9, 12), new Coordinate(4, 11, 14), new Coordinate(5, 9, 14)},
+				{new Coordinate(2, 8, 13), new Coordinate(2, 10, 12), new Coordinate(4, 9, 12), new Coordinate(4, 6, 12)},
+				{new Coordinate(2, 8, 13), new Coordinate(2, 10, 12), new Coordinate(4, 9, 12), new Coordinate(5, 9, 14), new Coordinate(6, 8, 11)}
+		};
+		
+		//one neighbourhood which covers all the routes, and one which covers none of them (so the 
+		//full collection is checked instead)
+		CatchmentNeighbourhood large = validityChecker.getNeighbourhood(catchmentsFc, new Envelope(0, 20, 0, 20));
+		CatchmentNeighbourhood small = validityChecker.getNeighbourhood(catchmentsFc, new Envelope(0, 1, 0, 1));
+		
+		for (Coordinate[] routeCoords : routesCoords) {
+			LineString route = geometryFactory.createLineString(routeCoords);
+			boolean expected = validityChecker.isRouteValidWrtCatchments(route, catchmentsFc);
+			Assert.isTrue(large.covers(route.getEnvelopeInternal()), "neighbourhood expected to cover route");
+			Assert.isTrue(validityChecker.isRouteValidWrtCatchments(route, large, fidsToIgnore) == expected, "neighbourhood result differs for "+route);
+			Assert.isTrue(!small.covers(route.getEnvelopeInternal()), "neighbourhood not expected to cover route");
+			Assert.isTrue(validityChecker.isRouteValidWrtCatchments(route, small, fidsToIgnore) == expected, "fallback result differs for "+route);
+		}
+	}
 }
@@ -0,0 +1,95 @@
+package ca.bc.gov.catchment.fitness;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.feature.SchemaException;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.io.ParseException;
+import org.locationtech.jts.util.Assert;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import ca.bc.gov.catchment.synthetic.TestHelper;
+import ca.bc.gov.catchment.utils.SpatialUtils;
+
+public class SectionFitnessTest {
+
+	private static final double TOLERANCE = 0.000001;
+
+	/**
+	 * fitness of a segment is its length
+	 */
+	private SectionFitness createLengthFitness() {
+		return new SectionFitness() {
+			public double fitness(Coordinate c1, Coordinate c2) throws IOException {
+				return c1.distance(c2);
+			}
+		};
+	}
+
+	@Test
+	public void testSequenceFitness() throws IOException, ParseException {
+		SectionFitness sectionFitness = createLengthFitness();
+		LineString line = (LineString)TestHelper.geometryFromWkt("LineString (0 0, 3 0, 3 4, 0 4)");
+
+		double fitness = sectionFitness.fitness(line);
+		Assert.isTrue(Math.abs(fitness - 10) < TOLERANCE, "expected fitness 10.  found "+fitness);
+
+		Geometry multiLine = TestHelper.geometryFromWkt("MultiLineString ((0 0, 3 0, 3 4, 0 4))");
+		double multiLineFitness = sectionFitness.fitness(multiLine);
+		Assert.isTrue(Math.abs(multiLineFitness - 10) < TOLERANCE, "expected fitness 10.  found "+multiLineFitness);
+	}
+
+	/**
+	 * the average elevation of a section is not the sum of the average elevations of its segments, so
+	 * every entry point must use the subclass's sequence fitness
+	 */
+	@Test
+	public void testSequenceOverride() throws IOException, ParseException, SchemaException {
+		AvgElevationSectionFitness sectionFitness = new AvgElevationSectionFitness(null);
+		LineString line = (LineString)TestHelper.geometryFromWkt("LineString (0 0 1, 3 0 2, 3 4 3)");
+		double fitness = sectionFitness.fitness(line);
+		Assert.isTrue(Math.abs(fitness - 2) < TOLERANCE, "expected fitness 2.  found "+fitness);
+		
+		SimpleFeatureType type = DataUtilities.createType("sections", "geometry:LineString");
+		List<SimpleFeature> features = new ArrayList<SimpleFeature>();
+		features.add(SpatialUtils.geomToFeature(line, type, "section1"));
+		double sum = sectionFitness.fitnessSum(features);
+		Assert.isTrue(Math.abs(sum - 2) < TOLERANCE, "expected fitness sum 2.  found "+sum);
+		
+		double segmentFitness = sectionFitness.fitness(new Coordinate(0, 0, 1), new Coordinate(3, 0, 2));
+		Assert.isTrue(Math.abs(segmentFitness - 1.5) < TOLERANCE, "expected segment fitness 1.5.  found "+segmentFitness);
+	}
+
+	@Test
+	public void testParallelFitnessSum() throws IOException, ParseException, SchemaException {
+		SectionFitness sectionFitness = createLengthFitness();
+		SimpleFeatureType type = DataUtilities.createType("sections", "geometry:LineString");
+		List<SimpleFeature> features = new ArrayList<SimpleFeature>();
+		for (int i = 0; i < 200; i++) {
+			LineString line = (LineString)TestHelper.geometryFromWkt("LineString (0 0, "+i+" 0, "+i+" 1)");
+			features.add(SpatialUtils.geomToFeature(line, type, "section"+i));
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			double expected = sectionFitness.fitnessSum(features);
+			double parallel = sectionFitness.fitnessSum(features, executor);
+			Assert.isTrue(Math.abs(expected - parallel) < TOLERANCE, "expected parallel sum "+parallel+" to equal sequential sum "+expected);
+
+			double avg = sectionFitness.fitnessAvg(features, executor);
+			Assert.isTrue(Math.abs(avg - expected / features.size()) < TOLERANCE, "unexpected average fitness "+avg);
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,170 @@
+package ca.bc.gov.catchment.improvement;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.junit.Assert;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.io.ParseException;
+import org.opengis.feature.simple.SimpleFeature;
+
+import ca.bc.gov.catchment.CatchmentLines;
+import ca.bc.gov.catchment.fitness.SectionFitness;
+import ca.bc.gov.catchment.synthetic.TestHelper;
+import ca.bc.gov.catchment.utils.SpatialUtils;
+import ca.bc.gov.catchment.water.Water;
+
+public class BestOfNSetImproverTest {
+
+	private static final int NUM_SECTIONS = 5;
+	
+	/**
+	 * parallel sections which don't touch each other
+	 */
+	private CatchmentLines createCatchmentLines() throws ParseException, IOException {
+		List<LineString> sections = new ArrayList<LineString>();
+		for (int i = 0; i < NUM_SECTIONS; i++) {
+			sections.add((LineString)TestHelper.geometryFromWkt("LineString (0 "+(i*10)+", 1 "+(i*10)+")"));
+		}
+		return new CatchmentLines(TestHelper.createLineStringFeatureSource(sections, "catchment_lines"));
+	}
+	
+	private Water createWater() throws ParseException {
+		LineString stream = (LineString)TestHelper.geometryFromWkt("LineString (100 100, 101 100)");
+		return new Water(TestHelper.createLineStringFeatureSource(stream, "water"));
+	}
+	
+	/**
+	 * fitness of a segment is its length
+	 */
+	private SectionFitness createLengthFitness(final double maxX) {
+		return new SectionFitness() {
+			public double fitness(Coordinate c1, Coordinate c2) throws IOException {
+				if (c1.getX() > maxX || c2.getX() > maxX) {
+					throw new IOException("unable to score a section beyond x="+maxX);
+				}
+				return c1.distance(c2);
+			}
+		};
+	}
+	
+	/**
+	 * lengthens each section by a random amount, so the fitness of each candidate set depends on its 
+	 * random number generator
+	 */
+	private SectionImprover createRandomSectionImprover(SectionFitness sectionFitness) {
+		SectionImprover improver = new SectionImprover() {
+			public SectionModification improve(SimpleFeature section, CatchmentLines catchmentLines) throws IOException {
+				throw new UnsupportedOperationException("a random number generator is required");
+			}
+			
+			public SectionModification improve(SimpleFeature section, CatchmentLines catchmentLines, SplittableRandom random) throws IOException {
+				SectionModification result = new SectionModification(section);
+				result.setImprovementMetrics(new ImprovementMetrics());
+				Coordinate[] coords = ((Geometry)section.getDefaultGeometry()).getCoordinates().clone();
+				Coordinate end = coords[coords.length-1];
+				coords[coords.length-1] = new Coordinate(end.getX() + random.nextDouble(), end.getY());
+				LineString modifiedRoute = SpatialUtils.toLineString(coords);
+				result.setModifiedSection(SpatialUtils.geomToFeature(modifiedRoute, section.getFeatureType(), section.getID()));
+				return result;
+			}
+		};
+		improver.setSectionFitness(sectionFitness);
+		return improver;
+	}
+	
+	private JunctionImprover createNoOpJunctionImprover() {
+		return new JunctionImprover() {
+			public JunctionModification improve(Junction junction, CatchmentLines catchmentLines) throws IOException {
+				JunctionModification result = new JunctionModification(junction);
+				result.setImprovementMetrics(new ImprovementMetrics());
+				return result;
+			}
+		};
+	}
+	
+	private Map<String, Geometry> toGeometryMap(CatchmentLines catchmentLines) throws IOException {
+		Map<String, Geometry> result = new HashMap<String, Geometry>();
+		SimpleFeatureIterator it = catchmentLines.getUpdatedFeatures().features();
+		try {
+			while(it.hasNext()) {
+				SimpleFeature f = it.next();
+				result.put(f.getID(), (Geometry)f.getDefaultGeometry());
+			}
+		}
+		finally {
+			it.close();
+		}
+		return result;
+	}
+	
+	private void assertSameSections(CatchmentLines expected, CatchmentLines actual) throws IOException {
+		Map<String, Geometry> expectedSections = toGeometryMap(expected);
+		Map<String, Geometry> actualSections = toGeometryMap(actual);
+		Assert.assertEquals(NUM_SECTIONS, expectedSections.size());
+		Assert.assertEquals(expectedSections.keySet(), actualSections.keySet());
+		for (String fid : expectedSections.keySet()) {
+			Assert.assertTrue("expected the same section "+fid+" with any number of threads", 
+					expectedSections.get(fid).equalsExact(actualSections.get(fid)));
+		}
+	}
+	
+	private BestOfNSetImprover createBestOfN(int numThreads, double maxX) throws IOException, ParseException {
+		SectionImprover sectionImprover = createRandomSectionImprover(createLengthFitness(maxX));
+		BestOfNSetImprover improver = new BestOfNSetImprover(createWater(), sectionImprover, createNoOpJunctionImprover(), 6, numThreads);
+		improver.setRandomSeed(7);
+		return improver;
+	}
+	
+	@Test
+	public void testSameResultWithAnyNumberOfThreads() throws IOException, ParseException {
+		BestOfNSetImprover singleThreaded = createBestOfN(1, Double.MAX_VALUE);
+		CatchmentLines singleThreadedResult = singleThreaded.improve(createCatchmentLines());
+		BestOfNSetImprover multiThreaded = createBestOfN(4, Double.MAX_VALUE);
+		CatchmentLines multiThreadedResult = multiThreaded.improve(createCatchmentLines());
+		
+		assertSameSections(singleThreadedResult, multiThreadedResult);
+		assertSameSections(singleThreaded.getRandomSet(), multiThreaded.getRandomSet());
+		
+		//every section was lengthened, so the best set is fitter than the input
+		double initialFitness = singleThreaded.checkGlobalFitness(createCatchmentLines().getUpdatedFeatures());
+		Assert.assertTrue(singleThreaded.checkGlobalFitness(singleThreadedResult.getUpdatedFeatures()) > initialFitness);
+	}
+	
+	@Test
+	public void testEvolutionSameResultWithAnyNumberOfThreads() throws IOException, ParseException {
+		List<CatchmentLines> results = new ArrayList<CatchmentLines>();
+		int[] numThreads = {1, 4};
+		for (int threads : numThreads) {
+			SectionImprover sectionImprover = createRandomSectionImprover(createLengthFitness(Double.MAX_VALUE));
+			EvolutionSetImprover improver = new EvolutionSetImprover(createWater(), sectionImprover, createNoOpJunctionImprover(), 4, 3, false, threads);
+			improver.setRandomSeed(11);
+			results.add(improver.improve(createCatchmentLines()));
+		}
+		assertSameSections(results.get(0), results.get(1));
+	}
+	
+	/**
+	 * an error while generating a candidate set on a pool thread is thrown to the caller
+	 */
+	@Test
+	public void testErrorInSetIsThrown() throws IOException, ParseException {
+		//the input can be scored, but the lengthened sections can't
+		BestOfNSetImprover improver = createBestOfN(4, 1.0);
+		try {
+			improver.improve(createCatchmentLines());
+			Assert.fail("expected an IOException");
+		}
+		catch (IOException e) {
+			Assert.assertTrue(e.getMessage().startsWith("unable to score a section"));
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package ca.bc.gov.catchment.improvement;
+
+import java.util.SplittableRandom;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SimulatedAnnealingSectionImproverTest {
+
+	private static final double TOLERANCE = 0.000001;
+	
+	@Test
+	public void testTemperatureLadder() {
+		Assert.assertEquals(1, SimulatedAnnealingSectionImprover.getTemperatureScale(0, 1), TOLERANCE);
+		
+		//the ladder always spans [MIN_TEMPERATURE_SCALE, 1], with a constant ratio between adjacent chains
+		for (int numChains = 2; numChains <= 8; numChains++) {
+			double first = SimulatedAnnealingSectionImprover.getTemperatureScale(0, numChains);
+			double last = SimulatedAnnealingSectionImprover.getTemperatureScale(numChains-1, numChains);
+			Assert.assertEquals(1, first, TOLERANCE);
+			Assert.assertEquals(SimulatedAnnealingSectionImprover.MIN_TEMPERATURE_SCALE, last, TOLERANCE);
+			
+			double ratio = SimulatedAnnealingSectionImprover.getTemperatureScale(1, numChains) / first;
+			for (int i = 1; i < numChains; i++) {
+				double prev = SimulatedAnnealingSectionImprover.getTemperatureScale(i-1, numChains);
+				double scale = SimulatedAnnealingSectionImprover.getTemperatureScale(i, numChains);
+				Assert.assertTrue("expected the chains to be ordered from hottest to coolest", scale < prev);
+				Assert.assertEquals(ratio, scale / prev, TOLERANCE);
+			}
+		}
+	}
+	
+	/**
+	 * moving the fitter route to the cooler chain is always accepted, without drawing a random number
+	 */
+	@Test
+	public void testExchangeToCoolerAlwaysAccepted() {
+		SplittableRandom random = new SplittableRandom(1);
+		SplittableRandom reference = new SplittableRandom(1);
+		for (int i = 0; i < 100; i++) {
+			boolean accepted = SimulatedAnnealingSectionImprover.isExchangeAccepted(10 + i, 5, 100, 10, random);
+			Assert.assertTrue("expected the fitter hotter route to move to the cooler chain", accepted);
+		}
+		Assert.assertEquals("expected no random numbers to be drawn", reference.nextLong(), random.nextLong());
+	}
+	
+	/**
+	 * moving the fitter route to the hotter chain is accepted with the metropolis probability 
+	 * e^((fitCooler - fitHotter) * (1/T_hotter - 1/T_cooler)), and is repeatable with a fixed seed
+	 */
+	@Test
+	public void testExchangeToHotterFollowsMetropolisRule() {
+		double hotterFit = 5;
+		double coolerFit = 10;
+		double hotterTemperature = 100;
+		double coolerTemperature = 20;
+		double expectedP = Math.exp((coolerFit - hotterFit) * (1 / hotterTemperature - 1 / coolerTemperature));
+		
+		int numTrials = 100000;
+		SplittableRandom random = new SplittableRandom(42);
+		SplittableRandom sameSeed = new SplittableRandom(42);
+		int numAccepted = 0;
+		for (int i = 0; i < numTrials; i++) {
+			boolean accepted = SimulatedAnnealingSectionImprover.isExchangeAccepted(hotterFit, coolerFit, hotterTemperature, coolerTemperature, random);
+			boolean repeated = SimulatedAnnealingSectionImprover.isExchangeAccepted(hotterFit, coolerFit, hotterTemperature, coolerTemperature, sameSeed);
+			Assert.assertEquals("expected the same decisions with the same seed", accepted, repeated);
+			if (accepted) {
+				numAccepted++;
+			}
+		}
+		double p = (double)numAccepted / numTrials;
+		Assert.assertEquals(expectedP, p, 0.01);
+	}
+	
+	@Test
+	public void testBestOverAllChains() {
+		double[] bestFits = {3, 7, 2, 7, 5};
+		Assert.assertEquals(1, SimulatedAnnealingSectionImprover.getBestChainIndex(bestFits));
+		
+		double[] coolestIsBest = {3, 4, 9};
+		Assert.assertEquals(2, SimulatedAnnealingSectionImprover.getBestChainIndex(coolestIsBest));
+		
+		double[] oneChain = {-1};
+		Assert.assertEquals(0, SimulatedAnnealingSectionImprover.getBestChainIndex(oneChain));
+	}
+}
@@ -0,0 +1,75 @@
+package ca.bc.gov.catchment.ridgeclean;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.feature.SchemaException;
+import org.junit.Test;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.io.ParseException;
+import org.locationtech.jts.util.Assert;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import ca.bc.gov.catchment.synthetic.TestHelper;
+import ca.bc.gov.catchment.utils.SpatialUtils;
+
+public class CatchmentUnionTrackerTest {
+
+	/**
+	 * three unit squares in a row, and one square which touches none of the others
+	 */
+	private List<SimpleFeature> createSquares() throws SchemaException, ParseException {
+		SimpleFeatureType type = DataUtilities.createType("polys", "geometry:Polygon");
+		String[] wkts = {
+			"Polygon ((0 0, 0 1, 1 1, 1 0, 0 0))",
+			"Polygon ((1 0, 1 1, 2 1, 2 0, 1 0))",
+			"Polygon ((2 0, 2 1, 3 1, 3 0, 2 0))",
+			"Polygon ((10 10, 10 11, 11 11, 11 10, 10 10))"
+		};
+		List<SimpleFeature> result = new ArrayList<SimpleFeature>();
+		for (int i = 0; i < wkts.length; i++) {
+			Polygon p = (Polygon)TestHelper.geometryFromWkt(wkts[i]);
+			result.add(SpatialUtils.geomToFeature(p, type, "poly"+i));
+		}
+		return result;
+	}
+
+	@Test
+	public void testAdjacency() throws SchemaException, ParseException {
+		PolygonAdjacencyGraph adjacency = new PolygonAdjacencyGraph(createSquares());
+		Assert.isTrue(adjacency.getNeighbours(0).length == 1 && adjacency.getNeighbours(0)[0] == 1, "square 0 expected to touch only square 1");
+		Assert.isTrue(adjacency.getNeighbours(1).length == 2, "square 1 expected to touch squares 0 and 2");
+		Assert.isTrue(adjacency.getNeighbours(3).length == 0, "square 3 expected to touch no squares");
+	}
+
+	@Test
+	public void testUnion() throws SchemaException, ParseException {
+		List<SimpleFeature> squares = createSquares();
+		CatchmentUnionTracker tracker = new CatchmentUnionTracker(squares);
+		Assert.isTrue(tracker.getNumCatchments() == 4, "expected 4 catchments before merging");
+
+		tracker.union(0, 1);
+		tracker.union(tracker.indexOf(squares.get(2).getIdentifier()), 1);
+		Assert.isTrue(tracker.union(2, 0) == -1, "squares already merged.  union not expected to change anything");
+		Assert.isTrue(tracker.find(0) == tracker.find(2), "squares 0 and 2 expected to be in the same catchment");
+		Assert.isTrue(tracker.find(0) != tracker.find(3), "squares 0 and 3 not expected to be in the same catchment");
+		Assert.isTrue(tracker.getNumCatchments() == 2, "expected 2 catchments after merging");
+
+		List<Catchment> catchments = tracker.getAllCatchments();
+		Assert.isTrue(catchments.size() == 2, "expected 2 catchments.  found "+catchments.size());
+		Catchment merged = catchments.get(0);
+		Assert.isTrue(merged.getFids().size() == 3, "expected merged catchment to include 3 squares");
+		Assert.isTrue(Math.abs(merged.getPolygon().getArea() - 3) < 0.000001, "expected merged catchment area of 3");
+		Assert.isTrue(merged.getPolygon().getNumInteriorRing() == 0, "expected merged catchment to have no holes");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownFid() throws SchemaException, ParseException {
+		SimpleFeatureType type = DataUtilities.createType("polys", "geometry:Polygon");
+		Polygon p = (Polygon)TestHelper.geometryFromWkt("Polygon ((0 0, 0 1, 1 1, 1 0, 0 0))");
+		CatchmentUnionTracker tracker = new CatchmentUnionTracker(createSquares());
+		tracker.indexOf(SpatialUtils.geomToFeature(p, type, "other").getIdentifier());
+	}
+}
@@ -0,0 +1,139 @@
+package ca.bc.gov.catchment.ridgeclean;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.DefaultFeatureCollection;
+import org.geotools.feature.SchemaException;
+import org.junit.Test;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.io.ParseException;
+import org.locationtech.jts.operation.polygonize.Polygonizer;
+import org.locationtech.jts.util.Assert;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import ca.bc.gov.catchment.synthetic.TestHelper;
+import ca.bc.gov.catchment.utils.SpatialUtils;
+import ca.bc.gov.catchment.water.Water;
+
+public class RidgeCleanerTest {
+
+	private static final double TOLERANCE = 0.000001;
+
+	/**
+	 * three catchments in a row: A (x from 0 to 2), B (x from 2 to 3.5) and C (x from 3.5 to 4.5).
+	 * the ridge between B and C is lower than the ridge between A and B, so a false catchment B would
+	 * prefer to merge into C.
+	 */
+	private SimpleFeatureCollection createRidges() throws SchemaException, ParseException {
+		SimpleFeatureType type = DataUtilities.createType("ridges", "geometry:LineString:srid=3005");
+		String[] wkts = {
+			"LineString (0 0 5, 2 0 5)",
+			"LineString (2 0 5, 3.5 0 5)",
+			"LineString (3.5 0 5, 4.5 0 5)",
+			"LineString (0 2 5, 2 2 5)",
+			"LineString (2 2 5, 3.5 2 5)",
+			"LineString (3.5 2 5, 4.5 2 5)",
+			"LineString (0 0 5, 0 2 5)",
+			"LineString (4.5 0 5, 4.5 2 5)",
+			"LineString (2 0 10, 2 2 10)",
+			"LineString (3.5 0 1, 3.5 2 1)"
+		};
+		DefaultFeatureCollection result = new DefaultFeatureCollection();
+		for (int i = 0; i < wkts.length; i++) {
+			LineString line = (LineString)TestHelper.geometryFromWkt(wkts[i]);
+			result.add(SpatialUtils.geomToFeature(line, type, "ridge"+i));
+		}
+		return result;
+	}
+
+	/**
+	 * one stream spans catchments A and B, and isn't within either.  another stream is within C.
+	 * the merged catchment A+B contains water, so B must not also be merged into C.
+	 */
+	@Test
+	public void testWaterSpanningTwoCatchments() throws SchemaException, ParseException, IOException {
+		List<LineString> streams = new ArrayList<LineString>();
+		streams.add((LineString)TestHelper.geometryFromWkt("LineString (1 1, 3 1)"));
+		streams.add((LineString)TestHelper.geometryFromWkt("LineString (3.8 1, 4.2 1)"));
+		Water water = new Water(TestHelper.createLineStringFeatureSource(streams, "water"));
+
+		RidgeCleaner cleaner = new RidgeCleaner(createRidges(), water, "catchment_polys", 2);
+		SimpleFeatureCollection cleaned = cleaner.doAllCleaning();
+
+		Polygonizer polygonizer = new Polygonizer(false);
+		SimpleFeatureIterator it = cleaned.features();
+		try {
+			while(it.hasNext()) {
+				polygonizer.add((Geometry)it.next().getDefaultGeometry());
+			}
+		}
+		finally {
+			it.close();
+		}
+		Collection<?> polys = polygonizer.getPolygons();
+		Assert.isTrue(polys.size() == 2, "expected 2 catchments.  found "+polys.size());
+		for (Object o : polys) {
+			double area = ((Geometry)o).getArea();
+			Assert.isTrue(Math.abs(area - 5) < TOLERANCE || Math.abs(area - 2) < TOLERANCE, "expected catchments A+B and C.  found area "+area);
+		}
+	}
+	
+	/**
+	 * a grid of n x n catchments, each with its own water, made of long ridges which cross many tiles.  
+	 * no catchments are merged, so the cleaned ridges are the edges of the grid.  
+	 */
+	@Test
+	public void testSameResultWithAnyNumberOfThreads() throws SchemaException, ParseException, IOException {
+		int n = 4;
+		SimpleFeatureType type = DataUtilities.createType("ridges", "geometry:LineString:srid=3005");
+		DefaultFeatureCollection ridges = new DefaultFeatureCollection();
+		List<LineString> streams = new ArrayList<LineString>();
+		for (int i = 0; i <= n; i++) {
+			LineString horizontal = (LineString)TestHelper.geometryFromWkt("LineString (0 "+i+" 5, "+n+" "+i+" 5)");
+			LineString vertical = (LineString)TestHelper.geometryFromWkt("LineString ("+i+" 0 5, "+i+" "+n+" 5)");
+			ridges.add(SpatialUtils.geomToFeature(horizontal, type, "h"+i));
+			ridges.add(SpatialUtils.geomToFeature(vertical, type, "v"+i));
+			for (int j = 0; j < n && i < n; j++) {
+				streams.add((LineString)TestHelper.geometryFromWkt("LineString ("+(i+0.4)+" "+(j+0.5)+", "+(i+0.6)+" "+(j+0.5)+")"));
+			}
+		}
+		Water water = new Water(TestHelper.createLineStringFeatureSource(streams, "water"));
+		
+		RidgeCleaner cleaner1 = new RidgeCleaner(ridges, water, "catchment_polys", 1);
+		List<SimpleFeature> cleaned1 = SpatialUtils.simpleFeatureCollectionToFeatList(cleaner1.doAllCleaning());
+		RidgeCleaner cleaner4 = new RidgeCleaner(ridges, water, "catchment_polys", 4);
+		List<SimpleFeature> cleaned4 = SpatialUtils.simpleFeatureCollectionToFeatList(cleaner4.doAllCleaning());
+		
+		int expectedNumSections = 2 * n * (n+1) - 4;
+		Assert.isTrue(cleaned1.size() == expectedNumSections, "expected "+expectedNumSections+" sections.  found "+cleaned1.size());
+		Assert.isTrue(cleaned4.size() == cleaned1.size(), "expected the same number of sections with 1 and 4 threads");
+		for (int i = 0; i < cleaned1.size(); i++) {
+			Geometry g1 = (Geometry)cleaned1.get(i).getDefaultGeometry();
+			Geometry g4 = (Geometry)cleaned4.get(i).getDefaultGeometry();
+			Assert.isTrue(g1.equalsExact(g4), "expected the same sections in the same order with 1 and 4 threads");
+		}
+		
+		//every stage run is recorded, in the order it was run
+		List<CleaningStageMetrics> metrics = cleaner4.getStageMetrics();
+		Assert.isTrue(metrics.size() >= 3, "expected at least 3 stages.  found "+metrics.size());
+		CleaningStageMetrics first = metrics.get(0);
+		Assert.isTrue(first.getStageName().equals("split and filter out duplicates"), "unexpected first stage: "+first.getStageName());
+		Assert.isTrue(first.getNumIn() == 2 * (n+1), "expected the input ridges into the first stage.  found "+first.getNumIn());
+		Assert.isTrue(first.getNumOut() == expectedNumSections, "expected the grid sections out of the first stage.  found "+first.getNumOut());
+		Assert.isTrue(metrics.get(1).getStageName().equals("filter out false catchments"), "unexpected second stage: "+metrics.get(1).getStageName());
+		CleaningStageMetrics last = metrics.get(metrics.size()-1);
+		Assert.isTrue(last.getNumOut() == cleaned4.size(), "expected the last stage to output the result");
+		for (CleaningStageMetrics m : metrics) {
+			Assert.isTrue(m.getRuntimeMs() >= 0, "expected a run time for stage "+m.getStageName());
+		}
+		Assert.isTrue(cleaner1.getStageMetrics().size() == metrics.size(), "expected the same stages with 1 and 4 threads");
+	}
+}
@@ -0,0 +1,126 @@
+package ca.bc.gov.catchment.ridgeclean;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.io.ParseException;
+import org.locationtech.jts.util.Assert;
+
+import ca.bc.gov.catchment.synthetic.TestHelper;
+
+public class RidgeGraphTest {
+
+	/**
+	 * - a straight ridge
+	 * - a ridge which overlaps the first from (1 0) to (2 0), then branches off
+	 * - a ridge which crosses the first between two of its vertices
+	 */
+	private List<LineString> createRidges() throws ParseException {
+		List<LineString> ridges = new ArrayList<LineString>();
+		ridges.add((LineString)TestHelper.geometryFromWkt("LineString (0 0, 1 0, 2 0, 3 0)"));
+		ridges.add((LineString)TestHelper.geometryFromWkt("LineString (1 0, 2 0, 2 1)"));
+		ridges.add((LineString)TestHelper.geometryFromWkt("LineString (0.5 -1, 0.5 1)"));
+		return ridges;
+	}
+
+	@Test
+	public void testEdgesAndDegrees() throws ParseException {
+		RidgeGraph graph = new RidgeGraph(createRidges());
+
+		Assert.isTrue(graph.getDegree(new Coordinate(0, 0)) == 1, "expected degree 1 at a loose end");
+		Assert.isTrue(graph.getDegree(new Coordinate(1, 0)) == 2, "expected degree 2 where the overlap starts");
+		Assert.isTrue(graph.getDegree(new Coordinate(2, 0)) == 3, "expected degree 3 where the ridge branches");
+		Assert.isTrue(graph.getDegree(new Coordinate(0.5, 0)) == 4, "expected degree 4 where ridges cross");
+		Assert.isTrue(graph.getDegree(new Coordinate(5, 5)) == 0, "expected degree 0 away from the ridges");
+		Assert.isTrue(graph.getJunctions().size() == 2, "expected 2 junctions.  found "+graph.getJunctions().size());
+
+		List<LineString> edges = graph.getEdges();
+		Assert.isTrue(edges.size() == 6, "expected 6 edges.  found "+edges.size());
+		double totalLength = 0;
+		for (LineString edge : edges) {
+			totalLength += edge.getLength();
+		}
+		//the overlapping part of the ridges is only counted once
+		Assert.isTrue(Math.abs(totalLength - 6) < 0.000001, "expected total edge length of 6.  found "+totalLength);
+	}
+
+	@Test
+	public void testIntersectingLinePairs() throws ParseException {
+		List<LineString> ridges = createRidges();
+		RidgeGraph graph = new RidgeGraph(ridges);
+
+		List<int[]> pairs = graph.getIntersectingLinePairs();
+		Assert.isTrue(pairs.size() == 2, "expected 2 intersecting pairs.  found "+pairs.size());
+		int numCrossing = 0;
+		for (int[] pair : pairs) {
+			Assert.isTrue(pair[0] < pair[1], "expected lower index first");
+			if (ridges.get(pair[0]).crosses(ridges.get(pair[1]))) {
+				Assert.isTrue(pair[0] == 0 && pair[1] == 2, "expected only ridges 0 and 2 to cross");
+				numCrossing++;
+			}
+		}
+		Assert.isTrue(numCrossing == 1, "expected one crossing pair");
+	}
+
+	@Test
+	public void testRing() throws ParseException {
+		List<LineString> ridges = new ArrayList<LineString>();
+		ridges.add((LineString)TestHelper.geometryFromWkt("LineString (0 0, 0 1, 1 1)"));
+		ridges.add((LineString)TestHelper.geometryFromWkt("LineString (1 1, 1 0, 0 0)"));
+		RidgeGraph graph = new RidgeGraph(ridges);
+
+		List<LineString> edges = graph.getEdges();
+		Assert.isTrue(edges.size() == 1, "expected the ring to be one edge.  found "+edges.size());
+		Assert.isTrue(edges.get(0).isClosed(), "expected the edge to be closed");
+		Assert.isTrue(edges.get(0).getNumPoints() == 5, "expected 5 points.  found "+edges.get(0).getNumPoints());
+	}
+
+	/**
+	 * a grid of long lines, noded in many tiles, must give the same graph as noding in one tile.  
+	 * every line crosses several tiles.
+	 */
+	@Test
+	public void testTiles() throws ParseException, IOException {
+		int n = 8;
+		List<LineString> ridges = new ArrayList<LineString>();
+		for (int i = 0; i <= n; i++) {
+			ridges.add((LineString)TestHelper.geometryFromWkt("LineString (0 "+i+", "+n+" "+i+")"));
+			ridges.add((LineString)TestHelper.geometryFromWkt("LineString ("+i+" 0, "+i+" "+n+")"));
+		}
+		
+		RidgeGraph oneTile = new RidgeGraph(ridges);
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		try {
+			RidgeGraph manyTiles = new RidgeGraph(ridges, pool, 16);
+			
+			//each unit segment of the grid is an edge, except that the two segments at each corner are joined
+			int expectedNumEdges = 2 * n * (n+1) - 4;
+			Assert.isTrue(oneTile.getEdges().size() == expectedNumEdges, "expected "+expectedNumEdges+" edges.  found "+oneTile.getEdges().size());
+			Assert.isTrue(manyTiles.getEdges().size() == expectedNumEdges, "expected "+expectedNumEdges+" edges.  found "+manyTiles.getEdges().size());
+			for (int i = 0; i < expectedNumEdges; i++) {
+				Assert.isTrue(oneTile.getEdges().get(i).equalsExact(manyTiles.getEdges().get(i)), "expected the same edges in the same order");
+			}
+			
+			Assert.isTrue(manyTiles.getJunctions().size() == (n+1) * (n+1) - 4, "unexpected number of junctions");
+			Assert.isTrue(manyTiles.getDegree(new Coordinate(1, 1)) == 4, "expected an interior node of degree 4");
+			
+			//every horizontal line intersects every vertical line
+			int expectedNumPairs = (n+1) * (n+1);
+			Assert.isTrue(manyTiles.getIntersectingLinePairs().size() == expectedNumPairs, "expected "+expectedNumPairs+" pairs.  found "+manyTiles.getIntersectingLinePairs().size());
+			for (int i = 0; i < expectedNumPairs; i++) {
+				int[] expected = oneTile.getIntersectingLinePairs().get(i);
+				int[] actual = manyTiles.getIntersectingLinePairs().get(i);
+				Assert.isTrue(expected[0] == actual[0] && expected[1] == actual[1], "expected the same pairs in the same order");
+			}
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+}
@@ -0,0 +1,163 @@
+package ca.bc.gov.catchment.ridgegrowth;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.junit.Assert;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+
+import ca.bc.gov.catchment.fitness.ElevationPointFitness;
+import ca.bc.gov.catchment.routes.RouteException;
+import ca.bc.gov.catchment.synthetic.DummyFactory;
+import ca.bc.gov.catchment.tin.TinEdges;
+import ca.bc.gov.catchment.tin.VertexTable;
+import ca.bc.gov.catchment.utils.SpatialUtils;
+import ca.bc.gov.catchment.water.Water;
+
+public class LookAheadSearchTest {
+
+	/**
+	 * the search must choose the same extension as sorting every possible extension, for every 
+	 * two-vertex stem in the dummy TIN
+	 */
+	@Test
+	public void testSameAsExhaustive() throws IOException, RouteException {
+		TinEdges tinEdges = new TinEdges(DummyFactory.createDummyTinEdges());
+		Water water = new Water(DummyFactory.createDummyWaterFeatures());
+		VertexTable vertices = tinEdges.getVertexTable();
+		GeometryFactory geometryFactory = JTSFactoryFinder.getGeometryFactory();
+		
+		for (int lookAhead = 1; lookAhead <= 4; lookAhead++) {
+			LookAheadSearch search = new LookAheadSearch(tinEdges, water, lookAhead, geometryFactory);
+			
+			int numCompared = 0;
+			for (int id = 0; id < vertices.getNumVertices(); id++) {
+				for (int neighbourId : tinEdges.getConnectedVertexIds(id)) {
+					RidgePath stem = new RidgePath(vertices);
+					stem.add(id);
+					stem.add(neighbourId);
+					
+					LineString expected = findBestExtensionExhaustive(stem, tinEdges, water, lookAhead);
+					LineString actual = search.findBestExtension(stem);
+					assertSameLine("stem "+id+"-"+neighbourId+", look ahead "+lookAhead, expected, actual);
+					Assert.assertEquals("stem expected to be unchanged", 2, stem.size());
+					numCompared++;
+				}
+			}
+			Assert.assertTrue("expected some stems to be compared", numCompared > 0);
+		}
+	}
+	
+	@Test
+	public void testNoExtension() throws IOException, RouteException {
+		TinEdges tinEdges = new TinEdges(DummyFactory.createDummyTinEdges());
+		VertexTable vertices = tinEdges.getVertexTable();
+		Water water = new Water(DummyFactory.createDummyWaterFeatures());
+		LookAheadSearch search = new LookAheadSearch(tinEdges, water, 2, JTSFactoryFinder.getGeometryFactory());
+		
+		//a stem which contains a vertex and all of its neighbours can't be extended from that vertex
+		int id = 0;
+		RidgePath stem = new RidgePath(vertices);
+		for (int neighbourId : tinEdges.getConnectedVertexIds(id)) {
+			stem.add(neighbourId);
+		}
+		stem.add(id);
+		Assert.assertNull("expected no extension", search.findBestExtension(stem));
+	}
+	
+	/**
+	 * lists every possible extension of the stem, and returns the first of the best after a stable sort
+	 */
+	private LineString findBestExtensionExhaustive(RidgePath stem, TinEdges tinEdges, Water water, int lookAhead) throws IOException {
+		List<LineString> extensions = new ArrayList<LineString>();
+		List<Coordinate> extensionCoords = new ArrayList<Coordinate>();
+		extensionCoords.add(stem.getLastCoordinate());
+		addAllExtensions(stem, extensionCoords, lookAhead, tinEdges, water, extensions);
+		if (extensions.isEmpty()) {
+			return null;
+		}
+		extensions.sort(getRankComparator(stem));
+		return extensions.get(0);
+	}
+	
+	/**
+	 * adds the extensions in the same order as the search breaks ties: neighbours in elevation comparator
+	 * order, and longer extensions before the shorter extensions they start with
+	 */
+	private void addAllExtensions(RidgePath stem, List<Coordinate> extensionCoords, int maxExtensionLen, 
+			TinEdges tinEdges, Water water, List<LineString> extensions) throws IOException {
+		VertexTable vertices = stem.getVertexTable();
+		List<Coordinate> nextCoords = new ArrayList<Coordinate>();
+		for (int id : tinEdges.getConnectedVertexIds(stem.getLastVertexId())) {
+			nextCoords.add(vertices.getCoordinate(id));
+		}
+		nextCoords.sort(ElevationPointFitness.getCoordinateComparator());
+		
+		for (Coordinate next : nextCoords) {
+			if (!RidgeGrowthHelpers.isCoordValidInRidge(next, stem, water)) {
+				continue;
+			}
+			stem.add(next);
+			extensionCoords.add(next);
+			if (maxExtensionLen > 1) {
+				addAllExtensions(stem, extensionCoords, maxExtensionLen-1, tinEdges, water, extensions);
+			}
+			extensions.add(SpatialUtils.toLineString(extensionCoords));
+			extensionCoords.remove(extensionCoords.size()-1);
+			stem.removeLast();
+		}
+	}
+	
+	/**
+	 * the ranking of extensions, best first (see LookAheadSearch)
+	 */
+	private Comparator<LineString> getRankComparator(final RidgePath stem) {
+		return new Comparator<LineString>() {
+			public int compare(LineString s1, LineString s2) {
+				boolean m1 = RidgeGrowthHelpers.isMovingAway(stem, s1.getCoordinateN(s1.getNumPoints()-1));
+				boolean m2 = RidgeGrowthHelpers.isMovingAway(stem, s2.getCoordinateN(s2.getNumPoints()-1));
+				if (m1 != m2) {
+					return m1 ? -1 : 1;
+				}
+				boolean a1 = RidgeGrowthHelpers.isMovingAway(stem, s1.getCoordinateN(1));
+				boolean a2 = RidgeGrowthHelpers.isMovingAway(stem, s2.getCoordinateN(1));
+				if (a1 != a2) {
+					return a1 ? -1 : 1;
+				}
+				boolean endsHigher1 = s1.getCoordinateN(0).getZ() <= s1.getCoordinateN(s1.getNumPoints()-1).getZ();
+				boolean endsHigher2 = s2.getCoordinateN(0).getZ() <= s2.getCoordinateN(s2.getNumPoints()-1).getZ();
+				if (endsHigher1 != endsHigher2) {
+					return endsHigher1 ? -1 : 1;
+				}
+				if (s1.getNumPoints() != s2.getNumPoints()) {
+					return s1.getNumPoints() > s2.getNumPoints() ? -1 : 1;
+				}
+				double slope1 = (SpatialUtils.getAverageElevation(s1) - s1.getCoordinateN(0).getZ()) / s1.getLength();
+				double slope2 = (SpatialUtils.getAverageElevation(s2) - s2.getCoordinateN(0).getZ()) / s2.getLength();
+				return slope1 > slope2 ? -1 
+						 : slope1 < slope2 ? 1 
+					     : 0;
+			}
+		};
+	}
+	
+	private void assertSameLine(String message, LineString expected, LineString actual) {
+		if (expected == null) {
+			Assert.assertNull(message, actual);
+			return;
+		}
+		Assert.assertNotNull(message, actual);
+		Coordinate[] expectedCoords = expected.getCoordinates();
+		Coordinate[] actualCoords = actual.getCoordinates();
+		Assert.assertEquals(message, expectedCoords.length, actualCoords.length);
+		for (int i = 0; i < expectedCoords.length; i++) {
+			Assert.assertTrue(message, expectedCoords[i].equals3D(actualCoords[i]));
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package ca.bc.gov.catchment.ridgegrowth;
+
+import java.io.IOException;
+
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.junit.Assert;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+
+import ca.bc.gov.catchment.synthetic.DummyFactory;
+import ca.bc.gov.catchment.tin.TinEdges;
+import ca.bc.gov.catchment.tin.VertexTable;
+
+public class RidgePathTest {
+
+	@Test
+	public void testAddAndRemoveLast() throws IOException {
+		SimpleFeatureSource fs = DummyFactory.createDummyTinEdges();
+		TinEdges tinEdges = new TinEdges(fs);
+		VertexTable vertices = tinEdges.getVertexTable();
+		
+		RidgePath path = new RidgePath(vertices);
+		int numVertices = Math.min(vertices.getNumVertices(), 100);
+		for (int id = 0; id < numVertices; id++) {
+			path.add(id);
+			Assert.assertTrue("path expected to contain vertex "+id, path.contains(id));
+			Assert.assertEquals(id, path.getLastVertexId());
+		}
+		Assert.assertEquals(numVertices, path.size());
+		
+		int removed = path.removeLast();
+		Assert.assertEquals(numVertices - 1, removed);
+		Assert.assertFalse("removed vertex expected not to be in the path", path.contains(removed));
+		Assert.assertTrue("earlier vertex expected to remain in the path", path.contains(0));
+		Assert.assertEquals(numVertices - 1, path.size());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testNoRevisit() throws IOException {
+		SimpleFeatureSource fs = DummyFactory.createDummyTinEdges();
+		TinEdges tinEdges = new TinEdges(fs);
+		RidgePath path = new RidgePath(tinEdges.getVertexTable());
+		path.add(0);
+		path.add(1);
+		path.add(0);
+	}
+	
+	@Test
+	public void testToLineString() throws IOException {
+		SimpleFeatureSource fs = DummyFactory.createDummyTinEdges();
+		TinEdges tinEdges = new TinEdges(fs);
+		VertexTable vertices = tinEdges.getVertexTable();
+		GeometryFactory geometryFactory = JTSFactoryFinder.getGeometryFactory();
+		
+		Coordinate c0 = vertices.getCoordinate(0);
+		Coordinate c1 = vertices.getCoordinate(1);
+		Coordinate c2 = vertices.getCoordinate(2);
+		LineString stem = geometryFactory.createLineString(new Coordinate[] {c0, c1});
+		
+		RidgePath path = RidgePath.fromLineString(stem, vertices);
+		path.add(c2);
+		Assert.assertTrue("path expected to contain "+c2, path.contains(c2));
+		
+		LineString line = path.toLineString(geometryFactory);
+		Assert.assertEquals(3, line.getNumPoints());
+		Assert.assertTrue(line.getCoordinateN(0).equals3D(c0));
+		Assert.assertTrue(line.getCoordinateN(1).equals3D(c1));
+		Assert.assertTrue(line.getCoordinateN(2).equals3D(c2));
+	}
+}
@@ -0,0 +1,143 @@
+package ca.bc.gov.catchment.routes;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.LineString;
+
+import ca.bc.gov.catchment.synthetic.DummyFactory;
+import ca.bc.gov.catchment.tin.TinEdges;
+import ca.bc.gov.catchment.tin.VertexTable;
+
+public class AStarRouteSearchTest {
+
+	@Test
+	public void testFindsShortestRoute() throws IOException {
+		TinEdges tinEdges = new TinEdges(DummyFactory.createDummyTinEdges());
+		VertexTable vertices = tinEdges.getVertexTable();
+		final DistanceEdgeCost distance = new DistanceEdgeCost(vertices);
+		AStarRouteSearch search = new AStarRouteSearch(tinEdges, distance);
+		
+		//without an estimate of the remaining cost, the search is an exhaustive (Dijkstra) search
+		AStarRouteSearch exhaustiveSearch = new AStarRouteSearch(tinEdges, new EdgeCost() {
+			public double getCost(int fromId, int toId) {
+				return distance.getCost(fromId, toId);
+			}
+			public double getMinCostPerUnitLength() {
+				return 0;
+			}
+		});
+		
+		int numVertices = vertices.getNumVertices();
+		for (int startId = 0; startId < numVertices; startId += 7) {
+			for (int endId = numVertices - 1; endId >= 0; endId -= 11) {
+				int[] route = search.findRoute(startId, endId, null, true);
+				Assert.assertNotNull("expected a route from "+startId+" to "+endId, route);
+				assertFollowsTin(tinEdges, route);
+				Assert.assertEquals(startId, route[0]);
+				Assert.assertEquals(endId, route[route.length-1]);
+				
+				int[] shortestRoute = exhaustiveSearch.findRoute(startId, endId, null, true);
+				Assert.assertEquals("expected the shortest route", getLength(vertices, shortestRoute), getLength(vertices, route), 1e-9);
+			}
+		}
+	}
+	
+	@Test
+	public void testAvoidsBlockedVertices() throws IOException {
+		TinEdges tinEdges = new TinEdges(DummyFactory.createDummyTinEdges());
+		VertexTable vertices = tinEdges.getVertexTable();
+		AStarRouteSearch search = new AStarRouteSearch(tinEdges, new DistanceEdgeCost(vertices));
+		
+		int startId = 0;
+		int endId = vertices.getNumVertices() - 1;
+		int[] route = search.findRoute(startId, endId, null, true);
+		Assert.assertTrue("expected a route with an interior vertex", route.length > 2);
+		
+		BitSet blocked = new BitSet();
+		blocked.set(route[route.length / 2]);
+		int[] detour = search.findRoute(startId, endId, blocked, true);
+		Assert.assertNotNull("expected a route around the blocked vertex", detour);
+		assertFollowsTin(tinEdges, detour);
+		for (int id : detour) {
+			Assert.assertFalse("route includes a blocked vertex", blocked.get(id));
+		}
+		
+		//a blocked end can't be reached
+		blocked.set(endId);
+		Assert.assertNull(search.findRoute(startId, endId, blocked, true));
+	}
+	
+	@Test
+	public void testAppliesSegmentValidator() throws IOException {
+		TinEdges tinEdges = new TinEdges(DummyFactory.createDummyTinEdges());
+		final VertexTable vertices = tinEdges.getVertexTable();
+		
+		//disallow segments which are entirely left of x=5, except from the start of the route
+		SegmentValidator validator = new SegmentValidator() {
+			public boolean isValidSegment(int fromId, int toId, boolean isFromStart) {
+				return isFromStart || vertices.getX(fromId) >= 5 || vertices.getX(toId) >= 5;
+			}
+		};
+		AStarRouteSearch search = new AStarRouteSearch(tinEdges, new DistanceEdgeCost(vertices), validator);
+		
+		int startId = vertices.getVertexId(new Coordinate(3, 2));
+		int endId = vertices.getVertexId(new Coordinate(9, 10));
+		int[] route = search.findRoute(startId, endId, null, true);
+		Assert.assertNotNull("expected a valid route", route);
+		assertFollowsTin(tinEdges, route);
+		for (int i = 1; i < route.length; i++) {
+			Assert.assertTrue("route includes an invalid segment", validator.isValidSegment(route[i-1], route[i], i == 1));
+		}
+	}
+	
+	@Test
+	public void testLineStringRouterWithSearch() throws IOException, RouteException {
+		TinEdges tinEdges = new TinEdges(DummyFactory.createDummyTinEdges());
+		LineStringRouter router = new LineStringRouter(tinEdges, new DistanceEdgeCost(tinEdges.getVertexTable()), null);
+		
+		Coordinate[] included = {
+				new Coordinate(3, 2, 12),
+				new Coordinate(11, 10, 11),
+				new Coordinate(9, 10, 10)
+		};
+		LineString route = router.makeRoute(included);
+		for (Coordinate c : included) {
+			Assert.assertTrue("route expected to include "+c, LineStringRouter.isCoordinateOf(c, route));
+		}
+		Assert.assertTrue("expected first coordinate of route to be "+included[0], route.getCoordinateN(0).equals(included[0]));
+		Assert.assertTrue("expected last coordinate of route to be "+included[2], route.getCoordinateN(route.getNumPoints()-1).equals(included[2]));
+		Set<Coordinate> visited = new HashSet<Coordinate>();
+		for (Coordinate c : route.getCoordinates()) {
+			Assert.assertTrue("route repeats coordinate "+c, visited.add(c));
+		}
+	}
+	
+	// Helpers
+	//-------------------------------------------------------------------------
+	
+	private void assertFollowsTin(TinEdges tinEdges, int[] route) throws IOException {
+		for (int i = 1; i < route.length; i++) {
+			boolean isEdge = false;
+			for (int id : tinEdges.getConnectedVertexIds(route[i-1])) {
+				if (id == route[i]) {
+					isEdge = true;
+				}
+			}
+			Assert.assertTrue("route doesn't follow TIN edges", isEdge);
+		}
+	}
+	
+	private double getLength(VertexTable vertices, int[] route) {
+		double length = 0;
+		for (int i = 1; i < route.length; i++) {
+			length += vertices.distance2D(route[i-1], route[i]);
+		}
+		return length;
+	}
+}
@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
 
@@ -48,7 +49,7 @@ public class LineStringRouterTest {
 		}
 	}
 	
-	private void testMakeRoute(int numPoints) {
+	private void testMakeRoute(int numPoints) throws IOException {
 		String testName = "LineStringRouter-test-"+numPoints+"pt";
 		String saveFilename = SAVE_DIR+testName+".gpkg";
 		File saveFile = new File(saveFilename);
@@ -91,42 +92,42 @@ public class LineStringRouterTest {
 	}
 	
 	@Test
-	public void testMakeRouteTwoPoints() {
+	public void testMakeRouteTwoPoints() throws IOException {
 		testMakeRoute(2);
 	}
 	
 	@Test
-	public void testMakeRouteThreePoints() {
+	public void testMakeRouteThreePoints() throws IOException {
 		testMakeRoute(3);
 	}
 	
 	@Test
-	public void testMakeRouteFourPoints() {
+	public void testMakeRouteFourPoints() throws IOException {
 		testMakeRoute(4);
 	}
 	
 	//@Test
-	public void testMakeRouteFivePoints() {
+	public void testMakeRouteFivePoints() throws IOException {
 		testMakeRoute(5);
 	}
 	
 	//@Test
-	public void testMakeRouteSixPoints() {
+	public void testMakeRouteSixPoints() throws IOException {
 		testMakeRoute(6);
 	}
 	
 	//@Test
-	public void testMakeRouteSevenPoints() {
+	public void testMakeRouteSevenPoints() throws IOException {
 		testMakeRoute(7);
 	}
 	
 	//@Test
-	public void testMakeRouteTenPoints() {
+	public void testMakeRouteTenPoints() throws IOException {
 		testMakeRoute(10);
 	}
 	
 	@Test
-	public void testAlternativeRoutesNewMidpoint() throws RouteException {
+	public void testAlternativeRoutesNewMidpoint() throws IOException, RouteException {
 		String testName = "LineStringRouter-test-alternative-midpoint";
 		String saveFilename = SAVE_DIR+testName+".gpkg";
 		LineStringRouter router = new LineStringRouter(tinEdges);
@@ -189,7 +190,7 @@ public class LineStringRouterTest {
 	}
 	
 	@Test
-	public void testAlternativeRoutesNewEndpointFails() throws RouteException {
+	public void testAlternativeRoutesNewEndpointFails() throws IOException, RouteException {
 		LineStringRouter router = new LineStringRouter(tinEdges);
 		LineString initialRoute = null;
 		try {
@@ -225,6 +226,47 @@ public class LineStringRouterTest {
 		
 	}
 	
+	@Test
+	public void testAlternativeRoutesAreDistinct() throws IOException, RouteException {
+		LineStringRouter router = new LineStringRouter(tinEdges);
+		Coordinate[] startAndEnd = {
+				new Coordinate(3, 2, 12),
+				new Coordinate(9, 10, 10)			
+		};
+		LineString initialRoute = router.makeRoute(startAndEnd);
+		
+		//route around each interior point, including those next to an endpoint
+		for (int i = 1; i < initialRoute.getNumPoints()-1; i++) {
+			Coordinate pointToRemove = initialRoute.getCoordinateN(i);
+			List<LineString> alternativeRoutes = router.alternativeRoutes(initialRoute, pointToRemove);
+			
+			HashSet<LineString> distinct = new HashSet<LineString>(alternativeRoutes);
+			Assert.assertEquals("alternative routes should be distinct", alternativeRoutes.size(), distinct.size());
+			for (LineString alternative : alternativeRoutes) {
+				Assert.assertFalse("alternative route should differ from the original", initialRoute.equalsExact(alternative));
+				Assert.assertFalse("alternative route should avoid "+pointToRemove, LineStringRouter.isCoordinateOf(pointToRemove, alternative));
+				Assert.assertEquals(initialRoute.getCoordinateN(0), alternative.getCoordinateN(0));
+				Assert.assertEquals(initialRoute.getCoordinateN(initialRoute.getNumPoints()-1), alternative.getCoordinateN(alternative.getNumPoints()-1));
+				Assert.assertTrue(router.doesRouteFollowTinEdges(alternative));
+			}
+		}
+	}
+	
+	@Test
+	public void testRouteCache() throws IOException, RouteException {
+		LineStringRouter router = new LineStringRouter(tinEdges);
+		Coordinate[] startAndEnd = {
+				new Coordinate(3, 2, 12),
+				new Coordinate(9, 10, 10)			
+		};
+		LineString route1 = router.makeRoute(startAndEnd);
+		long hits = router.getRouteCache().getHitCount();
+		LineString route2 = router.makeRoute(startAndEnd);
+		
+		Assert.assertTrue("repeated route should be cached", router.getRouteCache().getHitCount() > hits);
+		Assert.assertTrue(route1.equalsExact(route2));
+	}
+	
 	@Test
 	public void testMoveJunction() throws IOException, RouteException {
 		String testName = "LineStringRouter-test-move-junction";
@@ -61,7 +61,7 @@ public class WaterAwareCatchmentRouterTest {
 				coordToMove,
 				new Coordinate(2, 10, 12)
 		};
-		LineStringRouter basicRouter = new LineStringRouter(tinEdges);
+		LineStringRouter basicRouter = LineStringRouter.createGreedyRouter(tinEdges);
 		LineString originalRoute = basicRouter.makeRoute(included);
 		
 		Water waterAnalyzer = new Water(water);
@@ -100,6 +100,26 @@ public class WaterAwareCatchmentRouterTest {
 		}
 	}
 	
+	@Test
+	public void testMakeRouteAvoidsWater() throws IOException, RouteException {
+		Water waterAnalyzer = new Water(water);
+		WaterAwareLineStringRouter catchmentRouter = new WaterAwareLineStringRouter(tinEdges, waterAnalyzer);
+		
+		//the main river is between these points, so the route must go around it
+		Coordinate start = new Coordinate(5, 1, 11);
+		Coordinate end = new Coordinate(13, 5, 15);
+		LineString route = catchmentRouter.makeRoute(start, end);
+		
+		Assert.assertTrue("route expected to start at "+start, route.getCoordinateN(0).equals(start));
+		Assert.assertTrue("route expected to end at "+end, route.getCoordinateN(route.getNumPoints()-1).equals(end));
+		for (int i = 1; i < route.getNumPoints() - 1; i++) {
+			Assert.assertFalse("route expected not to touch water", waterAnalyzer.isTouchingWater(route.getCoordinateN(i)));
+		}
+		
+		CatchmentValidity catchmentValidity = new CatchmentValidity(water);
+		Assert.assertTrue("route expected valid w.r.t. water", catchmentValidity.isRouteValidWrtWater(route));
+	}
+	
 	@Test
 	public void testIsCoordinateMovable() {
 		
@@ -105,7 +105,7 @@ public class DummyFactory {
 	
 	public static SimpleFeatureSource createDummyWaterFeatures() throws IOException, RouteException {
 		TinEdges tinEdges = new TinEdges(createDummyTinEdges());
-		LineStringRouter router = new LineStringRouter(tinEdges);
+		LineStringRouter router = LineStringRouter.createGreedyRouter(tinEdges);
 		
 		List<LineString> routes = new ArrayList<LineString>();
 		LineString riverUpstream1Route = router.makeRoute(RIVER_UPSTREAM_1_START, RIVER_CONFLUENCE);
@@ -142,7 +142,7 @@ public class DummyFactory {
 	
 	public static SimpleFeatureSource createDummyCatchments() throws IOException, RouteException {
 		TinEdges tinEdges = new TinEdges(createDummyTinEdges());
-		LineStringRouter router = new LineStringRouter(tinEdges);
+		LineStringRouter router = LineStringRouter.createGreedyRouter(tinEdges);
 		
 		List<Geometry> catchmentSections = new ArrayList<Geometry>();
 		
@@ -0,0 +1,83 @@
+package ca.bc.gov.catchment.tin;
+
+import java.io.IOException;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.util.Assert;
+import org.opengis.feature.simple.SimpleFeature;
+
+import ca.bc.gov.catchment.algorithms.IdentifyAdjacentSlopesAlg;
+import ca.bc.gov.catchment.synthetic.DummyFactory;
+import ca.bc.gov.catchment.utils.SpatialUtils;
+
+public class EdgeSlopeTableTest {
+
+	//slopes are saved as floats
+	private static final double TOLERANCE = 0.001;
+
+	@Test
+	public void testComputedSlopes() throws IOException {
+		SimpleFeatureSource edgesFs = DummyFactory.createDummyTinEdges();
+		TinPolys tinPolys = new TinPolys(DummyFactory.createDummyTinPolys(edgesFs));
+		EdgeSlopeTable table = EdgeSlopeTable.compute(tinPolys.getTriangleIndex(), 4);
+		IdentifyAdjacentSlopesAlg alg = new IdentifyAdjacentSlopesAlg(tinPolys);
+
+		Assert.isTrue(table.getNumEdges() == tinPolys.getTriangleIndex().getNumEdges(), "expected a slope entry for each edge");
+
+		int numInteriorEdges = 0;
+		SimpleFeatureIterator it = edgesFs.getFeatures().features();
+		try {
+			while(it.hasNext()) {
+				SimpleFeature f = it.next();
+				LineString segment = (LineString)f.getDefaultGeometry();
+				int edgeId = table.getEdgeId(segment.getCoordinateN(0), segment.getCoordinateN(1));
+				Assert.isTrue(edgeId != TriangleAdjacencyIndex.NONE, "expected each tin edge to have an id");
+				Assert.isTrue(edgeId == table.getEdgeId(segment.getCoordinateN(1), segment.getCoordinateN(0)), "expected the same id in either direction");
+
+				//compare with the slopes computed for one edge at a time
+				Edge edge = tinPolys.getTriangleIndex().getEdge(edgeId);
+				double[] expected = alg.process(SpatialUtils.toLineString(edge.getA(), edge.getB()));
+				Assert.isTrue(isSame(expected[0], table.getSlope1(edgeId)), "unexpected slope1 for edge "+segment);
+				Assert.isTrue(isSame(expected[1], table.getSlope2(edgeId)), "unexpected slope2 for edge "+segment);
+				if (table.hasTwoTriangles(edgeId)) {
+					numInteriorEdges++;
+				}
+			}
+		}
+		finally {
+			it.close();
+		}
+		Assert.isTrue(numInteriorEdges > 0, "expected some edges with two triangles");
+
+		Assert.isTrue(table.getEdgeId(new Coordinate(-100, -100), new Coordinate(-200, -200)) == TriangleAdjacencyIndex.NONE, "expected no edge");
+	}
+
+	@Test
+	public void testLoadSavedSlopes() throws IOException {
+		SimpleFeatureSource edgesFs = DummyFactory.createDummyTinEdges();
+		TinPolys tinPolys = new TinPolys(DummyFactory.createDummyTinPolys(edgesFs));
+		EdgeSlopeTable computed = tinPolys.getEdgeSlopeTable();
+
+		IdentifyAdjacentSlopesAlg alg = new IdentifyAdjacentSlopesAlg(tinPolys);
+		SimpleFeatureCollection edgesWithSlopes = alg.process(edgesFs.getFeatures(), "tin_edges_with_slopes");
+		Assert.isTrue(EdgeSlopeTable.hasSlopeAttributes(edgesWithSlopes.getSchema()), "expected slope attributes");
+
+		EdgeSlopeTable loaded = EdgeSlopeTable.fromFeatures(tinPolys.getTriangleIndex(), edgesWithSlopes);
+		for (int edgeId = 0; edgeId < computed.getNumEdges(); edgeId++) {
+			Assert.isTrue(isSame(computed.getSlope1(edgeId), loaded.getSlope1(edgeId)), "unexpected slope1 for edge "+edgeId);
+			Assert.isTrue(isSame(computed.getSlope2(edgeId), loaded.getSlope2(edgeId)), "unexpected slope2 for edge "+edgeId);
+		}
+	}
+
+	private boolean isSame(double a, double b) {
+		if (Double.isNaN(a) || Double.isNaN(b)) {
+			return Double.isNaN(a) && Double.isNaN(b);
+		}
+		return Math.abs(a - b) < TOLERANCE;
+	}
+}
@@ -0,0 +1,167 @@
+package ca.bc.gov.catchment.tin;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.junit.Assert;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.io.ParseException;
+import org.opengis.feature.simple.SimpleFeature;
+
+import ca.bc.gov.catchment.synthetic.DummyFactory;
+import ca.bc.gov.catchment.synthetic.TestHelper;
+import ca.bc.gov.catchment.utils.VectorUtils;
+
+public class HalfEdgeTopologyTest {
+
+	@Test
+	public void testConnectedCoordinatesMatchBruteForce() throws IOException {
+		SimpleFeatureSource fs = DummyFactory.createDummyTinEdges();
+		TinEdges tinEdges = new TinEdges(fs);
+		List<SimpleFeature> allEdges = getAllEdges(fs);
+		
+		for (Coordinate c : getAllVertices(allEdges)) {
+			List<Coordinate> expected = new ArrayList<Coordinate>();
+			for (SimpleFeature edge : allEdges) {
+				Coordinate[] coords = ((Geometry)edge.getDefaultGeometry()).getCoordinates();
+				if (coords[0].equals(c) && !expected.contains(coords[1])) {
+					expected.add(coords[1]);
+				}
+				else if (coords[1].equals(c) && !expected.contains(coords[0])) {
+					expected.add(coords[0]);
+				}
+			}
+			
+			List<Coordinate> actual = tinEdges.getConnectedCoordinates(c);
+			Assert.assertEquals("wrong number of connected coordinates for "+c, expected.size(), actual.size());
+			for (Coordinate a : actual) {
+				Assert.assertTrue("unexpected connected coordinate "+a, expected.contains(a));
+			}
+		}
+	}
+	
+	@Test
+	public void testEdgesTouchingCoordinateAreSortedByAngle() throws IOException {
+		SimpleFeatureSource fs = DummyFactory.createDummyTinEdges();
+		TinEdges tinEdges = new TinEdges(fs);
+		List<SimpleFeature> allEdges = getAllEdges(fs);
+		
+		for (Coordinate c : getAllVertices(allEdges)) {
+			List<SimpleFeature> touching = tinEdges.getEdgesTouchingCoordinate(c);
+			Assert.assertTrue("expected at least one edge touching "+c, touching.size() > 0);
+			double prevAngle = -1;
+			for (SimpleFeature edge : touching) {
+				double angle = VectorUtils.angle2D(c, (LineString)edge.getDefaultGeometry());
+				Assert.assertTrue("edges not sorted by angle at "+c, angle >= prevAngle);
+				prevAngle = angle;
+			}
+		}
+	}
+	
+	@Test
+	public void testGetEdge() throws IOException {
+		SimpleFeatureSource fs = DummyFactory.createDummyTinEdges();
+		TinEdges tinEdges = new TinEdges(fs);
+		List<SimpleFeature> allEdges = getAllEdges(fs);
+		
+		for (SimpleFeature edge : allEdges) {
+			Coordinate[] coords = ((Geometry)edge.getDefaultGeometry()).getCoordinates();
+			SimpleFeature forward = tinEdges.getEdge(coords[0], coords[1]);
+			SimpleFeature backward = tinEdges.getEdge(coords[1], coords[0]);
+			Assert.assertNotNull(forward);
+			Assert.assertEquals(edge.getID(), forward.getID());
+			Assert.assertEquals(edge.getID(), backward.getID());
+		}
+		
+		Coordinate notInTin = new Coordinate(-1000, -1000);
+		Coordinate[] firstCoords = ((Geometry)allEdges.get(0).getDefaultGeometry()).getCoordinates();
+		Assert.assertNull(tinEdges.getEdge(firstCoords[0], notInTin));
+		Assert.assertEquals(0, tinEdges.getConnectedCoordinates(notInTin).size());
+	}
+	
+	@Test
+	public void testVertexIds() throws IOException {
+		SimpleFeatureSource fs = DummyFactory.createDummyTinEdges();
+		TinEdges tinEdges = new TinEdges(fs);
+		List<Coordinate> allVertices = getAllVertices(getAllEdges(fs));
+		VertexTable vertices = tinEdges.getVertexTable();
+		
+		Assert.assertEquals(allVertices.size(), vertices.getNumVertices());
+		for (Coordinate c : allVertices) {
+			int id = vertices.getVertexId(c);
+			Assert.assertTrue(id >= 0 && id < vertices.getNumVertices());
+			Assert.assertEquals(c, vertices.getCoordinate(id));
+			Assert.assertEquals(c.getZ(), vertices.getZ(id), 0);
+			
+			//connected vertex ids agree with connected coordinates
+			int[] connectedIds = tinEdges.getConnectedVertexIds(id);
+			List<Coordinate> connectedCoords = tinEdges.getConnectedCoordinates(c);
+			Assert.assertEquals(connectedCoords.size(), connectedIds.length);
+			for (int i = 0; i < connectedIds.length; i++) {
+				Assert.assertEquals(connectedCoords.get(i), vertices.getCoordinate(connectedIds[i]));
+			}
+		}
+	}
+	
+	@Test
+	public void testOverlappingEdgesAreAmbiguous() throws IOException, ParseException {
+		List<LineString> edges = new ArrayList<LineString>();
+		edges.add((LineString)TestHelper.geometryFromWkt("LineString (0 0 1, 1 0 2)"));
+		edges.add((LineString)TestHelper.geometryFromWkt("LineString (1 0 2, 0 1 3)"));
+		edges.add((LineString)TestHelper.geometryFromWkt("LineString (0 1 3, 0 0 1)"));
+		edges.add((LineString)TestHelper.geometryFromWkt("LineString (1 0 2, 0 0 1)"));
+		TinEdges tinEdges = new TinEdges(TestHelper.createLineStringFeatureSource(edges, "tin_edges"));
+		
+		SimpleFeature edge = tinEdges.getEdge(new Coordinate(1, 0), new Coordinate(0, 1));
+		Assert.assertNotNull(edge);
+		Assert.assertNull(tinEdges.getEdge(new Coordinate(1, 0), new Coordinate(5, 5)));
+		
+		//the edge from (0 0) to (1 0) is in the tin twice, in opposite directions
+		try {
+			tinEdges.getEdge(new Coordinate(0, 0), new Coordinate(1, 0));
+			Assert.fail("expected overlapping edges to be reported");
+		}
+		catch (IllegalStateException e) {
+			//expected
+		}
+		try {
+			tinEdges.getEdge(new Coordinate(1, 0), new Coordinate(0, 0));
+			Assert.fail("expected overlapping edges to be reported");
+		}
+		catch (IllegalStateException e) {
+			//expected
+		}
+	}
+	
+	private List<SimpleFeature> getAllEdges(SimpleFeatureSource fs) throws IOException {
+		List<SimpleFeature> result = new ArrayList<SimpleFeature>();
+		SimpleFeatureIterator it = fs.getFeatures().features();
+		try {
+			while(it.hasNext()) {
+				result.add(it.next());
+			}
+		}
+		finally {
+			it.close();
+		}
+		return result;
+	}
+	
+	private List<Coordinate> getAllVertices(List<SimpleFeature> edges) {
+		List<Coordinate> result = new ArrayList<Coordinate>();
+		for (SimpleFeature edge : edges) {
+			for (Coordinate c : ((Geometry)edge.getDefaultGeometry()).getCoordinates()) {
+				if (!result.contains(c)) {
+					result.add(c);
+				}
+			}
+		}
+		return result;
+	}
+}
@@ -2,10 +2,14 @@ package ca.bc.gov.catchment.tin;
 
 import java.io.IOException;
 
+import java.util.List;
+
+import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.data.simple.SimpleFeatureSource;
 import org.junit.Test;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.LineString;
 import org.locationtech.jts.util.Assert;
 import org.opengis.feature.simple.SimpleFeature;
 
@@ -31,4 +35,117 @@ public class TinTest {
 		Assert.isTrue(coord2d.x== result.x && coord2d.y == result.y, "expected a non-null result");		
 	}
 	
+	@Test
+	public void testGetTrianglesOnEdge() throws IOException {
+		SimpleFeatureSource edgesFs = DummyFactory.createDummyTinEdges();
+		SimpleFeatureSource polysFs = DummyFactory.createDummyTinPolys(edgesFs);
+		TinPolys tinPolys = new TinPolys(polysFs);
+		
+		SimpleFeatureIterator it = edgesFs.getFeatures().features();
+		try {
+			while(it.hasNext()) {
+				LineString edge = (LineString)it.next().getDefaultGeometry();
+				Edge e = new Edge(edge.getCoordinates());
+				List<Triangle> triangles = tinPolys.getTrianglesOnEdge(edge);
+				Assert.isTrue(triangles.size() == 1 || triangles.size() == 2, "expected one or two triangles on each edge");
+				for(Triangle t : triangles) {
+					Assert.isTrue(t.isComplete(), "expected a complete triangle");
+					Assert.isTrue(t.hasEdge(e), "expected triangle to have the edge");
+				}
+				
+				//lookup is independent of edge direction
+				LineString reversed = (LineString)edge.reverse();
+				Assert.isTrue(tinPolys.getTrianglesOnEdge(reversed).size() == triangles.size(), "expected same result for reversed edge");
+			}
+		}
+		finally {
+			it.close();
+		}
+	}
+	
+	@Test
+	public void testGetNearestCoordinate() throws IOException {
+		SimpleFeatureSource fs = DummyFactory.createDummyTinEdges();
+		TinEdges tinEdges = new TinEdges(fs);
+
+		Coordinate c = new Coordinate(5.3, 4.8);
+		List<Coordinate> nearby = tinEdges.getCoordsInRadius(c, 3);
+		Assert.isTrue(nearby.size() > 0, "expected vertices within the radius");
+		for (Coordinate v : nearby) {
+			Assert.isTrue(c.distance(v) <= 3, "expected vertex to be within the radius");
+		}
+		
+		//the expected nearest vertex is found by checking every vertex of every edge, so it doesn't 
+		//depend on the vertex index
+		Coordinate expectedNearest = null;
+		SimpleFeatureIterator it = fs.getFeatures().features();
+		try {
+			while(it.hasNext()) {
+				Geometry g = (Geometry)it.next().getDefaultGeometry();
+				for (Coordinate v : g.getCoordinates()) {
+					if (expectedNearest == null || c.distance(v) < c.distance(expectedNearest)) {
+						expectedNearest = v;
+					}
+				}
+			}
+		}
+		finally {
+			it.close();
+		}
+		
+		Coordinate nearest = tinEdges.getNearestCoordinate(c);
+		Assert.isTrue(c.distance(nearest) == c.distance(expectedNearest), "expected nearest vertex "+expectedNearest+".  found "+nearest);
+		Assert.isTrue(tinEdges.snapToVertex(c, c.distance(nearest)) != null, "expected snap within tolerance");
+		Assert.isTrue(tinEdges.snapToVertex(c, c.distance(nearest) / 2) == null, "expected no snap outside tolerance");
+	}
+	
+	@Test
+	public void testGetStatistics() throws IOException {
+		SimpleFeatureSource edgesFs = DummyFactory.createDummyTinEdges();
+		TinEdges tinEdges = new TinEdges(edgesFs);
+		TinPolys tinPolys = new TinPolys(DummyFactory.createDummyTinPolys(edgesFs));
+		
+		double maxZ = 0;
+		double maxLen = 0;
+		SimpleFeatureIterator it = edgesFs.getFeatures().features();
+		try {
+			while(it.hasNext()) {
+				LineString edge = (LineString)it.next().getDefaultGeometry();
+				maxLen = Math.max(maxLen, edge.getLength());
+				for (Coordinate c : edge.getCoordinates()) {
+					maxZ = Math.max(maxZ, c.getZ());
+				}
+			}
+		}
+		finally {
+			it.close();
+		}
+		
+		TinStatistics edgeStats = tinEdges.getStatistics();
+		TinStatistics polyStats = tinPolys.getStatistics();
+		Assert.isTrue(tinEdges.getMaxElevation() == maxZ, "unexpected max elevation");
+		Assert.isTrue(tinEdges.getMaxEdgeLength() == maxLen, "unexpected max edge length");
+		Assert.isTrue(tinPolys.getMaxEdgeLength() == maxLen, "unexpected max edge length of triangles");
+		Assert.isTrue(edgeStats.getNumEdges() == edgesFs.getFeatures().size(), "unexpected number of edges");
+		Assert.isTrue(edgeStats.getNumVertices() == polyStats.getNumVertices(), "expected same number of vertices");
+		Assert.isTrue(edgeStats.getNumEdges() == polyStats.getNumEdges(), "expected same number of edges");
+		Assert.isTrue(edgeStats.getNumTriangles() == polyStats.getNumTriangles(), "expected same number of triangles");
+		Assert.isTrue(tinEdges.getStatistics() == edgeStats, "expected statistics to be reused");
+	}
+	
+	@Test
+	public void testGetVertexCloud() throws IOException {
+		SimpleFeatureSource fs = DummyFactory.createDummyTinEdges();
+		TinEdges tinEdges = new TinEdges(fs);
+		
+		VertexCloud vertexCloud = tinEdges.getVertexCloud();
+		Assert.isTrue(vertexCloud == tinEdges.getVertexCloud(), "expected vertex cloud to be shared");
+		Assert.isTrue(vertexCloud.getSrid() == 3005, "unexpected srid");
+		
+		//one point per distinct vertex
+		int numPoints = tinEdges.getPointCloud().getFeatures().size();
+		Assert.isTrue(numPoints == vertexCloud.getNumVertices(), "expected one point per vertex");
+		Assert.isTrue(numPoints == tinEdges.getStatistics().getNumVertices(), "unexpected number of points");
+	}
+	
 }
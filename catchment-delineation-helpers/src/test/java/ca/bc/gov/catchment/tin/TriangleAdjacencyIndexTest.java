@@ -0,0 +1,71 @@
+package ca.bc.gov.catchment.tin;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.feature.DefaultFeatureCollection;
+import org.geotools.feature.SchemaException;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.io.ParseException;
+import org.locationtech.jts.util.Assert;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import ca.bc.gov.catchment.synthetic.TestHelper;
+import ca.bc.gov.catchment.utils.SpatialUtils;
+
+public class TriangleAdjacencyIndexTest {
+
+	/**
+	 * two triangles which share the edge from (1 0) to (0 1), and one feature which isn't a triangle
+	 */
+	private TriangleAdjacencyIndex createIndex() throws SchemaException, ParseException, IOException {
+		SimpleFeatureType type = DataUtilities.createType("tin_polys", "geometry:Polygon");
+		String[] wkts = {
+			"Polygon ((0 0 1, 1 0 2, 0 1 3, 0 0 1))",
+			"Polygon ((10 10 1, 11 10 1, 11 11 1, 10 11 1, 10 10 1))",
+			"Polygon ((1 0 2, 1 1 4, 0 1 3, 1 0 2))"
+		};
+		DefaultFeatureCollection fc = new DefaultFeatureCollection();
+		for (int i = 0; i < wkts.length; i++) {
+			Geometry g = TestHelper.geometryFromWkt(wkts[i]);
+			fc.add(SpatialUtils.geomToFeature(g, type, "triangle"+i));
+		}
+		return TriangleAdjacencyIndex.fromFeatures(fc);
+	}
+	
+	@Test
+	public void testInvalidTrianglesSkipped() throws SchemaException, ParseException, IOException {
+		TriangleAdjacencyIndex index = createIndex();
+		Assert.isTrue(index.getNumTriangles() == 2, "expected 2 triangles.  found "+index.getNumTriangles());
+		Assert.isTrue(index.getNumSkippedTriangles() == 1, "expected 1 skipped triangle.  found "+index.getNumSkippedTriangles());
+		Assert.isTrue(index.getNumEdges() == 5, "expected 5 edges.  found "+index.getNumEdges());
+		
+		List<Triangle> triangles = index.getTrianglesOnEdge(new Coordinate(1, 0), new Coordinate(0, 1));
+		Assert.isTrue(triangles.size() == 2, "expected 2 triangles on the shared edge.  found "+triangles.size());
+		Assert.isTrue(index.getTrianglesOnEdge(new Coordinate(10, 10), new Coordinate(11, 10)).isEmpty(), "expected no triangles on an edge of the skipped feature");
+	}
+	
+	@Test
+	public void testTrianglesAreCopies() throws SchemaException, ParseException, IOException {
+		TriangleAdjacencyIndex index = createIndex();
+		Coordinate a = new Coordinate(0, 0);
+		Coordinate b = new Coordinate(1, 0);
+		Triangle t = index.getTrianglesOnEdge(a, b).get(0);
+		double slope = t.getSlope();
+		
+		//changing the returned triangle doesn't change the index
+		for (Coordinate c : t.getCoordinates()) {
+			c.setZ(100);
+		}
+		Triangle again = index.getTrianglesOnEdge(a, b).get(0);
+		Assert.isTrue(again != t, "expected a new copy for each lookup");
+		Assert.isTrue(again.equals(t), "expected a copy of the same triangle");
+		Assert.isTrue(again.getSlope() == slope, "expected the indexed triangle to be unchanged");
+		for (Coordinate c : again.getCoordinates()) {
+			Assert.isTrue(c.getZ() < 100, "expected the indexed coordinates to be unchanged");
+		}
+	}
+}
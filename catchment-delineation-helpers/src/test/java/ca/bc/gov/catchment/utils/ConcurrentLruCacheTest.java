@@ -0,0 +1,75 @@
+package ca.bc.gov.catchment.utils;
+
+import org.junit.Test;
+import org.locationtech.jts.util.Assert;
+
+public class ConcurrentLruCacheTest {
+
+	@Test
+	public void testGetAndPut() {
+		ConcurrentLruCache<Integer, String> cache = new ConcurrentLruCache<Integer, String>(100);
+		Assert.isTrue(cache.get(1) == null, "expected miss on empty cache");
+		cache.put(1, "one");
+		cache.put(2, "two");
+		Assert.isTrue("one".equals(cache.get(1)), "expected cached value for key 1");
+		Assert.isTrue("two".equals(cache.get(2)), "expected cached value for key 2");
+		Assert.isTrue(cache.size() == 2, "expected 2 entries.  found: "+cache.size());
+		Assert.isTrue(cache.getHitCount() == 2, "expected 2 hits.  found: "+cache.getHitCount());
+		Assert.isTrue(cache.getMissCount() == 1, "expected 1 miss.  found: "+cache.getMissCount());
+	}
+	
+	@Test
+	public void testBounded() {
+		int maxSize = 64;
+		ConcurrentLruCache<Integer, Integer> cache = new ConcurrentLruCache<Integer, Integer>(maxSize);
+		for (int i = 0; i < 10000; i++) {
+			cache.put(i, i);
+		}
+		//each stripe is bounded, so the total is at most maxSize
+		Assert.isTrue(cache.size() <= maxSize, "cache expected to be bounded.  size: "+cache.size());
+		Assert.isTrue(cache.get(9999) != null, "most recent entry expected to be cached");
+	}
+	
+	@Test
+	public void testEvictsLeastRecentlyUsed() {
+		ConcurrentLruCache<Integer, Integer> cache = new ConcurrentLruCache<Integer, Integer>(2, 1);
+		cache.put(1, 1);
+		cache.put(2, 2);
+		cache.get(1); //2 is now the least recently used
+		cache.put(3, 3);
+		Assert.isTrue(cache.get(1) != null, "recently used entry expected to be kept");
+		Assert.isTrue(cache.get(2) == null, "least recently used entry expected to be removed");
+		Assert.isTrue(cache.get(3) != null, "new entry expected to be cached");
+	}
+	
+	@Test
+	public void testConcurrentAccess() throws InterruptedException {
+		final ConcurrentLruCache<Integer, Integer> cache = new ConcurrentLruCache<Integer, Integer>(500);
+		final int numThreads = 8;
+		final int numOpsPerThread = 20000;
+		Thread[] threads = new Thread[numThreads];
+		for (int t = 0; t < numThreads; t++) {
+			threads[t] = new Thread() {
+				public void run() {
+					for (int i = 0; i < numOpsPerThread; i++) {
+						int key = i % 1000;
+						Integer value = cache.get(key);
+						if (value == null) {
+							cache.put(key, key * 2);
+						}
+						else if (value != key * 2) {
+							throw new IllegalStateException("unexpected value");
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		long lookups = cache.getHitCount() + cache.getMissCount();
+		Assert.isTrue(lookups == numThreads * numOpsPerThread, "expected every lookup to be counted.  found: "+lookups);
+		Assert.isTrue(cache.size() <= cache.getMaxSize(), "cache expected to be bounded.  size: "+cache.size());
+	}
+}
@@ -0,0 +1,58 @@
+package ca.bc.gov.catchment.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.util.Assert;
+
+public class HilbertCurveTest {
+
+	@Test
+	public void testGetIndexOrder1() {
+		HilbertCurve curve = new HilbertCurve(new Envelope(0, 1, 0, 1), 1);
+		Assert.isTrue(curve.getIndex(0, 0) == 0, "unexpected index for cell (0,0)");
+		Assert.isTrue(curve.getIndex(0, 1) == 1, "unexpected index for cell (0,1)");
+		Assert.isTrue(curve.getIndex(1, 1) == 2, "unexpected index for cell (1,1)");
+		Assert.isTrue(curve.getIndex(1, 0) == 3, "unexpected index for cell (1,0)");
+	}
+	
+	@Test
+	public void testConsecutiveCellsAreAdjacent() {
+		int order = 4;
+		int n = 1 << order;
+		HilbertCurve curve = new HilbertCurve(new Envelope(0, n, 0, n), order);
+		int[][] cellAtIndex = new int[n*n][];
+		for (int x = 0; x < n; x++) {
+			for (int y = 0; y < n; y++) {
+				int index = (int)curve.getIndex(x, y);
+				Assert.isTrue(cellAtIndex[index] == null, "each cell expected to have a distinct index");
+				cellAtIndex[index] = new int[] {x, y};
+			}
+		}
+		for (int i = 1; i < n*n; i++) {
+			int dist = Math.abs(cellAtIndex[i][0] - cellAtIndex[i-1][0]) + Math.abs(cellAtIndex[i][1] - cellAtIndex[i-1][1]);
+			Assert.isTrue(dist == 1, "consecutive cells expected to be adjacent at index "+i);
+		}
+	}
+	
+	@Test
+	public void testGetHilbertOrder() {
+		List<Coordinate> coords = new ArrayList<Coordinate>();
+		coords.add(new Coordinate(10, 0));
+		coords.add(new Coordinate(0, 0));
+		coords.add(new Coordinate(0, 10));
+		coords.add(new Coordinate(10, 10));
+		coords.add(new Coordinate(0, 0));
+		
+		List<Integer> order = HilbertCurve.getHilbertOrder(coords);
+		
+		//equal positions keep their original order
+		int[] expected = {1, 4, 2, 3, 0};
+		for (int i = 0; i < expected.length; i++) {
+			Assert.isTrue(order.get(i) == expected[i], "unexpected order: "+order);
+		}
+	}
+}
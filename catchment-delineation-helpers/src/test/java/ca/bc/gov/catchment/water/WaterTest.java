@@ -40,6 +40,50 @@ public class WaterTest {
 		Assert.isTrue(!waterAnalyzer.isConfluence(new Coordinate(0, 0, 10)), "coordinate expected not to be identified as a confluence point");
 	}
 	
+	@Test
+	public void testGetConfluences() throws IOException, RouteException {
+		SimpleFeatureSource waterFeatures = DummyFactory.createDummyWaterFeatures();
+		Water waterAnalyzer = new Water(waterFeatures);
+		
+		List<Coordinate> confluences = waterAnalyzer.getConfluences();
+		Assert.isTrue(confluences.size() == 1, "expected 1 confluence, found "+confluences.size());
+		Assert.isTrue(confluences.get(0).equals2D(DummyFactory.RIVER_CONFLUENCE), "unexpected confluence");
+		
+		WaterNodeTable nodeTable = waterAnalyzer.getNodeTable();
+		Assert.isTrue(nodeTable.getDegree(DummyFactory.RIVER_CONFLUENCE) == 3, "expected confluence to have degree 3");
+		Assert.isTrue(nodeTable.getDegree(DummyFactory.RIVER_MAIN_END) == 1, "expected river end to have degree 1");
+	}
+	
+	@Test
+	public void testIsTouchingWaterMidSegment() throws IOException, ParseException {
+		LineString water1 = (LineString)TestHelper.geometryFromWkt("LineString (0 0, 10 0, 10 10)");
+		List<LineString> water = new ArrayList<LineString>();
+		water.add(water1);
+		SimpleFeatureSource waterFeatures = TestHelper.createLineStringFeatureSource(water, "water");
+		Water waterAnalyzer = new Water(waterFeatures);
+		
+		Assert.isTrue(waterAnalyzer.isTouchingWater(new Coordinate(5, 0)), "coordinate part way along a segment expected to touch water");
+		Assert.isTrue(waterAnalyzer.isTouchingWater(new Coordinate(10, 0)), "water vertex expected to touch water");
+		Assert.isTrue(!waterAnalyzer.isTouchingWater(new Coordinate(5, 1)), "coordinate expected not to touch water");
+		Assert.isTrue(!waterAnalyzer.isTouchingWater(new Coordinate(15, 0)), "coordinate on extension of segment expected not to touch water");
+	}
+	
+	@Test
+	public void testIsSegmentTouchingWater() throws IOException, ParseException {
+		LineString water1 = (LineString)TestHelper.geometryFromWkt("LineString (0 0, 10 0, 10 10)");
+		List<LineString> water = new ArrayList<LineString>();
+		water.add(water1);
+		SimpleFeatureSource waterFeatures = TestHelper.createLineStringFeatureSource(water, "water");
+		WaterNodeTable nodeTable = new Water(waterFeatures).getNodeTable();
+		
+		Assert.isTrue(nodeTable.isSegmentTouchingWater(new Coordinate(5, -1), new Coordinate(5, 1), false), "crossing segment expected to touch water");
+		Assert.isTrue(nodeTable.isSegmentTouchingWater(new Coordinate(2, 0), new Coordinate(4, 0), false), "overlapping segment expected to touch water");
+		Assert.isTrue(nodeTable.isSegmentTouchingWater(new Coordinate(9, -1), new Coordinate(11, 1), false), "segment through a water vertex expected to touch water");
+		Assert.isTrue(!nodeTable.isSegmentTouchingWater(new Coordinate(5, 0), new Coordinate(5, 5), false), "segment touching water only at an endpoint expected not to touch water");
+		Assert.isTrue(nodeTable.isSegmentTouchingWater(new Coordinate(5, 0), new Coordinate(5, 5), true), "segment touching water at an endpoint expected to touch water");
+		Assert.isTrue(!nodeTable.isSegmentTouchingWater(new Coordinate(0, 1), new Coordinate(9, 1), true), "segment expected not to touch water");
+	}
+	
 	@Test
 	public void testIsTouchingWater1() throws IOException, ParseException {
 		